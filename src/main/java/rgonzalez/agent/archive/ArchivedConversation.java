@@ -0,0 +1,18 @@
+package rgonzalez.agent.archive;
+
+import rgonzalez.agent.repository.MessageView;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A conversation and its full message history as stored in the archive.
+ */
+public record ArchivedConversation(
+        Long conversationId,
+        String userId,
+        LocalDateTime createdAt,
+        LocalDateTime archivedAt,
+        List<MessageView> messages
+) {
+}
@@ -0,0 +1,388 @@
+package rgonzalez.agent.archive;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.repository.MessageView;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only, compressed cold storage for archived conversations.
+ * Each conversation is written as one independently gzipped record to the current
+ * segment file (segment-NNNNNN.dat); its location is appended to the segment's index
+ * file (segment-NNNNNN.idx) as fixed-size (conversationId, offset, length) entries.
+ * Indexes are loaded into memory on startup, so reading an archived conversation only
+ * reads its own record. Records are compressed straight into the segment as their
+ * messages arrive and can be decompressed the same way, so a long conversation need
+ * not be held in memory whole; segments roll over once they reach a configured size.
+ * A conversation archived twice (e.g. after a crash before the database was updated)
+ * resolves to its latest record.
+ */
+@Component
+public class ConversationArchiveStore {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int INDEX_ENTRY_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final long segmentMaxBytes;
+    private final Map<Long, Location> index = new ConcurrentHashMap<>();
+    private final Map<Integer, FileChannel> readers = new ConcurrentHashMap<>();
+
+    private int currentSegment;
+    private FileChannel segmentWriter;
+    private FileChannel indexWriter;
+
+    public ConversationArchiveStore(@Value("${agent.archive.directory:./data/archive}") String directory,
+                                    @Value("${agent.archive.segment-max-bytes:67108864}") long segmentMaxBytes) {
+        this.directory = Paths.get(directory);
+        this.segmentMaxBytes = segmentMaxBytes;
+        try {
+            Files.createDirectories(this.directory);
+            loadIndexes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open conversation archive at " + directory, e);
+        }
+    }
+
+    /**
+     * Check if a conversation has been archived.
+     */
+    public boolean contains(Long conversationId) {
+        return index.containsKey(conversationId);
+    }
+
+    /**
+     * Number of archived conversations.
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Append a conversation to the archive and make it durable before returning.
+     */
+    public void write(ArchivedConversation conversation) throws IOException {
+        write(conversation.conversationId(), conversation.userId(), conversation.createdAt(),
+                conversation.archivedAt(), conversation.messages().size(), conversation.messages());
+    }
+
+    /**
+     * Append a conversation to the archive, compressing its messages in chunks as the
+     * iterable yields them (e.g. one page at a time), and make it durable before
+     * returning. Fails without indexing anything if the iterable does not yield exactly
+     * the given number of messages.
+     */
+    public synchronized void write(Long conversationId, String userId, LocalDateTime createdAt,
+                                   LocalDateTime archivedAt, int messageCount,
+                                   Iterable<MessageView> messages) throws IOException {
+        if (segmentWriter == null || segmentWriter.size() >= segmentMaxBytes) {
+            rollSegment();
+        }
+
+        long offset = segmentWriter.size();
+        long length;
+        try {
+            segmentWriter.position(offset);
+            // Not closed: closing would close the segment channel
+            GZIPOutputStream gzip = new GZIPOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(segmentWriter), CHUNK_BYTES), CHUNK_BYTES);
+            DataOutputStream out = new DataOutputStream(gzip);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(conversationId);
+            writeString(out, userId);
+            writeString(out, createdAt != null ? createdAt.toString() : null);
+            writeString(out, archivedAt != null ? archivedAt.toString() : null);
+            out.writeInt(messageCount);
+            int written = 0;
+            for (MessageView message : messages) {
+                if (++written > messageCount) {
+                    break;
+                }
+                writeMessage(out, message);
+            }
+            if (written != messageCount) {
+                throw new IOException("Conversation " + conversationId + " has "
+                        + (written > messageCount ? "more than " + messageCount : written)
+                        + " messages, expected " + messageCount);
+            }
+            gzip.finish();
+            out.flush();
+
+            length = segmentWriter.size() - offset;
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Archive record of conversation " + conversationId + " is too large");
+            }
+            segmentWriter.force(false);
+        } catch (IOException | RuntimeException e) {
+            // Drop the partial record; nothing points to it yet
+            segmentWriter.truncate(offset);
+            throw e;
+        }
+
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        entry.putLong(conversationId).putLong(offset).putInt((int) length).flip();
+        writeFully(indexWriter, entry, indexWriter.size());
+        indexWriter.force(false);
+
+        index.put(conversationId, new Location(currentSegment, offset, (int) length));
+    }
+
+    /**
+     * Read an archived conversation. Empty if it was never archived, or if its segment
+     * is missing or cut short (e.g. restored from an incomplete backup).
+     */
+    public Optional<ArchivedConversation> read(Long conversationId) {
+        List<MessageView> messages = new ArrayList<>();
+        return readRecord(conversationId, messages::add)
+                .map(header -> new ArchivedConversation(header.conversationId(), header.userId(),
+                        header.createdAt(), header.archivedAt(), messages));
+    }
+
+    /**
+     * Pass an archived conversation's messages to the action one at a time, oldest
+     * first, decompressing the record in chunks so it is never held in memory whole.
+     * Returns false if the conversation was never archived or its segment is missing;
+     * if the segment is cut short, the messages before the cut have already been passed.
+     */
+    public boolean forEachMessage(Long conversationId, Consumer<MessageView> action) {
+        return readRecord(conversationId, action).isPresent();
+    }
+
+    /**
+     * Decode a record, passing its messages to the action as they are decompressed and
+     * returning the record's header with no messages.
+     */
+    private Optional<ArchivedConversation> readRecord(Long conversationId, Consumer<MessageView> action) {
+        Location location = index.get(conversationId);
+        if (location == null) {
+            return Optional.empty();
+        }
+        try {
+            InputStream record = new SegmentInputStream(reader(location.segment()), location);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(record, CHUNK_BYTES), CHUNK_BYTES))) {
+                return Optional.of(decode(in, action));
+            }
+        } catch (NoSuchFileException | EOFException e) {
+            System.err.println("Archived conversation " + conversationId + " is unavailable: " + e.getMessage());
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read archived conversation " + conversationId, e);
+        }
+    }
+
+    private void loadIndexes() throws IOException {
+        TreeMap<Integer, Path> indexFiles = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith("segment-") && name.endsWith(".idx")) {
+                    indexFiles.put(Integer.parseInt(name.substring(8, name.length() - 4)), file);
+                }
+            });
+        }
+
+        for (Map.Entry<Integer, Path> file : indexFiles.entrySet()) {
+            int segment = file.getKey();
+            Path segmentFile = segmentPath(segment);
+            long segmentSize = Files.exists(segmentFile) ? Files.size(segmentFile) : 0;
+            ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(file.getValue()));
+            // A trailing partial entry or one pointing past the data is an interrupted write
+            while (entries.remaining() >= INDEX_ENTRY_BYTES) {
+                long conversationId = entries.getLong();
+                long offset = entries.getLong();
+                int length = entries.getInt();
+                if (offset + length <= segmentSize) {
+                    index.put(conversationId, new Location(segment, offset, length));
+                }
+            }
+            currentSegment = segment;
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        if (segmentWriter != null) {
+            segmentWriter.close();
+            indexWriter.close();
+            currentSegment++;
+        } else if (currentSegment == 0 || !Files.exists(segmentPath(currentSegment))) {
+            // First segment, or the last one was lost: its index entries must keep pointing at nothing
+            currentSegment++;
+        }
+        segmentWriter = FileChannel.open(segmentPath(currentSegment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        indexWriter = FileChannel.open(directory.resolve(String.format("segment-%06d.idx", currentSegment)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // Drop a partial index entry left by an interrupted write
+        indexWriter.truncate(indexWriter.size() - indexWriter.size() % INDEX_ENTRY_BYTES);
+        if (segmentWriter.size() + 1 > segmentMaxBytes) {
+            // Resumed segment is already full
+            rollSegment();
+        }
+    }
+
+    private FileChannel reader(int segment) throws IOException {
+        FileChannel channel = readers.get(segment);
+        if (channel != null) {
+            return channel;
+        }
+        FileChannel opened = FileChannel.open(segmentPath(segment), StandardOpenOption.READ);
+        FileChannel raced = readers.putIfAbsent(segment, opened);
+        if (raced != null) {
+            opened.close();
+            return raced;
+        }
+        return opened;
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("segment-%06d.dat", segment));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void writeMessage(DataOutputStream out, MessageView message) throws IOException {
+        out.writeLong(message.id());
+        writeString(out, message.role().name());
+        writeString(out, message.content());
+        writeString(out, message.toolsUsed());
+        writeString(out, message.createdAt().toString());
+    }
+
+    private static ArchivedConversation decode(DataInputStream in, Consumer<MessageView> action) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported archive record version " + version);
+        }
+        long conversationId = in.readLong();
+        String userId = readString(in);
+        LocalDateTime createdAt = parseTime(readString(in));
+        LocalDateTime archivedAt = parseTime(readString(in));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long id = in.readLong();
+            MessageRole role = MessageRole.valueOf(readString(in));
+            String content = readString(in);
+            String toolsUsed = readString(in);
+            LocalDateTime messageCreatedAt = parseTime(readString(in));
+            action.accept(new MessageView(id, conversationId, role, content, toolsUsed, messageCreatedAt));
+        }
+        return new ArchivedConversation(conversationId, userId, createdAt, archivedAt, List.of());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static LocalDateTime parseTime(String value) {
+        return value != null ? LocalDateTime.parse(value) : null;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        try {
+            if (segmentWriter != null) {
+                segmentWriter.close();
+                indexWriter.close();
+            }
+            for (FileChannel channel : readers.values()) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing conversation archive: " + e.getMessage());
+        }
+    }
+
+    private record Location(int segment, long offset, int length) {
+    }
+
+    /**
+     * Reads one record's bytes from a shared segment channel with positioned reads, so
+     * concurrent readers of the same segment do not move each other's position.
+     */
+    private static final class SegmentInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final int segment;
+        private long position;
+        private final long end;
+
+        SegmentInputStream(FileChannel channel, Location location) {
+            this.channel = channel;
+            this.segment = location.segment();
+            this.position = location.offset();
+            this.end = location.offset() + location.length();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Archive segment " + segment + " is truncated");
+            }
+            position += read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package rgonzalez.agent.archive;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import rgonzalez.agent.context.ConversationWindowCache;
+import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.entity.ConversationStatus;
+import rgonzalez.agent.execution.ConversationTurnExecutor;
+import rgonzalez.agent.persistence.ContentBlobStore;
+import rgonzalez.agent.persistence.MessageStore;
+import rgonzalez.agent.repository.ConversationRepository;
+import rgonzalez.agent.repository.MessageRepository;
+import rgonzalez.agent.repository.MessageView;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Background job that moves completed or long-idle conversations out of the hot
+ * tables. Each conversation's messages are read page by page and streamed into the
+ * compressed archive, which makes them durable first; only then are they deleted and the conversation marked
+ * ARCHIVED, in one transaction that re-checks the conversation is still eligible and
+ * unchanged, so a turn that arrives meanwhile aborts the archiving rather than losing
+ * messages. Conversations with a turn running on this node are skipped, since a turn
+ * writing through the write-behind buffer does not touch the conversation until it
+ * completes. Only runs when messages are stored in the messages table.
+ */
+@Component
+public class ConversationArchiver {
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final MessageStore messageStore;
+    private final ContentBlobStore contentBlobs;
+    private final ConversationArchiveStore archiveStore;
+    private final ConversationWindowCache conversationWindowCache;
+    private final ConversationTurnExecutor turnExecutor;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter archivedCounter;
+    private final Counter archivedMessagesCounter;
+    private final Timer runTimer;
+
+    @Value("${agent.archive.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${agent.archive.completed-after-ms:86400000}")
+    private long completedAfterMillis = 86400000;
+
+    @Value("${agent.archive.idle-after-ms:2592000000}")
+    private long idleAfterMillis = 2592000000L;
+
+    @Value("${agent.archive.batch-size:100}")
+    private int batchSize = 100;
+
+    @Value("${agent.archive.page-size:500}")
+    private int pageSize = 500;
+
+    public ConversationArchiver(ConversationRepository conversationRepository,
+                                MessageRepository messageRepository,
+                                MessageStore messageStore,
+                                ContentBlobStore contentBlobs,
+                                ConversationArchiveStore archiveStore,
+                                ConversationWindowCache conversationWindowCache,
+                                ConversationTurnExecutor turnExecutor,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.messageStore = messageStore;
+        this.contentBlobs = contentBlobs;
+        this.archiveStore = archiveStore;
+        this.conversationWindowCache = conversationWindowCache;
+        this.turnExecutor = turnExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.archivedCounter = Counter.builder("conversation.archive.conversations")
+                .description("Conversations moved to the archive")
+                .register(meterRegistry);
+        this.archivedMessagesCounter = Counter.builder("conversation.archive.messages")
+                .description("Messages moved to the archive")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("conversation.archive.run")
+                .description("Time to archive one batch of conversations")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Archive one batch of eligible conversations.
+     */
+    @Scheduled(fixedDelayString = "${agent.archive.interval-ms:3600000}",
+            initialDelayString = "${agent.archive.interval-ms:3600000}")
+    public void archiveEligible() {
+        if (!enabled || !messageStore.isTransactional()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> ids = conversationRepository.findArchivableIds(
+                completedCutoff(now), idleCutoff(now), Limit.of(batchSize));
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        runTimer.record(() -> {
+            int archived = 0;
+            for (Long id : ids) {
+                if (archive(id)) {
+                    archived++;
+                }
+            }
+            System.out.println("Archived " + archived + " of " + ids.size() + " eligible conversations");
+        });
+    }
+
+    /**
+     * Archive a single conversation.
+     *
+     * @return true if the conversation was archived
+     */
+    public boolean archive(Long conversationId) {
+        Conversation conversation = conversationRepository.findById(conversationId).orElse(null);
+        if (conversation == null || !isEligible(conversation)) {
+            return false;
+        }
+
+        long messageCount = messageRepository.countByConversationId(conversationId);
+        try {
+            // Fails if a message was added or removed while paging
+            archiveStore.write(conversationId, conversation.getUserId(), conversation.getCreatedAt(),
+                    LocalDateTime.now(), Math.toIntExact(messageCount), () -> new HistoryIterator(conversationId));
+        } catch (IOException | ArithmeticException e) {
+            System.err.println("Failed to archive conversation " + conversationId + ": " + e.getMessage());
+            return false;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // A turn may have started or completed since the snapshot; try again on the next run
+                Conversation current = conversationRepository.findById(conversationId).orElse(null);
+                if (current == null || !Objects.equals(current.getVersion(), conversation.getVersion())
+                        || !isEligible(current)
+                        || messageRepository.countByConversationId(conversationId) != messageCount) {
+                    throw new ObjectOptimisticLockingFailureException(Conversation.class, conversationId);
+                }
+                contentBlobs.releaseConversation(conversationId);
+                messageRepository.deleteByConversationId(conversationId);
+                current.setStatus(ConversationStatus.ARCHIVED);
+                conversationRepository.save(current);
+            });
+        } catch (ObjectOptimisticLockingFailureException e) {
+            System.out.println("Conversation " + conversationId + " changed while archiving, skipped");
+            return false;
+        }
+
+        conversationWindowCache.invalidate(conversationId);
+        archivedCounter.increment();
+        archivedMessagesCounter.increment(messageCount);
+        return true;
+    }
+
+    /**
+     * Check if a conversation is due for archiving (see findArchivableIds) and has no
+     * turn running or queued on this node.
+     */
+    private boolean isEligible(Conversation conversation) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime updatedAt = conversation.getUpdatedAt();
+        boolean due = switch (conversation.getStatus()) {
+            case COMPLETED -> updatedAt != null && updatedAt.isBefore(completedCutoff(now));
+            case ACTIVE -> updatedAt != null && updatedAt.isBefore(idleCutoff(now));
+            default -> false;
+        };
+        return due && turnExecutor.getDepth(conversation.getId()) == 0;
+    }
+
+    private LocalDateTime completedCutoff(LocalDateTime now) {
+        return now.minusNanos(completedAfterMillis * 1_000_000);
+    }
+
+    private LocalDateTime idleCutoff(LocalDateTime now) {
+        return now.minusNanos(idleAfterMillis * 1_000_000);
+    }
+
+    /**
+     * A conversation's history, oldest first, fetched one keyset page at a time with
+     * blob-backed content resolved.
+     */
+    private final class HistoryIterator implements Iterator<MessageView> {
+
+        private final Long conversationId;
+        private Iterator<MessageView> page = Collections.emptyIterator();
+        private MessageView last;
+        private boolean exhausted;
+
+        HistoryIterator(Long conversationId) {
+            this.conversationId = conversationId;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && !exhausted) {
+                List<MessageView> rows = last == null
+                        ? messageRepository.findHistoryPage(conversationId, Limit.of(pageSize))
+                        : messageRepository.findHistoryPageAfter(conversationId, last.createdAt(), last.id(),
+                                Limit.of(pageSize));
+                exhausted = rows.size() < pageSize;
+                if (!rows.isEmpty()) {
+                    last = rows.get(rows.size() - 1);
+                }
+                page = contentBlobs.resolve(rows).iterator();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public MessageView next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+    }
+}
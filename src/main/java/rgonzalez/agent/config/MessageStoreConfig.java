@@ -0,0 +1,41 @@
+package rgonzalez.agent.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import rgonzalez.agent.persistence.ContentBlobStore;
+import rgonzalez.agent.persistence.EventLogMessageStore;
+import rgonzalez.agent.persistence.JpaMessageStore;
+import rgonzalez.agent.persistence.MessageStore;
+import rgonzalez.agent.repository.MessageRepository;
+
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Configuration selecting the message store (agent.persistence.message-store).
+ */
+@Configuration
+public class MessageStoreConfig {
+
+    @Value("${agent.persistence.message-store:jpa}")
+    private String messageStore = "jpa";
+
+    @Value("${agent.persistence.event-log.directory:./data/event-log}")
+    private String eventLogDirectory = "./data/event-log";
+
+    @Value("${agent.persistence.event-log.segment-bytes:67108864}")
+    private int eventLogSegmentBytes = 67108864;
+
+    @Bean
+    public MessageStore messageStore(MessageRepository messageRepository, ContentBlobStore contentBlobs,
+                                     MeterRegistry meterRegistry) {
+        return switch (messageStore.trim().toLowerCase(Locale.ROOT)) {
+            case "jpa" -> new JpaMessageStore(messageRepository, contentBlobs);
+            case "event-log" -> new EventLogMessageStore(Paths.get(eventLogDirectory), eventLogSegmentBytes,
+                    meterRegistry);
+            default -> throw new IllegalArgumentException("Unknown message store: " + messageStore);
+        };
+    }
+}
@@ -0,0 +1,101 @@
+package rgonzalez.agent.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import rgonzalez.agent.entity.Conversation;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Configuration for Hibernate's second-level cache.
+ * Regions live in an in-process Caffeine JCache manager that is created here, so
+ * each region gets an explicit size bound and time to live instead of the
+ * provider's unbounded defaults. Each application context gets its own manager
+ * (under a unique URI) rather than the provider's JVM-wide default, so contexts
+ * started side by side, e.g. in tests, neither collide on region names nor close
+ * each other's caches. Region statistics are exported to Micrometer.
+ */
+@Configuration
+public class SecondLevelCacheConfig {
+
+    @Value("${agent.cache.conversations.max-entries:10000}")
+    private long conversationMaxEntries = 10000;
+
+    @Value("${agent.cache.conversations.ttl-ms:600000}")
+    private long conversationTtlMillis = 600000;
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager() {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(
+                URI.create("agent-second-level-cache-" + UUID.randomUUID()), getClass().getClassLoader());
+        cacheManager.createCache(Conversation.CACHE_REGION, regionConfiguration(conversationMaxEntries, conversationTtlMillis));
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    @Bean
+    public MeterBinder secondLevelCacheMetrics(EntityManagerFactory entityManagerFactory) {
+        return registry -> {
+            Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            Tags tags = Tags.of("region", Conversation.CACHE_REGION);
+            counter(registry, statistics, "hibernate.l2.hits", "Second-level cache lookups that found the entity",
+                    tags, CacheRegionStatistics::getHitCount);
+            counter(registry, statistics, "hibernate.l2.misses", "Second-level cache lookups that went to the database",
+                    tags, CacheRegionStatistics::getMissCount);
+            counter(registry, statistics, "hibernate.l2.puts", "Entities put into the second-level cache",
+                    tags, CacheRegionStatistics::getPutCount);
+            Gauge.builder("hibernate.l2.entries", statistics,
+                            stats -> regionValue(stats, CacheRegionStatistics::getElementCountInMemory))
+                    .tags(tags)
+                    .description("Entities held in the second-level cache region")
+                    .register(registry);
+        };
+    }
+
+    private static void counter(MeterRegistry registry, Statistics statistics,
+                                String name, String description, Tags tags,
+                                ToDoubleFunction<CacheRegionStatistics> value) {
+        FunctionCounter.builder(name, statistics, stats -> regionValue(stats, value))
+                .tags(tags)
+                .description(description)
+                .register(registry);
+    }
+
+    private static double regionValue(Statistics statistics, ToDoubleFunction<CacheRegionStatistics> value) {
+        CacheRegionStatistics region = statistics.getDomainDataRegionStatistics(Conversation.CACHE_REGION);
+        return region != null ? value.applyAsDouble(region) : 0;
+    }
+
+    private static CaffeineConfiguration<Object, Object> regionConfiguration(long maxEntries, long ttlMillis) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maxEntries));
+        configuration.setExpireAfterWrite(OptionalLong.of(TimeUnit.MILLISECONDS.toNanos(ttlMillis)));
+        return configuration;
+    }
+}
@@ -0,0 +1,283 @@
+package rgonzalez.agent.context;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import rgonzalez.agent.entity.ConversationMemory;
+import rgonzalez.agent.llm.LlmProvider;
+import rgonzalez.agent.llm.LlmProviderFactory;
+import rgonzalez.agent.llm.LlmRequest;
+import rgonzalez.agent.llm.LlmResponse;
+import rgonzalez.agent.persistence.MessageStore;
+import rgonzalez.agent.repository.ConversationMemoryRepository;
+import rgonzalez.agent.repository.MessageView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Incremental conversation memory: a rolling summary of older turns plus the last
+ * K turns verbatim. After each turn the summary is brought up to date in the
+ * background by folding messages that fell out of the verbatim window into it,
+ * so the prompt stays roughly the same size however long the conversation runs.
+ * Updates for the same conversation are coalesced: at most one runs at a time and
+ * turns completed meanwhile are folded by a single follow-up run.
+ */
+@Component
+public class ConversationMemoryService {
+
+    private static final String SUMMARY_PROMPT =
+            "You maintain the running summary of a conversation between a user and a business agent. "
+            + "Update the summary with the new messages. Keep facts, decisions, customer identifiers, "
+            + "amounts and open follow-ups; drop pleasantries. Reply with the updated summary only.";
+
+    private enum UpdateState {
+        RUNNING,
+        DIRTY
+    }
+
+    private final ConversationMemoryRepository memoryRepository;
+    private final MessageStore messageStore;
+    private final LlmProviderFactory llmProviderFactory;
+    private final ThreadPoolExecutor summarizer;
+    private final Map<Long, UpdateState> updates = new ConcurrentHashMap<>();
+    private final Map<Long, Optional<ConversationSummary>> summaries;
+
+    private final Counter updatedCounter;
+    private final Counter fallbackCounter;
+    private final Timer updateTimer;
+
+    @Value("${agent.memory.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${agent.memory.recent-turns:4}")
+    private int recentTurns = 4;
+
+    @Value("${agent.memory.max-fold-messages:200}")
+    private int maxFoldMessages = 200;
+
+    @Value("${agent.memory.max-summary-chars:4000}")
+    private int maxSummaryChars = 4000;
+
+    public ConversationMemoryService(ConversationMemoryRepository memoryRepository,
+                                     MessageStore messageStore,
+                                     LlmProviderFactory llmProviderFactory,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${agent.memory.summarizer-threads:2}") int threads,
+                                     @Value("${agent.memory.cache-size:10000}") int cacheSize) {
+        this.memoryRepository = memoryRepository;
+        this.messageStore = messageStore;
+        this.llmProviderFactory = llmProviderFactory;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.summarizer = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(10_000),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "conversation-summarizer-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.summarizer.allowCoreThreadTimeOut(true);
+
+        // Small LRU of summaries so active conversations build their prompt without a query
+        int maxEntries = Math.max(1, cacheSize);
+        this.summaries = Collections.synchronizedMap(
+                new LinkedHashMap<>(256, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Long, Optional<ConversationSummary>> eldest) {
+                        return size() > maxEntries;
+                    }
+                });
+
+        this.updatedCounter = Counter.builder("conversation.memory.updates")
+                .description("Rolling summaries updated")
+                .register(meterRegistry);
+        this.fallbackCounter = Counter.builder("conversation.memory.fallbacks")
+                .description("Summary updates that used the extractive fallback instead of the LLM")
+                .register(meterRegistry);
+        this.updateTimer = Timer.builder("conversation.memory.update")
+                .description("Time to fold new messages into a conversation summary")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get the current summary of a conversation, if older turns have been summarized.
+     */
+    public Optional<ConversationSummary> getSummary(Long conversationId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Optional<ConversationSummary> cached = summaries.get(conversationId);
+        if (cached != null) {
+            return cached;
+        }
+        Optional<ConversationSummary> loaded = memoryRepository.findById(conversationId)
+                .filter(memory -> memory.getSummary() != null)
+                .map(ConversationMemoryService::toSummary);
+        // Don't overwrite a newer summary stored by the summarizer meanwhile
+        Optional<ConversationSummary> existing = summaries.putIfAbsent(conversationId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    /**
+     * Schedule a background summary update after a turn completed. Returns immediately.
+     */
+    public void onTurnCompleted(Long conversationId) {
+        if (!enabled) {
+            return;
+        }
+        if (updates.put(conversationId, UpdateState.DIRTY) != null) {
+            // An update is queued or running; it will pick up this turn
+            return;
+        }
+        try {
+            summarizer.execute(() -> runUpdates(conversationId));
+        } catch (RejectedExecutionException e) {
+            // Backlogged: the next turn of this conversation schedules it again
+            updates.remove(conversationId);
+        }
+    }
+
+    private void runUpdates(Long conversationId) {
+        do {
+            updates.put(conversationId, UpdateState.RUNNING);
+            try {
+                updateTimer.record(() -> foldOlderMessages(conversationId));
+            } catch (RuntimeException e) {
+                System.err.println("Summary update for conversation " + conversationId + " failed: " + e.getMessage());
+            }
+        } while (!updates.remove(conversationId, UpdateState.RUNNING));
+    }
+
+    /**
+     * Fold messages older than the last K turns, and not yet summarized, into the summary.
+     */
+    private void foldOlderMessages(Long conversationId) {
+        int keepVerbatim = recentTurns * 2;
+        List<MessageView> recent = messageStore.findRecent(conversationId, keepVerbatim);
+        if (recent.size() < keepVerbatim) {
+            return;
+        }
+        MessageView oldestVerbatim = recent.get(recent.size() - 1);
+
+        ConversationMemory memory = memoryRepository.findById(conversationId)
+                .orElseGet(() -> new ConversationMemory(conversationId));
+        List<MessageView> candidates = memory.getSummarizedThroughId() == null
+                ? messageStore.findHistoryPage(conversationId, null, null, maxFoldMessages)
+                : messageStore.findHistoryPage(conversationId, memory.getSummarizedThroughCreatedAt(),
+                        memory.getSummarizedThroughId(), maxFoldMessages);
+
+        List<MessageView> toFold = new ArrayList<>();
+        for (MessageView message : candidates) {
+            if (!isBefore(message, oldestVerbatim)) {
+                break;
+            }
+            toFold.add(message);
+        }
+        if (toFold.isEmpty()) {
+            return;
+        }
+
+        MessageView last = toFold.get(toFold.size() - 1);
+        memory.setSummary(summarize(memory.getSummary(), toFold));
+        memory.setSummarizedThroughId(last.id());
+        memory.setSummarizedThroughCreatedAt(last.createdAt());
+        memory.setSummarizedMessageCount(memory.getSummarizedMessageCount() + toFold.size());
+        ConversationMemory saved = memoryRepository.save(memory);
+
+        summaries.put(conversationId, Optional.of(toSummary(saved)));
+        updatedCounter.increment();
+    }
+
+    /**
+     * Ask the LLM to merge new messages into the summary; falls back to an extractive
+     * summary when no provider is available.
+     */
+    private String summarize(String previousSummary, List<MessageView> messages) {
+        StringBuilder transcript = new StringBuilder();
+        for (MessageView message : messages) {
+            transcript.append(message.role()).append(": ").append(message.content()).append("\n");
+        }
+
+        try {
+            LlmProvider llmProvider = llmProviderFactory.getDefaultProvider();
+            List<LlmRequest.LlmMessage> prompt = new ArrayList<>();
+            prompt.add(new LlmRequest.LlmMessage("system", SUMMARY_PROMPT));
+            prompt.add(new LlmRequest.LlmMessage("user", "CURRENT SUMMARY:\n"
+                    + (previousSummary != null ? previousSummary : "(none)")
+                    + "\n\nNEW MESSAGES:\n" + transcript));
+
+            LlmRequest request = new LlmRequest(llmProvider.getDefaultModel(), prompt);
+            request.setTemperature(0.2);
+            request.setMaxTokens(maxSummaryChars / 4);
+            LlmResponse response = llmProvider.chat(request);
+            String summary = response.getFirstChoiceContent();
+            if (summary != null && !summary.isBlank()) {
+                return truncate(summary.trim());
+            }
+        } catch (Exception e) {
+            System.err.println("LLM summarization unavailable, using extractive summary: " + e.getMessage());
+        }
+
+        fallbackCounter.increment();
+        return extractiveSummary(previousSummary, messages);
+    }
+
+    /**
+     * Keep the first sentence of each message, dropping the oldest lines when over budget.
+     */
+    private String extractiveSummary(String previousSummary, List<MessageView> messages) {
+        StringBuilder summary = new StringBuilder(previousSummary != null ? previousSummary : "");
+        for (MessageView message : messages) {
+            String content = message.content() != null ? message.content().strip() : "";
+            int end = content.indexOf(". ");
+            String gist = end > 0 ? content.substring(0, end + 1) : content;
+            if (gist.length() > 200) {
+                gist = gist.substring(0, 200) + "...";
+            }
+            if (summary.length() > 0) {
+                summary.append("\n");
+            }
+            summary.append("- ").append(message.role().name().toLowerCase()).append(": ").append(gist);
+        }
+
+        String text = summary.toString();
+        if (text.length() <= maxSummaryChars) {
+            return text;
+        }
+        int cut = text.indexOf('\n', text.length() - maxSummaryChars);
+        return cut >= 0 ? text.substring(cut + 1) : text.substring(text.length() - maxSummaryChars);
+    }
+
+    private String truncate(String summary) {
+        return summary.length() <= maxSummaryChars ? summary : summary.substring(0, maxSummaryChars);
+    }
+
+    private static boolean isBefore(MessageView message, MessageView other) {
+        int order = message.createdAt().compareTo(other.createdAt());
+        return order < 0 || (order == 0 && message.id() < other.id());
+    }
+
+    private static ConversationSummary toSummary(ConversationMemory memory) {
+        return new ConversationSummary(memory.getSummary(), memory.getSummarizedThroughId(),
+                memory.getSummarizedThroughCreatedAt());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        summarizer.shutdownNow();
+    }
+}
@@ -0,0 +1,22 @@
+package rgonzalez.agent.context;
+
+import rgonzalez.agent.repository.MessageView;
+
+import java.time.LocalDateTime;
+
+/**
+ * Rolling summary of a conversation and the last message it covers.
+ */
+public record ConversationSummary(String text, Long throughMessageId, LocalDateTime throughCreatedAt) {
+
+    /**
+     * Check if a message is already covered by this summary.
+     */
+    public boolean covers(MessageView message) {
+        if (throughCreatedAt == null || message.createdAt() == null) {
+            return false;
+        }
+        int order = message.createdAt().compareTo(throughCreatedAt);
+        return order < 0 || (order == 0 && message.id() != null && message.id() <= throughMessageId);
+    }
+}
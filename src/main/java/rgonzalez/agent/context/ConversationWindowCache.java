@@ -0,0 +1,242 @@
+package rgonzalez.agent.context;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import rgonzalez.agent.persistence.MessageStore;
+import rgonzalez.agent.repository.MessageView;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory window of the most recent messages of active conversations, used to
+ * assemble multi-turn LLM context without querying the message store.
+ * Each conversation keeps a ring buffer of the last N messages. The cache as a whole
+ * is bounded by an estimate of retained bytes (least recently used conversations are
+ * evicted first) and idle conversations are dropped after a TTL.
+ * The message store stays the source of truth: a miss loads the window from it, and
+ * ConversationService writes new messages through after they are committed.
+ */
+@Component
+public class ConversationWindowCache {
+
+    /** Rough per-message overhead of the view, its strings and the deque slot. */
+    private static final int MESSAGE_OVERHEAD_BYTES = 160;
+
+    private final MessageStore messageStore;
+    private final int windowSize;
+    private final long maxBytes;
+    private final long idleTtlMillis;
+
+    // Access-ordered, so iteration starts at the least recently used conversation
+    private final LinkedHashMap<Long, Window> windows = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    // Sequence number of the last write to each conversation that had no window, so a
+    // concurrent load of that conversation that may have missed it does not install a
+    // stale window. Writes to other conversations do not affect its load.
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final ConcurrentHashMap<Long, Long> writeStamps = new ConcurrentHashMap<>();
+    // Stamps up to this sequence number have been pruned, and stamps up to the next
+    // horizon are pruned at the next sweep
+    private long prunedThrough;
+    private long pruneHorizon;
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter evictionCounter;
+
+    public ConversationWindowCache(MessageStore messageStore,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${agent.context.window-size:20}") int windowSize,
+                                   @Value("${agent.context.cache.max-bytes:67108864}") long maxBytes,
+                                   @Value("${agent.context.cache.idle-ttl-ms:900000}") long idleTtlMillis) {
+        this.messageStore = messageStore;
+        this.windowSize = Math.max(1, windowSize);
+        this.maxBytes = maxBytes;
+        this.idleTtlMillis = idleTtlMillis;
+
+        this.hitCounter = Counter.builder("conversation.window.hits")
+                .description("Context windows served from memory")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("conversation.window.misses")
+                .description("Context windows loaded from the message store")
+                .register(meterRegistry);
+        this.evictionCounter = Counter.builder("conversation.window.evictions")
+                .description("Conversation windows evicted for size or idleness")
+                .register(meterRegistry);
+        Gauge.builder("conversation.window.bytes", this, ConversationWindowCache::getTotalBytes)
+                .description("Estimated bytes held by conversation windows")
+                .register(meterRegistry);
+        Gauge.builder("conversation.window.conversations", this, ConversationWindowCache::size)
+                .description("Conversations with a cached window")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Get the most recent messages of a conversation, oldest first.
+     * Served from memory when cached; otherwise loaded from the message store and cached.
+     */
+    public List<MessageView> getWindow(Long conversationId) {
+        synchronized (this) {
+            Window window = windows.get(conversationId);
+            if (window != null) {
+                window.touch();
+                hitCounter.increment();
+                return window.snapshot();
+            }
+        }
+
+        missCounter.increment();
+        long loadStartedAt = writeSequence.get();
+        List<MessageView> recent = new ArrayList<>(
+                messageStore.findRecent(conversationId, windowSize));
+        Collections.reverse(recent);
+
+        synchronized (this) {
+            if (!windows.containsKey(conversationId) && noWritesSince(conversationId, loadStartedAt)) {
+                Window window = new Window(windowSize);
+                recent.forEach(window::add);
+                windows.put(conversationId, window);
+                totalBytes += window.bytes;
+                evictOverBudget();
+            }
+        }
+        return recent;
+    }
+
+    /**
+     * Write committed messages through to the conversation's window, if it is cached.
+     * Messages already in the window (same ID) are skipped.
+     */
+    public synchronized void append(Long conversationId, List<MessageView> messages) {
+        Window window = windows.get(conversationId);
+        if (window == null) {
+            writeStamps.put(conversationId, writeSequence.incrementAndGet());
+            return;
+        }
+        long before = window.bytes;
+        for (MessageView message : messages) {
+            if (!window.contains(message.id())) {
+                window.add(message);
+            }
+        }
+        window.touch();
+        totalBytes += window.bytes - before;
+        evictOverBudget();
+    }
+
+    /**
+     * Drop a conversation's window, e.g. after its history changed outside the normal turn flow.
+     */
+    public synchronized void invalidate(Long conversationId) {
+        Window window = windows.remove(conversationId);
+        if (window != null) {
+            totalBytes -= window.bytes;
+        }
+    }
+
+    /**
+     * Evict conversations that have not been used within the idle TTL, and forget
+     * write stamps older than the previous sweep.
+     */
+    @Scheduled(fixedDelayString = "${agent.context.cache.sweep-interval-ms:60000}")
+    public synchronized void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTtlMillis;
+        Iterator<Window> iterator = windows.values().iterator();
+        while (iterator.hasNext()) {
+            Window window = iterator.next();
+            if (window.lastAccessedAt < cutoff) {
+                iterator.remove();
+                totalBytes -= window.bytes;
+                evictionCounter.increment();
+            }
+        }
+
+        long horizon = pruneHorizon;
+        writeStamps.values().removeIf(stamp -> stamp <= horizon);
+        prunedThrough = horizon;
+        pruneHorizon = writeSequence.get();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return windows.size();
+    }
+
+    // Guarded by the cache's lock, like the pruning it checks against
+    private boolean noWritesSince(Long conversationId, long loadStartedAt) {
+        Long stamp = writeStamps.get(conversationId);
+        if (stamp == null) {
+            // A stamp pruned after the load started may have been newer than the load
+            return loadStartedAt >= prunedThrough;
+        }
+        return stamp <= loadStartedAt;
+    }
+
+    private void evictOverBudget() {
+        Iterator<Map.Entry<Long, Window>> iterator = windows.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Window window = iterator.next().getValue();
+            iterator.remove();
+            totalBytes -= window.bytes;
+            evictionCounter.increment();
+        }
+    }
+
+    private static long estimateBytes(MessageView message) {
+        long chars = (message.content() != null ? message.content().length() : 0)
+                + (message.toolsUsed() != null ? message.toolsUsed().length() : 0);
+        return MESSAGE_OVERHEAD_BYTES + 2 * chars;
+    }
+
+    /**
+     * Ring buffer of one conversation's last messages. Guarded by the cache's lock.
+     */
+    private static final class Window {
+
+        private final int capacity;
+        private final ArrayDeque<MessageView> messages;
+        private long bytes;
+        private long lastAccessedAt = System.currentTimeMillis();
+
+        Window(int capacity) {
+            this.capacity = capacity;
+            this.messages = new ArrayDeque<>(capacity);
+        }
+
+        void add(MessageView message) {
+            if (messages.size() == capacity) {
+                bytes -= estimateBytes(messages.removeFirst());
+            }
+            messages.addLast(message);
+            bytes += estimateBytes(message);
+        }
+
+        boolean contains(Long id) {
+            return id != null && messages.stream().anyMatch(message -> id.equals(message.id()));
+        }
+
+        void touch() {
+            lastAccessedAt = System.currentTimeMillis();
+        }
+
+        List<MessageView> snapshot() {
+            return List.copyOf(messages);
+        }
+    }
+}
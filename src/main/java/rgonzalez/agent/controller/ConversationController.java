@@ -4,18 +4,45 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import rgonzalez.agent.dto.ConversationLookupRequest;
+import rgonzalez.agent.dto.ConversationLookupResponse;
 import rgonzalez.agent.dto.ConversationResponse;
+import rgonzalez.agent.dto.HistoryCursor;
+import rgonzalez.agent.dto.JobResponse;
 import rgonzalez.agent.dto.MessageResponse;
+import rgonzalez.agent.dto.SearchResultResponse;
 import rgonzalez.agent.dto.SendMessageRequest;
+import rgonzalez.agent.entity.AgentJob;
 import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.entity.ConversationStatus;
 import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.execution.AgentJobService;
+import rgonzalez.agent.export.ConversationExporter;
+import rgonzalez.agent.idempotency.IdempotencyConflictException;
+import rgonzalez.agent.idempotency.IdempotencyService;
+import rgonzalez.agent.repository.ConversationView;
+import rgonzalez.agent.repository.MessageView;
+import rgonzalez.agent.search.ConversationSearchService;
+import rgonzalez.agent.service.ConversationArchivedException;
+import rgonzalez.agent.service.ConversationLookup;
+import rgonzalez.agent.service.ConversationNotFoundException;
+import rgonzalez.agent.service.ConversationPage;
 import rgonzalez.agent.service.ConversationService;
+import rgonzalez.agent.service.HistoryPage;
 
+import java.net.URI;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 /**
@@ -26,10 +53,46 @@ import java.util.stream.Collectors;
 @Tag(name = "Conversations", description = "APIs for managing conversations with agents")
 public class ConversationController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
     private final ConversationService conversationService;
+    private final AgentJobService agentJobService;
+    private final ConversationSearchService conversationSearchService;
+    private final IdempotencyService idempotencyService;
+    private final ConversationExporter conversationExporter;
+
+    @Value("${agent.jobs.max-wait-ms:30000}")
+    private long maxWaitMillis = 30000;
+
+    @Value("${agent.conversations.default-page-size:50}")
+    private int defaultListPageSize = 50;
+
+    @Value("${agent.conversations.max-page-size:500}")
+    private int maxListPageSize = 500;
+
+    @Value("${agent.conversations.max-lookup-ids:200}")
+    private int maxLookupIds = 200;
 
-    public ConversationController(ConversationService conversationService) {
+    @Value("${agent.history.default-page-size:50}")
+    private int defaultHistoryPageSize = 50;
+
+    @Value("${agent.history.max-page-size:500}")
+    private int maxHistoryPageSize = 500;
+
+    public ConversationController(ConversationService conversationService,
+                                  AgentJobService agentJobService,
+                                  ConversationSearchService conversationSearchService,
+                                  IdempotencyService idempotencyService,
+                                  ConversationExporter conversationExporter) {
         this.conversationService = conversationService;
+        this.agentJobService = agentJobService;
+        this.conversationSearchService = conversationSearchService;
+        this.idempotencyService = idempotencyService;
+        this.conversationExporter = conversationExporter;
     }
 
     @PostMapping
@@ -48,6 +111,89 @@ public class ConversationController {
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    @GetMapping
+    @Operation(summary = "List conversations",
+            description = "List conversations, newest first, optionally filtered by user and status, one page at a time. "
+                    + "When more conversations follow, the X-Next-Cursor header holds the value to pass as 'after'.")
+    @ApiResponse(responseCode = "200", description = "Conversations listed")
+    @ApiResponse(responseCode = "400", description = "Invalid status")
+    public ResponseEntity<List<ConversationResponse>> listConversations(
+            @RequestParam(required = false) String userId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+
+        ConversationStatus statusFilter;
+        try {
+            statusFilter = status != null && !status.isBlank() ? ConversationStatus.valueOf(status.toUpperCase()) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        int pageSize = Math.min(Math.max(limit != null ? limit : defaultListPageSize, 1), maxListPageSize);
+        ConversationPage page = conversationService.listConversations(
+                userId != null && !userId.isBlank() ? userId : null, statusFilter, after, pageSize);
+        List<ConversationResponse> conversations = page.conversations().stream()
+                .map(this::toConversationResponse)
+                .collect(Collectors.toList());
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.hasMore()) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.nextCursor()));
+        }
+        return response.body(conversations);
+    }
+
+    @GetMapping(params = "ids")
+    @Operation(summary = "Get several conversations",
+            description = "Fetch conversations by a comma-separated list of IDs in one request. "
+                    + "Results follow the order of the IDs; IDs that do not exist are listed in missingIds.")
+    @ApiResponse(responseCode = "200", description = "Lookup completed")
+    @ApiResponse(responseCode = "400", description = "No IDs, or more than the allowed number of IDs")
+    public ResponseEntity<ConversationLookupResponse> getConversations(@RequestParam List<Long> ids) {
+        return lookup(ids);
+    }
+
+    @PostMapping("/lookup")
+    @Operation(summary = "Get several conversations (request body)",
+            description = "Same as GET /conversations?ids=..., for ID lists too long for a query string")
+    @ApiResponse(responseCode = "200", description = "Lookup completed")
+    @ApiResponse(responseCode = "400", description = "No IDs, or more than the allowed number of IDs")
+    public ResponseEntity<ConversationLookupResponse> lookupConversations(
+            @Valid @RequestBody ConversationLookupRequest request) {
+        return lookup(request.getIds());
+    }
+
+    private ResponseEntity<ConversationLookupResponse> lookup(List<Long> ids) {
+        if (ids == null || ids.isEmpty() || ids.size() > maxLookupIds || ids.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        ConversationLookup result = conversationService.lookupConversations(ids);
+        List<ConversationResponse> conversations = result.conversations().stream()
+                .map(this::toConversationResponse)
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(new ConversationLookupResponse(conversations, result.missingIds()));
+    }
+
+    @GetMapping("/search")
+    @Operation(summary = "Search conversations", description = "Full-text search over conversation transcripts, best matches first")
+    @ApiResponse(responseCode = "200", description = "Search completed")
+    @ApiResponse(responseCode = "400", description = "Empty query")
+    public ResponseEntity<List<SearchResultResponse>> searchConversations(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "20") int limit) {
+
+        if (q.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<SearchResultResponse> results = conversationSearchService.search(q, Math.min(Math.max(limit, 1), 100))
+                .stream()
+                .map(result -> new SearchResultResponse(result.conversationId(), result.score(),
+                        result.matchedMessages(), result.messageId(), result.snippet()))
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(results);
+    }
+
     @GetMapping("/{conversationId}")
     @Operation(summary = "Get conversation details", description = "Retrieve conversation with history")
     @ApiResponse(responseCode = "200", description = "Conversation found")
@@ -59,56 +205,237 @@ public class ConversationController {
                             conv.getId(),
                             conv.getStatus().toString()
                     );
+                    response.setUserId(conv.getUserId());
+                    response.setCreatedAt(conv.getCreatedAt());
+                    response.setUpdatedAt(conv.getUpdatedAt());
+                    response.setMessageCount(conv.getMessageCount());
+                    response.setLastMessageAt(conv.getLastMessageAt());
+                    response.setPromptTokens(conv.getPromptTokens());
+                    response.setCompletionTokens(conv.getCompletionTokens());
+                    response.setToolInvocations(conv.getToolInvocations());
                     return ResponseEntity.ok(response);
                 })
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @PostMapping("/{conversationId}/messages")
-    @Operation(summary = "Send message to agent", description = "Send a message to the agent and receive a response")
+    @Operation(summary = "Send message to agent",
+            description = "Send a message to the agent and receive a response. With an Idempotency-Key header, "
+                    + "retries of the same request return the original response instead of running the turn again.")
     @ApiResponse(responseCode = "200", description = "Message processed and response received")
+    @ApiResponse(responseCode = "400", description = "Invalid Idempotency-Key, or keys are not supported with buffered write-behind")
     @ApiResponse(responseCode = "404", description = "Conversation not found")
+    @ApiResponse(responseCode = "409", description = "Conversation is archived, or a request with this Idempotency-Key is in progress")
+    @ApiResponse(responseCode = "422", description = "Idempotency-Key was used with a different request")
+    @ApiResponse(responseCode = "429", description = "Too many messages queued for this conversation")
     public ResponseEntity<MessageResponse> sendMessage(
             @PathVariable Long conversationId,
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
             @Valid @RequestBody SendMessageRequest request) {
 
         try {
-            Message response = conversationService.sendMessage(conversationId, request.getContent());
-            MessageResponse msgResponse = new MessageResponse(
-                    response.getId(),
-                    response.getConversation().getId(),
-                    response.getRole().toString(),
-                    response.getContent()
-            );
-            if (response.getToolsUsed() != null && !response.getToolsUsed().isEmpty()) {
-                msgResponse.setToolsUsed(List.of(response.getToolsUsed().split(", ")));
+            if (idempotencyKey == null) {
+                Message response = conversationService.sendMessage(conversationId, request.getContent());
+                return ResponseEntity.ok(toMessageResponse(response, conversationId));
             }
-            return ResponseEntity.ok(msgResponse);
-        } catch (IllegalArgumentException e) {
+            if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH
+                    || !idempotencyService.isSupported()) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            IdempotencyService.Outcome outcome = idempotencyService.execute(conversationId, idempotencyKey,
+                    request.getContent(),
+                    turnKey -> conversationService.sendMessage(conversationId, request.getContent(), turnKey));
+            return ResponseEntity.ok()
+                    .header(IDEMPOTENT_REPLAYED_HEADER, String.valueOf(outcome.replayed()))
+                    .body(toMessageResponse(outcome.message(), conversationId));
+        } catch (IdempotencyConflictException e) {
+            return ResponseEntity.status(e.getReason() == IdempotencyConflictException.Reason.KEY_REUSED
+                    ? HttpStatus.UNPROCESSABLE_ENTITY : HttpStatus.CONFLICT).build();
+        } catch (ConversationNotFoundException e) {
             return ResponseEntity.notFound().build();
+        } catch (ConversationArchivedException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    @PostMapping(value = "/{conversationId}/messages", params = "async=true")
+    @Operation(summary = "Send message to agent asynchronously",
+            description = "Queue the message and return a job handle; poll the job for the response")
+    @ApiResponse(responseCode = "202", description = "Message accepted for processing")
+    @ApiResponse(responseCode = "404", description = "Conversation not found")
+    @ApiResponse(responseCode = "503", description = "Job queue is full")
+    public ResponseEntity<JobResponse> sendMessageAsync(
+            @PathVariable Long conversationId,
+            @Valid @RequestBody SendMessageRequest request) {
+
+        try {
+            AgentJob job = agentJobService.submit(conversationId, request.getContent());
+            URI location = ServletUriComponentsBuilder.fromCurrentContextPath()
+                    .path("/conversations/{conversationId}/jobs/{jobId}")
+                    .buildAndExpand(conversationId, job.getId())
+                    .toUri();
+            return ResponseEntity.accepted().location(location).body(toJobResponse(job));
+        } catch (ConversationNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    @GetMapping("/{conversationId}/jobs/{jobId}")
+    @Operation(summary = "Get job status",
+            description = "Retrieve an asynchronous job; with waitMs, hold the request until the job finishes or the wait elapses")
+    @ApiResponse(responseCode = "200", description = "Job found")
+    @ApiResponse(responseCode = "404", description = "Job not found")
+    public DeferredResult<ResponseEntity<JobResponse>> getJob(
+            @PathVariable Long conversationId,
+            @PathVariable String jobId,
+            @RequestParam(defaultValue = "0") long waitMs) {
+
+        long timeout = Math.min(Math.max(waitMs, 0), maxWaitMillis);
+        DeferredResult<ResponseEntity<JobResponse>> result = new DeferredResult<>(timeout > 0 ? timeout : null);
+
+        AgentJob job = agentJobService.getJob(conversationId, jobId).orElse(null);
+        if (job == null) {
+            result.setResult(ResponseEntity.notFound().build());
+            return result;
+        }
+        if (timeout == 0 || job.getStatus().isTerminal()) {
+            result.setResult(ResponseEntity.ok(toJobResponse(job)));
+            return result;
+        }
+
+        // Long poll: release the servlet thread and answer when the job completes or on timeout
+        result.onTimeout(() -> result.setResult(agentJobService.getJob(conversationId, jobId)
+                .map(current -> ResponseEntity.ok(toJobResponse(current)))
+                .orElse(ResponseEntity.notFound().build())));
+        agentJobService.awaitCompletion(conversationId, jobId).thenAccept(completed ->
+                result.setResult(completed != null
+                        ? ResponseEntity.ok(toJobResponse(completed))
+                        : ResponseEntity.notFound().build()));
+        return result;
+    }
+
+    @GetMapping(value = "/{conversationId}/export", produces = ConversationExporter.NDJSON_MEDIA_TYPE)
+    @Operation(summary = "Export conversation transcript",
+            description = "Stream every message of the conversation as NDJSON, one message per line, oldest first")
+    @ApiResponse(responseCode = "200", description = "Transcript streamed")
+    @ApiResponse(responseCode = "404", description = "Conversation not found")
+    public ResponseEntity<StreamingResponseBody> exportConversation(@PathVariable Long conversationId) {
+        Conversation conversation = conversationService.getConversation(conversationId).orElse(null);
+        if (conversation == null) {
+            return ResponseEntity.notFound().build();
+        }
+        boolean archived = conversation.getStatus() == ConversationStatus.ARCHIVED;
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(ConversationExporter.NDJSON_MEDIA_TYPE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"conversation-" + conversationId + ".ndjson\"")
+                .body(out -> conversationExporter.exportConversation(conversationId, archived, out));
+    }
+
+    @GetMapping(value = "/export", produces = ConversationExporter.NDJSON_MEDIA_TYPE)
+    @Operation(summary = "Export a user's transcripts",
+            description = "Stream the messages of all of a user's conversations as NDJSON, grouped by conversation")
+    @ApiResponse(responseCode = "200", description = "Transcripts streamed")
+    @ApiResponse(responseCode = "400", description = "Missing user ID")
+    public ResponseEntity<StreamingResponseBody> exportUserConversations(@RequestParam String userId) {
+        if (userId.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(ConversationExporter.NDJSON_MEDIA_TYPE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"conversations.ndjson\"")
+                .body(out -> conversationExporter.exportUser(userId, out));
+    }
+
     @GetMapping("/{conversationId}/history")
-    @Operation(summary = "Get conversation history", description = "Retrieve all messages in a conversation")
+    @Operation(summary = "Get conversation history",
+            description = "Retrieve messages in a conversation, oldest first, one page at a time. "
+                    + "When more messages follow, the X-Next-Cursor header holds the value to pass as 'after'.")
     @ApiResponse(responseCode = "200", description = "History retrieved successfully")
+    @ApiResponse(responseCode = "400", description = "Invalid cursor")
     @ApiResponse(responseCode = "404", description = "Conversation not found")
-    public ResponseEntity<List<MessageResponse>> getConversationHistory(@PathVariable Long conversationId) {
-        return conversationService.getConversation(conversationId)
-                .map(conv -> {
-                    List<MessageResponse> history = conversationService.getConversationHistory(conversationId)
-                            .stream()
-                            .map(msg -> new MessageResponse(
-                                    msg.getId(),
-                                    msg.getConversation().getId(),
-                                    msg.getRole().toString(),
-                                    msg.getContent()
-                            ))
-                            .collect(Collectors.toList());
-                    return ResponseEntity.ok(history);
-                })
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<List<MessageResponse>> getConversationHistory(
+            @PathVariable Long conversationId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after) {
+
+        HistoryCursor cursor;
+        try {
+            cursor = after != null && !after.isBlank() ? HistoryCursor.decode(after) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        int pageSize = Math.min(Math.max(limit != null ? limit : defaultHistoryPageSize, 1), maxHistoryPageSize);
+        HistoryPage page = conversationService.getConversationHistoryPage(conversationId, cursor, pageSize)
+                .orElse(null);
+        if (page == null) {
+            return ResponseEntity.notFound().build();
+        }
+        List<MessageResponse> history = page.messages().stream()
+                .map(this::toMessageResponse)
+                .collect(Collectors.toList());
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.hasMore()) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor().encode());
+        }
+        return response.body(history);
+    }
+
+    private ConversationResponse toConversationResponse(ConversationView view) {
+        ConversationResponse response = new ConversationResponse(view.id(), view.status().toString());
+        response.setUserId(view.userId());
+        response.setCreatedAt(view.createdAt());
+        response.setUpdatedAt(view.updatedAt());
+        response.setMessageCount(view.messageCount());
+        response.setLastMessageAt(view.lastMessageAt());
+        response.setPromptTokens(view.promptTokens());
+        response.setCompletionTokens(view.completionTokens());
+        response.setToolInvocations(view.toolInvocations());
+        return response;
+    }
+
+    private MessageResponse toMessageResponse(Message message, Long conversationId) {
+        MessageResponse msgResponse = new MessageResponse(
+                message.getId(),
+                conversationId,
+                message.getRole().toString(),
+                message.getContent()
+        );
+        if (message.getToolsUsed() != null && !message.getToolsUsed().isEmpty()) {
+            msgResponse.setToolsUsed(List.of(message.getToolsUsed().split(", ")));
+        }
+        return msgResponse;
+    }
+
+    private MessageResponse toMessageResponse(MessageView view) {
+        MessageResponse msgResponse = new MessageResponse(
+                view.id(),
+                view.conversationId(),
+                view.role().toString(),
+                view.content()
+        );
+        msgResponse.setTimestamp(view.createdAt());
+        if (view.toolsUsed() != null && !view.toolsUsed().isEmpty()) {
+            msgResponse.setToolsUsed(List.of(view.toolsUsed().split(", ")));
+        }
+        return msgResponse;
+    }
+
+    private JobResponse toJobResponse(AgentJob job) {
+        JobResponse response = new JobResponse(job.getId(), job.getConversationId(), job.getStatus().toString());
+        response.setError(job.getError());
+        response.setCreatedAt(job.getCreatedAt());
+        response.setCompletedAt(job.getCompletedAt());
+        agentJobService.getResult(job)
+                .ifPresent(message -> response.setResult(toMessageResponse(message, job.getConversationId())));
+        return response;
     }
 }
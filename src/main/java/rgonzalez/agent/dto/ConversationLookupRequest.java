@@ -0,0 +1,29 @@
+package rgonzalez.agent.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+/**
+ * Request DTO for fetching several conversations at once.
+ */
+public class ConversationLookupRequest {
+
+    @NotEmpty(message = "At least one conversation ID is required")
+    private List<Long> ids;
+
+    public ConversationLookupRequest() {
+    }
+
+    public ConversationLookupRequest(List<Long> ids) {
+        this.ids = ids;
+    }
+
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<Long> ids) {
+        this.ids = ids;
+    }
+}
@@ -0,0 +1,37 @@
+package rgonzalez.agent.dto;
+
+import java.util.List;
+
+/**
+ * Response DTO for a multi-conversation lookup: the conversations found, in the
+ * order their IDs were requested, and the requested IDs that do not exist.
+ */
+public class ConversationLookupResponse {
+
+    private List<ConversationResponse> conversations;
+    private List<Long> missingIds;
+
+    public ConversationLookupResponse() {
+    }
+
+    public ConversationLookupResponse(List<ConversationResponse> conversations, List<Long> missingIds) {
+        this.conversations = conversations;
+        this.missingIds = missingIds;
+    }
+
+    public List<ConversationResponse> getConversations() {
+        return conversations;
+    }
+
+    public void setConversations(List<ConversationResponse> conversations) {
+        this.conversations = conversations;
+    }
+
+    public List<Long> getMissingIds() {
+        return missingIds;
+    }
+
+    public void setMissingIds(List<Long> missingIds) {
+        this.missingIds = missingIds;
+    }
+}
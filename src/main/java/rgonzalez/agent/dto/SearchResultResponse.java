@@ -0,0 +1,64 @@
+package rgonzalez.agent.dto;
+
+/**
+ * Response DTO for a conversation matching a search.
+ */
+public class SearchResultResponse {
+
+    private Long conversationId;
+    private double score;
+    private int matchedMessages;
+    private Long messageId;
+    private String snippet;
+
+    public SearchResultResponse() {
+    }
+
+    public SearchResultResponse(Long conversationId, double score, int matchedMessages, Long messageId, String snippet) {
+        this.conversationId = conversationId;
+        this.score = score;
+        this.matchedMessages = matchedMessages;
+        this.messageId = messageId;
+        this.snippet = snippet;
+    }
+
+    public Long getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(Long conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+
+    public int getMatchedMessages() {
+        return matchedMessages;
+    }
+
+    public void setMatchedMessages(int matchedMessages) {
+        this.matchedMessages = matchedMessages;
+    }
+
+    public Long getMessageId() {
+        return messageId;
+    }
+
+    public void setMessageId(Long messageId) {
+        this.messageId = messageId;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
+}
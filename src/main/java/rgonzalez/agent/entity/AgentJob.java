@@ -0,0 +1,177 @@
+package rgonzalez.agent.entity;
+
+import jakarta.persistence.*;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import java.time.LocalDateTime;
+
+/**
+ * Entity representing an agent turn executed asynchronously.
+ * The user message is stored with the job so queued or interrupted jobs can be
+ * resumed after a restart; once saved in the conversation, its message ID is kept
+ * too, so a resumed job does not save it again. The node running a job holds a lease
+ * on it, renewed while the job is queued or running there; other nodes only resume
+ * the job once the lease has run out.
+ */
+@Entity
+@Table(name = "agent_jobs",
+        indexes = @Index(name = "idx_agent_jobs_status_lease", columnList = "status, lease_until"))
+public class AgentJob {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(nullable = false)
+    private Long conversationId;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private AgentJobStatus status;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String content;
+
+    private Long userMessageId;
+
+    private Long resultMessageId;
+
+    @Column(length = 1000)
+    private String error;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime updatedAt;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime completedAt;
+
+    // Changed only by conditional updates, so saving a stale copy cannot take back a lease
+    @Column(name = "owner_node", length = 36, updatable = false)
+    private String ownerNode;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    @Column(name = "lease_until", updatable = false)
+    private LocalDateTime leaseUntil;
+
+    public AgentJob() {
+    }
+
+    public AgentJob(String id, Long conversationId, String content) {
+        this.id = id;
+        this.conversationId = conversationId;
+        this.content = content;
+        this.status = AgentJobStatus.QUEUED;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Long getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(Long conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public AgentJobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(AgentJobStatus status) {
+        this.status = status;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public Long getUserMessageId() {
+        return userMessageId;
+    }
+
+    public void setUserMessageId(Long userMessageId) {
+        this.userMessageId = userMessageId;
+    }
+
+    public Long getResultMessageId() {
+        return resultMessageId;
+    }
+
+    public void setResultMessageId(Long resultMessageId) {
+        this.resultMessageId = resultMessageId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public String getOwnerNode() {
+        return ownerNode;
+    }
+
+    public void setOwnerNode(String ownerNode) {
+        this.ownerNode = ownerNode;
+    }
+
+    public LocalDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public void setLeaseUntil(LocalDateTime leaseUntil) {
+        this.leaseUntil = leaseUntil;
+    }
+}
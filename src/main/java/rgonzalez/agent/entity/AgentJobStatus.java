@@ -0,0 +1,18 @@
+package rgonzalez.agent.entity;
+
+/**
+ * Enumeration of states of an asynchronous agent turn.
+ */
+public enum AgentJobStatus {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED;
+
+    /**
+     * Check if the job has finished, successfully or not.
+     */
+    public boolean isTerminal() {
+        return this == SUCCEEDED || this == FAILED;
+    }
+}
@@ -0,0 +1,96 @@
+package rgonzalez.agent.entity;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+import java.time.LocalDateTime;
+
+/**
+ * Entity holding the single stored copy of a large message payload, keyed by the
+ * SHA-256 of its content. Messages reference it by hash instead of holding a copy,
+ * and the reference count tracks how many do; unreferenced blobs are purged after a
+ * grace period. Prepared rows are always inserted, never merged, so concurrent
+ * inserts of the same content collide on the primary key; a blob stored again while
+ * its message is saved goes through a native MERGE instead.
+ */
+@Entity
+@Table(name = "content_blobs",
+        indexes = @Index(name = "idx_content_blobs_ref_count", columnList = "ref_count"))
+public class ContentBlob implements Persistable<String> {
+
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] data;
+
+    @Column(nullable = false)
+    private boolean compressed;
+
+    @Column(nullable = false)
+    private int contentLength;
+
+    @Column(name = "ref_count", nullable = false)
+    private long refCount;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime releasedAt;
+
+    @Transient
+    private boolean isNew = true;
+
+    public ContentBlob() {
+    }
+
+    public ContentBlob(String hash, byte[] data, boolean compressed, int contentLength, long refCount) {
+        this.hash = hash;
+        this.data = data;
+        this.compressed = compressed;
+        this.contentLength = contentLength;
+        this.refCount = refCount;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    @PostLoad
+    @PostPersist
+    protected void markNotNew() {
+        this.isNew = false;
+    }
+
+    @Override
+    public String getId() {
+        return hash;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public int getContentLength() {
+        return contentLength;
+    }
+
+    public long getRefCount() {
+        return refCount;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getReleasedAt() {
+        return releasedAt;
+    }
+}
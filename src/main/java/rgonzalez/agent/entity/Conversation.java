@@ -2,19 +2,34 @@ package rgonzalez.agent.entity;
 
 import jakarta.persistence.*;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Entity representing a conversation between a user and an agent.
+ * Cached in the second-level cache: every turn starts with a lookup by ID, and the
+ * row changes only when a turn completes. READ_WRITE locks the cache entry while an
+ * update is in flight, so readers fall through to the database until it commits.
  */
 @Entity
-@Table(name = "conversations")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = Conversation.CACHE_REGION)
+@Table(name = "conversations",
+        indexes = {
+                @Index(name = "idx_conversations_user_id", columnList = "user_id, id"),
+                @Index(name = "idx_conversations_user_status_id", columnList = "user_id, status, id"),
+                @Index(name = "idx_conversations_status_id", columnList = "status, id")
+        })
 public class Conversation {
 
+    public static final String CACHE_REGION = "conversations";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "conversations_seq")
+    @SequenceGenerator(name = "conversations_seq", sequenceName = "conversations_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -34,6 +49,26 @@ public class Conversation {
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
     private LocalDateTime updatedAt;
 
+    // Counters maintained as messages are written, so listings don't aggregate the messages table
+
+    @Column(nullable = false)
+    private long messageCount;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime lastMessageAt;
+
+    @Column(nullable = false)
+    private long promptTokens;
+
+    @Column(nullable = false)
+    private long completionTokens;
+
+    @Column(nullable = false)
+    private long toolInvocations;
+
+    @Version
+    private Long version;
+
     public Conversation() {
     }
 
@@ -102,4 +137,66 @@ public class Conversation {
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    /**
+     * Add a newly written message to the counters. Call in the transaction that writes
+     * the message, so the counters change with it.
+     */
+    public void recordMessage(Message message) {
+        messageCount++;
+        if (lastMessageAt == null || message.getCreatedAt().isAfter(lastMessageAt)) {
+            lastMessageAt = message.getCreatedAt();
+        }
+        promptTokens += message.getPromptTokens();
+        completionTokens += message.getCompletionTokens();
+        toolInvocations += message.getToolInvocations();
+    }
+
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    public void setMessageCount(long messageCount) {
+        this.messageCount = messageCount;
+    }
+
+    public LocalDateTime getLastMessageAt() {
+        return lastMessageAt;
+    }
+
+    public void setLastMessageAt(LocalDateTime lastMessageAt) {
+        this.lastMessageAt = lastMessageAt;
+    }
+
+    public long getPromptTokens() {
+        return promptTokens;
+    }
+
+    public void setPromptTokens(long promptTokens) {
+        this.promptTokens = promptTokens;
+    }
+
+    public long getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public void setCompletionTokens(long completionTokens) {
+        this.completionTokens = completionTokens;
+    }
+
+    public long getToolInvocations() {
+        return toolInvocations;
+    }
+
+    public void setToolInvocations(long toolInvocations) {
+        this.toolInvocations = toolInvocations;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
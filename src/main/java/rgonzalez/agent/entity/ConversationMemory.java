@@ -0,0 +1,103 @@
+package rgonzalez.agent.entity;
+
+import jakarta.persistence.*;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import java.time.LocalDateTime;
+
+/**
+ * Entity holding the rolling summary of a conversation's older turns.
+ * The summary covers every message up to and including the (summarizedThroughCreatedAt,
+ * summarizedThroughId) position; later messages are sent to the LLM verbatim.
+ */
+@Entity
+@Table(name = "conversation_memory")
+public class ConversationMemory {
+
+    @Id
+    private Long conversationId;
+
+    @Column(columnDefinition = "TEXT")
+    private String summary;
+
+    private Long summarizedThroughId;
+
+    private LocalDateTime summarizedThroughCreatedAt;
+
+    @Column(nullable = false)
+    private int summarizedMessageCount;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime updatedAt;
+
+    @Version
+    private Long version;
+
+    public ConversationMemory() {
+    }
+
+    public ConversationMemory(Long conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public Long getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(Long conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public void setSummary(String summary) {
+        this.summary = summary;
+    }
+
+    public Long getSummarizedThroughId() {
+        return summarizedThroughId;
+    }
+
+    public void setSummarizedThroughId(Long summarizedThroughId) {
+        this.summarizedThroughId = summarizedThroughId;
+    }
+
+    public LocalDateTime getSummarizedThroughCreatedAt() {
+        return summarizedThroughCreatedAt;
+    }
+
+    public void setSummarizedThroughCreatedAt(LocalDateTime summarizedThroughCreatedAt) {
+        this.summarizedThroughCreatedAt = summarizedThroughCreatedAt;
+    }
+
+    public int getSummarizedMessageCount() {
+        return summarizedMessageCount;
+    }
+
+    public void setSummarizedMessageCount(int summarizedMessageCount) {
+        this.summarizedMessageCount = summarizedMessageCount;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+}
@@ -0,0 +1,213 @@
+package rgonzalez.agent.entity;
+
+import jakarta.persistence.*;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import java.time.LocalDateTime;
+
+/**
+ * Entity representing an email queued for asynchronous delivery.
+ * Rows are written by the tool that produced them, deduplicated per conversation
+ * turn, and drained by the outbox dispatcher. Rows written during a turn carry its
+ * key and wait in PENDING_COMMIT until the turn's response is saved. A dispatcher claims rows by marking
+ * them IN_FLIGHT with its claim token and a lease; rows whose lease ran out are
+ * claimable again.
+ */
+@Entity
+@Table(name = "email_outbox",
+        uniqueConstraints = @UniqueConstraint(name = "uk_email_outbox_dedupe_key", columnNames = "dedupe_key"),
+        indexes = {
+                @Index(name = "idx_email_outbox_status_next_attempt", columnList = "status, next_attempt_at"),
+                @Index(name = "idx_email_outbox_claimed_by", columnList = "claimed_by"),
+                @Index(name = "idx_email_outbox_turn_key", columnList = "turn_key")
+        })
+public class EmailOutboxEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "email_outbox_seq")
+    @SequenceGenerator(name = "email_outbox_seq", sequenceName = "email_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "dedupe_key", nullable = false, length = 64)
+    private String dedupeKey;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(nullable = false)
+    private String subject;
+
+    @Column(columnDefinition = "TEXT")
+    private String body;
+
+    @Column(nullable = false)
+    @Enumerated(EnumType.STRING)
+    private EmailOutboxStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime sentAt;
+
+    @Column(name = "claimed_by", length = 64)
+    private String claimedBy;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    @Column(name = "turn_key")
+    private String turnKey;
+
+    public EmailOutboxEntry() {
+    }
+
+    public EmailOutboxEntry(String dedupeKey, String recipient, String subject, String body) {
+        this(dedupeKey, recipient, subject, body, null);
+    }
+
+    /**
+     * Create an entry; with a turn key it waits in PENDING_COMMIT until that turn commits.
+     */
+    public EmailOutboxEntry(String dedupeKey, String recipient, String subject, String body, String turnKey) {
+        this.dedupeKey = dedupeKey;
+        this.recipient = recipient;
+        this.subject = subject;
+        this.body = body;
+        this.turnKey = turnKey;
+        this.status = turnKey != null ? EmailOutboxStatus.PENDING_COMMIT : EmailOutboxStatus.PENDING;
+        this.createdAt = LocalDateTime.now();
+        this.nextAttemptAt = this.createdAt;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+        if (this.nextAttemptAt == null) {
+            this.nextAttemptAt = this.createdAt;
+        }
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getDedupeKey() {
+        return dedupeKey;
+    }
+
+    public void setDedupeKey(String dedupeKey) {
+        this.dedupeKey = dedupeKey;
+    }
+
+    public String getRecipient() {
+        return recipient;
+    }
+
+    public void setRecipient(String recipient) {
+        this.recipient = recipient;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public EmailOutboxStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(EmailOutboxStatus status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(LocalDateTime sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    public String getClaimedBy() {
+        return claimedBy;
+    }
+
+    public void setClaimedBy(String claimedBy) {
+        this.claimedBy = claimedBy;
+    }
+
+    public LocalDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public void setLeaseUntil(LocalDateTime leaseUntil) {
+        this.leaseUntil = leaseUntil;
+    }
+
+    public String getTurnKey() {
+        return turnKey;
+    }
+
+    public void setTurnKey(String turnKey) {
+        this.turnKey = turnKey;
+    }
+}
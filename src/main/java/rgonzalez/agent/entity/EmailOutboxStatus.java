@@ -0,0 +1,14 @@
+package rgonzalez.agent.entity;
+
+/**
+ * Enumeration of delivery states for queued outbox emails.
+ * PENDING_COMMIT entries were queued by a conversation turn that has not saved its
+ * response yet; they become PENDING when it does, and are never sent otherwise.
+ */
+public enum EmailOutboxStatus {
+    PENDING_COMMIT,
+    PENDING,
+    IN_FLIGHT,
+    SENT,
+    FAILED
+}
@@ -0,0 +1,86 @@
+package rgonzalez.agent.entity;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+import java.time.LocalDateTime;
+
+/**
+ * Entity recording a message request made under an Idempotency-Key.
+ * Only the request hash and the ID of the assistant message are kept; the response
+ * itself is the stored message. A row without a result marks a turn in progress.
+ * Rows are always inserted, never merged, so concurrent claims of one key collide
+ * on the primary key.
+ */
+@Entity
+@Table(name = "idempotency_keys",
+        indexes = @Index(name = "idx_idempotency_keys_expires_at", columnList = "expires_at"))
+public class IdempotencyRecord implements Persistable<String> {
+
+    @Id
+    @Column(length = 300)
+    private String id;
+
+    @Column(nullable = false, length = 64)
+    private String requestHash;
+
+    private Long resultMessageId;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Transient
+    private boolean isNew = true;
+
+    public IdempotencyRecord() {
+    }
+
+    public IdempotencyRecord(String id, String requestHash, LocalDateTime expiresAt) {
+        this.id = id;
+        this.requestHash = requestHash;
+        this.createdAt = LocalDateTime.now();
+        this.expiresAt = expiresAt;
+    }
+
+    @PostLoad
+    @PostPersist
+    protected void markNotNew() {
+        this.isNew = false;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public Long getResultMessageId() {
+        return resultMessageId;
+    }
+
+    public void setResultMessageId(Long resultMessageId) {
+        this.resultMessageId = resultMessageId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
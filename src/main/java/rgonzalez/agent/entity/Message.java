@@ -8,11 +8,13 @@ import java.time.LocalDateTime;
  * Entity representing a message in a conversation.
  */
 @Entity
-@Table(name = "messages")
+@Table(name = "messages",
+        indexes = @Index(name = "idx_messages_conversation_created", columnList = "conversation_id, created_at, id"))
 public class Message {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "messages_seq")
+    @SequenceGenerator(name = "messages_seq", sequenceName = "messages_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -23,12 +25,29 @@ public class Message {
     @Enumerated(EnumType.STRING)
     private MessageRole role; // USER, ASSISTANT, SYSTEM
 
+    // Null when the content is stored as a content blob
     @Column(columnDefinition = "TEXT")
     private String content;
 
+    @Column(length = 64)
+    private String contentHash;
+
+    // Content of the referenced blob, once moved there or resolved
+    @Transient
+    private String blobContent;
+
     @Column(columnDefinition = "TEXT")
     private String toolsUsed;
 
+    @Column(nullable = false)
+    private int promptTokens;
+
+    @Column(nullable = false)
+    private int completionTokens;
+
+    @Column(nullable = false)
+    private int toolInvocations;
+
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -45,7 +64,10 @@ public class Message {
 
     @PrePersist
     protected void onCreate() {
-        this.createdAt = LocalDateTime.now();
+        // Keep the time the message was created when it is written later (write-behind)
+        if (this.createdAt == null) {
+            this.createdAt = LocalDateTime.now();
+        }
     }
 
     public Long getId() {
@@ -73,13 +95,35 @@ public class Message {
     }
 
     public String getContent() {
-        return content;
+        return content != null ? content : blobContent;
     }
 
     public void setContent(String content) {
         this.content = content;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Store the content as a reference to the blob with the given hash.
+     */
+    public void moveContentToBlob(String hash) {
+        if (content != null) {
+            this.blobContent = content;
+            this.content = null;
+        }
+        this.contentHash = hash;
+    }
+
+    /**
+     * Set the content read from the referenced blob.
+     */
+    public void setBlobContent(String blobContent) {
+        this.blobContent = blobContent;
+    }
+
     public String getToolsUsed() {
         return toolsUsed;
     }
@@ -88,6 +132,30 @@ public class Message {
         this.toolsUsed = toolsUsed;
     }
 
+    public int getPromptTokens() {
+        return promptTokens;
+    }
+
+    public void setPromptTokens(int promptTokens) {
+        this.promptTokens = promptTokens;
+    }
+
+    public int getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public void setCompletionTokens(int completionTokens) {
+        this.completionTokens = completionTokens;
+    }
+
+    public int getToolInvocations() {
+        return toolInvocations;
+    }
+
+    public void setToolInvocations(int toolInvocations) {
+        this.toolInvocations = toolInvocations;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
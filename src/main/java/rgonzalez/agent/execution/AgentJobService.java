@@ -0,0 +1,279 @@
+package rgonzalez.agent.execution;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import rgonzalez.agent.entity.AgentJob;
+import rgonzalez.agent.entity.AgentJobStatus;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.repository.AgentJobRepository;
+import rgonzalez.agent.repository.ConversationRepository;
+import rgonzalez.agent.service.ConversationNotFoundException;
+import rgonzalez.agent.service.ConversationService;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs agent turns in the background so request threads are released as soon as
+ * the job is accepted. Jobs are persisted in the agent_jobs table; the work itself
+ * runs on a bounded executor whose queue absorbs bursts without growing Tomcat's pool;
+ * a turn queued behind earlier turns of its conversation waits without holding a worker.
+ * Each process is a node with its own ID that holds a lease on the jobs it accepted,
+ * renewed by a heartbeat while they are queued or running. Jobs whose lease ran out
+ * (their node stopped or died) are claimed with a conditional update and resumed, on
+ * startup and periodically, so only one node resumes each job; tool side effects are
+ * keyed on the job ID and the saved user message is reused, so a resumed turn does not
+ * repeat them.
+ */
+@Service
+public class AgentJobService {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final AgentJobRepository jobRepository;
+    private final ConversationRepository conversationRepository;
+    private final ConversationService conversationService;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, CompletableFuture<AgentJob>> completions = new ConcurrentHashMap<>();
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Counter succeededCounter;
+    private final Counter failedCounter;
+    private final Counter rejectedCounter;
+
+    // Must exceed the heartbeat interval, or jobs still running here may be resumed elsewhere
+    @Value("${agent.jobs.lease-ms:60000}")
+    private long leaseMillis = 60000;
+
+    public AgentJobService(AgentJobRepository jobRepository,
+                           ConversationRepository conversationRepository,
+                           ConversationService conversationService,
+                           MeterRegistry meterRegistry,
+                           @Value("${agent.jobs.workers:200}") int workers,
+                           @Value("${agent.jobs.queue-capacity:10000}") int queueCapacity) {
+        this.jobRepository = jobRepository;
+        this.conversationRepository = conversationRepository;
+        this.conversationService = conversationService;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "agent-job-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.succeededCounter = Counter.builder("agent.jobs.succeeded")
+                .description("Asynchronous agent turns completed")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("agent.jobs.failed")
+                .description("Asynchronous agent turns that failed")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("agent.jobs.rejected")
+                .description("Asynchronous agent turns rejected because the queue was full")
+                .register(meterRegistry);
+        Gauge.builder("agent.jobs.queued", executor, pool -> pool.getQueue().size())
+                .description("Agent turns waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("agent.jobs.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Agent turns currently running")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Accept a message for background processing and return the queued job.
+     * Throws ConversationNotFoundException if the conversation does not exist and
+     * RejectedExecutionException if the job queue is full.
+     */
+    public AgentJob submit(Long conversationId, String content) {
+        if (!conversationRepository.existsById(conversationId)) {
+            throw new ConversationNotFoundException(conversationId);
+        }
+
+        AgentJob accepted = new AgentJob(UUID.randomUUID().toString(), conversationId, content);
+        accepted.setOwnerNode(nodeId);
+        accepted.setLeaseUntil(leaseUntil(LocalDateTime.now()));
+        AgentJob job = jobRepository.save(accepted);
+        try {
+            dispatch(job.getId());
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            jobRepository.deleteById(job.getId());
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * Get a job within a conversation.
+     */
+    public Optional<AgentJob> getJob(Long conversationId, String jobId) {
+        return jobRepository.findByIdAndConversationId(jobId, conversationId);
+    }
+
+    /**
+     * Future completed with the job once it reaches a terminal state. Completes
+     * immediately if the job has already finished or is not known to this node.
+     */
+    public CompletableFuture<AgentJob> awaitCompletion(Long conversationId, String jobId) {
+        CompletableFuture<AgentJob> completion = completions.get(jobId);
+        if (completion != null) {
+            return completion;
+        }
+        return CompletableFuture.completedFuture(getJob(conversationId, jobId).orElse(null));
+    }
+
+    /**
+     * Get the assistant message produced by a successful job.
+     */
+    public Optional<Message> getResult(AgentJob job) {
+        if (job.getResultMessageId() == null) {
+            return Optional.empty();
+        }
+        return conversationService.getMessage(job.getResultMessageId());
+    }
+
+    /**
+     * Resume jobs interrupted by a shutdown or crash of the node that held them, once
+     * their lease has run out. Each job is claimed first, so a job is resumed by one node.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${agent.jobs.resume-interval-ms:60000}",
+            initialDelayString = "${agent.jobs.resume-interval-ms:60000}")
+    public void resumeInterruptedJobs() {
+        int resumed = 0;
+        for (String jobId : jobRepository.findResumableIds(LocalDateTime.now())) {
+            LocalDateTime now = LocalDateTime.now();
+            if (jobRepository.claim(jobId, nodeId, now, leaseUntil(now)) == 0) {
+                // Renewed by its node or claimed by another one in the meantime
+                continue;
+            }
+            try {
+                dispatch(jobId);
+                resumed++;
+            } catch (RejectedExecutionException e) {
+                jobRepository.findById(jobId)
+                        .ifPresent(job -> finish(job, AgentJobStatus.FAILED, null, "Job queue full when resuming"));
+            }
+        }
+        if (resumed > 0) {
+            System.out.println("Resumed " + resumed + " interrupted agent jobs");
+        }
+    }
+
+    /**
+     * Extend the leases of the jobs queued or running on this node.
+     */
+    @Scheduled(fixedDelayString = "${agent.jobs.heartbeat-interval-ms:15000}")
+    public void renewLeases() {
+        if (!completions.isEmpty()) {
+            jobRepository.renewLeases(nodeId, leaseUntil(LocalDateTime.now()));
+        }
+    }
+
+    /**
+     * ID of this node, recorded as the owner of the jobs it runs.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    private void dispatch(String jobId) {
+        completions.put(jobId, new CompletableFuture<>());
+        try {
+            executor.execute(() -> run(jobId));
+        } catch (RejectedExecutionException e) {
+            completions.remove(jobId);
+            throw e;
+        }
+    }
+
+    private void run(String jobId) {
+        Optional<AgentJob> found = jobRepository.findById(jobId);
+        if (found.isEmpty()) {
+            completions.remove(jobId);
+            return;
+        }
+
+        AgentJob running = found.get();
+        running.setStatus(AgentJobStatus.RUNNING);
+        AgentJob job = jobRepository.save(running);
+
+        CompletableFuture<Message> turn;
+        try {
+            // Chained behind earlier turns of the conversation; no worker waits for them.
+            // A resumed job reuses the user message its interrupted run already saved
+            turn = conversationService.submitMessage(job.getConversationId(), job.getContent(),
+                    "job-" + job.getId(), job.getUserMessageId(), userMessageId -> {
+                        job.setUserMessageId(userMessageId);
+                        jobRepository.save(job);
+                    }, executor);
+        } catch (RuntimeException e) {
+            turn = CompletableFuture.failedFuture(e);
+        }
+        turn.whenComplete((result, error) -> {
+            if (error == null) {
+                finish(job, AgentJobStatus.SUCCEEDED, result.getId(), null);
+                succeededCounter.increment();
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+            if (cause instanceof RejectedExecutionException && executor.isShutdown()) {
+                // Shutting down: left RUNNING, so it is resumed once its lease runs out
+                completions.remove(jobId);
+                return;
+            }
+            System.err.println("Agent job " + jobId + " failed: " + cause.getMessage());
+            finish(job, AgentJobStatus.FAILED, null, cause.getMessage() != null ? cause.getMessage() : cause.toString());
+            failedCounter.increment();
+        });
+    }
+
+    private void finish(AgentJob job, AgentJobStatus status, Long resultMessageId, String error) {
+        job.setStatus(status);
+        job.setResultMessageId(resultMessageId);
+        if (error != null && error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+        job.setError(error);
+        job.setCompletedAt(LocalDateTime.now());
+        AgentJob saved = jobRepository.save(job);
+
+        CompletableFuture<AgentJob> completion = completions.remove(job.getId());
+        if (completion != null) {
+            completion.complete(saved);
+        }
+    }
+
+    private LocalDateTime leaseUntil(LocalDateTime now) {
+        return now.plus(Duration.ofMillis(leaseMillis));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Unfinished jobs stay QUEUED or RUNNING and are resumed once their lease runs out
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,168 @@
+package rgonzalez.agent.execution;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the turns of a conversation one at a time, in arrival order, while turns of
+ * different conversations run in parallel. Each conversation has a mailbox holding
+ * the tail of a chain of gates: a turn takes the current tail as its predecessor,
+ * installs its own gate, and starts once the predecessor's gate opens. Submitted turns
+ * are chained onto that gate and handed to an executor when it opens, so no thread is
+ * parked while they wait; only callers that need the result anyway wait. Mailboxes are
+ * updated with ConcurrentHashMap.compute, which locks only the map bin of that
+ * conversation, and are removed as soon as they drain, so memory tracks the number of
+ * conversations with turns in flight rather than all conversations ever seen.
+ */
+@Component
+public class ConversationTurnExecutor {
+
+    private final Map<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingTurns = new AtomicInteger();
+
+    private final DistributionSummary depthSummary;
+    private final Timer waitTimer;
+
+    @Value("${agent.conversation.max-pending-turns:100}")
+    private int maxPendingTurns = 100;
+
+    public ConversationTurnExecutor(MeterRegistry meterRegistry) {
+        this.depthSummary = DistributionSummary.builder("agent.conversation.mailbox.depth")
+                .description("Turns already queued for the conversation when a turn arrives")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("agent.conversation.mailbox.wait")
+                .description("Time a turn waits for earlier turns of the same conversation")
+                .register(meterRegistry);
+        Gauge.builder("agent.conversation.mailboxes", mailboxes, Map::size)
+                .description("Conversations with turns running or queued")
+                .register(meterRegistry);
+        Gauge.builder("agent.conversation.mailbox.pending", pendingTurns, AtomicInteger::get)
+                .description("Turns running or queued across all conversations")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run a turn on the given executor once all earlier turns of the conversation have
+     * finished, without blocking the caller. Throws RejectedExecutionException if the
+     * conversation already has too many turns queued; if the executor rejects the turn
+     * when its turn comes, the returned future fails with that exception instead.
+     */
+    public <T> CompletableFuture<T> submit(Long conversationId, Callable<T> turn, Executor executor) {
+        Ticket ticket = enqueue(conversationId);
+        long start = System.nanoTime();
+        CompletableFuture<T> run = ticket.previous().thenApplyAsync(ignored -> {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            try {
+                return turn.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+        run.whenComplete((result, error) -> release(conversationId, ticket));
+        // A copy, so cancelling it cannot open the gate while the turn is still running
+        return run.copy();
+    }
+
+    /**
+     * Run a turn on the calling thread once all earlier turns of the conversation have
+     * finished, for callers that wait for its result anyway. Throws
+     * RejectedExecutionException if the conversation already has too many turns queued.
+     */
+    public <T> T call(Long conversationId, Callable<T> turn) throws Exception {
+        Ticket ticket = enqueue(conversationId);
+        long start = System.nanoTime();
+        try {
+            ticket.previous().get();
+        } catch (InterruptedException e) {
+            // Keep the order: successors must still wait for our predecessor
+            ticket.previous().whenComplete((ignored, error) -> release(conversationId, ticket));
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            // Gates always complete normally
+        }
+        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        try {
+            return turn.call();
+        } finally {
+            release(conversationId, ticket);
+        }
+    }
+
+    /**
+     * Number of turns running or queued for a conversation.
+     */
+    public int getDepth(Long conversationId) {
+        int[] depth = new int[1];
+        mailboxes.computeIfPresent(conversationId, (id, mailbox) -> {
+            depth[0] = mailbox.pending;
+            return mailbox;
+        });
+        return depth[0];
+    }
+
+    /**
+     * Number of conversations with turns running or queued.
+     */
+    public int getActiveMailboxes() {
+        return mailboxes.size();
+    }
+
+    private Ticket enqueue(Long conversationId) {
+        CompletableFuture<Void> gate = new CompletableFuture<>();
+        Ticket[] ticket = new Ticket[1];
+        mailboxes.compute(conversationId, (id, mailbox) -> {
+            if (mailbox == null) {
+                mailbox = new Mailbox();
+            }
+            if (mailbox.pending >= maxPendingTurns) {
+                return mailbox;
+            }
+            ticket[0] = new Ticket(mailbox.tail, gate);
+            depthSummary.record(mailbox.pending);
+            mailbox.tail = gate;
+            mailbox.pending++;
+            return mailbox;
+        });
+        if (ticket[0] == null) {
+            throw new RejectedExecutionException("Too many turns queued for conversation " + conversationId);
+        }
+        pendingTurns.incrementAndGet();
+        return ticket[0];
+    }
+
+    private void release(Long conversationId, Ticket ticket) {
+        pendingTurns.decrementAndGet();
+        mailboxes.computeIfPresent(conversationId, (id, mailbox) -> --mailbox.pending == 0 ? null : mailbox);
+        ticket.gate().complete(null);
+    }
+
+    /**
+     * Read and mutated only inside compute on the conversation's map entry.
+     */
+    private static final class Mailbox {
+        private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        private int pending;
+    }
+
+    private record Ticket(CompletableFuture<Void> previous, CompletableFuture<Void> gate) {
+    }
+}
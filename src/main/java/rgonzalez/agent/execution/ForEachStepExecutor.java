@@ -0,0 +1,271 @@
+package rgonzalez.agent.execution;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import rgonzalez.agent.planning.PlanStep;
+import rgonzalez.agent.toolbox.Tool;
+import rgonzalez.agent.toolbox.ToolOutputHandle;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs forEach plan steps: collects the items from the result of the step they fan out
+ * over, splits them into partitions and calls the step's tool once per partition on a
+ * shared pool of workers, so concurrency is bounded across all turns. A partition whose
+ * call fails is retried one item at a time, so a bad item only fails itself; the step
+ * then reports every failed item alongside the outputs of the calls that succeeded.
+ *
+ * Because of that retry, items of a failed partition that had already taken effect are
+ * sent to the tool again. Tools run by forEach must therefore be idempotent per item
+ * under the turn key in the context (the email reminder tool keys each queued email on
+ * the turn key and recipient); when the context has no turn key, one is generated for
+ * the step so its partition call and item retries share it.
+ *
+ * The item pattern comes from the plan, so it is matched within one line at a time and
+ * abandoned after a time limit, so a pattern that backtracks badly fails the step
+ * instead of holding a worker.
+ */
+@Component
+public class ForEachStepExecutor {
+
+    private final ExecutorService workers;
+    private final Counter itemsCounter;
+    private final Counter failedItemsCounter;
+
+    @Value("${agent.plan.for-each.partition-size:50}")
+    private int defaultPartitionSize = 50;
+
+    @Value("${agent.plan.for-each.match-timeout-ms:5000}")
+    private long matchTimeoutMillis = 5000;
+
+    public ForEachStepExecutor(MeterRegistry meterRegistry,
+                               @Value("${agent.plan.for-each.parallelism:0}") int parallelism) {
+        // Zero means one worker per core
+        int workerCount = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "plan-for-each-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.itemsCounter = Counter.builder("plan.foreach.items")
+                .description("Items processed by forEach plan steps")
+                .register(meterRegistry);
+        this.failedItemsCounter = Counter.builder("plan.foreach.failed.items")
+                .description("Items of forEach plan steps whose tool call failed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run a forEach step's tool over the items of the earlier result it names.
+     * Blocks until every partition has completed.
+     */
+    public String execute(Tool tool, PlanStep step, Map<String, Object> executionContext) throws Exception {
+        PlanStep.ForEach forEach = step.forEach();
+        Object source = executionContext.get(forEach.from() + "_result");
+        if (source == null) {
+            return String.format("No result from %s to run %s for", forEach.from(), step.toolName());
+        }
+        List<String> items = collectItems(step, source);
+        if (items.isEmpty()) {
+            return String.format("No items found in the result of %s to run %s for", forEach.from(), step.toolName());
+        }
+
+        int partitionSize = forEach.partitionSize() != null ? forEach.partitionSize() : defaultPartitionSize;
+        // Partitions only read the context; the turn adds this step's result after they finish
+        Map<String, Object> stepContext = new HashMap<>(executionContext);
+        stepContext.putIfAbsent(Tool.CONTEXT_TURN_KEY, "for-each-" + UUID.randomUUID());
+        Map<String, Object> context = Collections.unmodifiableMap(stepContext);
+        List<Future<PartitionResult>> futures = new ArrayList<>();
+        for (int start = 0; start < items.size(); start += partitionSize) {
+            List<String> partition = items.subList(start, Math.min(start + partitionSize, items.size()));
+            futures.add(workers.submit(() -> runPartition(tool, step, partition, context)));
+        }
+
+        List<PartitionResult> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<PartitionResult> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("forEach partition of " + step.toolName() + " failed", e.getCause());
+        }
+        return aggregate(step, items.size(), results);
+    }
+
+    /**
+     * Items of the source result, in order of first appearance: each match of the
+     * pattern within a line, or each non-blank line when there is none. Spilled results
+     * are streamed.
+     */
+    private List<String> collectItems(PlanStep step, Object source) throws IOException {
+        PlanStep.ForEach forEach = step.forEach();
+        Pattern pattern = forEach.match() != null ? Pattern.compile(forEach.match()) : null;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(matchTimeoutMillis);
+        Set<String> items = new LinkedHashSet<>();
+        try (BufferedReader lines = new BufferedReader(source instanceof ToolOutputHandle handle
+                ? handle.openReader()
+                : new StringReader(source.toString()))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (pattern == null) {
+                    if (!line.isBlank()) {
+                        items.add(line.trim());
+                    }
+                    continue;
+                }
+                Matcher matcher = pattern.matcher(new DeadlineCharSequence(line, deadline));
+                while (matcher.find()) {
+                    if (!matcher.group().isEmpty()) {
+                        items.add(matcher.group());
+                    }
+                }
+            }
+        } catch (MatchTimeoutException e) {
+            throw new IllegalStateException(String.format("forEach pattern of %s did not finish matching within %d ms",
+                    step.toolName(), matchTimeoutMillis));
+        }
+        return new ArrayList<>(items);
+    }
+
+    private PartitionResult runPartition(Tool tool, PlanStep step, List<String> partition,
+                                         Map<String, Object> context) {
+        try {
+            return new PartitionResult(List.of(String.valueOf(call(tool, step, partition, context))), partition.size(), List.of());
+        } catch (Exception e) {
+            if (partition.size() == 1) {
+                return new PartitionResult(List.of(), 0, List.of(partition.get(0) + ": " + e.getMessage()));
+            }
+        }
+        // Isolate the failing items
+        List<String> outputs = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        for (String item : partition) {
+            try {
+                outputs.add(String.valueOf(call(tool, step, List.of(item), context)));
+            } catch (Exception e) {
+                failures.add(item + ": " + e.getMessage());
+            }
+        }
+        return new PartitionResult(outputs, partition.size() - failures.size(), failures);
+    }
+
+    private static String call(Tool tool, PlanStep step, List<String> items,
+                               Map<String, Object> context) throws Exception {
+        Map<String, Object> params = new HashMap<>(step.parameters());
+        params.put(step.forEach().as(), String.join(", ", items));
+        return tool.executeWithContext(params, context);
+    }
+
+    private String aggregate(PlanStep step, int itemCount, List<PartitionResult> results) {
+        int succeeded = 0;
+        List<String> failures = new ArrayList<>();
+        for (PartitionResult result : results) {
+            succeeded += result.succeeded();
+            failures.addAll(result.failures());
+        }
+        itemsCounter.increment(itemCount);
+        failedItemsCounter.increment(failures.size());
+
+        StringBuilder output = new StringBuilder();
+        output.append(String.format("Ran %s for %d items of %s in %d partitions: %d succeeded, %d failed\n",
+                step.toolName(), itemCount, step.forEach().from(), results.size(), succeeded, failures.size()));
+        if (!failures.isEmpty()) {
+            output.append("Failed items:\n");
+            for (String failure : failures) {
+                output.append("- ").append(failure).append("\n");
+            }
+        }
+        for (PartitionResult result : results) {
+            for (String partitionOutput : result.outputs()) {
+                output.append("\n").append(partitionOutput).append("\n");
+            }
+        }
+        return output.toString();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Outputs of a partition's successful calls and its failed items with their errors.
+     */
+    private record PartitionResult(List<String> outputs, int succeeded, List<String> failures) {
+    }
+
+    /**
+     * Text that stops a regex match once the deadline has passed. The matcher reads
+     * every character through charAt, so checking the clock there bounds backtracking.
+     */
+    private static final class DeadlineCharSequence implements CharSequence {
+
+        private static final int CHECK_EVERY = 1024;
+
+        private final String text;
+        private final long deadline;
+        private int reads;
+
+        DeadlineCharSequence(String text, long deadline) {
+            this.text = text;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++reads % CHECK_EVERY == 0 && System.nanoTime() - deadline > 0) {
+                throw new MatchTimeoutException();
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private static final class MatchTimeoutException extends RuntimeException {
+
+        MatchTimeoutException() {
+            super(null, null, false, false);
+        }
+    }
+}
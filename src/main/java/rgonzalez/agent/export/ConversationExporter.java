@@ -0,0 +1,201 @@
+package rgonzalez.agent.export;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import rgonzalez.agent.archive.ConversationArchiveStore;
+import rgonzalez.agent.persistence.ContentBlobStore;
+import rgonzalez.agent.persistence.MessageStore;
+import rgonzalez.agent.repository.ConversationRepository;
+import rgonzalez.agent.repository.MessageRepository;
+import rgonzalez.agent.repository.MessageView;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Writes conversation transcripts as NDJSON, one message per line, oldest first.
+ * Messages are read as projections from a database cursor inside a read-only
+ * transaction and written in chunks as they arrive, so memory use does not depend
+ * on the size of the history; contents stored as blobs are filled in per chunk.
+ * Archived conversations are streamed from the archive as they are decompressed, in
+ * ID order among the live ones. With the event log message store, each conversation
+ * is read from the log a page at a time.
+ */
+@Component
+public class ConversationExporter {
+
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    private static final ObjectWriter writer = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .writerFor(MessageView.class);
+
+    private static final int FLUSH_EVERY = 100;
+    private static final int STORE_PAGE_SIZE = 500;
+
+    private final MessageRepository messageRepository;
+    private final MessageStore messageStore;
+    private final ContentBlobStore contentBlobs;
+    private final ConversationRepository conversationRepository;
+    private final ConversationArchiveStore archiveStore;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public ConversationExporter(MessageRepository messageRepository,
+                                MessageStore messageStore,
+                                ContentBlobStore contentBlobs,
+                                ConversationRepository conversationRepository,
+                                ConversationArchiveStore archiveStore,
+                                PlatformTransactionManager transactionManager) {
+        this.messageRepository = messageRepository;
+        this.messageStore = messageStore;
+        this.contentBlobs = contentBlobs;
+        this.conversationRepository = conversationRepository;
+        this.archiveStore = archiveStore;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Write one conversation's transcript.
+     *
+     * @param archived whether the conversation has been moved to the archive
+     */
+    public void exportConversation(Long conversationId, boolean archived, OutputStream out) throws IOException {
+        if (archived) {
+            writeArchived(conversationId, out);
+        } else if (!messageStore.isTransactional()) {
+            writePaged(conversationId, out);
+        } else {
+            writeStreamed(() -> messageRepository.streamByConversationId(conversationId), List::of, out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Write the transcripts of all of a user's conversations, grouped by conversation
+     * in ID order, whether they are live or archived.
+     */
+    public void exportUser(String userId, OutputStream out) throws IOException {
+        if (!messageStore.isTransactional()) {
+            Deque<Long> archived = new ArrayDeque<>(conversationRepository.findArchivedIdsByUserId(userId));
+            for (Long conversationId : conversationRepository.findLiveIdsByUserId(userId)) {
+                writeArchivedBefore(archived, conversationId, out);
+                writePaged(conversationId, out);
+            }
+            writeArchivedBefore(archived, Long.MAX_VALUE, out);
+        } else {
+            writeStreamed(() -> messageRepository.streamByUserId(userId),
+                    () -> conversationRepository.findArchivedIdsByUserId(userId), out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Write the streamed messages, which are grouped by conversation in ID order, and
+     * the given archived conversations, each before the first live one with a higher ID.
+     */
+    private void writeStreamed(Supplier<Stream<MessageView>> query, Supplier<List<Long>> archivedIds,
+                               OutputStream out) throws IOException {
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                Deque<Long> archived = new ArrayDeque<>(archivedIds.get());
+                try (Stream<MessageView> messages = query.get()) {
+                    List<MessageView> chunk = new ArrayList<>(FLUSH_EVERY);
+                    Long conversationId = null;
+                    Iterator<MessageView> iterator = messages.iterator();
+                    while (iterator.hasNext()) {
+                        MessageView message = iterator.next();
+                        if (!message.conversationId().equals(conversationId)) {
+                            conversationId = message.conversationId();
+                            if (!archived.isEmpty() && archived.peek() < conversationId) {
+                                writeChunk(chunk, out);
+                                writeArchivedBefore(archived, conversationId, out);
+                            }
+                        }
+                        chunk.add(message);
+                        if (chunk.size() == FLUSH_EVERY) {
+                            writeChunk(chunk, out);
+                        }
+                    }
+                    writeChunk(chunk, out);
+                    writeArchivedBefore(archived, Long.MAX_VALUE, out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Usually the client went away; stop reading from the cursor
+            throw e.getCause();
+        }
+    }
+
+    private void writeChunk(List<MessageView> chunk, OutputStream out) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        contentBlobs.resolve(chunk).forEach(message -> writeLine(message, out));
+        flush(out);
+        chunk.clear();
+    }
+
+    private void writePaged(Long conversationId, OutputStream out) throws IOException {
+        List<MessageView> page = messageStore.findHistoryPage(conversationId, null, null, STORE_PAGE_SIZE);
+        try {
+            while (!page.isEmpty()) {
+                page.forEach(message -> writeLine(message, out));
+                flush(out);
+                MessageView last = page.get(page.size() - 1);
+                page = messageStore.findHistoryPage(conversationId, last.createdAt(), last.id(), STORE_PAGE_SIZE);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void writeArchivedBefore(Deque<Long> archived, long conversationId, OutputStream out)
+            throws IOException {
+        while (!archived.isEmpty() && archived.peek() < conversationId) {
+            writeArchived(archived.poll(), out);
+        }
+    }
+
+    private void writeArchived(Long conversationId, OutputStream out) throws IOException {
+        try {
+            archiveStore.forEachMessage(conversationId, message -> writeLine(message, out));
+            flush(out);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeLine(MessageView message, OutputStream out) {
+        try {
+            out.write(writer.writeValueAsBytes(message));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void flush(OutputStream out) {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package rgonzalez.agent.idempotency;
+
+/**
+ * Thrown when a request cannot be served under its Idempotency-Key.
+ */
+public class IdempotencyConflictException extends RuntimeException {
+
+    public enum Reason {
+        /** The key was already used for a request with a different body. */
+        KEY_REUSED,
+        /** Another node is still processing the first request with this key. */
+        IN_PROGRESS
+    }
+
+    private final Reason reason;
+
+    public IdempotencyConflictException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,275 @@
+package rgonzalez.agent.idempotency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import rgonzalez.agent.entity.IdempotencyRecord;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.repository.IdempotencyRecordRepository;
+import rgonzalez.agent.service.ConversationService;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Makes agent turns safe to retry. The first request with a given Idempotency-Key
+ * claims the key by inserting a row, runs the turn and records the resulting message.
+ * A duplicate arriving while the turn runs on this node waits for the same result;
+ * one arriving afterwards gets the stored message back without replanning, calling
+ * tools or the LLM. Completed keys are kept in a bounded in-memory cache in front of
+ * the table so a burst of retries costs no database round trip.
+ * The key is also used as the turn key, so a turn taken over after its owner crashed
+ * does not repeat tool side effects that were already committed.
+ * Keys are not supported with BUFFERED write-behind: the response has no ID to
+ * record until its batch is written, so retries could not be answered from it.
+ */
+@Service
+public class IdempotencyService {
+
+    private final IdempotencyRecordRepository repository;
+    private final ConversationService conversationService;
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Completed> completed;
+
+    private final Counter executedCounter;
+    private final Counter cacheReplayCounter;
+    private final Counter storeReplayCounter;
+    private final Counter attachedCounter;
+    private final Counter conflictCounter;
+
+    @Value("${agent.idempotency.ttl-ms:86400000}")
+    private long ttlMillis = 86400000;
+
+    @Value("${agent.idempotency.lock-timeout-ms:300000}")
+    private long lockTimeoutMillis = 300000;
+
+    public IdempotencyService(IdempotencyRecordRepository repository,
+                              ConversationService conversationService,
+                              MeterRegistry meterRegistry,
+                              @Value("${agent.idempotency.cache-size:10000}") int cacheSize) {
+        this.repository = repository;
+        this.conversationService = conversationService;
+        this.completed = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Completed> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        this.executedCounter = Counter.builder("agent.idempotency.executed")
+                .description("Idempotent requests that ran an agent turn")
+                .register(meterRegistry);
+        this.cacheReplayCounter = Counter.builder("agent.idempotency.replayed")
+                .tag("source", "cache")
+                .description("Retries answered with a stored response")
+                .register(meterRegistry);
+        this.storeReplayCounter = Counter.builder("agent.idempotency.replayed")
+                .tag("source", "store")
+                .description("Retries answered with a stored response")
+                .register(meterRegistry);
+        this.attachedCounter = Counter.builder("agent.idempotency.replayed")
+                .tag("source", "in-flight")
+                .description("Retries answered with a stored response")
+                .register(meterRegistry);
+        this.conflictCounter = Counter.builder("agent.idempotency.conflicts")
+                .description("Requests rejected because their key was reused or still in progress elsewhere")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Check if turns return their response saved, so it can be recorded under the key.
+     */
+    public boolean isSupported() {
+        return conversationService.returnsSavedMessages();
+    }
+
+    /**
+     * Run a turn at most once per conversation and key.
+     * Throws IllegalStateException if keys are not supported (see isSupported).
+     *
+     * @return the assistant message, and whether it was produced by an earlier request
+     */
+    public Outcome execute(Long conversationId, String key, String content, Turn turn) throws Exception {
+        if (!isSupported()) {
+            throw new IllegalStateException("Idempotency keys are not supported with buffered write-behind");
+        }
+        String id = conversationId + ":" + key;
+        String requestHash = hash(content);
+
+        Completed cached = getCompleted(id);
+        if (cached != null) {
+            checkHash(cached.requestHash(), requestHash);
+            cacheReplayCounter.increment();
+            return new Outcome(cached.message(), true);
+        }
+
+        InFlight mine = new InFlight(requestHash, new CompletableFuture<>());
+        InFlight running = inFlight.putIfAbsent(id, mine);
+        if (running != null) {
+            checkHash(running.requestHash(), requestHash);
+            attachedCounter.increment();
+            return new Outcome(await(running.result()).message(), true);
+        }
+
+        try {
+            Outcome outcome = executeClaimed(id, requestHash, turn);
+            mine.result().complete(outcome);
+            return outcome;
+        } catch (Exception e) {
+            mine.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, mine);
+        }
+    }
+
+    private Outcome executeClaimed(String id, String requestHash, Turn turn) throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyRecord stored = repository.findById(id).orElse(null);
+
+        if (stored != null && stored.getExpiresAt().isBefore(now)) {
+            repository.delete(stored);
+            stored = null;
+        }
+
+        if (stored != null) {
+            checkHash(stored.getRequestHash(), requestHash);
+            if (stored.getResultMessageId() != null) {
+                Optional<Message> message = conversationService.getMessage(stored.getResultMessageId());
+                if (message.isPresent()) {
+                    putCompleted(id, new Completed(requestHash, message.get(), stored.getExpiresAt()));
+                    storeReplayCounter.increment();
+                    return new Outcome(message.get(), true);
+                }
+                // The message has since been archived; run the request again
+                repository.delete(stored);
+                claim(id, requestHash, now);
+            } else if (repository.reclaimStale(id, now, now.minusNanos(lockTimeoutMillis * 1_000_000)) == 0) {
+                conflictCounter.increment();
+                throw new IdempotencyConflictException(IdempotencyConflictException.Reason.IN_PROGRESS,
+                        "A request with this Idempotency-Key is still being processed");
+            }
+        } else {
+            claim(id, requestHash, now);
+        }
+
+        Message message;
+        try {
+            message = turn.run("idempotency-" + id);
+        } catch (Exception e) {
+            // Failures are not recorded, so the client can retry with the same key
+            repository.deleteById(id);
+            throw e;
+        }
+
+        LocalDateTime expiresAt = LocalDateTime.now().plusNanos(ttlMillis * 1_000_000);
+        repository.complete(id, message.getId(), expiresAt);
+        putCompleted(id, new Completed(requestHash, message, expiresAt));
+        executedCounter.increment();
+        return new Outcome(message, false);
+    }
+
+    private void claim(String id, String requestHash, LocalDateTime now) {
+        try {
+            repository.saveAndFlush(new IdempotencyRecord(id, requestHash, now.plusNanos(ttlMillis * 1_000_000)));
+        } catch (DataIntegrityViolationException e) {
+            // Another node inserted the key first
+            conflictCounter.increment();
+            throw new IdempotencyConflictException(IdempotencyConflictException.Reason.IN_PROGRESS,
+                    "A request with this Idempotency-Key is still being processed");
+        }
+    }
+
+    private void checkHash(String storedHash, String requestHash) {
+        if (!storedHash.equals(requestHash)) {
+            conflictCounter.increment();
+            throw new IdempotencyConflictException(IdempotencyConflictException.Reason.KEY_REUSED,
+                    "Idempotency-Key was already used with a different request");
+        }
+    }
+
+    private static Outcome await(CompletableFuture<Outcome> result) throws Exception {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Completed getCompleted(String id) {
+        synchronized (completed) {
+            Completed entry = completed.get(id);
+            if (entry != null && entry.expiresAt().isBefore(LocalDateTime.now())) {
+                completed.remove(id);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private void putCompleted(String id, Completed entry) {
+        synchronized (completed) {
+            completed.put(id, entry);
+        }
+    }
+
+    /**
+     * Delete expired keys from the table and the cache.
+     */
+    @Scheduled(fixedDelayString = "${agent.idempotency.purge-interval-ms:600000}",
+            initialDelayString = "${agent.idempotency.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        synchronized (completed) {
+            completed.values().removeIf(entry -> entry.expiresAt().isBefore(now));
+        }
+        int deleted = repository.deleteExpired(now);
+        if (deleted > 0) {
+            System.out.println("Purged " + deleted + " expired idempotency keys");
+        }
+    }
+
+    private static String hash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * The agent turn guarded by a key; receives the turn key to pass to tools.
+     */
+    @FunctionalInterface
+    public interface Turn {
+        Message run(String turnKey) throws Exception;
+    }
+
+    /**
+     * Result of an idempotent request.
+     */
+    public record Outcome(Message message, boolean replayed) {
+    }
+
+    private record InFlight(String requestHash, CompletableFuture<Outcome> result) {
+    }
+
+    private record Completed(String requestHash, Message message, LocalDateTime expiresAt) {
+    }
+}
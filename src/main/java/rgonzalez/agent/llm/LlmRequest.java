@@ -1,7 +1,6 @@
 package rgonzalez.agent.llm;
 
 import java.util.List;
-import java.util.Map;
 
 /**
  * Request DTO for LLM API calls.
@@ -12,7 +11,8 @@ public class LlmRequest {
     private String model;
     private double temperature;
     private int maxTokens;
-    private Map<String, Object> tools;
+    private List<ToolDefinition> tools;
+    private String toolChoice; // "auto", "none" or null for provider default
 
     public LlmRequest() {
     }
@@ -56,20 +56,31 @@ public class LlmRequest {
         this.maxTokens = maxTokens;
     }
 
-    public Map<String, Object> getTools() {
+    public List<ToolDefinition> getTools() {
         return tools;
     }
 
-    public void setTools(Map<String, Object> tools) {
+    public void setTools(List<ToolDefinition> tools) {
         this.tools = tools;
     }
 
+    public String getToolChoice() {
+        return toolChoice;
+    }
+
+    public void setToolChoice(String toolChoice) {
+        this.toolChoice = toolChoice;
+    }
+
     /**
      * Message in LLM conversation format.
      */
     public static class LlmMessage {
-        private String role; // "system", "user", "assistant"
+        private String role; // "system", "user", "assistant", "tool"
         private String content;
+        private List<ToolCall> toolCalls; // assistant messages that request tool calls
+        private String toolCallId; // tool messages: the call this result answers
+        private String name; // tool messages: the tool that produced the result
 
         public LlmMessage() {
         }
@@ -79,6 +90,25 @@ public class LlmRequest {
             this.content = content;
         }
 
+        /**
+         * Create an assistant message echoing the tool calls requested by the model.
+         */
+        public static LlmMessage assistantToolCalls(List<ToolCall> toolCalls) {
+            LlmMessage message = new LlmMessage("assistant", null);
+            message.setToolCalls(toolCalls);
+            return message;
+        }
+
+        /**
+         * Create a tool message carrying the result of a tool call.
+         */
+        public static LlmMessage toolResult(String toolCallId, String name, String content) {
+            LlmMessage message = new LlmMessage("tool", content);
+            message.setToolCallId(toolCallId);
+            message.setName(name);
+            return message;
+        }
+
         public String getRole() {
             return role;
         }
@@ -94,5 +124,29 @@ public class LlmRequest {
         public void setContent(String content) {
             this.content = content;
         }
+
+        public List<ToolCall> getToolCalls() {
+            return toolCalls;
+        }
+
+        public void setToolCalls(List<ToolCall> toolCalls) {
+            this.toolCalls = toolCalls;
+        }
+
+        public String getToolCallId() {
+            return toolCallId;
+        }
+
+        public void setToolCallId(String toolCallId) {
+            this.toolCallId = toolCallId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
     }
 }
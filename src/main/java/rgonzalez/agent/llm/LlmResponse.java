@@ -1,5 +1,7 @@
 package rgonzalez.agent.llm;
 
+import java.util.List;
+
 /**
  * Response DTO for LLM API calls.
  */
@@ -73,6 +75,17 @@ public class LlmResponse {
         return null;
     }
 
+    /**
+     * Get the tool calls requested in the first choice, or an empty list.
+     */
+    public List<ToolCall> getFirstChoiceToolCalls() {
+        if (choices != null && choices.length > 0 && choices[0].getMessage() != null
+                && choices[0].getMessage().getToolCalls() != null) {
+            return choices[0].getMessage().getToolCalls();
+        }
+        return List.of();
+    }
+
     public static class Choice {
         private int index;
         private Message message;
@@ -106,6 +119,7 @@ public class LlmResponse {
     public static class Message {
         private String role;
         private String content;
+        private List<ToolCall> toolCalls;
 
         public String getRole() {
             return role;
@@ -122,6 +136,14 @@ public class LlmResponse {
         public void setContent(String content) {
             this.content = content;
         }
+
+        public List<ToolCall> getToolCalls() {
+            return toolCalls;
+        }
+
+        public void setToolCalls(List<ToolCall> toolCalls) {
+            this.toolCalls = toolCalls;
+        }
     }
 
     public static class Usage {
@@ -3,6 +3,11 @@ package rgonzalez.agent.llm;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 /**
  * OpenAI LLM Provider implementation.
  * Integrates with OpenAI API (ChatGPT, GPT-4, etc.)
@@ -91,22 +96,36 @@ public class OpenAiProvider implements LlmProvider {
             }
         }
 
-        // Simulate a response based on the request
-        String responseContent = generateSimulatedResponse(lastUserMessage);
-
         LlmResponse.Choice choice = new LlmResponse.Choice();
         choice.setIndex(0);
         LlmResponse.Message message = new LlmResponse.Message();
         message.setRole("assistant");
-        message.setContent(responseContent);
         choice.setMessage(message);
-        choice.setFinishReason("stop");
+
+        // Simulate native function calling: request tools before any results are available
+        List<ToolCall> toolCalls = shouldAnswerDirectly(request) ? List.of() : simulateToolCalls(request, lastUserMessage);
+        String responseContent;
+        if (!toolCalls.isEmpty()) {
+            responseContent = "";
+            message.setToolCalls(toolCalls);
+            choice.setFinishReason("tool_calls");
+        } else {
+            // Simulate a response based on the request
+            List<LlmRequest.LlmMessage> toolResults = getToolResultsSinceLastUserMessage(request);
+            responseContent = toolResults.isEmpty()
+                    ? generateSimulatedResponse(lastUserMessage)
+                    : generateSimulatedSummary(toolResults);
+            message.setContent(responseContent);
+            choice.setFinishReason("stop");
+        }
 
         response.setChoices(new LlmResponse.Choice[]{choice});
 
         LlmResponse.Usage usage = new LlmResponse.Usage();
-        usage.setPromptTokens(countTokens(String.join("\n",
-                request.getMessages().stream().map(LlmRequest.LlmMessage::getContent).toArray(String[]::new))));
+        usage.setPromptTokens(countTokens(request.getMessages().stream()
+                .map(LlmRequest.LlmMessage::getContent)
+                .filter(content -> content != null)
+                .collect(Collectors.joining("\n"))));
         usage.setCompletionTokens(countTokens(responseContent));
         usage.setTotalTokens(usage.getPromptTokens() + usage.getCompletionTokens());
         response.setUsage(usage);
@@ -114,6 +133,66 @@ public class OpenAiProvider implements LlmProvider {
         return response;
     }
 
+    /**
+     * Check if the model should answer rather than call tools: tools are not offered,
+     * tool use is disabled, or results for this turn have already been supplied.
+     */
+    private boolean shouldAnswerDirectly(LlmRequest request) {
+        if (request.getTools() == null || request.getTools().isEmpty() || "none".equals(request.getToolChoice())) {
+            return true;
+        }
+        return !getToolResultsSinceLastUserMessage(request).isEmpty();
+    }
+
+    /**
+     * Pick tool calls for the user message using the same keyword rules as the simple planner.
+     * All calls are returned at once, as a model issuing parallel tool calls would.
+     */
+    private List<ToolCall> simulateToolCalls(LlmRequest request, String userMessage) {
+        Set<String> offered = request.getTools().stream()
+                .map(tool -> tool.getFunction().getName())
+                .collect(Collectors.toSet());
+        String lowerMessage = userMessage.toLowerCase();
+        boolean overdue = lowerMessage.contains("overdue") || lowerMessage.contains("balance");
+
+        List<ToolCall> toolCalls = new ArrayList<>();
+        if (offered.contains("customer_search")
+                && (overdue || lowerMessage.contains("search") || lowerMessage.contains("find"))) {
+            toolCalls.add(new ToolCall("call_" + System.nanoTime(), "customer_search",
+                    "{\"minBalance\": 500, \"status\": \"overdue\", \"limit\": 100}"));
+        }
+        if (offered.contains("send_email_reminder")
+                && (overdue || lowerMessage.contains("email") || lowerMessage.contains("reminder"))) {
+            toolCalls.add(new ToolCall("call_" + System.nanoTime(), "send_email_reminder",
+                    "{\"templateType\": \"reminder\", \"subject\": \"Payment Reminder\"}"));
+        }
+        return toolCalls;
+    }
+
+    private List<LlmRequest.LlmMessage> getToolResultsSinceLastUserMessage(LlmRequest request) {
+        List<LlmRequest.LlmMessage> toolResults = new ArrayList<>();
+        List<LlmRequest.LlmMessage> messages = request.getMessages();
+        for (int i = messages.size() - 1; i >= 0 && !"user".equals(messages.get(i).getRole()); i--) {
+            if ("tool".equals(messages.get(i).getRole())) {
+                toolResults.add(0, messages.get(i));
+            }
+        }
+        return toolResults;
+    }
+
+    /**
+     * Generate a simulated answer summarizing the tool results of this turn.
+     */
+    private String generateSimulatedSummary(List<LlmRequest.LlmMessage> toolResults) {
+        StringBuilder summary = new StringBuilder("Here's what I did:\n");
+        for (LlmRequest.LlmMessage result : toolResults) {
+            String content = result.getContent() != null ? result.getContent() : "";
+            String firstLine = content.lines().findFirst().orElse("");
+            summary.append("- ").append(result.getName()).append(": ").append(firstLine).append("\n");
+        }
+        return summary.toString();
+    }
+
     /**
      * Generate a simulated response based on user message.
      * In production, this would be the actual LLM response.
@@ -0,0 +1,99 @@
+package rgonzalez.agent.llm;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A tool (function) invocation requested by the LLM.
+ * Arguments are kept as the raw JSON string returned by the model.
+ */
+public class ToolCall {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private String id;
+    private String type = "function";
+    private Function function;
+
+    public ToolCall() {
+    }
+
+    public ToolCall(String id, String name, String arguments) {
+        this.id = id;
+        this.function = new Function(name, arguments);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Function getFunction() {
+        return function;
+    }
+
+    public void setFunction(Function function) {
+        this.function = function;
+    }
+
+    /**
+     * Parse the JSON arguments into a parameter map.
+     */
+    public Map<String, Object> parseArguments() {
+        String arguments = function != null ? function.getArguments() : null;
+        if (arguments == null || arguments.isBlank()) {
+            return new HashMap<>();
+        }
+        try {
+            return objectMapper.readValue(arguments, new TypeReference<Map<String, Object>>() { });
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid tool call arguments: " + arguments, e);
+        }
+    }
+
+    /**
+     * Name and JSON-encoded arguments of the called function.
+     */
+    public static class Function {
+        private String name;
+        private String arguments;
+
+        public Function() {
+        }
+
+        public Function(String name, String arguments) {
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getArguments() {
+            return arguments;
+        }
+
+        public void setArguments(String arguments) {
+            this.arguments = arguments;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package rgonzalez.agent.llm;
+
+import java.util.Map;
+
+/**
+ * Tool (function) definition offered to the LLM for native function calling.
+ */
+public class ToolDefinition {
+
+    private String type = "function";
+    private Function function;
+
+    public ToolDefinition() {
+    }
+
+    public ToolDefinition(String name, String description, Map<String, Object> parameters) {
+        this.function = new Function(name, description, parameters);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Function getFunction() {
+        return function;
+    }
+
+    public void setFunction(Function function) {
+        this.function = function;
+    }
+
+    /**
+     * Function name, description and JSON schema of its parameters.
+     */
+    public static class Function {
+        private String name;
+        private String description;
+        private Map<String, Object> parameters;
+
+        public Function() {
+        }
+
+        public Function(String name, String description, Map<String, Object> parameters) {
+            this.name = name;
+            this.description = description;
+            this.parameters = parameters;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public void setDescription(String description) {
+            this.description = description;
+        }
+
+        public Map<String, Object> getParameters() {
+            return parameters;
+        }
+
+        public void setParameters(Map<String, Object> parameters) {
+            this.parameters = parameters;
+        }
+    }
+}
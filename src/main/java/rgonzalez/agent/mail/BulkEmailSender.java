@@ -0,0 +1,142 @@
+package rgonzalez.agent.mail;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends batches of emails over a small pool of reused, pipelined SMTP sessions.
+ * Each worker holds one session and pulls the next message from a shared cursor,
+ * so parallelism is bounded by the worker count and no session is opened per message.
+ * A session that reaches the per-connection message cap is recycled mid-batch.
+ */
+@Component
+public class BulkEmailSender {
+
+    private final boolean enabled;
+    private final String from;
+    private final int parallelism;
+    private final SmtpConnectionPool pool;
+    private final ExecutorService workers;
+
+    public BulkEmailSender(@Value("${mail.smtp.enabled:false}") boolean enabled,
+                           @Value("${mail.smtp.host:localhost}") String host,
+                           @Value("${mail.smtp.port:25}") int port,
+                           @Value("${mail.from:noreply@portfolio-agent.local}") String from,
+                           @Value("${mail.smtp.pool-size:4}") int poolSize,
+                           @Value("${mail.smtp.parallelism:4}") int parallelism,
+                           @Value("${mail.smtp.timeout-ms:10000}") int timeoutMillis,
+                           @Value("${mail.smtp.max-messages-per-connection:100}") int maxMessagesPerConnection) {
+        this.enabled = enabled;
+        this.from = from;
+        // More workers than sessions would only queue on the pool
+        this.parallelism = Math.max(1, Math.min(parallelism, poolSize));
+        this.pool = new SmtpConnectionPool(host, port, "portfolio-agent", Math.max(1, poolSize),
+                timeoutMillis, maxMessagesPerConnection, 30_000);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "smtp-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Check if real SMTP delivery is configured.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Send all messages and report the outcome for each recipient.
+     * Blocks until every message has been accepted, rejected or failed.
+     */
+    public BulkSendReport send(List<EmailMessage> messages) {
+        long start = System.currentTimeMillis();
+        int[] replyCodes = new int[messages.size()];
+        Map<Integer, String> failureReasons = new ConcurrentHashMap<>();
+        AtomicInteger cursor = new AtomicInteger();
+
+        int workerCount = Math.min(parallelism, messages.size());
+        List<Future<?>> futures = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            futures.add(workers.submit(() -> drain(messages, cursor, replyCodes, failureReasons)));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                System.err.println("SMTP worker failed: " + e.getCause().getMessage());
+            }
+        }
+
+        return new BulkSendReport(messages, replyCodes, failureReasons, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Worker loop: keep one session and send messages until the batch is exhausted,
+     * swapping it for a fresh one whenever it reaches the per-connection cap.
+     */
+    private void drain(List<EmailMessage> messages, AtomicInteger cursor,
+                       int[] replyCodes, Map<Integer, String> failureReasons) {
+        SmtpConnection connection = null;
+        try {
+            int index;
+            while ((index = cursor.getAndIncrement()) < messages.size()) {
+                try {
+                    if (connection == null) {
+                        connection = pool.borrow();
+                    }
+                    SmtpReply reply = connection.send(from, messages.get(index));
+                    replyCodes[index] = reply.code();
+                    if (!reply.isPositive()) {
+                        failureReasons.put(index, reply.describe());
+                    }
+                    if (!pool.isReusable(connection)) {
+                        // Servers cap messages per session; recycle before they start refusing
+                        pool.release(connection);
+                        connection = null;
+                    }
+                } catch (IOException e) {
+                    replyCodes[index] = BulkSendReport.IO_FAILURE;
+                    failureReasons.put(index, e.getMessage());
+                    if (connection != null) {
+                        pool.invalidate(connection);
+                        connection = null;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    replyCodes[index] = BulkSendReport.IO_FAILURE;
+                    failureReasons.put(index, "Interrupted");
+                    return;
+                }
+            }
+        } finally {
+            if (connection != null) {
+                pool.release(connection);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+        pool.close();
+    }
+}
@@ -0,0 +1,108 @@
+package rgonzalez.agent.mail;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-recipient outcome of a bulk send.
+ * Outcomes are kept as one SMTP reply code per message (0 for I/O failures),
+ * with reply text retained only for the messages that failed.
+ */
+public class BulkSendReport {
+
+    /**
+     * Reply code recorded when a message could not be handed to the server at all.
+     */
+    public static final int IO_FAILURE = 0;
+
+    private final List<EmailMessage> messages;
+    private final int[] replyCodes;
+    private final Map<Integer, String> failureReasons;
+    private final long elapsedMillis;
+
+    BulkSendReport(List<EmailMessage> messages, int[] replyCodes,
+                   Map<Integer, String> failureReasons, long elapsedMillis) {
+        this.messages = messages;
+        this.replyCodes = replyCodes;
+        this.failureReasons = failureReasons;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getTotal() {
+        return replyCodes.length;
+    }
+
+    public int getDeliveredCount() {
+        int delivered = 0;
+        for (int code : replyCodes) {
+            if (isPositive(code)) {
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    public int getFailedCount() {
+        return replyCodes.length - getDeliveredCount();
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * Check if the message at the given position was accepted by the server.
+     */
+    public boolean isDelivered(int index) {
+        return isPositive(replyCodes[index]);
+    }
+
+    /**
+     * Check if the message at the given position was rejected permanently (5xx).
+     */
+    public boolean isPermanentFailure(int index) {
+        return replyCodes[index] >= 500 && replyCodes[index] < 600;
+    }
+
+    /**
+     * Get the SMTP reply code for the message at the given position.
+     */
+    public int getReplyCode(int index) {
+        return replyCodes[index];
+    }
+
+    /**
+     * Get the failure reason for the message at the given position, or null if delivered.
+     */
+    public String getFailureReason(int index) {
+        return failureReasons.get(index);
+    }
+
+    /**
+     * Get failure reasons keyed by recipient, in send order.
+     */
+    public Map<String, String> getFailures() {
+        Map<String, String> failures = new LinkedHashMap<>();
+        for (int i = 0; i < replyCodes.length; i++) {
+            if (!isPositive(replyCodes[i])) {
+                failures.put(messages.get(i).recipient(), failureReasons.get(i));
+            }
+        }
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Get a one-line summary of the send.
+     */
+    public String summary() {
+        double perMinute = elapsedMillis > 0 ? getTotal() * 60_000.0 / elapsedMillis : getTotal();
+        return String.format("%d/%d delivered, %d failed in %d ms (%.0f msg/min)",
+                getDeliveredCount(), getTotal(), getFailedCount(), elapsedMillis, perMinute);
+    }
+
+    private static boolean isPositive(int code) {
+        return code >= 200 && code < 300;
+    }
+}
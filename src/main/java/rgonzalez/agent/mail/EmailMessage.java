@@ -0,0 +1,18 @@
+package rgonzalez.agent.mail;
+
+/**
+ * A plain-text email addressed to a single recipient.
+ * The optional message ID is sent as the Message-ID header so that a message
+ * re-sent after a crash can be recognised as a duplicate downstream.
+ */
+public record EmailMessage(
+        String recipient,
+        String subject,
+        String body,
+        String messageId
+) {
+
+    public EmailMessage(String recipient, String subject, String body) {
+        this(recipient, subject, body, null);
+    }
+}
@@ -0,0 +1,155 @@
+package rgonzalez.agent.mail;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import rgonzalez.agent.entity.EmailOutboxEntry;
+import rgonzalez.agent.repository.EmailOutboxRepository;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Outbox for outgoing emails, delivered later by the dispatcher.
+ * Enqueued emails are persisted in a transaction of their own. Tools run outside any
+ * transaction (turns run in short phases), so emails queued for a conversation turn
+ * are written as PENDING_COMMIT and only become deliverable when the transaction that
+ * saves the turn's response releases them: a turn that fails afterwards sends nothing.
+ * Dedupe keys make re-running the same unit of work safe, so a retried turn does not
+ * send its emails twice.
+ */
+@Component
+public class EmailOutbox {
+
+    private static final int MAX_INSERT_ATTEMPTS = 3;
+
+    private final EmailOutboxRepository outboxRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter enqueuedCounter;
+    private final Counter duplicateCounter;
+
+    // Kept long enough for an interrupted turn to be resumed and release them
+    @Value("${mail.outbox.uncommitted-ttl-ms:86400000}")
+    private long uncommittedTtlMillis = 86400000;
+
+    public EmailOutbox(EmailOutboxRepository outboxRepository, PlatformTransactionManager transactionManager,
+                       MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        // A duplicate key rolls back the insert, so it must not take a caller's transaction with it
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enqueuedCounter = Counter.builder("email.outbox.enqueued")
+                .description("Emails written to the outbox")
+                .register(meterRegistry);
+        this.duplicateCounter = Counter.builder("email.outbox.duplicates")
+                .description("Emails skipped because their dedupe key was already queued")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue emails for immediate delivery, skipping any whose dedupe key is already present.
+     * The dedupe scope identifies the unit of work so that re-running it does not queue
+     * the same email twice.
+     *
+     * @return The entries that were newly queued, in input order
+     */
+    public List<EmailOutboxEntry> enqueue(String dedupeScope, List<EmailMessage> messages) {
+        return insert(dedupeScope, null, messages);
+    }
+
+    /**
+     * Queue emails for a conversation turn, deduplicated on its key. They are held until
+     * {@link #releaseTurn} runs in the transaction that saves the turn's response.
+     *
+     * @return The entries that were newly queued, in input order
+     */
+    public List<EmailOutboxEntry> enqueueForTurn(String turnKey, List<EmailMessage> messages) {
+        return insert(turnKey, turnKey, messages);
+    }
+
+    /**
+     * Make the emails queued by a turn deliverable. Joins the caller's transaction, so
+     * they are released only if the turn's response commits.
+     */
+    @Transactional
+    public void releaseTurn(String turnKey) {
+        outboxRepository.releaseTurn(turnKey);
+    }
+
+    /**
+     * Delete emails held for turns that never committed.
+     */
+    @Scheduled(fixedDelayString = "${mail.outbox.uncommitted-purge-interval-ms:3600000}",
+            initialDelayString = "${mail.outbox.uncommitted-purge-interval-ms:3600000}")
+    public void purgeUncommitted() {
+        int deleted = outboxRepository.deleteUncommittedBefore(
+                LocalDateTime.now().minusNanos(uncommittedTtlMillis * 1_000_000));
+        if (deleted > 0) {
+            System.out.println("Purged " + deleted + " outbox emails of turns that never completed");
+        }
+    }
+
+    private List<EmailOutboxEntry> insert(String dedupeScope, String turnKey, List<EmailMessage> messages) {
+        Map<String, EmailMessage> byKey = new LinkedHashMap<>();
+        for (EmailMessage message : messages) {
+            byKey.putIfAbsent(dedupeKey(dedupeScope, message), message);
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                List<EmailOutboxEntry> saved = transactionTemplate.execute(status -> insertNew(byKey, turnKey));
+                duplicateCounter.increment(messages.size() - saved.size());
+                enqueuedCounter.increment(saved.size());
+                return saved;
+            } catch (DataIntegrityViolationException e) {
+                // A concurrent run of the same unit of work inserted some keys first; they count as duplicates
+                if (attempt >= MAX_INSERT_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private List<EmailOutboxEntry> insertNew(Map<String, EmailMessage> byKey, String turnKey) {
+        Set<String> existing = outboxRepository.findExistingDedupeKeys(byKey.keySet());
+        List<EmailOutboxEntry> entries = new ArrayList<>(byKey.size());
+        byKey.forEach((key, message) -> {
+            if (!existing.contains(key)) {
+                entries.add(new EmailOutboxEntry(key, message.recipient(), message.subject(), message.body(), turnKey));
+            }
+        });
+        if (entries.isEmpty()) {
+            return entries;
+        }
+        // Flushed here so a duplicate key surfaces inside the retry loop rather than at commit
+        return outboxRepository.saveAllAndFlush(entries);
+    }
+
+    /**
+     * Build a stable dedupe key from the scope and the email's identity.
+     */
+    static String dedupeKey(String dedupeScope, EmailMessage message) {
+        String identity = dedupeScope + "|" + message.recipient() + "|" + message.subject();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(identity.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
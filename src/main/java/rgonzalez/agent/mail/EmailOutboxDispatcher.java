@@ -0,0 +1,186 @@
+package rgonzalez.agent.mail;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import rgonzalez.agent.entity.EmailOutboxEntry;
+import rgonzalez.agent.entity.EmailOutboxStatus;
+import rgonzalez.agent.repository.EmailOutboxRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Background dispatcher that drains the email outbox in batches.
+ * Each batch is first claimed: its rows are marked IN_FLIGHT with a claim token
+ * and a lease by a conditional update, so several instances (or an overlapping
+ * run) never pick the same rows. Failed deliveries are retried with exponential
+ * backoff and jitter until they succeed, are rejected permanently, or run out of
+ * attempts. Delivery is at-least-once: if a dispatcher dies between sending and
+ * recording the outcome, its lease runs out and the batch is claimed and re-sent,
+ * carrying the dedupe key as its Message-ID. Outcomes are recorded only for rows
+ * still claimed with this dispatcher's token, so a dispatcher that outlived its lease
+ * cannot overwrite the outcome recorded by the one that took the rows over.
+ */
+@Component
+public class EmailOutboxDispatcher {
+
+    private final EmailOutboxRepository outboxRepository;
+    private final BulkEmailSender bulkEmailSender;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter sentCounter;
+    private final Counter failedCounter;
+    private final Counter retriedCounter;
+    private final Timer batchTimer;
+
+    @Value("${mail.outbox.batch-size:200}")
+    private int batchSize = 200;
+
+    @Value("${mail.outbox.max-attempts:6}")
+    private int maxAttempts = 6;
+
+    @Value("${mail.outbox.initial-backoff-ms:5000}")
+    private long initialBackoffMillis = 5000;
+
+    @Value("${mail.outbox.max-backoff-ms:900000}")
+    private long maxBackoffMillis = 900000;
+
+    // Must exceed the time to deliver a batch, or another dispatcher may re-send it
+    @Value("${mail.outbox.lease-ms:300000}")
+    private long leaseMillis = 300000;
+
+    public EmailOutboxDispatcher(EmailOutboxRepository outboxRepository,
+                                 BulkEmailSender bulkEmailSender,
+                                 PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.bulkEmailSender = bulkEmailSender;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sentCounter = Counter.builder("email.outbox.sent")
+                .description("Outbox emails accepted by the SMTP server")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("email.outbox.failed")
+                .description("Outbox emails given up on")
+                .register(meterRegistry);
+        this.retriedCounter = Counter.builder("email.outbox.retried")
+                .description("Outbox delivery attempts scheduled for retry")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("email.outbox.batch")
+                .description("Time to deliver one outbox batch")
+                .register(meterRegistry);
+        Gauge.builder("email.outbox.pending", outboxRepository,
+                        repository -> repository.countByStatus(EmailOutboxStatus.PENDING))
+                .description("Emails waiting in the outbox")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Drain all due outbox entries. Runs with a fixed delay, so invocations never overlap.
+     */
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-interval-ms:1000}")
+    public void dispatch() {
+        if (!bulkEmailSender.isEnabled()) {
+            return;
+        }
+
+        int dispatched;
+        do {
+            dispatched = dispatchBatch();
+        } while (dispatched == batchSize);
+    }
+
+    /**
+     * Claim one batch of due entries, deliver it and record each outcome.
+     *
+     * @return The number of entries found due, claimed by this or another dispatcher
+     */
+    int dispatchBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> due = outboxRepository.findClaimableIds(now, PageRequest.of(0, batchSize));
+        if (due.isEmpty()) {
+            return 0;
+        }
+        String claimToken = UUID.randomUUID().toString();
+        if (outboxRepository.claim(due, claimToken, now, now.plus(Duration.ofMillis(leaseMillis))) == 0) {
+            // Another dispatcher claimed them first
+            return due.size();
+        }
+        List<EmailOutboxEntry> batch = outboxRepository.findByClaimedByAndStatusOrderByIdAsc(
+                claimToken, EmailOutboxStatus.IN_FLIGHT);
+
+        List<EmailMessage> messages = batch.stream()
+                .map(entry -> new EmailMessage(entry.getRecipient(), entry.getSubject(), entry.getBody(),
+                        entry.getDedupeKey() + "@portfolio-agent"))
+                .toList();
+        BulkSendReport report = batchTimer.record(() -> bulkEmailSender.send(messages));
+
+        int lost = transactionTemplate.execute(status -> {
+            int lostClaims = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                if (!finish(batch.get(i), claimToken, report, i, now)) {
+                    lostClaims++;
+                }
+            }
+            return lostClaims;
+        });
+
+        if (lost > 0) {
+            System.err.println("Email outbox lease ran out for " + lost
+                    + " entries before their outcome was recorded; they were claimed again");
+        }
+        System.out.println("Email outbox batch: " + report.summary());
+        return batch.size();
+    }
+
+    /**
+     * Record the outcome of one delivery attempt if this dispatcher still holds the claim.
+     *
+     * @return Whether the outcome was recorded
+     */
+    private boolean finish(EmailOutboxEntry entry, String claimToken, BulkSendReport report, int index,
+                           LocalDateTime now) {
+        int attempts = entry.getAttempts() + 1;
+        if (report.isDelivered(index)) {
+            sentCounter.increment();
+            return outboxRepository.finish(entry.getId(), claimToken, EmailOutboxStatus.SENT, attempts,
+                    entry.getNextAttemptAt(), LocalDateTime.now(), null) == 1;
+        }
+        String reason = truncate(report.getFailureReason(index));
+        if (report.isPermanentFailure(index) || attempts >= maxAttempts) {
+            failedCounter.increment();
+            return outboxRepository.finish(entry.getId(), claimToken, EmailOutboxStatus.FAILED, attempts,
+                    entry.getNextAttemptAt(), null, reason) == 1;
+        }
+        retriedCounter.increment();
+        return outboxRepository.finish(entry.getId(), claimToken, EmailOutboxStatus.PENDING, attempts,
+                now.plus(backoff(attempts)), null, reason) == 1;
+    }
+
+    /**
+     * Exponential backoff with +/-20% jitter so retries from one outage do not arrive together.
+     */
+    private Duration backoff(int attempts) {
+        long exponential = initialBackoffMillis << Math.min(attempts - 1, 20);
+        long capped = Math.min(exponential, maxBackoffMillis);
+        long jitter = (long) (capped * 0.2 * (ThreadLocalRandom.current().nextDouble() * 2 - 1));
+        return Duration.ofMillis(Math.max(0, capped + jitter));
+    }
+
+    private static String truncate(String reason) {
+        if (reason == null) {
+            return null;
+        }
+        return reason.length() > 1000 ? reason.substring(0, 1000) : reason;
+    }
+}
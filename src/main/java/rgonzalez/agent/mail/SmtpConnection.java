@@ -0,0 +1,293 @@
+package rgonzalez.agent.mail;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * A single SMTP session that delivers many messages over one socket.
+ * When the server advertises PIPELINING (RFC 2920), MAIL FROM, RCPT TO and DATA
+ * are written in one batch so each message costs two round trips instead of four.
+ */
+class SmtpConnection implements Closeable {
+
+    private static final String CRLF = "\r\n";
+
+    // Rejected before anything is written: lets a value end the command line or the address
+    private static final SmtpReply INVALID_MAILBOX = new SmtpReply(553, List.of("Mailbox name not allowed"));
+
+    private final Socket socket;
+    private final BufferedReader reader;
+    private final Writer writer;
+    private boolean pipelining;
+    private boolean broken;
+    private int messagesSent;
+    private long lastUsedAt;
+
+    private SmtpConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        this.lastUsedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Connect to the server and complete the EHLO (or HELO) handshake.
+     */
+    static SmtpConnection open(String host, int port, String heloName, int timeoutMillis) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            socket.setTcpNoDelay(true);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        SmtpConnection connection = new SmtpConnection(socket);
+        try {
+            connection.handshake(heloName);
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    private void handshake(String heloName) throws IOException {
+        expect(readReply(), 220);
+
+        writeLine("EHLO " + heloName);
+        writer.flush();
+        SmtpReply ehlo = readReply();
+        if (ehlo.isPositive()) {
+            pipelining = ehlo.lines().stream().anyMatch(line -> line.trim().equalsIgnoreCase("PIPELINING"));
+            return;
+        }
+
+        // Server does not speak ESMTP, fall back to plain SMTP without pipelining
+        writeLine("HELO " + heloName);
+        writer.flush();
+        expect(readReply(), 250);
+    }
+
+    /**
+     * Deliver a single message. Protocol-level rejections are returned as the reply;
+     * I/O failures are thrown and leave the connection unusable.
+     */
+    SmtpReply send(String from, EmailMessage message) throws IOException {
+        if (!isSafeAddress(from) || !isSafeAddress(message.recipient())
+                || (message.messageId() != null && !isSafeAddress(message.messageId()))) {
+            return INVALID_MAILBOX;
+        }
+        try {
+            SmtpReply reply = pipelining ? sendPipelined(from, message) : sendSequential(from, message);
+            lastUsedAt = System.currentTimeMillis();
+            return reply;
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    private SmtpReply sendPipelined(String from, EmailMessage message) throws IOException {
+        writeLine("MAIL FROM:<" + from + ">");
+        writeLine("RCPT TO:<" + message.recipient() + ">");
+        writeLine("DATA");
+        writer.flush();
+
+        SmtpReply mail = readReply();
+        SmtpReply rcpt = readReply();
+        SmtpReply data = readReply();
+
+        if (!mail.isPositive() || !rcpt.isPositive()) {
+            abortTransaction(data);
+            return mail.isPositive() ? rcpt : mail;
+        }
+        if (data.code() != 354) {
+            abortTransaction(data);
+            return data;
+        }
+        return writeContent(from, message);
+    }
+
+    private SmtpReply sendSequential(String from, EmailMessage message) throws IOException {
+        SmtpReply mail = command("MAIL FROM:<" + from + ">");
+        if (!mail.isPositive()) {
+            return mail;
+        }
+        SmtpReply rcpt = command("RCPT TO:<" + message.recipient() + ">");
+        if (!rcpt.isPositive()) {
+            command("RSET");
+            return rcpt;
+        }
+        SmtpReply data = command("DATA");
+        if (data.code() != 354) {
+            command("RSET");
+            return data;
+        }
+        return writeContent(from, message);
+    }
+
+    /**
+     * Clear a failed transaction so the session can be reused for the next message.
+     */
+    private void abortTransaction(SmtpReply dataReply) throws IOException {
+        if (dataReply.code() == 354) {
+            // Server accepted DATA despite the failure; send an empty body to close it
+            writeLine(".");
+            writer.flush();
+            readReply();
+        }
+        command("RSET");
+    }
+
+    private SmtpReply writeContent(String from, EmailMessage message) throws IOException {
+        writeLine("From: <" + from + ">");
+        writeLine("To: <" + message.recipient() + ">");
+        writeLine("Subject: " + encodeHeader(message.subject()));
+        writeLine("Date: " + DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now()));
+        if (message.messageId() != null) {
+            writeLine("Message-ID: <" + message.messageId() + ">");
+        }
+        writeLine("MIME-Version: 1.0");
+        writeLine("Content-Type: text/plain; charset=UTF-8");
+        writeLine("Content-Transfer-Encoding: 8bit");
+        writeLine("");
+
+        String body = message.body() != null ? message.body() : "";
+        for (String line : body.split("\r?\n", -1)) {
+            // Dot-stuffing (RFC 5321 4.5.2)
+            writeLine(line.startsWith(".") ? "." + line : line);
+        }
+        writeLine(".");
+        writer.flush();
+
+        SmtpReply reply = readReply();
+        if (reply.isPositive()) {
+            messagesSent++;
+        }
+        return reply;
+    }
+
+    /**
+     * Check that the server still answers, used before reusing an idle session.
+     */
+    boolean ping() {
+        try {
+            return command("NOOP").isPositive();
+        } catch (IOException e) {
+            broken = true;
+            return false;
+        }
+    }
+
+    boolean isBroken() {
+        return broken || socket.isClosed();
+    }
+
+    boolean supportsPipelining() {
+        return pipelining;
+    }
+
+    int getMessagesSent() {
+        return messagesSent;
+    }
+
+    long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    private SmtpReply command(String line) throws IOException {
+        writeLine(line);
+        writer.flush();
+        return readReply();
+    }
+
+    private void writeLine(String line) throws IOException {
+        writer.write(line);
+        writer.write(CRLF);
+    }
+
+    private SmtpReply readReply() throws IOException {
+        List<String> lines = new ArrayList<>();
+        while (true) {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("SMTP server closed the connection");
+            }
+            if (line.length() < 3) {
+                throw new IOException("Malformed SMTP reply: " + line);
+            }
+            int code;
+            try {
+                code = Integer.parseInt(line.substring(0, 3));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed SMTP reply: " + line, e);
+            }
+            lines.add(line.length() > 4 ? line.substring(4) : "");
+            if (line.length() == 3 || line.charAt(3) != '-') {
+                return new SmtpReply(code, lines);
+            }
+        }
+    }
+
+    private static void expect(SmtpReply reply, int code) throws IOException {
+        if (reply.code() != code) {
+            throw new IOException("Unexpected SMTP reply: " + reply.describe());
+        }
+    }
+
+    /**
+     * Check that an address (or Message-ID) cannot break out of its command line or
+     * angle brackets: no control characters, whitespace or angle brackets.
+     */
+    static boolean isSafeAddress(String value) {
+        return value != null && !value.isEmpty()
+                && value.chars().allMatch(c -> c > ' ' && c != 0x7f && c != '<' && c != '>');
+    }
+
+    /**
+     * Encode header values that are not printable ASCII as RFC 2047 encoded words,
+     * so control characters such as CR and LF cannot end the header.
+     */
+    private static String encodeHeader(String value) {
+        if (value == null) {
+            return "";
+        }
+        boolean printable = value.chars().allMatch(c -> c >= ' ' && c < 0x7f);
+        if (printable) {
+            return value;
+        }
+        return "=?UTF-8?B?" + Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8)) + "?=";
+    }
+
+    @Override
+    public void close() {
+        if (!broken && !socket.isClosed()) {
+            try {
+                command("QUIT");
+            } catch (IOException ignored) {
+                // Closing anyway
+            }
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Nothing left to release
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package rgonzalez.agent.mail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small fixed-size pool of SMTP sessions.
+ * Sessions are opened lazily, reused across messages, and recycled after a
+ * configurable number of messages since most servers cap messages per session.
+ */
+class SmtpConnectionPool implements Closeable {
+
+    private final String host;
+    private final int port;
+    private final String heloName;
+    private final int timeoutMillis;
+    private final int maxMessagesPerConnection;
+    private final long idleValidationMillis;
+
+    private final Semaphore permits;
+    private final BlockingQueue<SmtpConnection> idle;
+    private volatile boolean closed;
+
+    SmtpConnectionPool(String host, int port, String heloName, int maxConnections,
+                       int timeoutMillis, int maxMessagesPerConnection, long idleValidationMillis) {
+        this.host = host;
+        this.port = port;
+        this.heloName = heloName;
+        this.timeoutMillis = timeoutMillis;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.idleValidationMillis = idleValidationMillis;
+        this.permits = new Semaphore(maxConnections, true);
+        this.idle = new LinkedBlockingQueue<>(maxConnections);
+    }
+
+    /**
+     * Borrow a session, reusing an idle one when possible.
+     */
+    SmtpConnection borrow() throws IOException, InterruptedException {
+        if (closed) {
+            throw new IOException("SMTP connection pool is closed");
+        }
+        if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new IOException("Timed out waiting for an SMTP connection");
+        }
+
+        try {
+            SmtpConnection connection;
+            while ((connection = idle.poll()) != null) {
+                if (isReusable(connection) && isAlive(connection)) {
+                    return connection;
+                }
+                connection.close();
+            }
+            return SmtpConnection.open(host, port, heloName, timeoutMillis);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Return a healthy session to the pool.
+     */
+    void release(SmtpConnection connection) {
+        if (closed || !isReusable(connection) || !idle.offer(connection)) {
+            connection.close();
+        }
+        permits.release();
+    }
+
+    /**
+     * Discard a session after an I/O failure.
+     */
+    void invalidate(SmtpConnection connection) {
+        connection.close();
+        permits.release();
+    }
+
+    /**
+     * Check if a session may send another message: not broken and under the cap.
+     */
+    boolean isReusable(SmtpConnection connection) {
+        return !connection.isBroken() && connection.getMessagesSent() < maxMessagesPerConnection;
+    }
+
+    private boolean isAlive(SmtpConnection connection) {
+        long idleFor = System.currentTimeMillis() - connection.getLastUsedAt();
+        return idleFor < idleValidationMillis || connection.ping();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        SmtpConnection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+}
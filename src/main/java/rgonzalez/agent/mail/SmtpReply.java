@@ -0,0 +1,33 @@
+package rgonzalez.agent.mail;
+
+import java.util.List;
+
+/**
+ * A (possibly multi-line) reply returned by an SMTP server.
+ */
+public record SmtpReply(
+        int code,
+        List<String> lines
+) {
+
+    /**
+     * Check if the reply is a 2xx completion.
+     */
+    public boolean isPositive() {
+        return code >= 200 && code < 300;
+    }
+
+    /**
+     * Check if the reply is a 5xx failure that will not succeed on retry.
+     */
+    public boolean isPermanentFailure() {
+        return code >= 500 && code < 600;
+    }
+
+    /**
+     * Get the reply as a single line, e.g. "550 Mailbox unavailable".
+     */
+    public String describe() {
+        return code + " " + String.join(" ", lines);
+    }
+}
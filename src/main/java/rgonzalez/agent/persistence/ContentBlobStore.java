@@ -0,0 +1,322 @@
+package rgonzalez.agent.persistence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import rgonzalez.agent.entity.ContentBlob;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.repository.ContentBlobRepository;
+import rgonzalez.agent.repository.ContentRefCount;
+import rgonzalez.agent.repository.MessageContentRef;
+import rgonzalez.agent.repository.MessageRepository;
+import rgonzalez.agent.repository.MessageView;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-addressed storage for large message payloads. Content at or above the
+ * size threshold is stored once per distinct value in content_blobs, keyed by its
+ * SHA-256 and gzip-compressed when that makes it smaller; the message keeps only
+ * the hash. Blobs are reference counted: saving a message takes a reference in the
+ * same transaction, deleting messages (archiving) releases them, and blobs left
+ * without references are purged after a grace period.
+ *
+ * A blob is inserted by prepare(), in its own transaction before the one that saves
+ * the message, so concurrent turns with the same new content collide there rather
+ * than failing the turn. Decompressed contents of recently used blobs are cached, and
+ * prepare() skips blobs in the cache; purged blobs are evicted from it. A blob missing
+ * when the message is saved (e.g. purged by another node whose cache this one does not
+ * see) is stored again with a MERGE, so concurrent turns do not collide there either.
+ */
+@Component
+public class ContentBlobStore {
+
+    private static final int PURGE_BATCH_SIZE = 500;
+
+    private final ContentBlobRepository blobRepository;
+    private final MessageRepository messageRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String, String> contents;
+
+    private final Counter storedCounter;
+    private final Counter referencedCounter;
+    private final Counter purgedCounter;
+
+    @Value("${agent.content.blobs.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${agent.content.blobs.min-chars:1024}")
+    private int minChars = 1024;
+
+    @Value("${agent.content.blobs.compress:true}")
+    private boolean compress = true;
+
+    @Value("${agent.content.blobs.purge-grace-ms:3600000}")
+    private long purgeGraceMillis = 3600000;
+
+    public ContentBlobStore(ContentBlobRepository blobRepository,
+                            MessageRepository messageRepository,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Value("${agent.content.blobs.cache-size:1000}") int cacheSize) {
+        this.blobRepository = blobRepository;
+        this.messageRepository = messageRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.contents = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        this.storedCounter = Counter.builder("content.blobs.stored")
+                .description("Distinct large payloads stored as content blobs")
+                .register(meterRegistry);
+        this.referencedCounter = Counter.builder("content.blobs.references")
+                .description("Messages saved with a reference to a content blob")
+                .register(meterRegistry);
+        this.purgedCounter = Counter.builder("content.blobs.purged")
+                .description("Unreferenced content blobs deleted")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Check if content is large enough to be stored as a blob.
+     */
+    public boolean isBlobContent(String content) {
+        return enabled && content != null && content.length() >= minChars;
+    }
+
+    /**
+     * Make sure a blob exists for content that will be stored as one. Runs in its
+     * own transaction, so call it before, not inside, the transaction saving the message.
+     */
+    public void prepare(String content) {
+        if (!isBlobContent(content)) {
+            return;
+        }
+        String hash = hash(content);
+        if (cached(hash) != null) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!blobRepository.existsById(hash)) {
+                    blobRepository.saveAndFlush(newBlob(hash, content, 0));
+                    storedCounter.increment();
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Inserted by a concurrent turn with the same content
+        }
+        cache(hash, content);
+    }
+
+    /**
+     * Move a message's content to its blob, if large enough, and take a reference.
+     * Must run in the transaction that saves the message.
+     */
+    public void attach(Message message) {
+        String hash = message.getContentHash();
+        if (hash == null) {
+            if (!isBlobContent(message.getContent())) {
+                return;
+            }
+            hash = hash(message.getContent());
+            message.moveContentToBlob(hash);
+        }
+        if (blobRepository.acquire(hash) == 0) {
+            // Not prepared, or purged since it was; another turn may be storing it too
+            ContentBlob blob = newBlob(hash, message.getContent(), 1);
+            blobRepository.acquireOrInsert(hash, blob.getData(), blob.isCompressed(), blob.getContentLength(),
+                    blob.getCreatedAt());
+            storedCounter.increment();
+        }
+        referencedCounter.increment();
+    }
+
+    /**
+     * Release the references held by a conversation's messages. Must run in the
+     * transaction that deletes them.
+     */
+    public void releaseConversation(Long conversationId) {
+        LocalDateTime now = LocalDateTime.now();
+        for (ContentRefCount refs : messageRepository.countContentRefsByConversationId(conversationId)) {
+            blobRepository.release(refs.contentHash(), refs.references(), now);
+        }
+    }
+
+    /**
+     * Fill in the content of message projections that reference a blob.
+     */
+    public List<MessageView> resolve(List<MessageView> views) {
+        List<Long> unresolved = views.stream()
+                .filter(view -> view.content() == null)
+                .map(MessageView::id)
+                .toList();
+        if (unresolved.isEmpty()) {
+            return views;
+        }
+        Map<Long, String> hashes = messageRepository.findContentRefsByIdIn(unresolved).stream()
+                .collect(Collectors.toMap(MessageContentRef::messageId, MessageContentRef::contentHash));
+        if (hashes.isEmpty()) {
+            return views;
+        }
+        Map<String, String> loaded = load(hashes.values());
+        List<MessageView> resolved = new ArrayList<>(views.size());
+        for (MessageView view : views) {
+            String hash = hashes.get(view.id());
+            resolved.add(hash == null ? view : new MessageView(view.id(), view.conversationId(), view.role(),
+                    loaded.get(hash), view.toolsUsed(), view.createdAt()));
+        }
+        return resolved;
+    }
+
+    /**
+     * Fill in the content of loaded messages that reference a blob.
+     */
+    public void resolveMessages(List<Message> messages) {
+        Set<String> hashes = new HashSet<>();
+        for (Message message : messages) {
+            if (message.getContentHash() != null && message.getContent() == null) {
+                hashes.add(message.getContentHash());
+            }
+        }
+        if (hashes.isEmpty()) {
+            return;
+        }
+        Map<String, String> loaded = load(hashes);
+        for (Message message : messages) {
+            if (message.getContentHash() != null && message.getContent() == null) {
+                message.setBlobContent(loaded.get(message.getContentHash()));
+            }
+        }
+    }
+
+    /**
+     * Delete blobs that have had no references for the grace period.
+     */
+    @Scheduled(fixedDelayString = "${agent.content.blobs.purge-interval-ms:3600000}",
+            initialDelayString = "${agent.content.blobs.purge-interval-ms:3600000}")
+    public void purgeUnreferenced() {
+        LocalDateTime before = LocalDateTime.now().minusNanos(purgeGraceMillis * 1_000_000);
+        int deleted = 0;
+        List<String> hashes;
+        do {
+            hashes = blobRepository.findUnreferenced(before, Limit.of(PURGE_BATCH_SIZE));
+            if (hashes.isEmpty()) {
+                break;
+            }
+            deleted += blobRepository.deleteUnreferenced(hashes, before);
+            // So prepare() stores them again instead of trusting the cache
+            synchronized (contents) {
+                contents.keySet().removeAll(hashes);
+            }
+        } while (hashes.size() == PURGE_BATCH_SIZE);
+        if (deleted > 0) {
+            purgedCounter.increment(deleted);
+            System.out.println("Purged " + deleted + " unreferenced content blobs");
+        }
+    }
+
+    private Map<String, String> load(Collection<String> hashes) {
+        Map<String, String> loaded = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String hash : hashes) {
+            String content = cached(hash);
+            if (content != null) {
+                loaded.put(hash, content);
+            } else {
+                missing.add(hash);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (ContentBlob blob : blobRepository.findAllById(missing)) {
+                String content = decode(blob);
+                loaded.put(blob.getId(), content);
+                cache(blob.getId(), content);
+            }
+        }
+        return loaded;
+    }
+
+    private String cached(String hash) {
+        synchronized (contents) {
+            return contents.get(hash);
+        }
+    }
+
+    private void cache(String hash, String content) {
+        synchronized (contents) {
+            contents.put(hash, content);
+        }
+    }
+
+    private ContentBlob newBlob(String hash, String content, long refCount) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (compress) {
+            byte[] compressed = gzip(bytes);
+            if (compressed.length < bytes.length) {
+                return new ContentBlob(hash, compressed, true, content.length(), refCount);
+            }
+        }
+        return new ContentBlob(hash, bytes, false, content.length(), refCount);
+    }
+
+    private static String decode(ContentBlob blob) {
+        byte[] bytes = blob.isCompressed() ? gunzip(blob.getData()) : blob.getData();
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String hash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] data) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return gzip.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt content blob", e);
+        }
+    }
+}
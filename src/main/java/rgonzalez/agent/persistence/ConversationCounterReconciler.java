@@ -0,0 +1,140 @@
+package rgonzalez.agent.persistence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.repository.ConversationRepository;
+import rgonzalez.agent.repository.MessageRepository;
+import rgonzalez.agent.repository.MessageStats;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Background job that checks the counters kept on each conversation against its
+ * messages and repairs any drift, e.g. from write-behind batches whose counter update
+ * failed. Conversations are scanned in ID order in batches, with one aggregate query
+ * per batch. Conversations updated within the settle window are skipped, since their
+ * latest turn may not be visible to the aggregate yet; fixes are checked against the
+ * conversation's version, so a turn committing meanwhile wins.
+ * Only runs when messages are stored in the messages table.
+ */
+@Component
+public class ConversationCounterReconciler {
+
+    private final ConversationRepository conversationRepository;
+    private final MessageRepository messageRepository;
+    private final MessageStore messageStore;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter checkedCounter;
+    private final Counter correctedCounter;
+
+    @Value("${agent.counters.reconcile.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${agent.counters.reconcile.batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${agent.counters.reconcile.settle-ms:60000}")
+    private long settleMillis = 60000;
+
+    public ConversationCounterReconciler(ConversationRepository conversationRepository,
+                                         MessageRepository messageRepository,
+                                         MessageStore messageStore,
+                                         PlatformTransactionManager transactionManager,
+                                         MeterRegistry meterRegistry) {
+        this.conversationRepository = conversationRepository;
+        this.messageRepository = messageRepository;
+        this.messageStore = messageStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.checkedCounter = Counter.builder("conversation.counters.checked")
+                .description("Conversations whose counters were checked against their messages")
+                .register(meterRegistry);
+        this.correctedCounter = Counter.builder("conversation.counters.corrected")
+                .description("Conversations whose counters had drifted and were repaired")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Check every conversation that still holds its messages.
+     */
+    @Scheduled(fixedDelayString = "${agent.counters.reconcile.interval-ms:21600000}",
+            initialDelayString = "${agent.counters.reconcile.interval-ms:21600000}")
+    public void reconcileAll() {
+        if (!enabled || !messageStore.isTransactional()) {
+            return;
+        }
+        long afterId = 0;
+        int corrected = 0;
+        while (true) {
+            List<Long> ids = conversationRepository.findLiveIdsAfter(afterId, Limit.of(batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            corrected += reconcile(ids);
+            afterId = ids.get(ids.size() - 1);
+        }
+        if (corrected > 0) {
+            System.out.println("Repaired counters of " + corrected + " conversations");
+        }
+    }
+
+    /**
+     * Check and repair one batch of conversations.
+     *
+     * @return the number of conversations repaired
+     */
+    int reconcile(List<Long> ids) {
+        Map<Long, MessageStats> stats = messageRepository.aggregateByConversationIdIn(ids).stream()
+                .collect(Collectors.toMap(MessageStats::conversationId, Function.identity()));
+        LocalDateTime settledBefore = LocalDateTime.now().minusNanos(settleMillis * 1_000_000);
+
+        int corrected = 0;
+        for (Conversation conversation : conversationRepository.findAllById(ids)) {
+            checkedCounter.increment();
+            if (conversation.getUpdatedAt() != null && conversation.getUpdatedAt().isAfter(settledBefore)) {
+                continue;
+            }
+            MessageStats actual = stats.getOrDefault(conversation.getId(),
+                    new MessageStats(conversation.getId(), 0, null, 0, 0, 0));
+            if (matches(conversation, actual)) {
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    conversation.setMessageCount(actual.messageCount());
+                    conversation.setLastMessageAt(actual.lastMessageAt());
+                    conversation.setPromptTokens(actual.promptTokens());
+                    conversation.setCompletionTokens(actual.completionTokens());
+                    conversation.setToolInvocations(actual.toolInvocations());
+                    conversationRepository.save(conversation);
+                });
+                correctedCounter.increment();
+                corrected++;
+            } catch (ObjectOptimisticLockingFailureException e) {
+                // Changed by a turn since it was read; checked again on the next run
+            }
+        }
+        return corrected;
+    }
+
+    private static boolean matches(Conversation conversation, MessageStats actual) {
+        return conversation.getMessageCount() == actual.messageCount()
+                && Objects.equals(conversation.getLastMessageAt(), actual.lastMessageAt())
+                && conversation.getPromptTokens() == actual.promptTokens()
+                && conversation.getCompletionTokens() == actual.completionTokens()
+                && conversation.getToolInvocations() == actual.toolInvocations();
+    }
+}
@@ -0,0 +1,533 @@
+package rgonzalez.agent.persistence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.scheduling.annotation.Scheduled;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.repository.MessageView;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Message store backed by an append-only, segmented, memory-mapped event log.
+ * Each message is one record: a fixed 64-byte header followed by its content and
+ * tools-used strings in UTF-8. Segment files (segment-NNNNNN.log) are preallocated
+ * at the segment size and mapped read-write, so an append is a copy into the page
+ * cache under one lock rather than a database insert. Records never span segments.
+ *
+ * Message IDs are assigned sequentially in log order, and history is returned in
+ * that order. The ID-to-position index and the per-conversation offset indexes (the
+ * IDs of each conversation's messages) are held in memory, about 16 bytes per
+ * message, and rebuilt from the record headers on startup.
+ *
+ * Durability: an append survives a process crash once it returns, since the pages
+ * belong to the OS, but survives an OS crash or power loss only after the next
+ * checkpoint has forced it to disk. A checkpoint records the forced position in the
+ * checkpoint file; on startup records before it are trusted, records after it are
+ * checked against their CRC, and the log is truncated at the first bad record.
+ */
+public class EventLogMessageStore implements MessageStore, Closeable {
+
+    static final int HEADER_BYTES = 64;
+
+    private static final int MAGIC = 0x4D4C4F47; // "MLOG"
+    private static final int CHECKPOINT_VERSION = 1;
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    // Record header layout; the CRC covers everything after it, including the payload
+    private static final int MAGIC_AT = 0;
+    private static final int CRC_AT = 4;
+    private static final int CONTENT_LENGTH_AT = 8;
+    private static final int TOOLS_LENGTH_AT = 12;
+    private static final int ID_AT = 16;
+    private static final int CONVERSATION_AT = 24;
+    private static final int CREATED_SECONDS_AT = 32;
+    private static final int CREATED_NANOS_AT = 40;
+    private static final int ROLE_AT = 44; // MessageRole ordinal, so new roles must be added last
+    private static final int PROMPT_TOKENS_AT = 48;
+    private static final int COMPLETION_TOKENS_AT = 52;
+    private static final int TOOL_INVOCATIONS_AT = 56;
+
+    private static final MessageRole[] ROLES = MessageRole.values();
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock; a position is (segment << 32 | offset)
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<Long, IdList> conversations = new HashMap<>();
+    private long[] positions = new long[1024];
+    private long nextId = 1;
+    private int writeOffset;
+
+    // Guarded by this; the log position last forced to disk
+    private long checkpointed;
+
+    private final Counter appendedCounter;
+    private final Timer checkpointTimer;
+
+    public EventLogMessageStore(Path directory, int segmentBytes, MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open message event log at " + directory, e);
+        }
+
+        this.appendedCounter = Counter.builder("messages.event-log.appended")
+                .description("Messages appended to the event log")
+                .register(meterRegistry);
+        this.checkpointTimer = Timer.builder("messages.event-log.checkpoint")
+                .description("Time to force the event log to disk and record the checkpoint")
+                .register(meterRegistry);
+        Gauge.builder("messages.event-log.segments", this, EventLogMessageStore::getSegmentCount)
+                .description("Segment files of the event log")
+                .register(meterRegistry);
+        Gauge.builder("messages.event-log.messages", this, EventLogMessageStore::size)
+                .description("Messages held in the event log")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean isTransactional() {
+        return false;
+    }
+
+    @Override
+    public void append(List<Message> messages) {
+        lock.writeLock().lock();
+        try {
+            for (Message message : messages) {
+                appendRecord(message);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot append to message event log", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        appendedCounter.increment(messages.size());
+    }
+
+    @Override
+    public Optional<MessageView> findById(Long messageId) {
+        lock.readLock().lock();
+        try {
+            if (messageId == null || messageId < 1 || messageId >= nextId) {
+                return Optional.empty();
+            }
+            return Optional.of(read(messageId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * IDs are assigned in log order, so the page is the records that follow afterId.
+     */
+    @Override
+    public List<MessageView> findAfterId(long afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            long from = Math.max(1, afterId + 1);
+            long to = Math.min(nextId, from + limit);
+            List<MessageView> page = new ArrayList<>((int) Math.max(0, to - from));
+            for (long id = from; id < to; id++) {
+                page.add(read(id));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Page of a conversation's history in append order. The cursor's ID locates the
+     * position, so the page is found by binary search on the conversation's index.
+     */
+    @Override
+    public List<MessageView> findHistoryPage(Long conversationId, LocalDateTime afterCreatedAt, Long afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            IdList ids = conversations.get(conversationId);
+            if (ids == null) {
+                return List.of();
+            }
+            int from = afterId == null ? 0 : ids.indexAfter(afterId);
+            int to = (int) Math.min(ids.size, (long) from + limit);
+            List<MessageView> page = new ArrayList<>(Math.max(0, to - from));
+            for (int i = from; i < to; i++) {
+                page.add(read(ids.values[i]));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<MessageView> findRecent(Long conversationId, int limit) {
+        lock.readLock().lock();
+        try {
+            IdList ids = conversations.get(conversationId);
+            if (ids == null) {
+                return List.of();
+            }
+            int from = Math.max(0, ids.size - limit);
+            List<MessageView> recent = new ArrayList<>(ids.size - from);
+            for (int i = ids.size - 1; i >= from; i--) {
+                recent.add(read(ids.values[i]));
+            }
+            return recent;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of messages in the log.
+     */
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return nextId - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Force everything appended so far to disk and record the position in the
+     * checkpoint file. Appends are not blocked while the segments are forced.
+     */
+    @Scheduled(fixedDelayString = "${agent.persistence.event-log.checkpoint-interval-ms:1000}",
+            initialDelayString = "${agent.persistence.event-log.checkpoint-interval-ms:1000}")
+    public synchronized void checkpoint() {
+        long end;
+        List<Segment> dirty;
+        lock.readLock().lock();
+        try {
+            end = position(segments.size() - 1, writeOffset);
+            if (end == checkpointed) {
+                return;
+            }
+            dirty = new ArrayList<>(segments.subList(segmentOf(checkpointed), segments.size()));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        checkpointTimer.record(() -> {
+            dirty.forEach(segment -> segment.buffer().force());
+            try {
+                writeCheckpoint(end);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write event log checkpoint", e);
+            }
+        });
+        checkpointed = end;
+    }
+
+    private void appendRecord(Message message) throws IOException {
+        if (message.getCreatedAt() == null) {
+            message.setCreatedAt(LocalDateTime.now());
+        }
+        long conversationId = message.getConversation().getId();
+        byte[] content = encode(message.getContent());
+        byte[] toolsUsed = encode(message.getToolsUsed());
+        int length = HEADER_BYTES + byteCount(content) + byteCount(toolsUsed);
+        if (length > segmentBytes) {
+            throw new IllegalArgumentException("Message of " + length + " bytes does not fit in a log segment");
+        }
+        if (writeOffset + length > currentSegment().buffer().capacity()) {
+            segments.add(Segment.open(segmentPath(segments.size()), segmentBytes));
+            writeOffset = 0;
+        }
+
+        MappedByteBuffer buffer = currentSegment().buffer();
+        int offset = writeOffset;
+        long id = nextId;
+        LocalDateTime createdAt = message.getCreatedAt();
+        buffer.putInt(offset + CONTENT_LENGTH_AT, content != null ? content.length : -1);
+        buffer.putInt(offset + TOOLS_LENGTH_AT, toolsUsed != null ? toolsUsed.length : -1);
+        buffer.putLong(offset + ID_AT, id);
+        buffer.putLong(offset + CONVERSATION_AT, conversationId);
+        buffer.putLong(offset + CREATED_SECONDS_AT, createdAt.toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(offset + CREATED_NANOS_AT, createdAt.getNano());
+        buffer.put(offset + ROLE_AT, (byte) message.getRole().ordinal());
+        buffer.putInt(offset + PROMPT_TOKENS_AT, message.getPromptTokens());
+        buffer.putInt(offset + COMPLETION_TOKENS_AT, message.getCompletionTokens());
+        buffer.putInt(offset + TOOL_INVOCATIONS_AT, message.getToolInvocations());
+        int payloadAt = offset + HEADER_BYTES;
+        if (content != null) {
+            buffer.put(payloadAt, content);
+            payloadAt += content.length;
+        }
+        if (toolsUsed != null) {
+            buffer.put(payloadAt, toolsUsed);
+        }
+        buffer.putInt(offset + CRC_AT, crc(buffer, offset, length));
+        // Written last, so a record is only visible to recovery once complete
+        buffer.putInt(offset + MAGIC_AT, MAGIC);
+
+        index(id, conversationId, position(segments.size() - 1, offset));
+        nextId++;
+        writeOffset += length;
+        message.setId(id);
+    }
+
+    private MessageView read(long id) {
+        long position = positions[(int) (id - 1)];
+        ByteBuffer buffer = segments.get(segmentOf(position)).buffer();
+        int offset = (int) position;
+        int contentLength = buffer.getInt(offset + CONTENT_LENGTH_AT);
+        int payloadAt = offset + HEADER_BYTES;
+        String content = decode(buffer, payloadAt, contentLength);
+        String toolsUsed = decode(buffer, payloadAt + Math.max(0, contentLength), buffer.getInt(offset + TOOLS_LENGTH_AT));
+        LocalDateTime createdAt = LocalDateTime.ofEpochSecond(buffer.getLong(offset + CREATED_SECONDS_AT),
+                buffer.getInt(offset + CREATED_NANOS_AT), ZoneOffset.UTC);
+        return new MessageView(id, buffer.getLong(offset + CONVERSATION_AT), ROLES[buffer.get(offset + ROLE_AT)],
+                content, toolsUsed, createdAt);
+    }
+
+    private void index(long id, long conversationId, long position) {
+        int slot = (int) (id - 1);
+        if (slot == positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+        }
+        positions[slot] = position;
+        conversations.computeIfAbsent(conversationId, key -> new IdList()).add(id);
+    }
+
+    /**
+     * Rebuild the indexes from the segment files and find where appends continue.
+     */
+    private void recover() throws IOException {
+        long trustedBefore = readCheckpoint();
+        boolean damaged = false;
+        for (int number = 0; !damaged && Files.exists(segmentPath(number)); number++) {
+            Segment segment = Segment.open(segmentPath(number), segmentBytes);
+            segments.add(segment);
+            ScanResult scan = scan(number, segment.buffer(), trustedBefore);
+            writeOffset = scan.end();
+            damaged = scan.damaged();
+        }
+        if (segments.isEmpty()) {
+            segments.add(Segment.open(segmentPath(0), segmentBytes));
+        }
+
+        long end = position(segments.size() - 1, writeOffset);
+        if (damaged || end != trustedBefore) {
+            // Not shut down cleanly: drop whatever a lost or torn write left after the
+            // last valid record, then make the recovered log durable before trusting it
+            truncateAfter(segments.size() - 1, writeOffset);
+            for (Segment segment : segments.subList(segmentOf(Math.min(trustedBefore, end)), segments.size())) {
+                segment.buffer().force();
+            }
+            writeCheckpoint(end);
+        }
+        checkpointed = end;
+        System.out.println("Recovered " + (nextId - 1) + " messages from " + segments.size()
+                + " event log segments");
+    }
+
+    /**
+     * Index the records of one segment, up to the end of the written data or the
+     * first damaged record.
+     */
+    private ScanResult scan(int number, MappedByteBuffer buffer, long trustedBefore) {
+        int offset = 0;
+        while (offset + HEADER_BYTES <= buffer.capacity()) {
+            int magic = buffer.getInt(offset + MAGIC_AT);
+            if (magic == 0) {
+                return new ScanResult(offset, false);
+            }
+            int contentLength = buffer.getInt(offset + CONTENT_LENGTH_AT);
+            int toolsLength = buffer.getInt(offset + TOOLS_LENGTH_AT);
+            long length = (long) HEADER_BYTES + Math.max(0, contentLength) + Math.max(0, toolsLength);
+            if (magic != MAGIC || contentLength < -1 || toolsLength < -1 || offset + length > buffer.capacity()) {
+                return new ScanResult(offset, true);
+            }
+            long position = position(number, offset);
+            if (position >= trustedBefore && crc(buffer, offset, (int) length) != buffer.getInt(offset + CRC_AT)) {
+                return new ScanResult(offset, true);
+            }
+            // IDs are sequential, so a record out of sequence is stale data past a lost write
+            long id = buffer.getLong(offset + ID_AT);
+            if (id != nextId) {
+                return new ScanResult(offset, true);
+            }
+            index(id, buffer.getLong(offset + CONVERSATION_AT), position);
+            nextId++;
+            offset += (int) length;
+        }
+        return new ScanResult(offset, false);
+    }
+
+    private void truncateAfter(int number, int offset) throws IOException {
+        MappedByteBuffer buffer = segments.get(number).buffer();
+        byte[] zeros = new byte[64 * 1024];
+        for (int at = offset; at < buffer.capacity(); at += zeros.length) {
+            buffer.put(at, zeros, 0, Math.min(zeros.length, buffer.capacity() - at));
+        }
+        for (int later = number + 1; Files.exists(segmentPath(later)); later++) {
+            Files.delete(segmentPath(later));
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (data.remaining() < Integer.BYTES + Long.BYTES || data.getInt() != CHECKPOINT_VERSION) {
+            return 0;
+        }
+        return data.getLong();
+    }
+
+    private void writeCheckpoint(long position) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(Integer.BYTES + Long.BYTES);
+        data.putInt(CHECKPOINT_VERSION).putLong(position).flip();
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Segment currentSegment() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("segment-%06d.log", number));
+    }
+
+    private static long position(int segment, int offset) {
+        return (long) segment << 32 | offset;
+    }
+
+    private static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset + CONTENT_LENGTH_AT, length - CONTENT_LENGTH_AT));
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encode(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int byteCount(byte[] value) {
+        return value != null ? value.length : 0;
+    }
+
+    private static String decode(ByteBuffer buffer, int at, int length) {
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(at, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        checkpoint();
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments) {
+                segment.channel().close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing message event log: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private record ScanResult(int end, boolean damaged) {
+    }
+
+    private record Segment(FileChannel channel, MappedByteBuffer buffer) {
+
+        /**
+         * Open and map a segment file, extending a new or short file to the segment size.
+         */
+        static Segment open(Path path, int segmentBytes) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = Math.max(channel.size(), segmentBytes);
+            return new Segment(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    /**
+     * Growable array of one conversation's message IDs, in ascending order.
+     */
+    private static final class IdList {
+
+        private long[] values = new long[8];
+        private int size;
+
+        void add(long id) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = id;
+        }
+
+        /**
+         * Index of the first ID greater than the given one.
+         */
+        int indexAfter(long id) {
+            int found = Arrays.binarySearch(values, 0, size, id);
+            return found >= 0 ? found + 1 : -found - 1;
+        }
+    }
+}
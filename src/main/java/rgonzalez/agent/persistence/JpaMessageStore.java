@@ -0,0 +1,73 @@
+package rgonzalez.agent.persistence;
+
+import org.springframework.data.domain.Limit;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.repository.MessageRepository;
+import rgonzalez.agent.repository.MessageView;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Default message store: messages are rows of the messages table, inserted through
+ * MessageRepository in the caller's transaction. Large contents are stored once as
+ * content blobs and resolved when read.
+ */
+public class JpaMessageStore implements MessageStore {
+
+    private final MessageRepository messageRepository;
+    private final ContentBlobStore contentBlobs;
+
+    public JpaMessageStore(MessageRepository messageRepository, ContentBlobStore contentBlobs) {
+        this.messageRepository = messageRepository;
+        this.contentBlobs = contentBlobs;
+    }
+
+    @Override
+    public boolean isTransactional() {
+        return true;
+    }
+
+    @Override
+    public void prepare(String content) {
+        contentBlobs.prepare(content);
+    }
+
+    @Override
+    public void append(List<Message> messages) {
+        for (Message message : messages) {
+            contentBlobs.attach(message);
+            messageRepository.save(message);
+        }
+    }
+
+    @Override
+    public Optional<MessageView> findById(Long messageId) {
+        return contentBlobs.resolve(messageRepository.findViewsByIdIn(List.of(messageId))).stream().findFirst();
+    }
+
+    @Override
+    public List<MessageView> findByIds(Collection<Long> messageIds) {
+        return contentBlobs.resolve(messageRepository.findViewsByIdIn(messageIds));
+    }
+
+    @Override
+    public List<MessageView> findAfterId(long afterId, int limit) {
+        return contentBlobs.resolve(messageRepository.findViewsAfterId(afterId, Limit.of(limit)));
+    }
+
+    @Override
+    public List<MessageView> findHistoryPage(Long conversationId, LocalDateTime afterCreatedAt, Long afterId, int limit) {
+        List<MessageView> page = afterId == null
+                ? messageRepository.findHistoryPage(conversationId, Limit.of(limit))
+                : messageRepository.findHistoryPageAfter(conversationId, afterCreatedAt, afterId, Limit.of(limit));
+        return contentBlobs.resolve(page);
+    }
+
+    @Override
+    public List<MessageView> findRecent(Long conversationId, int limit) {
+        return contentBlobs.resolve(messageRepository.findRecentMessages(conversationId, Limit.of(limit)));
+    }
+}
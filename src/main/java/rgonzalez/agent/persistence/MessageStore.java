@@ -0,0 +1,71 @@
+package rgonzalez.agent.persistence;
+
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.repository.MessageView;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Backend that conversation turns write their messages to and read history from.
+ * Selected with agent.persistence.message-store: "jpa" (default) stores messages as
+ * rows of the messages table, "event-log" in an append-only memory-mapped log.
+ */
+public interface MessageStore {
+
+    /**
+     * Check if messages are rows of the messages table written in the caller's
+     * transaction, so a rollback also undoes the append. Jobs that query that table
+     * directly (archiving, counter reconciliation, export) only apply when true.
+     */
+    boolean isTransactional();
+
+    /**
+     * Set up what appending this content will need, outside the caller's transaction
+     * (e.g. its content blob). Does nothing by default.
+     */
+    default void prepare(String content) {
+    }
+
+    /**
+     * Append messages in order, assigning their IDs.
+     */
+    void append(List<Message> messages);
+
+    /**
+     * Find a message by ID.
+     */
+    Optional<MessageView> findById(Long messageId);
+
+    /**
+     * Find several messages by ID, in no particular order; IDs not found are left out.
+     * Looks each one up by default.
+     */
+    default List<MessageView> findByIds(Collection<Long> messageIds) {
+        List<MessageView> found = new ArrayList<>(messageIds.size());
+        for (Long messageId : messageIds) {
+            findById(messageId).ifPresent(found::add);
+        }
+        return found;
+    }
+
+    /**
+     * Page of all messages with an ID greater than the given one, in ID order, for
+     * jobs that follow every message as it is written (e.g. search indexing).
+     */
+    List<MessageView> findAfterId(long afterId, int limit);
+
+    /**
+     * Page of a conversation's history, oldest first, after the (createdAt, id) cursor,
+     * or from the start when the cursor is null.
+     */
+    List<MessageView> findHistoryPage(Long conversationId, LocalDateTime afterCreatedAt, Long afterId, int limit);
+
+    /**
+     * Most recent messages of a conversation, newest first.
+     */
+    List<MessageView> findRecent(Long conversationId, int limit);
+}
@@ -0,0 +1,248 @@
+package rgonzalez.agent.persistence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.repository.MessageRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Write-behind buffer that inserts messages from many conversation turns in shared
+ * transactions, using Hibernate JDBC batching. A single flusher thread writes a batch
+ * when it reaches the batch size or when its oldest write has waited the maximum delay.
+ *
+ * Durability modes (agent.persistence.write-behind.durability):
+ * COMMIT   - write() returns once the batch containing the messages has committed
+ *            (group commit). Nothing acknowledged is lost; turns wait up to max-delay-ms.
+ *            A write whose batch has not committed within commit-timeout-ms fails.
+ * BUFFERED - write() returns as soon as the messages are queued. Messages not yet flushed
+ *            are lost if the process crashes (at most max-delay-ms or batch-size worth);
+ *            a graceful shutdown flushes everything. Returned messages have no ID and do
+ *            not appear in history until their batch is written. A batch that fails is
+ *            logged and dropped.
+ */
+@Component
+public class MessageWriteBuffer {
+
+    public enum Durability {
+        COMMIT,
+        BUFFERED
+    }
+
+    private final boolean enabled;
+    private final Durability durability;
+    private final int batchSize;
+    private final long maxDelayMillis;
+    private final MessageRepository messageRepository;
+    private final ContentBlobStore contentBlobs;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<PendingWrite> queue;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    @Value("${agent.persistence.write-behind.commit-timeout-ms:30000}")
+    private long commitTimeoutMillis = 30000;
+
+    private final Counter writtenCounter;
+    private final Counter failedCounter;
+    private final Timer flushTimer;
+
+    public MessageWriteBuffer(MessageRepository messageRepository,
+                              ContentBlobStore contentBlobs,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${agent.persistence.write-behind.enabled:false}") boolean enabled,
+                              @Value("${agent.persistence.write-behind.durability:COMMIT}") String durability,
+                              @Value("${agent.persistence.write-behind.batch-size:200}") int batchSize,
+                              @Value("${agent.persistence.write-behind.max-delay-ms:20}") long maxDelayMillis,
+                              @Value("${agent.persistence.write-behind.capacity:10000}") int capacity) {
+        this.messageRepository = messageRepository;
+        this.contentBlobs = contentBlobs;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.durability = Durability.valueOf(durability.trim().toUpperCase(Locale.ROOT));
+        this.batchSize = Math.max(1, batchSize);
+        this.maxDelayMillis = Math.max(0, maxDelayMillis);
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, capacity));
+
+        this.writtenCounter = Counter.builder("messages.write-behind.written")
+                .description("Messages inserted by the write-behind buffer")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("messages.write-behind.failed")
+                .description("Messages the write-behind buffer failed to insert")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("messages.write-behind.flush")
+                .description("Time to insert one write-behind batch")
+                .register(meterRegistry);
+        Gauge.builder("messages.write-behind.pending", queue, BlockingQueue::size)
+                .description("Writes waiting in the write-behind buffer")
+                .register(meterRegistry);
+
+        this.flusher = new Thread(this::flushLoop, "message-write-behind");
+        this.flusher.setDaemon(true);
+        if (enabled) {
+            this.flusher.start();
+        }
+    }
+
+    /**
+     * Check if messages should be written through this buffer.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Queue messages for insertion. In COMMIT mode blocks until they are committed and
+     * rethrows the write failure; in BUFFERED mode returns once queued. Blocks while
+     * the buffer is full, which applies backpressure when the database falls behind.
+     * Throws IllegalStateException if the buffer is shut down, or in COMMIT mode if the
+     * messages are not committed within the commit timeout; messages whose batch had
+     * not started by then are withdrawn, otherwise they may still be written.
+     */
+    public void write(List<Message> messages) {
+        if (!running) {
+            throw new IllegalStateException("Message write buffer is shut down");
+        }
+        PendingWrite pending = new PendingWrite(List.copyOf(messages), new CompletableFuture<>());
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queuing messages", e);
+        }
+        if (!running && !flusher.isAlive()) {
+            // Shut down while queuing: nothing will flush the queue any more
+            failQueued();
+        }
+
+        if (durability == Durability.COMMIT) {
+            try {
+                pending.done().get(commitTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException runtime
+                        ? runtime
+                        : new IllegalStateException("Message write failed", e.getCause());
+            } catch (TimeoutException e) {
+                queue.remove(pending);
+                throw new IllegalStateException("Messages not committed within " + commitTimeoutMillis + " ms", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for messages to commit", e);
+            }
+        }
+    }
+
+    private void flushLoop() {
+        List<PendingWrite> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collectBatch(batch, first.messages().size());
+            } catch (InterruptedException e) {
+                // Shutdown: flush what was collected, then drain what is left
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Add queued writes to the batch until it is full or the oldest write has waited long enough.
+     */
+    private void collectBatch(List<PendingWrite> batch, int messageCount) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        while (messageCount < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            PendingWrite next = remaining > 0 && running
+                    ? queue.poll(remaining, TimeUnit.NANOSECONDS)
+                    : queue.poll();
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+            messageCount += next.messages().size();
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        List<Message> messages = new ArrayList<>();
+        for (PendingWrite pending : batch) {
+            messages.addAll(pending.messages());
+        }
+
+        try {
+            flushTimer.record(() -> {
+                messages.forEach(message -> contentBlobs.prepare(message.getContent()));
+                transactionTemplate.executeWithoutResult(status -> {
+                    messages.forEach(contentBlobs::attach);
+                    messageRepository.saveAll(messages);
+                });
+            });
+            writtenCounter.increment(messages.size());
+            batch.forEach(pending -> pending.done().complete(null));
+        } catch (RuntimeException e) {
+            failedCounter.increment(messages.size());
+            System.err.println("Write-behind flush of " + messages.size() + " messages failed: " + e.getMessage());
+            batch.forEach(pending -> pending.done().completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Fail writes left in the queue after the flusher has stopped.
+     */
+    private void failQueued() {
+        List<PendingWrite> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        IllegalStateException shutDown = new IllegalStateException("Message write buffer is shut down");
+        for (PendingWrite pending : leftover) {
+            failedCounter.increment(pending.messages().size());
+            pending.done().completeExceptionally(shutDown);
+        }
+    }
+
+    /**
+     * Flush everything still buffered before the application stops. Writes queued
+     * after the flusher has stopped are failed.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (flusher.isAlive()) {
+            flusher.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        if (!flusher.isAlive()) {
+            failQueued();
+        }
+    }
+
+    private record PendingWrite(List<Message> messages, CompletableFuture<Void> done) {
+    }
+}
@@ -65,7 +65,7 @@ public class LlmPlanner implements Planner {
                 @SuppressWarnings("unchecked")
                 Map<String, Object> parameters = objectMapper.convertValue(parametersNode, Map.class);
                 
-                steps.add(new PlanStep(description, toolName, parameters));
+                steps.add(new PlanStep(description, toolName, parameters, parseForEach(stepNode.get("forEach"))));
             }
             
             return new Plan(steps);
@@ -75,6 +75,24 @@ public class LlmPlanner implements Planner {
         }
     }
 
+    /**
+     * Parse the optional fan-out of a step; null when absent.
+     */
+    private PlanStep.ForEach parseForEach(JsonNode forEachNode) {
+        if (forEachNode == null || forEachNode.isNull()) {
+            return null;
+        }
+        return new PlanStep.ForEach(
+                textOrNull(forEachNode.get("from")),
+                textOrNull(forEachNode.get("match")),
+                textOrNull(forEachNode.get("as")),
+                forEachNode.hasNonNull("partitionSize") ? forEachNode.get("partitionSize").asInt() : null);
+    }
+
+    private static String textOrNull(JsonNode node) {
+        return node == null || node.isNull() ? null : node.asText();
+    }
+
 /**
  * Mock method that returns a mocked LLM response.
  * This will be replaced with actual LLM API calls in production.
@@ -94,7 +112,8 @@ private LlmResponse getMockedLlmResponse() {
             "    {" +
             "      \"description\": \"Send reminder emails to identified customers\"," +
             "      \"toolName\": \"send_email_reminder\"," +
-            "      \"parameters\": {\"templateType\": \"reminder\", \"subject\": \"Payment Reminder\"}" +
+            "      \"parameters\": {\"templateType\": \"reminder\", \"subject\": \"Payment Reminder\"}," +
+            "      \"forEach\": {\"from\": \"customer_search\", \"match\": \"C\\\\d+\", \"as\": \"customerIds\"}" +
             "    }" +
             "  ]" +
             "}";
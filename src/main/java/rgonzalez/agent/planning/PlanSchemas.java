@@ -20,6 +20,17 @@ public final class PlanSchemas {
               "parameters": {
                 "type": "object",
                 "additionalProperties": true
+              },
+              "forEach": {
+                "type": "object",
+                "description": "Run the tool for each item found in the result of an earlier step, in parallel partitions",
+                "required": ["from", "as"],
+                "properties": {
+                  "from": { "type": "string", "description": "toolName of the earlier step" },
+                  "match": { "type": "string", "description": "Regular expression matching one item; one item per line if omitted" },
+                  "as": { "type": "string", "description": "Parameter that receives the items of a partition, comma-separated" },
+                  "partitionSize": { "type": "integer", "minimum": 1 }
+                }
               }
             }
           }
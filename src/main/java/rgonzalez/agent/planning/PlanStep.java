@@ -5,15 +5,50 @@ import java.util.Map;
 /**
  * Represents a single step in an execution plan.
  * Contains all information needed to execute a tool.
+ * A step with forEach runs its tool once per partition of the items found in the
+ * result of an earlier step, instead of once.
  */
 public record PlanStep(
         String description,
         String toolName,
-        Map<String, Object> parameters
+        Map<String, Object> parameters,
+        ForEach forEach
 ) {
 
+    /**
+     * Step that runs its tool once.
+     */
+    public PlanStep(String description, String toolName, Map<String, Object> parameters) {
+        this(description, toolName, parameters, null);
+    }
+
+    /**
+     * Check if this step fans out over the items of an earlier step's result.
+     */
+    public boolean isForEach() {
+        return forEach != null;
+    }
+
     @Override
     public String toString() {
-        return String.format("Step: %s [Tool: %s]", description, toolName);
+        return isForEach()
+                ? String.format("Step: %s [Tool: %s, for each item of %s]", description, toolName, forEach.from())
+                : String.format("Step: %s [Tool: %s]", description, toolName);
+    }
+
+    /**
+     * Fan-out of a step over a collection produced by an earlier step.
+     *
+     * @param from          name of the earlier step's tool whose result holds the items
+     * @param match         regular expression matching one item in that result, or null for one item per line
+     * @param as            parameter receiving the items of a partition, comma-separated
+     * @param partitionSize maximum items per tool call, or null for the default
+     */
+    public record ForEach(
+            String from,
+            String match,
+            String as,
+            Integer partitionSize
+    ) {
     }
 }
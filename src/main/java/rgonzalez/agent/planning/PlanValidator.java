@@ -1,6 +1,9 @@
 package rgonzalez.agent.planning;
 
+import java.util.HashSet;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.springframework.stereotype.Component;
 
@@ -10,12 +13,16 @@ public class PlanValidator {
     private static final Set<String> ALLOWED_TOOLS =
             Set.of("customer_search", "send_email_reminder");
 
+    // Item patterns come from the LLM; matching time is also bounded when the step runs
+    private static final int MAX_MATCH_LENGTH = 200;
+
     public void validate(Plan plan) {
 
         if (plan.steps().isEmpty()) {
             throw new PlanningException("Empty plan");
         }
 
+        Set<String> earlierTools = new HashSet<>();
         for (PlanStep step : plan.steps()) {
 
             if (!ALLOWED_TOOLS.contains(step.toolName())) {
@@ -27,6 +34,43 @@ public class PlanValidator {
                 throw new PlanningException(
                         "Missing parameters for tool: " + step.toolName());
             }
+
+            if (step.isForEach()) {
+                validateForEach(step, earlierTools);
+            }
+            earlierTools.add(step.toolName());
+        }
+    }
+
+    private void validateForEach(PlanStep step, Set<String> earlierTools) {
+        PlanStep.ForEach forEach = step.forEach();
+
+        if (forEach.from() == null || !earlierTools.contains(forEach.from())) {
+            throw new PlanningException(
+                    "forEach of tool " + step.toolName() + " must take its items from an earlier step");
+        }
+
+        if (forEach.as() == null || forEach.as().isBlank()) {
+            throw new PlanningException(
+                    "Missing forEach parameter name for tool: " + step.toolName());
+        }
+
+        if (forEach.partitionSize() != null && forEach.partitionSize() < 1) {
+            throw new PlanningException(
+                    "Invalid forEach partition size for tool: " + step.toolName());
+        }
+
+        if (forEach.match() != null) {
+            if (forEach.match().length() > MAX_MATCH_LENGTH) {
+                throw new PlanningException(
+                        "forEach pattern too long for tool: " + step.toolName());
+            }
+            try {
+                Pattern.compile(forEach.match());
+            } catch (PatternSyntaxException e) {
+                throw new PlanningException(
+                        "Invalid forEach pattern for tool: " + step.toolName(), e);
+            }
         }
     }
 }
@@ -43,6 +43,11 @@ public class SimpleToolPlanner implements Planner {
             }
         }
 
+        // Email the customers found by the search, in parallel partitions
+        if (steps.stream().anyMatch(s -> s.toolName().equals("customer_search"))) {
+            steps.replaceAll(s -> s.toolName().equals("send_email_reminder") ? forEachCustomer(s) : s);
+        }
+
         // Return empty plan if no matching tools found
         return new Plan(steps);
     }
@@ -86,6 +91,14 @@ public class SimpleToolPlanner implements Planner {
         );
     }
 
+    /**
+     * Run a step for each customer ID in the customer search result.
+     */
+    private PlanStep forEachCustomer(PlanStep step) {
+        return new PlanStep(step.description(), step.toolName(), step.parameters(),
+                new PlanStep.ForEach("customer_search", "C\\d+", "customerIds", null));
+    }
+
     /**
      * Extract numeric balance value from goal text.
      */
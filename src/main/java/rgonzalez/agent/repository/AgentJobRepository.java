@@ -0,0 +1,61 @@
+package rgonzalez.agent.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import rgonzalez.agent.entity.AgentJob;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository for AgentJob persistence operations.
+ */
+@Repository
+public interface AgentJobRepository extends JpaRepository<AgentJob, String> {
+
+    /**
+     * Find a job within a conversation.
+     */
+    Optional<AgentJob> findByIdAndConversationId(String id, Long conversationId);
+
+    /**
+     * Find IDs of unfinished jobs whose lease has run out (their node stopped or died),
+     * oldest first.
+     */
+    @Query("SELECT j.id FROM AgentJob j "
+            + "WHERE j.status IN (rgonzalez.agent.entity.AgentJobStatus.QUEUED, "
+            + "rgonzalez.agent.entity.AgentJobStatus.RUNNING) "
+            + "AND (j.leaseUntil IS NULL OR j.leaseUntil < :now) "
+            + "ORDER BY j.createdAt")
+    List<String> findResumableIds(@Param("now") LocalDateTime now);
+
+    /**
+     * Take over an unfinished job whose lease has run out. The condition is checked
+     * again in the update, so of two nodes racing for a job only one claims it.
+     *
+     * @return 1 if the job was claimed, 0 if another node holds or took it
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE AgentJob j SET j.ownerNode = :node, j.leaseUntil = :leaseUntil "
+            + "WHERE j.id = :id AND j.status IN (rgonzalez.agent.entity.AgentJobStatus.QUEUED, "
+            + "rgonzalez.agent.entity.AgentJobStatus.RUNNING) "
+            + "AND (j.leaseUntil IS NULL OR j.leaseUntil < :now)")
+    int claim(@Param("id") String id, @Param("node") String node,
+              @Param("now") LocalDateTime now, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    /**
+     * Extend the leases of the unfinished jobs a node still owns.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE AgentJob j SET j.leaseUntil = :leaseUntil "
+            + "WHERE j.ownerNode = :node AND j.status IN (rgonzalez.agent.entity.AgentJobStatus.QUEUED, "
+            + "rgonzalez.agent.entity.AgentJobStatus.RUNNING)")
+    int renewLeases(@Param("node") String node, @Param("leaseUntil") LocalDateTime leaseUntil);
+}
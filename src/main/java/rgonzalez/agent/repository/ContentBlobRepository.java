@@ -0,0 +1,71 @@
+package rgonzalez.agent.repository;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import rgonzalez.agent.entity.ContentBlob;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository for ContentBlob persistence operations.
+ */
+@Repository
+public interface ContentBlobRepository extends JpaRepository<ContentBlob, String> {
+
+    /**
+     * Take a reference to a blob. Returns 0 if the blob does not exist.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE ContentBlob b SET b.refCount = b.refCount + 1 WHERE b.hash = :hash")
+    int acquire(@Param("hash") String hash);
+
+    /**
+     * Take a reference to a blob, storing it with one reference if it does not exist
+     * (e.g. purged since it was prepared). A single MERGE, so two turns storing the same
+     * blob again at once do not fail on the primary key.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "MERGE INTO content_blobs b "
+            + "USING (SELECT CAST(:hash AS VARCHAR(64)) AS hash) s ON b.hash = s.hash "
+            + "WHEN MATCHED THEN UPDATE SET ref_count = b.ref_count + 1 "
+            + "WHEN NOT MATCHED THEN INSERT (hash, data, compressed, content_length, ref_count, created_at) "
+            + "VALUES (:hash, :data, :compressed, :contentLength, 1, :createdAt)", nativeQuery = true)
+    int acquireOrInsert(@Param("hash") String hash, @Param("data") byte[] data,
+                        @Param("compressed") boolean compressed, @Param("contentLength") int contentLength,
+                        @Param("createdAt") LocalDateTime createdAt);
+
+    /**
+     * Drop references to a blob.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE ContentBlob b SET b.refCount = b.refCount - :count, b.releasedAt = :now WHERE b.hash = :hash")
+    int release(@Param("hash") String hash, @Param("count") long count, @Param("now") LocalDateTime now);
+
+    /**
+     * Hashes of blobs that no message references and that were neither created nor
+     * released after the given time.
+     */
+    @Query("SELECT b.hash FROM ContentBlob b WHERE b.refCount <= 0 AND b.createdAt < :before "
+            + "AND (b.releasedAt IS NULL OR b.releasedAt < :before) ORDER BY b.hash")
+    List<String> findUnreferenced(@Param("before") LocalDateTime before, Limit limit);
+
+    /**
+     * Delete the given blobs if they are still unreferenced and were neither created
+     * nor released after the given time.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ContentBlob b WHERE b.hash IN :hashes AND b.refCount <= 0 AND b.createdAt < :before "
+            + "AND (b.releasedAt IS NULL OR b.releasedAt < :before)")
+    int deleteUnreferenced(@Param("hashes") Collection<String> hashes, @Param("before") LocalDateTime before);
+}
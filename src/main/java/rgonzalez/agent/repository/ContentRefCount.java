@@ -0,0 +1,10 @@
+package rgonzalez.agent.repository;
+
+/**
+ * Number of messages in a set that reference one content blob.
+ */
+public record ContentRefCount(
+        String contentHash,
+        long references
+) {
+}
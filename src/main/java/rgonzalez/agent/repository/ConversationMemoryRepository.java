@@ -0,0 +1,12 @@
+package rgonzalez.agent.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import rgonzalez.agent.entity.ConversationMemory;
+
+/**
+ * Repository for ConversationMemory persistence operations.
+ */
+@Repository
+public interface ConversationMemoryRepository extends JpaRepository<ConversationMemory, Long> {
+}
@@ -1,11 +1,20 @@
 package rgonzalez.agent.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import rgonzalez.agent.entity.Conversation;
 import rgonzalez.agent.entity.ConversationStatus;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Repository for Conversation entity persistence operations.
@@ -14,13 +23,100 @@ import java.util.List;
 public interface ConversationRepository extends JpaRepository<Conversation, Long> {
 
     /**
-     * Find conversations by user ID.
+     * Select clause of the ConversationView projection shared by the listing queries.
      */
-    List<Conversation> findByUserId(String userId);
+    String VIEW_SELECT = "SELECT new rgonzalez.agent.repository.ConversationView("
+            + "c.id, c.userId, c.status, c.createdAt, c.updatedAt, "
+            + "c.messageCount, c.lastMessageAt, c.promptTokens, c.completionTokens, c.toolInvocations) ";
 
     /**
-     * Find conversations by status.
+     * Page of a user's conversations, newest first, before the keyset cursor.
+     * Served by the conversations(user_id, id) index.
      */
-    List<Conversation> findByStatus(ConversationStatus status);
+    @Query(VIEW_SELECT
+            + "FROM Conversation c WHERE c.userId = :userId AND c.id < :beforeId ORDER BY c.id DESC")
+    List<ConversationView> findPageByUserId(@Param("userId") String userId,
+                                            @Param("beforeId") Long beforeId,
+                                            Limit limit);
+
+    /**
+     * Page of a user's conversations in one status, newest first, before the keyset cursor.
+     * Served by the conversations(user_id, status, id) index.
+     */
+    @Query(VIEW_SELECT
+            + "FROM Conversation c WHERE c.userId = :userId AND c.status = :status AND c.id < :beforeId "
+            + "ORDER BY c.id DESC")
+    List<ConversationView> findPageByUserIdAndStatus(@Param("userId") String userId,
+                                                     @Param("status") ConversationStatus status,
+                                                     @Param("beforeId") Long beforeId,
+                                                     Limit limit);
+
+    /**
+     * Page of conversations in one status, newest first, before the keyset cursor.
+     * Served by the conversations(status, id) index.
+     */
+    @Query(VIEW_SELECT
+            + "FROM Conversation c WHERE c.status = :status AND c.id < :beforeId ORDER BY c.id DESC")
+    List<ConversationView> findPageByStatus(@Param("status") ConversationStatus status,
+                                            @Param("beforeId") Long beforeId,
+                                            Limit limit);
+
+    /**
+     * Page of all conversations, newest first, before the keyset cursor.
+     */
+    @Query(VIEW_SELECT
+            + "FROM Conversation c WHERE c.id < :beforeId ORDER BY c.id DESC")
+    List<ConversationView> findPage(@Param("beforeId") Long beforeId, Limit limit);
+
+    /**
+     * IDs of a user's archived conversations, oldest first.
+     */
+    @Query("SELECT c.id FROM Conversation c WHERE c.userId = :userId "
+            + "AND c.status = rgonzalez.agent.entity.ConversationStatus.ARCHIVED ORDER BY c.id")
+    List<Long> findArchivedIdsByUserId(@Param("userId") String userId);
+
+    /**
+     * IDs of a user's conversations that still hold their messages (not archived), oldest first.
+     */
+    @Query("SELECT c.id FROM Conversation c WHERE c.userId = :userId "
+            + "AND c.status <> rgonzalez.agent.entity.ConversationStatus.ARCHIVED ORDER BY c.id")
+    List<Long> findLiveIdsByUserId(@Param("userId") String userId);
+
+    /**
+     * IDs of conversations that still hold their messages (not archived), after the
+     * keyset cursor, in ID order.
+     */
+    @Query("SELECT c.id FROM Conversation c WHERE c.id > :afterId "
+            + "AND c.status <> rgonzalez.agent.entity.ConversationStatus.ARCHIVED ORDER BY c.id")
+    List<Long> findLiveIdsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    /**
+     * Find several conversations by ID in one query, in no particular order.
+     */
+    @Query(VIEW_SELECT
+            + "FROM Conversation c WHERE c.id IN :ids")
+    List<ConversationView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Stream all conversations in a status for batch processing, fetching rows from the
+     * driver in chunks rather than materializing the whole result. Must be consumed
+     * inside a transaction and closed; callers should detach entities they are done
+     * with so the persistence context does not grow with the stream.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT c FROM Conversation c WHERE c.status = :status ORDER BY c.id")
+    Stream<Conversation> streamByStatus(@Param("status") ConversationStatus status);
+
+    /**
+     * Find conversations due for archiving: completed before one cutoff, or still
+     * active but idle since another.
+     */
+    @Query("SELECT c.id FROM Conversation c "
+            + "WHERE (c.status = rgonzalez.agent.entity.ConversationStatus.COMPLETED AND c.updatedAt < :completedBefore) "
+            + "OR (c.status = rgonzalez.agent.entity.ConversationStatus.ACTIVE AND c.updatedAt < :idleBefore) "
+            + "ORDER BY c.id")
+    List<Long> findArchivableIds(@Param("completedBefore") LocalDateTime completedBefore,
+                                 @Param("idleBefore") LocalDateTime idleBefore,
+                                 Limit limit);
 
 }
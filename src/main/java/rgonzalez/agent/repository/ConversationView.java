@@ -0,0 +1,24 @@
+package rgonzalez.agent.repository;
+
+import rgonzalez.agent.entity.ConversationStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a conversation, selected directly into a DTO without
+ * loading the Conversation entity. Message and token totals come from the counters
+ * kept on the conversation row, so no messages are read.
+ */
+public record ConversationView(
+        Long id,
+        String userId,
+        ConversationStatus status,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt,
+        long messageCount,
+        LocalDateTime lastMessageAt,
+        long promptTokens,
+        long completionTokens,
+        long toolInvocations
+) {
+}
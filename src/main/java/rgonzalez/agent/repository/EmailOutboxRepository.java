@@ -0,0 +1,101 @@
+package rgonzalez.agent.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import rgonzalez.agent.entity.EmailOutboxEntry;
+import rgonzalez.agent.entity.EmailOutboxStatus;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Repository for EmailOutboxEntry persistence operations.
+ */
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxEntry, Long> {
+
+    /**
+     * Find IDs of entries that can be claimed: pending and due, or in flight with an
+     * expired lease (their dispatcher died), oldest first.
+     */
+    @Query("SELECT e.id FROM EmailOutboxEntry e "
+            + "WHERE (e.status = rgonzalez.agent.entity.EmailOutboxStatus.PENDING AND e.nextAttemptAt <= :now) "
+            + "OR (e.status = rgonzalez.agent.entity.EmailOutboxStatus.IN_FLIGHT AND e.leaseUntil < :now) "
+            + "ORDER BY e.id")
+    List<Long> findClaimableIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * Claim entries for one dispatch batch. The claimable condition is checked again in
+     * the update, so of two dispatchers racing for a row only one changes it.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailOutboxEntry e SET e.status = rgonzalez.agent.entity.EmailOutboxStatus.IN_FLIGHT, "
+            + "e.claimedBy = :claimToken, e.leaseUntil = :leaseUntil "
+            + "WHERE e.id IN :ids AND ("
+            + "(e.status = rgonzalez.agent.entity.EmailOutboxStatus.PENDING AND e.nextAttemptAt <= :now) "
+            + "OR (e.status = rgonzalez.agent.entity.EmailOutboxStatus.IN_FLIGHT AND e.leaseUntil < :now))")
+    int claim(@Param("ids") Collection<Long> ids, @Param("claimToken") String claimToken,
+              @Param("now") LocalDateTime now, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    /**
+     * Find the entries claimed with a claim token, oldest first.
+     */
+    List<EmailOutboxEntry> findByClaimedByAndStatusOrderByIdAsc(String claimedBy, EmailOutboxStatus status);
+
+    /**
+     * Record the outcome of a delivery attempt and release the claim, only if the entry
+     * is still claimed with the given token. An entry whose lease ran out may have been
+     * claimed by another dispatcher since; its outcome is left for that one to record.
+     *
+     * @return 1 if the outcome was recorded, 0 if the claim was lost
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailOutboxEntry e SET e.status = :status, e.attempts = :attempts, "
+            + "e.nextAttemptAt = :nextAttemptAt, e.sentAt = :sentAt, e.lastError = :lastError, "
+            + "e.claimedBy = null, e.leaseUntil = null "
+            + "WHERE e.id = :id AND e.claimedBy = :claimToken "
+            + "AND e.status = rgonzalez.agent.entity.EmailOutboxStatus.IN_FLIGHT")
+    int finish(@Param("id") Long id, @Param("claimToken") String claimToken,
+               @Param("status") EmailOutboxStatus status, @Param("attempts") int attempts,
+               @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("sentAt") LocalDateTime sentAt,
+               @Param("lastError") String lastError);
+
+    /**
+     * Make the entries queued by a turn deliverable. Called in the transaction that saves
+     * the turn's response, so they become PENDING only if it commits.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailOutboxEntry e SET e.status = rgonzalez.agent.entity.EmailOutboxStatus.PENDING "
+            + "WHERE e.turnKey = :turnKey AND e.status = rgonzalez.agent.entity.EmailOutboxStatus.PENDING_COMMIT")
+    int releaseTurn(@Param("turnKey") String turnKey);
+
+    /**
+     * Delete entries of turns that never committed, queued before the cutoff.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM EmailOutboxEntry e "
+            + "WHERE e.status = rgonzalez.agent.entity.EmailOutboxStatus.PENDING_COMMIT AND e.createdAt < :cutoff")
+    int deleteUncommittedBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * Find which of the given dedupe keys are already queued.
+     */
+    @Query("select e.dedupeKey from EmailOutboxEntry e where e.dedupeKey in :keys")
+    Set<String> findExistingDedupeKeys(@Param("keys") Collection<String> keys);
+
+    /**
+     * Count entries in a status.
+     */
+    long countByStatus(EmailOutboxStatus status);
+}
@@ -0,0 +1,45 @@
+package rgonzalez.agent.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import rgonzalez.agent.entity.IdempotencyRecord;
+
+import java.time.LocalDateTime;
+
+/**
+ * Repository for IdempotencyRecord persistence operations.
+ */
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    /**
+     * Record the result of a completed request.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.resultMessageId = :messageId, r.expiresAt = :expiresAt WHERE r.id = :id")
+    int complete(@Param("id") String id, @Param("messageId") Long messageId, @Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Take over an in-progress request whose owner stopped before finishing it.
+     * Returns 1 only for the caller that won the takeover.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.createdAt = :now "
+            + "WHERE r.id = :id AND r.resultMessageId IS NULL AND r.createdAt < :staleBefore")
+    int reclaimStale(@Param("id") String id, @Param("now") LocalDateTime now,
+                     @Param("staleBefore") LocalDateTime staleBefore);
+
+    /**
+     * Delete records past their retention.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
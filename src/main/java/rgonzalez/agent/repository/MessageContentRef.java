@@ -0,0 +1,10 @@
+package rgonzalez.agent.repository;
+
+/**
+ * Hash of the content blob a message references.
+ */
+public record MessageContentRef(
+        Long messageId,
+        String contentHash
+) {
+}
@@ -1,10 +1,20 @@
 package rgonzalez.agent.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import rgonzalez.agent.entity.Message;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Repository for Message entity persistence operations.
@@ -17,6 +27,107 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
      */
     List<Message> findByConversationIdOrderByCreatedAtAsc(Long conversationId);
 
+    /**
+     * First page of a conversation's history as projections, oldest first.
+     */
+    @Query("SELECT new rgonzalez.agent.repository.MessageView("
+            + "m.id, m.conversation.id, m.role, m.content, m.toolsUsed, m.createdAt) "
+            + "FROM Message m WHERE m.conversation.id = :conversationId "
+            + "ORDER BY m.createdAt ASC, m.id ASC")
+    List<MessageView> findHistoryPage(@Param("conversationId") Long conversationId, Limit limit);
+
+    /**
+     * Page of a conversation's history after the (createdAt, id) keyset cursor.
+     * Served by the messages(conversation_id, created_at, id) index.
+     */
+    @Query("SELECT new rgonzalez.agent.repository.MessageView("
+            + "m.id, m.conversation.id, m.role, m.content, m.toolsUsed, m.createdAt) "
+            + "FROM Message m WHERE m.conversation.id = :conversationId "
+            + "AND (m.createdAt > :afterCreatedAt OR (m.createdAt = :afterCreatedAt AND m.id > :afterId)) "
+            + "ORDER BY m.createdAt ASC, m.id ASC")
+    List<MessageView> findHistoryPageAfter(@Param("conversationId") Long conversationId,
+                                           @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                           @Param("afterId") Long afterId,
+                                           Limit limit);
+
+    /**
+     * Most recent messages of a conversation as projections, newest first.
+     */
+    @Query("SELECT new rgonzalez.agent.repository.MessageView("
+            + "m.id, m.conversation.id, m.role, m.content, m.toolsUsed, m.createdAt) "
+            + "FROM Message m WHERE m.conversation.id = :conversationId "
+            + "ORDER BY m.createdAt DESC, m.id DESC")
+    List<MessageView> findRecentMessages(@Param("conversationId") Long conversationId, Limit limit);
+
+    /**
+     * Messages with an ID greater than the given one as projections, in ID order.
+     */
+    @Query("SELECT new rgonzalez.agent.repository.MessageView("
+            + "m.id, m.conversation.id, m.role, m.content, m.toolsUsed, m.createdAt) "
+            + "FROM Message m WHERE m.id > :afterId ORDER BY m.id ASC")
+    List<MessageView> findViewsAfterId(@Param("afterId") Long afterId, Limit limit);
+
+    /**
+     * Messages by ID as projections.
+     */
+    @Query("SELECT new rgonzalez.agent.repository.MessageView("
+            + "m.id, m.conversation.id, m.role, m.content, m.toolsUsed, m.createdAt) "
+            + "FROM Message m WHERE m.id IN :ids")
+    List<MessageView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Stream a conversation's messages as projections, oldest first, fetching rows
+     * from the driver in chunks. Must be consumed inside a transaction and closed.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new rgonzalez.agent.repository.MessageView("
+            + "m.id, m.conversation.id, m.role, m.content, m.toolsUsed, m.createdAt) "
+            + "FROM Message m WHERE m.conversation.id = :conversationId "
+            + "ORDER BY m.createdAt ASC, m.id ASC")
+    Stream<MessageView> streamByConversationId(@Param("conversationId") Long conversationId);
+
+    /**
+     * Stream the messages of all of a user's conversations as projections, grouped by
+     * conversation and oldest first within each. Must be consumed inside a transaction and closed.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT new rgonzalez.agent.repository.MessageView("
+            + "m.id, m.conversation.id, m.role, m.content, m.toolsUsed, m.createdAt) "
+            + "FROM Message m WHERE m.conversation.userId = :userId "
+            + "ORDER BY m.conversation.id ASC, m.createdAt ASC, m.id ASC")
+    Stream<MessageView> streamByUserId(@Param("userId") String userId);
+
+    /**
+     * Aggregate the messages of several conversations, one row per conversation that has messages.
+     */
+    @Query("SELECT new rgonzalez.agent.repository.MessageStats(m.conversation.id, COUNT(m), MAX(m.createdAt), "
+            + "COALESCE(SUM(m.promptTokens), 0L), COALESCE(SUM(m.completionTokens), 0L), "
+            + "COALESCE(SUM(m.toolInvocations), 0L)) "
+            + "FROM Message m WHERE m.conversation.id IN :conversationIds GROUP BY m.conversation.id")
+    List<MessageStats> aggregateByConversationIdIn(@Param("conversationIds") Collection<Long> conversationIds);
+
+    /**
+     * Content blob hashes of those of the given messages whose content is stored as a blob.
+     */
+    @Query("SELECT new rgonzalez.agent.repository.MessageContentRef(m.id, m.contentHash) "
+            + "FROM Message m WHERE m.id IN :ids AND m.contentHash IS NOT NULL")
+    List<MessageContentRef> findContentRefsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Count the references a conversation's messages hold to each content blob.
+     */
+    @Query("SELECT new rgonzalez.agent.repository.ContentRefCount(m.contentHash, COUNT(m)) "
+            + "FROM Message m WHERE m.conversation.id = :conversationId AND m.contentHash IS NOT NULL "
+            + "GROUP BY m.contentHash")
+    List<ContentRefCount> countContentRefsByConversationId(@Param("conversationId") Long conversationId);
+
+    /**
+     * Delete all messages of a conversation in one statement.
+     */
+    @Modifying
+    @Query("DELETE FROM Message m WHERE m.conversation.id = :conversationId")
+    int deleteByConversationId(@Param("conversationId") Long conversationId);
+
     /**
      * Count messages in a conversation.
      */
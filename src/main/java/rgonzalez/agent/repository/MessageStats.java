@@ -0,0 +1,16 @@
+package rgonzalez.agent.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Totals over a conversation's messages, computed from the messages table.
+ */
+public record MessageStats(
+        Long conversationId,
+        long messageCount,
+        LocalDateTime lastMessageAt,
+        long promptTokens,
+        long completionTokens,
+        long toolInvocations
+) {
+}
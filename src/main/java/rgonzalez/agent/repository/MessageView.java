@@ -0,0 +1,19 @@
+package rgonzalez.agent.repository;
+
+import rgonzalez.agent.entity.MessageRole;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a message, selected directly into a DTO without
+ * loading the Message entity or its conversation.
+ */
+public record MessageView(
+        Long id,
+        Long conversationId,
+        MessageRole role,
+        String content,
+        String toolsUsed,
+        LocalDateTime createdAt
+) {
+}
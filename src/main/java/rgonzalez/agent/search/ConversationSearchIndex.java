@@ -0,0 +1,602 @@
+package rgonzalez.agent.search;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import rgonzalez.agent.persistence.MessageStore;
+import rgonzalez.agent.repository.MessageView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Incremental inverted index over conversation messages, ranked with BM25.
+ * New messages go to an in-memory table that is flushed to an immutable, memory-mapped
+ * segment file once it holds enough documents. When there are too many segments they
+ * are merged in the background. A manifest records the live segments and the highest
+ * message ID they contain; on startup messages after that checkpoint are re-indexed
+ * from the message store, so messages only in memory at a crash are not lost.
+ * Results are grouped by conversation: a conversation scores as its best message plus
+ * a fraction of its other matches.
+ */
+@Component
+public class ConversationSearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double OTHER_MATCHES_WEIGHT = 0.25;
+    private static final String MANIFEST = "manifest.properties";
+    private static final int CATCH_UP_PAGE = 1000;
+
+    private final Path directory;
+    private final MessageStore messageStore;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService merger;
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+    private final Timer searchTimer;
+
+    // Guarded by lock
+    private final List<IndexSegment> segments = new ArrayList<>();
+    private MemTable memTable = new MemTable();
+    private long checkpoint;
+    private int nextSegmentNumber = 1;
+
+    @Value("${agent.search.flush-docs:10000}")
+    private int flushDocs = 10000;
+
+    @Value("${agent.search.max-segments:8}")
+    private int maxSegments = 8;
+
+    @Value("${agent.search.catch-up-overlap:1000}")
+    private long catchUpOverlap = 1000;
+
+    public ConversationSearchIndex(MessageStore messageStore,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${agent.search.directory:./data/search}") String directory) {
+        this.messageStore = messageStore;
+        this.directory = Paths.get(directory);
+        this.merger = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-segment-merger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Files.createDirectories(this.directory);
+            loadManifest();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open search index at " + directory, e);
+        }
+
+        this.searchTimer = Timer.builder("conversation.search")
+                .description("Time to run a conversation search")
+                .register(meterRegistry);
+        Gauge.builder("conversation.search.documents", this, ConversationSearchIndex::getDocumentCount)
+                .description("Messages in the search index")
+                .register(meterRegistry);
+        Gauge.builder("conversation.search.segments", this, ConversationSearchIndex::getSegmentCount)
+                .description("Search index segments on disk")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Index committed messages. Messages without an ID, or already indexed, are skipped.
+     */
+    public void index(List<MessageView> messages) {
+        lock.writeLock().lock();
+        try {
+            for (MessageView message : messages) {
+                if (message.id() != null && !containsDoc(message.id())) {
+                    memTable.add(message.id(), message.conversationId(), TextAnalyzer.tokenize(message.content()));
+                }
+            }
+            if (memTable.size() >= flushDocs) {
+                flushLocked();
+            }
+        } catch (IOException e) {
+            System.err.println("Search index flush failed: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        scheduleMergeIfNeeded();
+    }
+
+    /**
+     * Rank conversations against a free-text query.
+     */
+    public List<SearchHit> search(String query, int limit) {
+        Set<String> terms = new LinkedHashSet<>(TextAnalyzer.tokenize(query));
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        return searchTimer.record(() -> {
+            lock.readLock().lock();
+            try {
+                return searchLocked(terms, limit);
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    private List<SearchHit> searchLocked(Set<String> terms, int limit) {
+        long documentCount = memTable.size();
+        long totalLength = memTable.totalLength();
+        for (IndexSegment segment : segments) {
+            documentCount += segment.docCount();
+            totalLength += segment.totalLength();
+        }
+        if (documentCount == 0) {
+            return List.of();
+        }
+        double averageLength = Math.max(1.0, (double) totalLength / documentCount);
+
+        Map<Long, DocScore> scores = new HashMap<>();
+        for (String term : terms) {
+            int docFreq = memTable.docFreq(term);
+            for (IndexSegment segment : segments) {
+                docFreq += segment.docFreq(term);
+            }
+            if (docFreq == 0) {
+                continue;
+            }
+            double idf = Math.log(1 + (documentCount - docFreq + 0.5) / (docFreq + 0.5));
+
+            for (IndexSegment segment : segments) {
+                Postings postings = segment.postings(term);
+                if (postings == null) {
+                    continue;
+                }
+                for (int i = 0; i < postings.size(); i++) {
+                    int doc = segment.docIndex(postings.docIds()[i]);
+                    accumulate(scores, postings.docIds()[i], segment.conversationIds()[doc],
+                            bm25(idf, postings.frequencies()[i], segment.docLengths()[doc], averageLength));
+                }
+            }
+            memTable.forEachPosting(term, (docId, conversationId, frequency, length) ->
+                    accumulate(scores, docId, conversationId, bm25(idf, frequency, length, averageLength)));
+        }
+
+        // Group by conversation
+        Map<Long, ConversationScore> conversations = new HashMap<>();
+        scores.forEach((docId, doc) -> conversations
+                .computeIfAbsent(doc.conversationId, id -> new ConversationScore())
+                .add(docId, doc.score));
+
+        return conversations.entrySet().stream()
+                .map(entry -> entry.getValue().toHit(entry.getKey()))
+                .sorted(Comparator.comparingDouble(SearchHit::score).reversed()
+                        .thenComparing(Comparator.comparingLong(SearchHit::conversationId).reversed()))
+                .limit(limit)
+                .toList();
+    }
+
+    private static double bm25(double idf, int frequency, int length, double averageLength) {
+        return idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+
+    private static void accumulate(Map<Long, DocScore> scores, long docId, long conversationId, double score) {
+        scores.computeIfAbsent(docId, id -> new DocScore(conversationId)).score += score;
+    }
+
+    /**
+     * Re-index messages after the last persisted checkpoint.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void catchUp() {
+        long afterId;
+        lock.readLock().lock();
+        try {
+            afterId = Math.max(0, checkpoint - catchUpOverlap);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        int indexed = 0;
+        while (true) {
+            List<MessageView> page = messageStore.findAfterId(afterId, CATCH_UP_PAGE);
+            if (page.isEmpty()) {
+                break;
+            }
+            index(page);
+            indexed += page.size();
+            afterId = page.get(page.size() - 1).id();
+        }
+        if (indexed > 0) {
+            System.out.println("Search index caught up on " + indexed + " messages");
+        }
+    }
+
+    /**
+     * Write buffered documents to a new segment.
+     */
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            flushLocked();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Search index flush failed", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        scheduleMergeIfNeeded();
+    }
+
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return memTable.size() + segments.stream().mapToInt(IndexSegment::docCount).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean containsDoc(long docId) {
+        if (memTable.contains(docId)) {
+            return true;
+        }
+        for (IndexSegment segment : segments) {
+            if (segment.containsDoc(docId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void flushLocked() throws IOException {
+        if (memTable.size() == 0) {
+            return;
+        }
+        MemTable flushing = memTable;
+        IndexSegment segment = flushing.writeSegment(directory.resolve(segmentName(nextSegmentNumber++)));
+        segments.add(segment);
+        memTable = new MemTable();
+        checkpoint = Math.max(checkpoint, flushing.maxDocId());
+        writeManifest();
+    }
+
+    private void scheduleMergeIfNeeded() {
+        if (getSegmentCount() > maxSegments && mergeScheduled.compareAndSet(false, true)) {
+            merger.execute(() -> {
+                try {
+                    mergeSegments();
+                } catch (IOException e) {
+                    System.err.println("Search segment merge failed: " + e.getMessage());
+                } finally {
+                    mergeScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Merge all current segments into one. Segments are immutable, so the merged file
+     * is built without holding the lock; only the swap is done under the write lock.
+     */
+    private void mergeSegments() throws IOException {
+        List<IndexSegment> sources;
+        int number;
+        lock.writeLock().lock();
+        try {
+            sources = new ArrayList<>(segments);
+            number = nextSegmentNumber++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (sources.size() < 2) {
+            return;
+        }
+
+        // Document table: union of all sources, first occurrence wins
+        TreeMap<Long, int[]> docLocations = new TreeMap<>();
+        for (int s = 0; s < sources.size(); s++) {
+            long[] ids = sources.get(s).docIds();
+            for (int i = 0; i < ids.length; i++) {
+                docLocations.putIfAbsent(ids[i], new int[]{s, i});
+            }
+        }
+        long[] docIds = new long[docLocations.size()];
+        long[] conversationIds = new long[docIds.length];
+        int[] docLengths = new int[docIds.length];
+        int d = 0;
+        for (Map.Entry<Long, int[]> entry : docLocations.entrySet()) {
+            IndexSegment source = sources.get(entry.getValue()[0]);
+            docIds[d] = entry.getKey();
+            conversationIds[d] = source.conversationIds()[entry.getValue()[1]];
+            docLengths[d] = source.docLengths()[entry.getValue()[1]];
+            d++;
+        }
+
+        Set<String> allTerms = new TreeSet<>();
+        sources.forEach(source -> allTerms.addAll(source.terms()));
+        SortedMap<String, Postings> merged = new TreeMap<>();
+        for (String term : allTerms) {
+            List<Postings> lists = new ArrayList<>();
+            for (IndexSegment source : sources) {
+                Postings postings = source.postings(term);
+                if (postings != null) {
+                    lists.add(postings);
+                }
+            }
+            merged.put(term, mergePostings(lists));
+        }
+
+        Path path = directory.resolve(segmentName(number));
+        IndexSegment mergedSegment = IndexSegment.write(path, docIds, conversationIds, docLengths, merged);
+
+        lock.writeLock().lock();
+        try {
+            int position = segments.indexOf(sources.get(0));
+            segments.removeAll(sources);
+            segments.add(Math.max(0, Math.min(position, segments.size())), mergedSegment);
+            writeManifest();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        for (IndexSegment source : sources) {
+            source.close();
+            Files.deleteIfExists(source.getPath());
+        }
+        System.out.println("Merged " + sources.size() + " search segments into " + path.getFileName());
+    }
+
+    /**
+     * Merge ascending posting lists, keeping the first entry for a document present in several.
+     */
+    private static Postings mergePostings(List<Postings> lists) {
+        if (lists.size() == 1) {
+            return lists.get(0);
+        }
+        int total = lists.stream().mapToInt(Postings::size).sum();
+        long[] ids = new long[total];
+        int[] frequencies = new int[total];
+        int[] cursors = new int[lists.size()];
+        int count = 0;
+        while (true) {
+            int best = -1;
+            for (int l = 0; l < lists.size(); l++) {
+                if (cursors[l] < lists.get(l).size()
+                        && (best < 0 || lists.get(l).docIds()[cursors[l]] < lists.get(best).docIds()[cursors[best]])) {
+                    best = l;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            long docId = lists.get(best).docIds()[cursors[best]];
+            if (count == 0 || ids[count - 1] != docId) {
+                ids[count] = docId;
+                frequencies[count] = lists.get(best).frequencies()[cursors[best]];
+                count++;
+            }
+            cursors[best]++;
+        }
+        return new Postings(ids, frequencies, count);
+    }
+
+    private void loadManifest() throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(manifest)) {
+            properties.load(in);
+        }
+        checkpoint = Long.parseLong(properties.getProperty("checkpoint", "0"));
+        nextSegmentNumber = Integer.parseInt(properties.getProperty("next-segment", "1"));
+        for (String name : properties.getProperty("segments", "").split(",")) {
+            if (!name.isBlank()) {
+                segments.add(IndexSegment.open(directory.resolve(name.trim())));
+            }
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("checkpoint", Long.toString(checkpoint));
+        properties.setProperty("next-segment", Integer.toString(nextSegmentNumber));
+        properties.setProperty("segments", String.join(",",
+                segments.stream().map(segment -> segment.getPath().getFileName().toString()).toList()));
+
+        Path temp = directory.resolve(MANIFEST + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "Conversation search index");
+        }
+        Files.move(temp, directory.resolve(MANIFEST),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String segmentName(int number) {
+        return String.format("segment-%06d.idx", number);
+    }
+
+    @PreDestroy
+    public void close() {
+        merger.shutdownNow();
+        lock.writeLock().lock();
+        try {
+            flushLocked();
+            for (IndexSegment segment : segments) {
+                segment.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing search index: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static final class DocScore {
+        private final long conversationId;
+        private double score;
+
+        DocScore(long conversationId) {
+            this.conversationId = conversationId;
+        }
+    }
+
+    private static final class ConversationScore {
+        private double best;
+        private double sum;
+        private long bestDocId;
+        private int matches;
+
+        void add(long docId, double score) {
+            if (score > best) {
+                best = score;
+                bestDocId = docId;
+            }
+            sum += score;
+            matches++;
+        }
+
+        SearchHit toHit(long conversationId) {
+            return new SearchHit(conversationId, best + OTHER_MATCHES_WEIGHT * (sum - best), matches, bestDocId);
+        }
+    }
+
+    /**
+     * Mutable in-memory part of the index. Guarded by the index lock.
+     */
+    private static final class MemTable {
+
+        private final Map<Long, long[]> docs = new HashMap<>();
+        private final Map<String, PostingsBuilder> postings = new HashMap<>();
+        private long totalLength;
+        private long maxDocId;
+
+        void add(long docId, long conversationId, List<String> terms) {
+            Map<String, Integer> frequencies = new HashMap<>();
+            for (String term : terms) {
+                frequencies.merge(term, 1, Integer::sum);
+            }
+            docs.put(docId, new long[]{conversationId, terms.size()});
+            frequencies.forEach((term, frequency) ->
+                    postings.computeIfAbsent(term, t -> new PostingsBuilder()).add(docId, frequency));
+            totalLength += terms.size();
+            maxDocId = Math.max(maxDocId, docId);
+        }
+
+        int size() {
+            return docs.size();
+        }
+
+        long totalLength() {
+            return totalLength;
+        }
+
+        long maxDocId() {
+            return maxDocId;
+        }
+
+        boolean contains(long docId) {
+            return docs.containsKey(docId);
+        }
+
+        int docFreq(String term) {
+            PostingsBuilder builder = postings.get(term);
+            return builder != null ? builder.size : 0;
+        }
+
+        void forEachPosting(String term, PostingConsumer consumer) {
+            PostingsBuilder builder = postings.get(term);
+            if (builder == null) {
+                return;
+            }
+            for (int i = 0; i < builder.size; i++) {
+                long[] doc = docs.get(builder.docIds[i]);
+                consumer.accept(builder.docIds[i], doc[0], builder.frequencies[i], (int) doc[1]);
+            }
+        }
+
+        IndexSegment writeSegment(Path path) throws IOException {
+            long[] docIds = docs.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            long[] conversationIds = new long[docIds.length];
+            int[] docLengths = new int[docIds.length];
+            for (int i = 0; i < docIds.length; i++) {
+                long[] doc = docs.get(docIds[i]);
+                conversationIds[i] = doc[0];
+                docLengths[i] = (int) doc[1];
+            }
+            SortedMap<String, Postings> sorted = new TreeMap<>();
+            postings.forEach((term, builder) -> sorted.put(term, builder.toSortedPostings()));
+            return IndexSegment.write(path, docIds, conversationIds, docLengths, sorted);
+        }
+    }
+
+    @FunctionalInterface
+    private interface PostingConsumer {
+        void accept(long docId, long conversationId, int frequency, int length);
+    }
+
+    private static final class PostingsBuilder {
+        private long[] docIds = new long[4];
+        private int[] frequencies = new int[4];
+        private int size;
+
+        void add(long docId, int frequency) {
+            if (size == docIds.length) {
+                docIds = Arrays.copyOf(docIds, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docIds[size] = docId;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        /**
+         * Postings are appended in arrival order, which need not be ID order.
+         */
+        Postings toSortedPostings() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> docIds[i]));
+            long[] ids = new long[size];
+            int[] freqs = new int[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = docIds[order[i]];
+                freqs[i] = frequencies[order[i]];
+            }
+            return new Postings(ids, freqs, size);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package rgonzalez.agent.search;
+
+import org.springframework.stereotype.Service;
+import rgonzalez.agent.archive.ArchivedConversation;
+import rgonzalez.agent.archive.ConversationArchiveStore;
+import rgonzalez.agent.persistence.MessageStore;
+import rgonzalez.agent.repository.MessageView;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Searches conversation transcripts and attaches a snippet of the best-matching
+ * message to each result. Snippets are loaded from the message store in one lookup;
+ * messages of archived conversations are read from the archive.
+ */
+@Service
+public class ConversationSearchService {
+
+    private static final int SNIPPET_LENGTH = 200;
+
+    private final ConversationSearchIndex searchIndex;
+    private final MessageStore messageStore;
+    private final ConversationArchiveStore archiveStore;
+
+    public ConversationSearchService(ConversationSearchIndex searchIndex,
+                                     MessageStore messageStore,
+                                     ConversationArchiveStore archiveStore) {
+        this.searchIndex = searchIndex;
+        this.messageStore = messageStore;
+        this.archiveStore = archiveStore;
+    }
+
+    /**
+     * Find the conversations best matching the query, highest score first.
+     */
+    public List<SearchResult> search(String query, int limit) {
+        List<SearchHit> hits = searchIndex.search(query, limit);
+        if (hits.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, MessageView> messages = messageStore
+                .findByIds(hits.stream().map(SearchHit::bestMessageId).toList())
+                .stream()
+                .collect(Collectors.toMap(MessageView::id, Function.identity()));
+
+        String firstTerm = query.trim().split("\\s+")[0];
+        return hits.stream()
+                .map(hit -> {
+                    MessageView message = messages.get(hit.bestMessageId());
+                    if (message == null && archiveStore.contains(hit.conversationId())) {
+                        message = findArchived(hit.conversationId(), hit.bestMessageId());
+                    }
+                    String snippet = message != null ? snippet(message.content(), firstTerm) : null;
+                    return new SearchResult(hit.conversationId(), hit.score(), hit.matchedMessages(),
+                            hit.bestMessageId(), snippet);
+                })
+                .toList();
+    }
+
+    private MessageView findArchived(long conversationId, long messageId) {
+        return archiveStore.read(conversationId)
+                .map(ArchivedConversation::messages)
+                .flatMap(messages -> messages.stream().filter(m -> m.id() == messageId).findFirst())
+                .orElse(null);
+    }
+
+    /**
+     * Cut a window of the content around the first occurrence of the term.
+     */
+    private static String snippet(String content, String term) {
+        if (content == null) {
+            return null;
+        }
+        int match = content.toLowerCase(Locale.ROOT).indexOf(term.toLowerCase(Locale.ROOT));
+        int start = Math.max(0, match - SNIPPET_LENGTH / 4);
+        int end = Math.min(content.length(), start + SNIPPET_LENGTH);
+        return (start > 0 ? "..." : "") + content.substring(start, end) + (end < content.length() ? "..." : "");
+    }
+
+    /**
+     * A ranked conversation with a snippet of its best-matching message.
+     */
+    public record SearchResult(long conversationId, double score, int matchedMessages,
+                               long messageId, String snippet) {
+    }
+}
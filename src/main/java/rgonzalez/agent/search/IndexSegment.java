@@ -0,0 +1,209 @@
+package rgonzalez.agent.search;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+/**
+ * Immutable, memory-mapped index segment.
+ * Layout: header, document table (docId, conversationId, length) sorted by docId,
+ * term dictionary (term, docFreq, postings offset and length) and the compressed
+ * postings. The document table and dictionary are read onto the heap when the
+ * segment is opened; postings stay in the mapped file and are decoded per query.
+ */
+final class IndexSegment implements Closeable {
+
+    private static final int MAGIC = 0x53494458;
+    private static final int VERSION = 1;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    private final long[] docIds;
+    private final long[] conversationIds;
+    private final int[] docLengths;
+    private final long totalLength;
+    private final Map<String, TermInfo> terms;
+    private final int postingsStart;
+
+    private IndexSegment(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+        ByteBuffer buffer = data.duplicate();
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            channel.close();
+            throw new IOException("Not a search index segment: " + path);
+        }
+
+        int docCount = buffer.getInt();
+        this.docIds = new long[docCount];
+        this.conversationIds = new long[docCount];
+        this.docLengths = new int[docCount];
+        long length = 0;
+        for (int i = 0; i < docCount; i++) {
+            docIds[i] = buffer.getLong();
+            conversationIds[i] = buffer.getLong();
+            docLengths[i] = buffer.getInt();
+            length += docLengths[i];
+        }
+        this.totalLength = length;
+
+        int termCount = buffer.getInt();
+        this.terms = new HashMap<>(termCount * 2);
+        for (int i = 0; i < termCount; i++) {
+            byte[] termBytes = new byte[buffer.getShort()];
+            buffer.get(termBytes);
+            terms.put(new String(termBytes, StandardCharsets.UTF_8),
+                    new TermInfo(buffer.getInt(), buffer.getInt(), buffer.getInt()));
+        }
+        this.postingsStart = buffer.position();
+    }
+
+    /**
+     * Open an existing segment file.
+     */
+    static IndexSegment open(Path path) throws IOException {
+        return new IndexSegment(path);
+    }
+
+    /**
+     * Write a segment and open it. The file is written under a temporary name and
+     * moved into place, so a crash never leaves a partial segment behind.
+     *
+     * @param docIds          ascending document IDs
+     * @param conversationIds conversation of each document
+     * @param docLengths      term count of each document
+     * @param postings        postings per term, each with ascending document IDs
+     */
+    static IndexSegment write(Path path, long[] docIds, long[] conversationIds, int[] docLengths,
+                              SortedMap<String, Postings> postings) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(docIds.length);
+            for (int i = 0; i < docIds.length; i++) {
+                out.writeLong(docIds[i]);
+                out.writeLong(conversationIds[i]);
+                out.writeInt(docLengths[i]);
+            }
+
+            byte[][] encoded = new byte[postings.size()][];
+            int index = 0;
+            for (Postings list : postings.values()) {
+                encoded[index++] = PostingsCodec.encode(list.docIds(), list.frequencies(), list.size());
+            }
+
+            out.writeInt(postings.size());
+            int offset = 0;
+            index = 0;
+            for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+                byte[] termBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(termBytes.length);
+                out.write(termBytes);
+                out.writeInt(entry.getValue().size());
+                out.writeInt(offset);
+                out.writeInt(encoded[index].length);
+                offset += encoded[index].length;
+                index++;
+            }
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+            out.flush();
+            file.flush();
+        }
+        try (FileChannel written = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            written.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return open(path);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    int docCount() {
+        return docIds.length;
+    }
+
+    long totalLength() {
+        return totalLength;
+    }
+
+    long[] docIds() {
+        return docIds;
+    }
+
+    long[] conversationIds() {
+        return conversationIds;
+    }
+
+    int[] docLengths() {
+        return docLengths;
+    }
+
+    Set<String> terms() {
+        return terms.keySet();
+    }
+
+    boolean containsDoc(long docId) {
+        return Arrays.binarySearch(docIds, docId) >= 0;
+    }
+
+    /**
+     * Position of a document in the document table, or a negative value if absent.
+     */
+    int docIndex(long docId) {
+        return Arrays.binarySearch(docIds, docId);
+    }
+
+    /**
+     * Decode the postings of a term, or null if the term does not occur in this segment.
+     */
+    Postings postings(String term) {
+        TermInfo info = terms.get(term);
+        if (info == null) {
+            return null;
+        }
+        ByteBuffer slice = data.duplicate();
+        slice.position(postingsStart + info.offset());
+        slice.limit(postingsStart + info.offset() + info.length());
+        long[] ids = new long[info.docFreq()];
+        int[] frequencies = new int[info.docFreq()];
+        PostingsCodec.decode(slice, info.docFreq(), ids, frequencies);
+        return new Postings(ids, frequencies, info.docFreq());
+    }
+
+    int docFreq(String term) {
+        TermInfo info = terms.get(term);
+        return info != null ? info.docFreq() : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private record TermInfo(int docFreq, int offset, int length) {
+    }
+}
@@ -0,0 +1,7 @@
+package rgonzalez.agent.search;
+
+/**
+ * Decoded posting list of one term: ascending document IDs and term frequencies.
+ */
+record Postings(long[] docIds, int[] frequencies, int size) {
+}
@@ -0,0 +1,61 @@
+package rgonzalez.agent.search;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Compressed posting list encoding: ascending document IDs stored as varint-encoded
+ * gaps, each followed by the varint term frequency. Typical postings take 2-3 bytes
+ * per entry instead of 12.
+ */
+final class PostingsCodec {
+
+    private PostingsCodec() {
+    }
+
+    /**
+     * Encode postings; docIds must be strictly ascending.
+     */
+    static byte[] encode(long[] docIds, int[] frequencies, int count) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(count * 3);
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            writeVarLong(out, docIds[i] - previous);
+            writeVarLong(out, frequencies[i]);
+            previous = docIds[i];
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode postings into the given arrays, which must hold docFreq entries.
+     */
+    static void decode(ByteBuffer buffer, int docFreq, long[] docIds, int[] frequencies) {
+        long previous = 0;
+        for (int i = 0; i < docFreq; i++) {
+            previous += readVarLong(buffer);
+            docIds[i] = previous;
+            frequencies[i] = (int) readVarLong(buffer);
+        }
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
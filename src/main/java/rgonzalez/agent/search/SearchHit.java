@@ -0,0 +1,8 @@
+package rgonzalez.agent.search;
+
+/**
+ * A conversation matching a search, with its score, the number of matching
+ * messages and the best-matching message.
+ */
+public record SearchHit(long conversationId, double score, int matchedMessages, long bestMessageId) {
+}
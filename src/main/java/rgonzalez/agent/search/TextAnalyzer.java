@@ -0,0 +1,56 @@
+package rgonzalez.agent.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Turns message text and search queries into index terms.
+ */
+final class TextAnalyzer {
+
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "from", "has", "have",
+            "i", "if", "in", "into", "is", "it", "its", "me", "my", "no", "not", "of", "on", "or",
+            "so", "that", "the", "their", "them", "then", "there", "these", "they", "this", "to",
+            "was", "we", "were", "will", "with", "you", "your");
+
+    private TextAnalyzer() {
+    }
+
+    /**
+     * Lowercase, split on non-alphanumerics, drop stop words and apply light suffix stemming.
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+        List<String> terms = new ArrayList<>();
+        for (String raw : text.toLowerCase(Locale.ROOT).split("[^a-z0-9]+")) {
+            if (raw.length() < 2 || raw.length() > MAX_TERM_LENGTH || STOP_WORDS.contains(raw)) {
+                continue;
+            }
+            terms.add(stem(raw));
+        }
+        return terms;
+    }
+
+    private static String stem(String term) {
+        if (term.length() > 5 && term.endsWith("ing")) {
+            return term.substring(0, term.length() - 3);
+        }
+        if (term.length() > 4 && term.endsWith("ies")) {
+            return term.substring(0, term.length() - 3) + "y";
+        }
+        if (term.length() > 4 && term.endsWith("es") && !term.endsWith("ses")) {
+            return term.substring(0, term.length() - 1);
+        }
+        if (term.length() > 3 && term.endsWith("s") && !term.endsWith("ss")) {
+            return term.substring(0, term.length() - 1);
+        }
+        return term;
+    }
+}
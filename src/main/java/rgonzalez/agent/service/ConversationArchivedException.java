@@ -0,0 +1,12 @@
+package rgonzalez.agent.service;
+
+/**
+ * Thrown when a turn is sent to a conversation that has been archived, including
+ * one archived while the turn was running.
+ */
+public class ConversationArchivedException extends RuntimeException {
+
+    public ConversationArchivedException(Long conversationId) {
+        super("Conversation " + conversationId + " is archived");
+    }
+}
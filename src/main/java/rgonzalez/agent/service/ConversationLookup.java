@@ -0,0 +1,12 @@
+package rgonzalez.agent.service;
+
+import rgonzalez.agent.repository.ConversationView;
+
+import java.util.List;
+
+/**
+ * Result of fetching several conversations by ID: those found, in request order,
+ * and the requested IDs that do not exist.
+ */
+public record ConversationLookup(List<ConversationView> conversations, List<Long> missingIds) {
+}
@@ -0,0 +1,11 @@
+package rgonzalez.agent.service;
+
+/**
+ * Thrown when a turn or job is sent to a conversation that does not exist.
+ */
+public class ConversationNotFoundException extends RuntimeException {
+
+    public ConversationNotFoundException(Long conversationId) {
+        super("Conversation " + conversationId + " not found");
+    }
+}
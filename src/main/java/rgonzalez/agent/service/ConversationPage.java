@@ -0,0 +1,16 @@
+package rgonzalez.agent.service;
+
+import rgonzalez.agent.repository.ConversationView;
+
+import java.util.List;
+
+/**
+ * One page of a conversation listing, newest first, and the cursor for the next
+ * page (the last conversation ID on this page), or null when this is the last page.
+ */
+public record ConversationPage(List<ConversationView> conversations, Long nextCursor) {
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
@@ -1,55 +1,131 @@
 package rgonzalez.agent.service;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import rgonzalez.agent.archive.ArchivedConversation;
+import rgonzalez.agent.archive.ConversationArchiveStore;
+import rgonzalez.agent.context.ConversationMemoryService;
+import rgonzalez.agent.context.ConversationSummary;
+import rgonzalez.agent.context.ConversationWindowCache;
+import rgonzalez.agent.dto.HistoryCursor;
 import rgonzalez.agent.entity.Conversation;
 import rgonzalez.agent.entity.ConversationStatus;
 import rgonzalez.agent.entity.Message;
 import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.execution.ConversationTurnExecutor;
+import rgonzalez.agent.execution.ForEachStepExecutor;
 import rgonzalez.agent.llm.LlmProvider;
 import rgonzalez.agent.llm.LlmProviderFactory;
 import rgonzalez.agent.llm.LlmRequest;
 import rgonzalez.agent.llm.LlmResponse;
+import rgonzalez.agent.llm.ToolCall;
+import rgonzalez.agent.mail.EmailOutbox;
+import rgonzalez.agent.persistence.MessageStore;
+import rgonzalez.agent.persistence.MessageWriteBuffer;
 import rgonzalez.agent.planning.Plan;
 import rgonzalez.agent.planning.PlanStep;
 import rgonzalez.agent.planning.Planner;
 import rgonzalez.agent.repository.ConversationRepository;
-import rgonzalez.agent.repository.MessageRepository;
+import rgonzalez.agent.repository.ConversationView;
+import rgonzalez.agent.repository.MessageView;
+import rgonzalez.agent.search.ConversationSearchIndex;
 import rgonzalez.agent.toolbox.Tool;
+import rgonzalez.agent.toolbox.ToolOutputHandle;
+import rgonzalez.agent.toolbox.ToolOutputSpool;
 import rgonzalez.agent.toolbox.ToolRegistry;
+import rgonzalez.agent.toolbox.ToolResultRenderer;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.LongConsumer;
 
 /**
  * Service for managing conversations and agent-user interactions.
  * Orchestrates the agent workflow including tool invocation and response generation.
  * Integrates with LLM providers for intelligent response generation.
+ * A turn runs in short transactional phases so no database connection is held
+ * while planning, tools or the LLM are running.
  */
 @Service
-@Transactional
 public class ConversationService {
 
+    private static final int MAX_SAVE_ATTEMPTS = 3;
+
+    private static final String AGENT_MODE_LOOP = "loop";
+
+    private static final String AGENT_LOOP_SYSTEM_PROMPT =
+            "You are an intelligent business agent assistant. "
+            + "Your role is to help users accomplish their business tasks by using available tools. "
+            + "Call the tools you need, then give a concise and helpful answer: summarize what was done, "
+            + "highlight key findings, and suggest next steps if appropriate.";
+
     private final ConversationRepository conversationRepository;
-    private final MessageRepository messageRepository;
     private final ToolRegistry toolRegistry;
     private final LlmProviderFactory llmProviderFactory;
     private final Planner planner;
+    private final MessageWriteBuffer messageWriteBuffer;
+    private final MessageStore messageStore;
+    private final ConversationWindowCache conversationWindowCache;
+    private final ConversationMemoryService conversationMemory;
+    private final ConversationArchiveStore archiveStore;
+    private final ConversationSearchIndex searchIndex;
+    private final ConversationTurnExecutor turnExecutor;
+    private final ToolOutputSpool toolOutputSpool;
+    private final ToolResultRenderer toolResultRenderer;
+    private final ForEachStepExecutor forEachStepExecutor;
+    private final EmailOutbox emailOutbox;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${agent.mode:plan}")
+    private String agentMode = "plan";
+
+    @Value("${agent.loop.max-tool-rounds:3}")
+    private int maxToolRounds = 3;
 
     public ConversationService(ConversationRepository conversationRepository,
-                              MessageRepository messageRepository,
                               ToolRegistry toolRegistry,
                               LlmProviderFactory llmProviderFactory,
-                              Planner planner) {
+                              Planner planner,
+                              MessageWriteBuffer messageWriteBuffer,
+                              MessageStore messageStore,
+                              ConversationWindowCache conversationWindowCache,
+                              ConversationMemoryService conversationMemory,
+                              ConversationArchiveStore archiveStore,
+                              ConversationSearchIndex searchIndex,
+                              ConversationTurnExecutor turnExecutor,
+                              ToolOutputSpool toolOutputSpool,
+                              ToolResultRenderer toolResultRenderer,
+                              ForEachStepExecutor forEachStepExecutor,
+                              EmailOutbox emailOutbox,
+                              PlatformTransactionManager transactionManager) {
         this.conversationRepository = conversationRepository;
-        this.messageRepository = messageRepository;
         this.toolRegistry = toolRegistry;
         this.llmProviderFactory = llmProviderFactory;
         this.planner = planner;
+        this.messageWriteBuffer = messageWriteBuffer;
+        this.messageStore = messageStore;
+        this.conversationWindowCache = conversationWindowCache;
+        this.conversationMemory = conversationMemory;
+        this.archiveStore = archiveStore;
+        this.searchIndex = searchIndex;
+        this.turnExecutor = turnExecutor;
+        this.toolOutputSpool = toolOutputSpool;
+        this.toolResultRenderer = toolResultRenderer;
+        this.forEachStepExecutor = forEachStepExecutor;
+        this.emailOutbox = emailOutbox;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
      * Create a new conversation.
      */
+    @Transactional
     public Conversation createConversation(Long agentId, String agentName, String userId) {
         Conversation conversation = new Conversation(agentId, agentName, userId);
         return conversationRepository.save(conversation);
@@ -58,6 +134,7 @@ public class ConversationService {
     /**
      * Get conversation by ID.
      */
+    @Transactional(readOnly = true)
     public Optional<Conversation> getConversation(Long conversationId) {
         return conversationRepository.findById(conversationId);
     }
@@ -65,59 +142,312 @@ public class ConversationService {
     /**
      * Send a message in a conversation and get agent response.
      * This is the main orchestration method that demonstrates the agent flow.
-     * Uses the Planner to create a structured execution plan.
+     * Uses the Planner to create a structured execution plan, or lets the LLM call
+     * tools natively when the agent loop mode is enabled.
      */
     public Message sendMessage(Long conversationId, String userMessage) throws Exception {
-        Conversation conversation = conversationRepository.findById(conversationId)
-                .orElseThrow(() -> new IllegalArgumentException("Conversation not found"));
+        return sendMessage(conversationId, userMessage, null);
+    }
+
+    /**
+     * Send a message with an explicit turn key, used to deduplicate tool side effects
+     * when the same turn may run more than once (e.g. a resumed background job).
+     * Defaults to a key derived from the saved user message.
+     * Turns of one conversation run one at a time in arrival order; throws
+     * RejectedExecutionException if too many are already queued, and
+     * ConversationNotFoundException or ConversationArchivedException if the
+     * conversation does not exist or is archived, before or while the turn runs.
+     */
+    public Message sendMessage(Long conversationId, String userMessage, String turnKey) throws Exception {
+        return sendMessage(conversationId, userMessage, turnKey, null, savedId -> { });
+    }
+
+    /**
+     * Send a message for a turn that may have run before, e.g. a job interrupted by a
+     * restart. If the user message was already saved by that run, pass its ID so it is
+     * reused instead of inserted again; otherwise the ID of the newly saved user message
+     * is passed to onUserMessageSaved once phase 1 commits.
+     */
+    public Message sendMessage(Long conversationId, String userMessage, String turnKey,
+                               Long savedUserMessageId, LongConsumer onUserMessageSaved) throws Exception {
+        return turnExecutor.call(conversationId,
+                () -> runTurn(conversationId, userMessage, turnKey, savedUserMessageId, onUserMessageSaved));
+    }
 
-        // Step 1: Save user message
-        Message userMsg = new Message(conversation, MessageRole.USER, userMessage);
-        messageRepository.save(userMsg);
+    /**
+     * Like sendMessage, but runs the turn on the given executor once the conversation's
+     * earlier turns finish and returns at once, for background callers that should not
+     * hold a thread while the turn waits. Throws RejectedExecutionException if too many
+     * turns are already queued; other failures complete the future exceptionally.
+     */
+    public CompletableFuture<Message> submitMessage(Long conversationId, String userMessage, String turnKey,
+                                                    Long savedUserMessageId, LongConsumer onUserMessageSaved,
+                                                    Executor executor) {
+        return turnExecutor.submit(conversationId,
+                () -> runTurn(conversationId, userMessage, turnKey, savedUserMessageId, onUserMessageSaved),
+                executor);
+    }
 
+    private Message runTurn(Long conversationId, String userMessage, String turnKey,
+                            Long savedUserMessageId, LongConsumer onUserMessageSaved) throws Exception {
+        Optional<MessageView> savedUserMsg = savedUserMessageId != null
+                ? messageStore.findById(savedUserMessageId)
+                : Optional.empty();
+        if (savedUserMsg.isEmpty()) {
+            messageStore.prepare(userMessage);
+        }
+        // Phase 1 (transaction): load the conversation and save the user message
+        Message userMsg = transactionTemplate.execute(status -> {
+            Conversation conversation = conversationRepository.findById(conversationId)
+                    .orElseThrow(() -> new ConversationNotFoundException(conversationId));
+            if (conversation.getStatus() == ConversationStatus.ARCHIVED) {
+                throw new ConversationArchivedException(conversationId);
+            }
+            Message message = new Message(conversation, MessageRole.USER, userMessage);
+            if (savedUserMsg.isPresent()) {
+                // Saved and counted by an earlier run of this turn
+                message.setId(savedUserMsg.get().id());
+                message.setCreatedAt(savedUserMsg.get().createdAt());
+                return message;
+            }
+            // With write-behind or the event log, the user message is written together with the response
+            if (messageWriteBuffer.isEnabled() || !messageStore.isTransactional()) {
+                return message;
+            }
+            conversation.recordMessage(message);
+            messageStore.append(List.of(message));
+            return message;
+        });
+        Conversation conversation = userMsg.getConversation();
+        if (savedUserMsg.isEmpty() && userMsg.getId() != null) {
+            onUserMessageSaved.accept(userMsg.getId());
+        }
+
+        // LLM context: rolling summary of older turns plus the recent turns it doesn't cover yet,
+        // both served from memory for active conversations
+        Optional<ConversationSummary> summary = conversationMemory.getSummary(conversationId);
+        List<MessageView> recentMessages = conversationWindowCache.getWindow(conversationId).stream()
+                .filter(message -> message.id() == null || !message.id().equals(userMsg.getId()))
+                .filter(message -> summary.isEmpty() || !summary.get().covers(message))
+                .toList();
+        TurnContext context = new TurnContext(summary.map(ConversationSummary::text).orElse(null), recentMessages);
+
+        Map<String, Object> executionContext = new HashMap<>();
+        executionContext.put(Tool.CONTEXT_CONVERSATION_ID, conversationId);
+        if (turnKey == null) {
+            turnKey = userMsg.getId() != null ? "message-" + userMsg.getId() : "turn-" + UUID.randomUUID();
+        }
+        // Side effects of this turn (e.g. queued emails) are deduplicated on this key,
+        // and those held for the turn are released with its response in phase 3
+        executionContext.put(Tool.CONTEXT_TURN_KEY, turnKey);
+
+        // Phase 2 (no transaction): choose and execute tools, then generate the response.
+        // Large tool outputs are spilled to files deleted when the phase ends
+        TokenUsage usage = new TokenUsage();
+        TurnOutcome outcome;
+        try (ToolOutputSpool.Scope outputs = toolOutputSpool.open()) {
+            outcome = AGENT_MODE_LOOP.equalsIgnoreCase(agentMode)
+                    ? runAgentLoop(userMessage, context, executionContext, outputs, usage)
+                    : runPlannedTurn(userMessage, context, executionContext, outputs, usage);
+        }
+
+        // Phase 3 (transaction): save the agent response and complete the conversation
+        Message assistantMsg = new Message(conversation, MessageRole.ASSISTANT, outcome.response());
+        if (!outcome.toolsUsed().isEmpty()) {
+            assistantMsg.setToolsUsed(String.join(", ", outcome.toolsUsed()));
+        }
+        assistantMsg.setPromptTokens(usage.promptTokens);
+        assistantMsg.setCompletionTokens(usage.completionTokens);
+        assistantMsg.setToolInvocations(outcome.toolsUsed().size());
+        if (savedUserMsg.isPresent()) {
+            messageStore.prepare(assistantMsg.getContent());
+            completeTurn(conversation, turnKey, List.of(assistantMsg), List.of(assistantMsg));
+        } else if (!messageStore.isTransactional()) {
+            // Appended before the counter transaction, so retrying it cannot append them twice
+            messageStore.append(List.of(userMsg, assistantMsg));
+            completeTurn(conversation, turnKey, List.of(), List.of(userMsg, assistantMsg));
+        } else if (messageWriteBuffer.isEnabled()) {
+            // Counters follow in their own transaction; the reconciler repairs them if it fails
+            messageWriteBuffer.write(List.of(userMsg, assistantMsg));
+            completeTurn(conversation, turnKey, List.of(), List.of(userMsg, assistantMsg));
+        } else {
+            messageStore.prepare(assistantMsg.getContent());
+            completeTurn(conversation, turnKey, List.of(assistantMsg), List.of(assistantMsg));
+        }
+        List<MessageView> written = savedUserMsg.isPresent()
+                ? List.of(toView(assistantMsg))
+                : List.of(toView(userMsg), toView(assistantMsg));
+        conversationWindowCache.append(conversationId, written);
+        searchIndex.index(written);
+        conversationMemory.onTurnCompleted(conversationId);
+
+        return assistantMsg;
+    }
+
+    /**
+     * Save the turn's messages, add them to the conversation's counters, release the
+     * emails its tools queued and mark the conversation completed, in one transaction,
+     * so a turn that fails to save its response sends nothing. The conversation was
+     * loaded before the turn ran, so the update is checked against its version and
+     * retried on a fresh copy if another writer changed it in the meantime.
+     *
+     * @param turnKey  key the turn's side effects were queued under
+     * @param toSave   messages to insert in this transaction
+     * @param toRecord messages to add to the counters
+     */
+    private void completeTurn(Conversation conversation, String turnKey, List<Message> toSave,
+                              List<Message> toRecord) {
+        Conversation current = conversation;
+        for (int attempt = 1; ; attempt++) {
+            Conversation target = current;
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    messageStore.append(toSave);
+                    for (Message message : toRecord) {
+                        target.recordMessage(message);
+                    }
+                    target.setStatus(ConversationStatus.COMPLETED);
+                    conversationRepository.save(target);
+                    emailOutbox.releaseTurn(turnKey);
+                });
+                return;
+            } catch (ObjectOptimisticLockingFailureException e) {
+                if (attempt >= MAX_SAVE_ATTEMPTS) {
+                    throw e;
+                }
+                // The inserts were rolled back with the update; insert them again as new rows
+                toSave.forEach(message -> message.setId(null));
+                current = conversationRepository.findById(conversation.getId())
+                        .orElseThrow(() -> new ConversationNotFoundException(conversation.getId()));
+                if (current.getStatus() == ConversationStatus.ARCHIVED) {
+                    // Archived while the turn ran; its messages must not reappear in the hot table
+                    throw new ConversationArchivedException(conversation.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Plan mode: create a plan, execute its steps, then synthesize the response
+     * in a separate LLM call.
+     */
+    private TurnOutcome runPlannedTurn(String userMessage, TurnContext context, Map<String, Object> executionContext,
+                                       ToolOutputSpool.Scope outputs, TokenUsage usage) throws Exception {
         // Step 2: Create execution plan from user message
         Plan plan = planner.createPlan(userMessage);
         System.out.println("Created plan: " + plan.describe());
 
         // Step 3: Execute plan steps
         StringBuilder toolResults = new StringBuilder();
-        StringBuilder executedToolsStr = new StringBuilder();
-        Map<String, Object> executionContext = new HashMap<>();
-        
+        List<String> executedTools = new ArrayList<>();
+
         for (PlanStep step : plan.steps()) {
             System.out.println("Executing: " + step.description());
             
-            String toolResult = executePlanStep(step, executionContext);
+            ToolOutputHandle toolResult = outputs.capture(step.toolName(), executePlanStep(step, executionContext));
             toolResults.append("Tool: ").append(step.toolName()).append("\n");
-            toolResults.append(toolResult).append("\n\n");
+            toolResults.append(toolResultRenderer.render(toolResult)).append("\n\n");
             
-            if (executedToolsStr.length() > 0) {
-                executedToolsStr.append(", ");
-            }
-            executedToolsStr.append(step.toolName());
+            executedTools.add(step.toolName());
             
             // Store results for next steps
             executionContext.put(step.toolName() + "_result", toolResult);
         }
 
         // Step 4: Generate response using LLM provider
-        String finalResponse = generateResponseWithLlm(userMessage, toolResults.toString(), plan.getToolNames());
+        String finalResponse = generateResponseWithLlm(userMessage, context, toolResults.toString(),
+                plan.getToolNames(), usage);
+        return new TurnOutcome(finalResponse, executedTools);
+    }
 
-        // Step 5: Save agent response
-        Message assistantMsg = new Message(conversation, MessageRole.ASSISTANT, finalResponse);
-        if (executedToolsStr.length() > 0) {
-            assistantMsg.setToolsUsed(executedToolsStr.toString());
+    /**
+     * Agent loop mode: offer the relevant tools to the LLM as native function definitions
+     * and execute the tool calls it requests, feeding results back in the same conversation,
+     * until it answers. Planning, tool selection and synthesis share one request, so a turn
+     * costs one LLM round trip plus one per round of tool calls. If the LLM fails or gives
+     * no answer, the turn fails: no response is saved and nothing its tools queued is sent.
+     */
+    private TurnOutcome runAgentLoop(String userMessage, TurnContext context, Map<String, Object> executionContext,
+                                     ToolOutputSpool.Scope outputs, TokenUsage usage) throws Exception {
+        LlmProvider llmProvider;
+        try {
+            llmProvider = llmProviderFactory.getDefaultProvider();
+        } catch (IllegalStateException e) {
+            System.err.println("Agent loop unavailable, falling back to planner: " + e.getMessage());
+            return runPlannedTurn(userMessage, context, executionContext, outputs, usage);
         }
-        messageRepository.save(assistantMsg);
 
-        conversation.setStatus(ConversationStatus.COMPLETED);
-        conversationRepository.save(conversation);
+        List<LlmRequest.LlmMessage> messages = new ArrayList<>();
+        messages.add(new LlmRequest.LlmMessage("system", context.summary() != null
+                ? AGENT_LOOP_SYSTEM_PROMPT + "\n\nCONVERSATION SO FAR (summary):\n" + context.summary()
+                : AGENT_LOOP_SYSTEM_PROMPT));
+        addHistory(messages, context);
+        messages.add(new LlmRequest.LlmMessage("user", userMessage));
+
+        LlmRequest llmRequest = new LlmRequest(llmProvider.getDefaultModel(), messages);
+        llmRequest.setTemperature(0.7);
+        llmRequest.setMaxTokens(1000);
+        llmRequest.setTools(toolRegistry.getRelevantToolDefinitions(userMessage, List.of()));
+
+        List<String> executedTools = new ArrayList<>();
+        for (int round = 0; round <= maxToolRounds; round++) {
+            if (round == maxToolRounds) {
+                // Out of tool rounds: require a final answer
+                llmRequest.setToolChoice("none");
+            }
+
+            LlmResponse llmResponse = llmProvider.chat(llmRequest);
+            usage.add(llmResponse);
+            List<ToolCall> toolCalls = llmResponse.getFirstChoiceToolCalls();
+            if (toolCalls.isEmpty()) {
+                String responseContent = llmResponse.getFirstChoiceContent();
+                if (responseContent != null) {
+                    return new TurnOutcome(responseContent, executedTools);
+                }
+                break;
+            }
 
-        return assistantMsg;
+            messages.add(LlmRequest.LlmMessage.assistantToolCalls(toolCalls));
+            for (ToolCall toolCall : toolCalls) {
+                String toolName = toolCall.getFunction().getName();
+                System.out.println("Executing tool call: " + toolName);
+
+                ToolOutputHandle toolResult = outputs.capture(toolName, executeToolCall(toolCall, executionContext));
+                messages.add(LlmRequest.LlmMessage.toolResult(toolCall.getId(), toolName,
+                        toolResultRenderer.render(toolResult)));
+                executedTools.add(toolName);
+
+                // Store results for later tool calls
+                executionContext.put(toolName + "_result", toolResult);
+            }
+        }
+
+        // Like an LLM failure, this fails the turn rather than answering with canned text
+        throw new IllegalStateException("LLM gave no answer within " + maxToolRounds + " tool rounds");
     }
 
     /**
-     * Execute a single plan step by invoking the appropriate tool.
+     * Execute a tool call requested by the LLM. Failures are returned as the result
+     * so the model can recover or explain them.
+     */
+    private String executeToolCall(ToolCall toolCall, Map<String, Object> executionContext) {
+        String toolName = toolCall.getFunction().getName();
+        Optional<Tool> tool = toolRegistry.getTool(toolName);
+
+        if (tool.isEmpty()) {
+            return String.format("Tool '%s' not found", toolName);
+        }
+
+        try {
+            return tool.get().executeWithContext(toolCall.parseArguments(), executionContext);
+        } catch (Exception e) {
+            return String.format("Tool '%s' failed: %s", toolName, e.getMessage());
+        }
+    }
+
+    /**
+     * Execute a single plan step by invoking the appropriate tool, or for a forEach step,
+     * by invoking it over partitions of the items of an earlier step's result in parallel.
      */
     private String executePlanStep(PlanStep step, Map<String, Object> executionContext) throws Exception {
         Optional<Tool> tool = toolRegistry.getTool(step.toolName());
@@ -126,6 +456,10 @@ public class ConversationService {
             return String.format("Tool '%s' not found", step.toolName());
         }
 
+        if (step.isForEach()) {
+            return forEachStepExecutor.execute(tool.get(), step, executionContext);
+        }
+
         // Merge step parameters with execution context
         Map<String, Object> params = new HashMap<>(step.parameters());
 
@@ -137,18 +471,20 @@ public class ConversationService {
      * Generate final response using LLM provider.
      * Uses the selected LLM to synthesize tool results into a natural response.
      */
-    private String generateResponseWithLlm(String userMessage, String toolResults, List<String> usedTools) {
+    private String generateResponseWithLlm(String userMessage, TurnContext context,
+                                           String toolResults, List<String> usedTools, TokenUsage usage) {
         try {
             // Get the default LLM provider from the factory
             LlmProvider llmProvider = llmProviderFactory.getDefaultProvider();
             System.out.println("Using LLM Provider: " + llmProvider.getName());
 
             // Build the prompt for the LLM
-            String systemPrompt = buildSystemPrompt(toolResults, usedTools);
+            String systemPrompt = buildSystemPrompt(userMessage, context.summary(), toolResults, usedTools);
             
             // Create LLM request with conversation context
             List<LlmRequest.LlmMessage> messages = new ArrayList<>();
             messages.add(new LlmRequest.LlmMessage("system", systemPrompt));
+            addHistory(messages, context);
             messages.add(new LlmRequest.LlmMessage("user", userMessage));
 
             LlmRequest llmRequest = new LlmRequest(llmProvider.getDefaultModel(), messages);
@@ -157,6 +493,7 @@ public class ConversationService {
 
             // Call the LLM
             LlmResponse llmResponse = llmProvider.chat(llmRequest);
+            usage.add(llmResponse);
 
             // Extract and return the response
             String responseContent = llmResponse.getFirstChoiceContent();
@@ -173,16 +510,53 @@ public class ConversationService {
         }
     }
 
+    /**
+     * Add earlier user and assistant turns not covered by the summary, oldest first.
+     */
+    private void addHistory(List<LlmRequest.LlmMessage> messages, TurnContext context) {
+        for (MessageView message : context.recentMessages()) {
+            if (message.role() == MessageRole.USER || message.role() == MessageRole.ASSISTANT) {
+                messages.add(new LlmRequest.LlmMessage(message.role().name().toLowerCase(Locale.ROOT),
+                        message.content()));
+            }
+        }
+    }
+
+    private static MessageView toView(Message message) {
+        return new MessageView(message.getId(), message.getConversation().getId(), message.getRole(),
+                message.getContent(), message.getToolsUsed(), message.getCreatedAt());
+    }
+
+    /**
+     * Detached copy of a stored message, without its conversation.
+     */
+    private static Message toMessage(MessageView view) {
+        Message message = new Message();
+        message.setId(view.id());
+        message.setRole(view.role());
+        message.setContent(view.content());
+        message.setToolsUsed(view.toolsUsed());
+        message.setCreatedAt(view.createdAt());
+        return message;
+    }
+
     /**
      * Build system prompt for the LLM with tool results context.
+     * Only the tools relevant to the request (and those it used) are described.
      */
-    private String buildSystemPrompt(String toolResults, List<String> usedTools) {
+    private String buildSystemPrompt(String userMessage, String conversationSummary,
+                                     String toolResults, List<String> usedTools) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("You are an intelligent business agent assistant. ");
         prompt.append("Your role is to help users accomplish their business tasks by using available tools.\n\n");
 
         prompt.append("AVAILABLE TOOLS:\n");
-        prompt.append(toolRegistry.getToolDescriptions()).append("\n\n");
+        prompt.append(toolRegistry.getRelevantToolDescriptions(userMessage, usedTools)).append("\n\n");
+
+        if (conversationSummary != null) {
+            prompt.append("CONVERSATION SO FAR (summary):\n");
+            prompt.append(conversationSummary).append("\n\n");
+        }
 
         if (toolResults != null && !toolResults.isEmpty()) {
             prompt.append("TOOL EXECUTION RESULTS:\n");
@@ -226,10 +600,167 @@ public class ConversationService {
         return response.toString();
     }
 
+    /**
+     * Conversation context for a turn: the rolling summary (null if none yet) and
+     * the recent messages it does not cover.
+     */
+    private record TurnContext(String summary, List<MessageView> recentMessages) {
+    }
+
+    /**
+     * Response text and the tools used to produce it.
+     */
+    private record TurnOutcome(String response, List<String> toolsUsed) {
+    }
+
+    /**
+     * Tokens reported by the LLM calls of one turn.
+     */
+    private static final class TokenUsage {
+        private int promptTokens;
+        private int completionTokens;
+
+        void add(LlmResponse response) {
+            if (response != null && response.getUsage() != null) {
+                promptTokens += response.getUsage().getPromptTokens();
+                completionTokens += response.getUsage().getCompletionTokens();
+            }
+        }
+    }
+
+    /**
+     * List conversations, newest first, optionally filtered by user and status, one page at
+     * a time. Reads projections with a keyset query on the conversation ID, so each page
+     * costs the same however many conversations precede it.
+     *
+     * @param after ID of the last conversation on the previous page, or null for the first page
+     */
+    @Transactional(readOnly = true)
+    public ConversationPage listConversations(String userId, ConversationStatus status, Long after, int limit) {
+        Long beforeId = after != null ? after : Long.MAX_VALUE;
+        // Fetch one extra row to learn whether another page follows
+        Limit fetchLimit = Limit.of(limit + 1);
+        List<ConversationView> rows;
+        if (userId != null && status != null) {
+            rows = conversationRepository.findPageByUserIdAndStatus(userId, status, beforeId, fetchLimit);
+        } else if (userId != null) {
+            rows = conversationRepository.findPageByUserId(userId, beforeId, fetchLimit);
+        } else if (status != null) {
+            rows = conversationRepository.findPageByStatus(status, beforeId, fetchLimit);
+        } else {
+            rows = conversationRepository.findPage(beforeId, fetchLimit);
+        }
+
+        if (rows.size() <= limit) {
+            return new ConversationPage(List.copyOf(rows), null);
+        }
+        List<ConversationView> page = rows.subList(0, limit);
+        return new ConversationPage(List.copyOf(page), page.get(page.size() - 1).id());
+    }
+
+    /**
+     * Fetch several conversations with a single IN query. Results follow the order of
+     * the requested IDs; duplicate IDs are returned once, at their first position.
+     */
+    @Transactional(readOnly = true)
+    public ConversationLookup lookupConversations(List<Long> ids) {
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        Map<Long, ConversationView> found = new HashMap<>();
+        for (ConversationView view : conversationRepository.findViewsByIdIn(requested)) {
+            found.put(view.id(), view);
+        }
+
+        List<ConversationView> conversations = new ArrayList<>(found.size());
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : requested) {
+            ConversationView view = found.get(id);
+            if (view != null) {
+                conversations.add(view);
+            } else {
+                missingIds.add(id);
+            }
+        }
+        return new ConversationLookup(conversations, missingIds);
+    }
+
+    /**
+     * Check if sendMessage returns the assistant message already saved, with its ID.
+     * Not the case with BUFFERED write-behind, where messages get their IDs only when
+     * their batch is written.
+     */
+    public boolean returnsSavedMessages() {
+        return !messageStore.isTransactional()
+                || !messageWriteBuffer.isEnabled()
+                || messageWriteBuffer.getDurability() == MessageWriteBuffer.Durability.COMMIT;
+    }
+
+    /**
+     * Get a message by ID.
+     */
+    public Optional<Message> getMessage(Long messageId) {
+        return messageStore.findById(messageId).map(ConversationService::toMessage);
+    }
+
     /**
      * Get conversation history.
      */
     public List<Message> getConversationHistory(Long conversationId) {
-        return messageRepository.findByConversationIdOrderByCreatedAtAsc(conversationId);
+        return messageStore.findHistoryPage(conversationId, null, null, Integer.MAX_VALUE).stream()
+                .map(ConversationService::toMessage)
+                .toList();
+    }
+
+    /**
+     * Get a page of conversation history, oldest first, starting after the cursor.
+     * Reads projections with a keyset query, so the cost depends on the page size
+     * rather than the length of the conversation. Archived conversations are read
+     * from the archive instead.
+     *
+     * @return The page, or empty if the conversation does not exist
+     */
+    @Transactional(readOnly = true)
+    public Optional<HistoryPage> getConversationHistoryPage(Long conversationId, HistoryCursor after, int limit) {
+        // Served from the second-level cache for recently used conversations
+        Optional<ConversationStatus> status = conversationRepository.findById(conversationId)
+                .map(Conversation::getStatus);
+        if (status.isEmpty()) {
+            return Optional.empty();
+        }
+        if (status.get() == ConversationStatus.ARCHIVED) {
+            return Optional.of(getArchivedHistoryPage(conversationId, after, limit));
+        }
+
+        // Fetch one extra row to learn whether another page follows
+        List<MessageView> rows = after == null
+                ? messageStore.findHistoryPage(conversationId, null, null, limit + 1)
+                : messageStore.findHistoryPage(conversationId, after.createdAt(), after.id(), limit + 1);
+        return Optional.of(toPage(rows, limit));
+    }
+
+    private HistoryPage getArchivedHistoryPage(Long conversationId, HistoryCursor after, int limit) {
+        List<MessageView> messages = archiveStore.read(conversationId)
+                .map(ArchivedConversation::messages)
+                .orElse(List.of());
+        int start = 0;
+        if (after != null) {
+            while (start < messages.size() && !isAfter(messages.get(start), after)) {
+                start++;
+            }
+        }
+        return toPage(messages.subList(start, Math.min(messages.size(), start + limit + 1)), limit);
+    }
+
+    private static boolean isAfter(MessageView message, HistoryCursor cursor) {
+        int order = message.createdAt().compareTo(cursor.createdAt());
+        return order > 0 || (order == 0 && message.id() > cursor.id());
+    }
+
+    private static HistoryPage toPage(List<MessageView> rows, int limit) {
+        if (rows.size() <= limit) {
+            return new HistoryPage(List.copyOf(rows), null);
+        }
+        List<MessageView> page = rows.subList(0, limit);
+        MessageView last = page.get(page.size() - 1);
+        return new HistoryPage(List.copyOf(page), new HistoryCursor(last.createdAt(), last.id()));
     }
 }
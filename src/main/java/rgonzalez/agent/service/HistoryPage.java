@@ -0,0 +1,17 @@
+package rgonzalez.agent.service;
+
+import rgonzalez.agent.dto.HistoryCursor;
+import rgonzalez.agent.repository.MessageView;
+
+import java.util.List;
+
+/**
+ * One page of conversation history and the cursor for the next page,
+ * or null when this is the last page.
+ */
+public record HistoryPage(List<MessageView> messages, HistoryCursor nextCursor) {
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
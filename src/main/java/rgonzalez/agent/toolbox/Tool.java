@@ -1,12 +1,27 @@
 package rgonzalez.agent.toolbox;
 
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Interface for tools that can be used by agents.
  */
 public interface Tool {
 
+    /**
+     * Execution context key holding the ID of the conversation being served. Present only
+     * while a conversation turn runs, which commits held side effects with its response.
+     */
+    String CONTEXT_CONVERSATION_ID = "conversationId";
+
+    /**
+     * Execution context key holding a stable key for the current turn, used to
+     * make side effects such as queued emails idempotent when a turn is re-run.
+     * forEach steps retry a failed partition one item at a time under the same key,
+     * so tools they run must be idempotent per item under it.
+     */
+    String CONTEXT_TURN_KEY = "turnKey";
+
     /**
      * Get the name of the tool.
      */
@@ -22,6 +37,14 @@ public interface Tool {
      */
     Map<String, String> getParameters();
 
+    /**
+     * Get keywords that describe when this tool is relevant.
+     * Used to select a subset of tools for a request; defaults to none.
+     */
+    default Set<String> getTags() {
+        return Set.of();
+    }
+
     /**
      * Execute the tool with the given parameters.
      */
@@ -29,6 +52,8 @@ public interface Tool {
 
     /**
      * Execute the tool with parameters and execution context.
+     * Outputs of earlier tools in the turn are in the context under "<tool name>_result"
+     * as {@link ToolOutputHandle}s, valid until the turn completes.
      * Default implementation calls execute(parameters) for backward compatibility.
      */
     default String executeWithContext(Map<String, Object> parameters, Map<String, Object> context) throws Exception {
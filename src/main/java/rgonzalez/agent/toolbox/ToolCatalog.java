@@ -0,0 +1,216 @@
+package rgonzalez.agent.toolbox;
+
+import rgonzalez.agent.llm.ToolDefinition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable snapshot of the registered tools together with everything derived
+ * from them for LLM prompts: the rendered catalog text, its approximate token
+ * count, the function-calling schema and the relevance index used to pick a
+ * subset of tools for a request. A new snapshot is built only when the set of
+ * tools changes, so request paths never re-render the catalog.
+ */
+public final class ToolCatalog {
+
+    private static final String HEADER = "Available tools:\n";
+
+    private final Map<String, Tool> tools;
+    private final Map<String, String> renderedTools;
+    private final String descriptions;
+    private final int descriptionTokens;
+    private final List<Map<String, Object>> functionSchemas;
+    private final Map<String, ToolDefinition> toolDefinitions;
+    private final List<ToolDefinition> allToolDefinitions;
+    private final ToolSelectionIndex selectionIndex;
+
+    private ToolCatalog(Map<String, Tool> tools) {
+        this.tools = Collections.unmodifiableMap(tools);
+        Map<String, String> rendered = new LinkedHashMap<>();
+        tools.forEach((name, tool) -> rendered.put(name, render(tool)));
+        this.renderedTools = Collections.unmodifiableMap(rendered);
+        this.descriptions = HEADER + String.join("", rendered.values());
+        this.descriptionTokens = estimateTokens(descriptions);
+        this.functionSchemas = buildFunctionSchemas(tools.values());
+        this.toolDefinitions = buildToolDefinitions(functionSchemas);
+        this.allToolDefinitions = List.copyOf(toolDefinitions.values());
+        this.selectionIndex = new ToolSelectionIndex(tools.values());
+    }
+
+    /**
+     * Build a catalog from a collection of tools. Later tools replace earlier ones with the same name.
+     */
+    public static ToolCatalog of(Collection<Tool> tools) {
+        Map<String, Tool> byName = new TreeMap<>();
+        for (Tool tool : tools) {
+            byName.put(tool.getName(), tool);
+        }
+        return new ToolCatalog(byName);
+    }
+
+    /**
+     * Get a copy of this catalog with a tool added or replaced.
+     * Registering the same tool instance again returns this catalog unchanged.
+     */
+    public ToolCatalog with(Tool tool) {
+        if (tools.get(tool.getName()) == tool) {
+            return this;
+        }
+        Map<String, Tool> copy = new TreeMap<>(tools);
+        copy.put(tool.getName(), tool);
+        return new ToolCatalog(copy);
+    }
+
+    /**
+     * Get a copy of this catalog without the named tool.
+     */
+    public ToolCatalog without(String name) {
+        if (!tools.containsKey(name)) {
+            return this;
+        }
+        Map<String, Tool> copy = new TreeMap<>(tools);
+        copy.remove(name);
+        return new ToolCatalog(copy);
+    }
+
+    /**
+     * Get the tools in this snapshot, keyed by name in name order.
+     */
+    public Map<String, Tool> getTools() {
+        return tools;
+    }
+
+    /**
+     * Get the rendered tool descriptions for LLM context.
+     */
+    public String getDescriptions() {
+        return descriptions;
+    }
+
+    /**
+     * Get the approximate token count of the rendered descriptions.
+     */
+    public int getDescriptionTokens() {
+        return descriptionTokens;
+    }
+
+    /**
+     * Get the typed function-calling definitions for all tools, for native tool calls.
+     */
+    public List<ToolDefinition> getToolDefinitions() {
+        return allToolDefinitions;
+    }
+
+    /**
+     * Get the typed function-calling definitions for a subset of the catalog.
+     * Unknown names are ignored.
+     */
+    public List<ToolDefinition> getToolDefinitions(Collection<String> toolNames) {
+        List<ToolDefinition> definitions = new ArrayList<>(toolNames.size());
+        for (String name : toolNames) {
+            ToolDefinition definition = toolDefinitions.get(name);
+            if (definition != null) {
+                definitions.add(definition);
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * Render descriptions for a subset of the catalog, reusing the cached per-tool text.
+     * Unknown names are ignored.
+     */
+    public String getDescriptions(Collection<String> toolNames) {
+        StringBuilder sb = new StringBuilder(HEADER);
+        for (String name : toolNames) {
+            String rendered = renderedTools.get(name);
+            if (rendered != null) {
+                sb.append(rendered);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the relevance index over this snapshot's tools.
+     */
+    public ToolSelectionIndex getSelectionIndex() {
+        return selectionIndex;
+    }
+
+    /**
+     * Get the function-calling schema, one entry per tool.
+     */
+    public List<Map<String, Object>> getFunctionSchemas() {
+        return functionSchemas;
+    }
+
+    /**
+     * Render one tool's entry in the format used by the system prompt.
+     */
+    static String render(Tool tool) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n- ").append(tool.getName()).append(": ").append(tool.getDescription());
+        Map<String, String> parameters = tool.getParameters();
+        if (!parameters.isEmpty()) {
+            sb.append("\n  Parameters: ");
+            new TreeMap<>(parameters).forEach((key, value) ->
+                    sb.append("\n    - ").append(key).append(": ").append(value)
+            );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Rough approximation: 1 token ≈ 4 characters (same heuristic as the providers).
+     */
+    static int estimateTokens(String text) {
+        return (int) Math.ceil(text.length() / 4.0);
+    }
+
+    private static List<Map<String, Object>> buildFunctionSchemas(Collection<Tool> tools) {
+        List<Map<String, Object>> schemas = new ArrayList<>(tools.size());
+        for (Tool tool : tools) {
+            Map<String, Object> properties = new LinkedHashMap<>();
+            new TreeMap<>(tool.getParameters()).forEach((name, description) -> {
+                Map<String, Object> property = new LinkedHashMap<>();
+                property.put("type", "string");
+                property.put("description", description);
+                properties.put(name, Collections.unmodifiableMap(property));
+            });
+
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            parameters.put("type", "object");
+            parameters.put("properties", Collections.unmodifiableMap(properties));
+
+            Map<String, Object> function = new LinkedHashMap<>();
+            function.put("name", tool.getName());
+            function.put("description", tool.getDescription());
+            function.put("parameters", Collections.unmodifiableMap(parameters));
+
+            Map<String, Object> schema = new LinkedHashMap<>();
+            schema.put("type", "function");
+            schema.put("function", Collections.unmodifiableMap(function));
+            schemas.add(Collections.unmodifiableMap(schema));
+        }
+        return Collections.unmodifiableList(schemas);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ToolDefinition> buildToolDefinitions(List<Map<String, Object>> schemas) {
+        Map<String, ToolDefinition> definitions = new LinkedHashMap<>();
+        for (Map<String, Object> schema : schemas) {
+            Map<String, Object> function = (Map<String, Object>) schema.get("function");
+            String name = (String) function.get("name");
+            definitions.put(name, new ToolDefinition(name, (String) function.get("description"),
+                    (Map<String, Object>) function.get("parameters")));
+        }
+        return Collections.unmodifiableMap(definitions);
+    }
+}
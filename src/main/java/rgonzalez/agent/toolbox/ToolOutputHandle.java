@@ -0,0 +1,113 @@
+package rgonzalez.agent.toolbox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Output of one tool execution, held in memory or, when large, in a temp file that
+ * is read only when needed. Spilled outputs are deleted when the turn that produced
+ * them completes (see {@link ToolOutputSpool}), so handles must not outlive the turn.
+ */
+public final class ToolOutputHandle {
+
+    private final String toolName;
+    private final String output;
+    private final Path file;
+    private final long length;
+
+    private ToolOutputHandle(String toolName, String output, Path file, long length) {
+        this.toolName = toolName;
+        this.output = output;
+        this.file = file;
+        this.length = length;
+    }
+
+    /**
+     * Handle to an output kept in memory.
+     */
+    public static ToolOutputHandle inline(String toolName, String output) {
+        String value = String.valueOf(output);
+        return new ToolOutputHandle(toolName, value, null, value.length());
+    }
+
+    /**
+     * Handle to an output written to a file as UTF-8.
+     */
+    static ToolOutputHandle spilled(String toolName, Path file, long length) {
+        return new ToolOutputHandle(toolName, null, file, length);
+    }
+
+    public String getToolName() {
+        return toolName;
+    }
+
+    /**
+     * Check if the output is held in a file rather than in memory.
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Length of the output in characters.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Open a reader over the full output.
+     */
+    public Reader openReader() throws IOException {
+        return file != null ? Files.newBufferedReader(file, StandardCharsets.UTF_8) : new StringReader(output);
+    }
+
+    /**
+     * Output for a prompt: at most maxChars characters, followed by a note of how much
+     * was left out. Reads only the part that is kept.
+     */
+    public String render(int maxChars) {
+        if (length <= maxChars) {
+            return toString();
+        }
+        StringBuilder rendered = new StringBuilder(maxChars + 64);
+        if (file == null) {
+            rendered.append(output, 0, maxChars);
+        } else {
+            try (Reader reader = openReader()) {
+                char[] buffer = new char[Math.min(maxChars, 8192)];
+                int read;
+                while (rendered.length() < maxChars
+                        && (read = reader.read(buffer, 0, Math.min(buffer.length, maxChars - rendered.length()))) > 0) {
+                    rendered.append(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read output of tool " + toolName, e);
+            }
+        }
+        long omitted = length - rendered.length();
+        rendered.append("\n... [truncated: ").append(omitted).append(" more characters]");
+        return rendered.toString();
+    }
+
+    /**
+     * Full output. Reads the whole file for spilled outputs; prefer openReader() or
+     * render() for those.
+     */
+    @Override
+    public String toString() {
+        if (file == null) {
+            return output;
+        }
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read output of tool " + toolName, e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package rgonzalez.agent.toolbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Keeps large tool outputs out of the heap. Outputs of at least spill-chars characters
+ * are written to a temp file as soon as the tool returns and passed around as
+ * {@link ToolOutputHandle}s, read lazily and cut to prompt-chars characters when
+ * rendered into a prompt. Files belong to a {@link Scope} opened per turn and are
+ * deleted when it closes; the directory is per process and removed on shutdown.
+ */
+@Component
+public class ToolOutputSpool {
+
+    private final Path directory;
+    private final Counter spilledCounter;
+
+    @Value("${agent.tools.output.spill-chars:65536}")
+    private int spillChars = 65536;
+
+    @Value("${agent.tools.output.prompt-chars:8000}")
+    private int promptChars = 8000;
+
+    public ToolOutputSpool(MeterRegistry meterRegistry,
+                           @Value("${agent.tools.output.directory:${java.io.tmpdir}}") String directory) {
+        try {
+            Path parent = Paths.get(directory);
+            Files.createDirectories(parent);
+            this.directory = Files.createTempDirectory(parent, "agent-tool-output-");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create tool output directory under " + directory, e);
+        }
+        this.spilledCounter = Counter.builder("tool.outputs.spilled")
+                .description("Tool outputs written to temp files instead of kept in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Open a scope for the outputs of one turn. Close it when the turn completes.
+     */
+    public Scope open() {
+        return new Scope();
+    }
+
+    /**
+     * Maximum characters of one tool output rendered into a prompt.
+     */
+    public int getPromptChars() {
+        return promptChars;
+    }
+
+    @PreDestroy
+    public void close() {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(ToolOutputSpool::delete);
+        } catch (IOException e) {
+            System.err.println("Failed to list tool output directory: " + e.getMessage());
+        }
+        delete(directory);
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Failed to delete tool output " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tool outputs of one turn. Not thread-safe: a turn captures its outputs one at a time.
+     */
+    public final class Scope implements AutoCloseable {
+
+        private final List<Path> files = new ArrayList<>();
+
+        private Scope() {
+        }
+
+        /**
+         * Take ownership of a tool's output, spilling it to a file if it is large.
+         * The caller should drop its reference to the string afterwards.
+         */
+        public ToolOutputHandle capture(String toolName, String output) {
+            if (output == null || output.length() < spillChars) {
+                return ToolOutputHandle.inline(toolName, output);
+            }
+            try {
+                Path file = Files.createTempFile(directory, toolName + "-", ".out");
+                files.add(file);
+                Files.writeString(file, output, StandardCharsets.UTF_8);
+                spilledCounter.increment();
+                return ToolOutputHandle.spilled(toolName, file, output.length());
+            } catch (IOException e) {
+                // Keeping it in memory is better than failing the turn
+                System.err.println("Failed to spill output of tool " + toolName + ": " + e.getMessage());
+                return ToolOutputHandle.inline(toolName, output);
+            }
+        }
+
+        /**
+         * Delete the files of this turn's spilled outputs.
+         */
+        @Override
+        public void close() {
+            files.forEach(ToolOutputSpool::delete);
+            files.clear();
+        }
+    }
+}
@@ -1,69 +1,127 @@
 package rgonzalez.agent.toolbox;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import rgonzalez.agent.llm.ToolDefinition;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Registry for tools that can be used by agents.
  * Manages tool discovery, registration, and retrieval.
+ *
+ * Tools are held in an immutable {@link ToolCatalog} snapshot that is replaced
+ * atomically on every change (copy-on-write), so lookups are lock-free and safe
+ * while tools are registered at runtime.
  */
 @Component
 public class ToolRegistry {
 
-    private final Map<String, Tool> tools = new HashMap<>();
+    private final AtomicReference<ToolCatalog> catalog;
+
+    @Value("${agent.tools.selection.enabled:true}")
+    private boolean selectionEnabled = true;
+
+    @Value("${agent.tools.selection.top-k:8}")
+    private int selectionTopK = 8;
 
     /**
      * Constructor that auto-registers all Tool beans.
      */
     public ToolRegistry(List<Tool> toolBeans) {
-        for (Tool tool : toolBeans) {
-            register(tool);
-        }
+        this.catalog = new AtomicReference<>(ToolCatalog.of(toolBeans));
     }
 
     /**
-     * Register a tool.
+     * Register a tool, replacing any tool with the same name.
      */
     public void register(Tool tool) {
-        tools.put(tool.getName(), tool);
+        catalog.updateAndGet(current -> current.with(tool));
+    }
+
+    /**
+     * Remove a tool by name.
+     */
+    public void unregister(String name) {
+        catalog.updateAndGet(current -> current.without(name));
+    }
+
+    /**
+     * Get the current catalog snapshot.
+     */
+    public ToolCatalog getCatalog() {
+        return catalog.get();
     }
 
     /**
      * Get a tool by name.
      */
     public Optional<Tool> getTool(String name) {
-        return Optional.ofNullable(tools.get(name));
+        return Optional.ofNullable(catalog.get().getTools().get(name));
     }
 
     /**
      * Get all available tools.
      */
     public List<Tool> getAllTools() {
-        return new ArrayList<>(tools.values());
+        return new ArrayList<>(catalog.get().getTools().values());
     }
 
     /**
      * Check if a tool exists.
      */
     public boolean hasTool(String name) {
-        return tools.containsKey(name);
+        return catalog.get().getTools().containsKey(name);
     }
 
     /**
      * Get tool descriptions for LLM context.
      */
     public String getToolDescriptions() {
-        StringBuilder sb = new StringBuilder("Available tools:\n");
-        for (Tool tool : tools.values()) {
-            sb.append("\n- ").append(tool.getName()).append(": ").append(tool.getDescription());
-            if (!tool.getParameters().isEmpty()) {
-                sb.append("\n  Parameters: ");
-                tool.getParameters().forEach((key, value) ->
-                        sb.append("\n    - ").append(key).append(": ").append(value)
-                );
-            }
+        return catalog.get().getDescriptions();
+    }
+
+    /**
+     * Select the tools most relevant to a goal, at most the configured top-k.
+     */
+    public List<Tool> selectTools(String goal) {
+        return catalog.get().getSelectionIndex().select(goal, selectionTopK);
+    }
+
+    /**
+     * Get tool descriptions for LLM context, limited to the tools relevant to the goal
+     * plus any tools that must be included (e.g. those already used by the plan).
+     * Small registries that fit within top-k get the full cached catalog.
+     */
+    public String getRelevantToolDescriptions(String goal, Collection<String> requiredTools) {
+        ToolCatalog snapshot = catalog.get();
+        if (!selectionEnabled || snapshot.getTools().size() <= selectionTopK) {
+            return snapshot.getDescriptions();
+        }
+        return snapshot.getDescriptions(selectRelevantNames(snapshot, goal, requiredTools));
+    }
+
+    /**
+     * Get function-calling definitions for the tools relevant to the goal,
+     * selected the same way as {@link #getRelevantToolDescriptions}.
+     */
+    public List<ToolDefinition> getRelevantToolDefinitions(String goal, Collection<String> requiredTools) {
+        ToolCatalog snapshot = catalog.get();
+        if (!selectionEnabled || snapshot.getTools().size() <= selectionTopK) {
+            return snapshot.getToolDefinitions();
+        }
+        return snapshot.getToolDefinitions(selectRelevantNames(snapshot, goal, requiredTools));
+    }
+
+    private Set<String> selectRelevantNames(ToolCatalog snapshot, String goal, Collection<String> requiredTools) {
+        Set<String> selected = new LinkedHashSet<>();
+        if (requiredTools != null) {
+            selected.addAll(requiredTools);
+        }
+        for (Tool tool : snapshot.getSelectionIndex().select(goal, selectionTopK)) {
+            selected.add(tool.getName());
         }
-        return sb.toString();
+        return selected;
     }
 }
@@ -0,0 +1,23 @@
+package rgonzalez.agent.toolbox;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Condenses the output of one tool into a short digest for the prompt, e.g. aggregates
+ * and a sample instead of every row of a list. Implementations are picked up as beans by
+ * {@link ToolResultRenderer}; the full output stays available to later tools.
+ */
+public interface ToolResultCompactor {
+
+    /**
+     * Name of the tool whose outputs this compactor handles.
+     */
+    String getToolName();
+
+    /**
+     * Digest of an output, or empty if it is not in a form this compactor understands,
+     * in which case the raw output is rendered instead.
+     */
+    Optional<String> compact(ToolOutputHandle output) throws IOException;
+}
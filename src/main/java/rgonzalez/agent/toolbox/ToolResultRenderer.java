@@ -0,0 +1,64 @@
+package rgonzalez.agent.toolbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Renders tool outputs into prompts. Outputs of at least min-chars characters from a tool
+ * with a {@link ToolResultCompactor} are replaced by its digest; anything else is rendered
+ * as is, truncated to the spool's prompt-chars.
+ */
+@Component
+public class ToolResultRenderer {
+
+    private final Map<String, ToolResultCompactor> compactors = new HashMap<>();
+    private final ToolOutputSpool toolOutputSpool;
+    private final Counter compactedCounter;
+
+    @Value("${agent.tools.compaction.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${agent.tools.compaction.min-chars:2000}")
+    private int minChars = 2000;
+
+    /**
+     * Constructor that registers all ToolResultCompactor beans.
+     */
+    public ToolResultRenderer(List<ToolResultCompactor> compactorBeans, ToolOutputSpool toolOutputSpool,
+                              MeterRegistry meterRegistry) {
+        for (ToolResultCompactor compactor : compactorBeans) {
+            compactors.put(compactor.getToolName(), compactor);
+        }
+        this.toolOutputSpool = toolOutputSpool;
+        this.compactedCounter = Counter.builder("tool.results.compacted")
+                .description("Tool outputs replaced by a digest in the prompt")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Text of a tool output for a prompt.
+     */
+    public String render(ToolOutputHandle output) {
+        ToolResultCompactor compactor = compactors.get(output.getToolName());
+        if (enabled && compactor != null && output.length() >= minChars) {
+            try {
+                Optional<String> digest = compactor.compact(output);
+                if (digest.isPresent()) {
+                    compactedCounter.increment();
+                    return digest.get();
+                }
+            } catch (Exception e) {
+                System.err.println("Failed to compact output of tool " + output.getToolName() + ": "
+                        + e.getMessage());
+            }
+        }
+        return output.render(toolOutputSpool.getPromptChars());
+    }
+}
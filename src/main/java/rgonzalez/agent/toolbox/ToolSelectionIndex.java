@@ -0,0 +1,154 @@
+package rgonzalez.agent.toolbox;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lexical relevance index over a tool catalog.
+ * Each tool is indexed as a weighted bag of terms taken from its name, tags,
+ * description and parameter descriptions, and queries are ranked with BM25.
+ * Tags and name terms are weighted higher than free-text description terms.
+ */
+public final class ToolSelectionIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final double NAME_WEIGHT = 3.0;
+    private static final double TAG_WEIGHT = 3.0;
+    private static final double DESCRIPTION_WEIGHT = 1.0;
+    private static final double PARAMETER_WEIGHT = 0.5;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "etc", "for", "from", "in", "into",
+            "is", "it", "me", "my", "of", "on", "or", "please", "that", "the", "them", "their",
+            "then", "this", "to", "use", "with", "you", "your", "all", "can", "e", "g");
+
+    private final List<Tool> tools;
+    private final List<Map<String, Double>> termWeights;
+    private final double[] documentLengths;
+    private final double averageLength;
+    private final Map<String, Double> idf;
+
+    ToolSelectionIndex(Collection<Tool> tools) {
+        this.tools = new ArrayList<>(tools);
+        this.termWeights = new ArrayList<>(tools.size());
+        this.documentLengths = new double[tools.size()];
+
+        Map<String, Integer> documentFrequency = new HashMap<>();
+        double totalLength = 0;
+        for (int i = 0; i < this.tools.size(); i++) {
+            Map<String, Double> weights = indexTool(this.tools.get(i));
+            termWeights.add(weights);
+            double length = weights.values().stream().mapToDouble(Double::doubleValue).sum();
+            documentLengths[i] = length;
+            totalLength += length;
+            for (String term : weights.keySet()) {
+                documentFrequency.merge(term, 1, Integer::sum);
+            }
+        }
+        this.averageLength = this.tools.isEmpty() ? 1 : totalLength / this.tools.size();
+
+        int n = this.tools.size();
+        this.idf = new HashMap<>(documentFrequency.size());
+        documentFrequency.forEach((term, df) ->
+                idf.put(term, Math.log(1 + (n - df + 0.5) / (df + 0.5))));
+    }
+
+    /**
+     * Select the top-k tools most relevant to the query. Tools with no matching term are never returned.
+     */
+    public List<Tool> select(String query, int k) {
+        List<String> queryTerms = tokenize(query);
+        if (queryTerms.isEmpty() || k <= 0) {
+            return List.of();
+        }
+
+        List<ScoredTool> scored = new ArrayList<>();
+        for (int i = 0; i < tools.size(); i++) {
+            double score = score(i, queryTerms);
+            if (score > 0) {
+                scored.add(new ScoredTool(tools.get(i), score));
+            }
+        }
+
+        scored.sort((a, b) -> Double.compare(b.score(), a.score()));
+        return scored.stream()
+                .limit(k)
+                .map(ScoredTool::tool)
+                .toList();
+    }
+
+    private double score(int document, List<String> queryTerms) {
+        Map<String, Double> weights = termWeights.get(document);
+        double norm = K1 * (1 - B + B * documentLengths[document] / averageLength);
+        double score = 0;
+        for (String term : queryTerms) {
+            Double tf = weights.get(term);
+            if (tf != null) {
+                score += idf.get(term) * (tf * (K1 + 1)) / (tf + norm);
+            }
+        }
+        return score;
+    }
+
+    private static Map<String, Double> indexTool(Tool tool) {
+        Map<String, Double> weights = new HashMap<>();
+        addTerms(weights, tool.getName(), NAME_WEIGHT);
+        for (String tag : tool.getTags()) {
+            addTerms(weights, tag, TAG_WEIGHT);
+        }
+        addTerms(weights, tool.getDescription(), DESCRIPTION_WEIGHT);
+        for (String parameterDescription : tool.getParameters().values()) {
+            addTerms(weights, parameterDescription, PARAMETER_WEIGHT);
+        }
+        return weights;
+    }
+
+    private static void addTerms(Map<String, Double> weights, String text, double weight) {
+        for (String term : tokenize(text)) {
+            weights.merge(term, weight, Double::sum);
+        }
+    }
+
+    /**
+     * Lowercase, split on non-alphanumerics, drop stop words and apply light suffix stemming.
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+        List<String> terms = new ArrayList<>();
+        for (String raw : text.toLowerCase(Locale.ROOT).split("[^a-z0-9]+")) {
+            if (raw.length() < 2 || STOP_WORDS.contains(raw)) {
+                continue;
+            }
+            terms.add(stem(raw));
+        }
+        return terms;
+    }
+
+    private static String stem(String term) {
+        if (term.length() > 5 && term.endsWith("ing")) {
+            return term.substring(0, term.length() - 3);
+        }
+        if (term.length() > 4 && term.endsWith("ies")) {
+            return term.substring(0, term.length() - 3) + "y";
+        }
+        if (term.length() > 4 && term.endsWith("es") && !term.endsWith("ses")) {
+            return term.substring(0, term.length() - 1);
+        }
+        if (term.length() > 3 && term.endsWith("s") && !term.endsWith("ss")) {
+            return term.substring(0, term.length() - 1);
+        }
+        return term;
+    }
+
+    private record ScoredTool(Tool tool, double score) {
+    }
+}
@@ -0,0 +1,112 @@
+package rgonzalez.agent.toolbox.tools;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import rgonzalez.agent.toolbox.ToolOutputHandle;
+import rgonzalez.agent.toolbox.ToolResultCompactor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Digest of customer_search results: customer count, balance total, range and average,
+ * the customers with the highest balances and the first few result lines. The result is
+ * read line by line, so only the top and sample customers are held in memory.
+ */
+@Component
+public class CustomerSearchResultCompactor implements ToolResultCompactor {
+
+    private static final Pattern CUSTOMER_LINE = Pattern.compile(
+            "\\s*\\d+\\.\\s*Customer ID:\\s*([^,]+),\\s*Name:\\s*(.*?),\\s*Balance:\\s*\\$([\\d,]+(?:\\.\\d+)?)\\s*");
+
+    private static final Comparator<Customer> BY_BALANCE = Comparator.comparing(Customer::balance);
+
+    @Value("${agent.tools.compaction.customer-search.top-k:5}")
+    private int topK = 5;
+
+    @Value("${agent.tools.compaction.customer-search.sample-size:3}")
+    private int sampleSize = 3;
+
+    @Override
+    public String getToolName() {
+        return "customer_search";
+    }
+
+    @Override
+    public Optional<String> compact(ToolOutputHandle output) throws IOException {
+        List<String> headings = new ArrayList<>();
+        List<String> sample = new ArrayList<>();
+        // Min-heap holding the highest balances seen so far
+        PriorityQueue<Customer> top = new PriorityQueue<>(BY_BALANCE);
+        long count = 0;
+        BigDecimal total = BigDecimal.ZERO;
+        BigDecimal min = null;
+        BigDecimal max = null;
+
+        try (BufferedReader reader = new BufferedReader(output.openReader())) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = CUSTOMER_LINE.matcher(line);
+                if (!matcher.matches()) {
+                    if (count == 0 && !line.isBlank() && headings.size() < 2) {
+                        headings.add(line.trim());
+                    }
+                    continue;
+                }
+                Customer customer = new Customer(matcher.group(1).trim(), matcher.group(2).trim(),
+                        new BigDecimal(matcher.group(3).replace(",", "")));
+                count++;
+                total = total.add(customer.balance());
+                min = min == null || customer.balance().compareTo(min) < 0 ? customer.balance() : min;
+                max = max == null || customer.balance().compareTo(max) > 0 ? customer.balance() : max;
+                if (sample.size() < sampleSize) {
+                    sample.add(line.trim());
+                }
+                top.add(customer);
+                if (top.size() > topK) {
+                    top.poll();
+                }
+            }
+        }
+        if (count == 0) {
+            return Optional.empty();
+        }
+
+        StringBuilder digest = new StringBuilder();
+        digest.append("Digest of ").append(output.length()).append(" characters of results:\n");
+        for (String heading : headings) {
+            digest.append(heading).append("\n");
+        }
+        digest.append("Customers: ").append(count).append("\n");
+        digest.append("Total balance: $").append(total.setScale(2, RoundingMode.HALF_UP)).append("\n");
+        digest.append("Balance range: $").append(min).append(" - $").append(max).append("\n");
+        digest.append("Average balance: $")
+                .append(total.divide(BigDecimal.valueOf(count), 2, RoundingMode.HALF_UP)).append("\n");
+
+        List<Customer> highest = new ArrayList<>(top);
+        highest.sort(BY_BALANCE.reversed());
+        digest.append("Highest balances:\n");
+        for (Customer customer : highest) {
+            digest.append("- ").append(customer.id()).append(", ").append(customer.name())
+                    .append(", $").append(customer.balance()).append("\n");
+        }
+        digest.append("Sample of results:\n");
+        for (String line : sample) {
+            digest.append(line).append("\n");
+        }
+        return Optional.of(digest.toString());
+    }
+
+    private record Customer(String id, String name, BigDecimal balance) {
+    }
+}
@@ -6,6 +6,7 @@ import rgonzalez.agent.toolbox.Tool;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Tool for searching customers in the database with specific criteria.
@@ -23,6 +24,11 @@ public class CustomerSearchTool implements Tool {
         return "Search for customers based on specific criteria like overdue balance, status, etc.";
     }
 
+    @Override
+    public Set<String> getTags() {
+        return Set.of("customer", "customers", "search", "find", "lookup", "overdue", "balance", "account");
+    }
+
     @Override
     public Map<String, String> getParameters() {
         Map<String, String> params = new HashMap<>();
@@ -1,11 +1,27 @@
 package rgonzalez.agent.toolbox.tools;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import rgonzalez.agent.entity.EmailOutboxEntry;
+import rgonzalez.agent.mail.BulkEmailSender;
+import rgonzalez.agent.mail.EmailMessage;
+import rgonzalez.agent.mail.EmailOutbox;
 import rgonzalez.agent.toolbox.Tool;
+import rgonzalez.agent.toolbox.ToolOutputHandle;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
 
 /**
  * Tool for sending email reminders to customers.
@@ -13,6 +29,23 @@ import java.util.Map;
 @Component
 public class EmailReminderTool implements Tool {
 
+    private final BulkEmailSender bulkEmailSender;
+    private final EmailOutbox emailOutbox;
+
+    // Customer IDs become the local part of the address, so only allow characters safe there
+    private static final Pattern VALID_CUSTOMER_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    // CR, LF and angle brackets could end the Subject header or an address
+    private static final Pattern UNSAFE_SUBJECT_CHARS = Pattern.compile("[\\r\\n<>]+");
+
+    @Value("${mail.customer-domain:customers.example.com}")
+    private String customerDomain = "customers.example.com";
+
+    public EmailReminderTool(BulkEmailSender bulkEmailSender, EmailOutbox emailOutbox) {
+        this.bulkEmailSender = bulkEmailSender;
+        this.emailOutbox = emailOutbox;
+    }
+
     @Override
     public String getName() {
         return "send_email_reminder";
@@ -23,6 +56,11 @@ public class EmailReminderTool implements Tool {
         return "Send email reminders to customers about overdue balances.";
     }
 
+    @Override
+    public Set<String> getTags() {
+        return Set.of("email", "reminder", "send", "notify", "notice", "overdue", "payment", "customer");
+    }
+
     @Override
     public Map<String, String> getParameters() {
         Map<String, String> params = new HashMap<>();
@@ -34,13 +72,25 @@ public class EmailReminderTool implements Tool {
 
     @Override
     public String execute(Map<String, Object> parameters) throws Exception {
-        // Simulate sending emails
+        return send(parameters, null, false);
+    }
+
+    /**
+     * Send (or queue) the reminders. The dedupe scope is null when no turn key is known;
+     * when held for the turn, it is the key of the conversation turn that releases them.
+     */
+    private String send(Map<String, Object> parameters, String dedupeScope, boolean heldForTurn) {
         String customerIds = parameters.get("customerIds").toString();
         String templateType = parameters.getOrDefault("templateType", "reminder").toString();
-        String subject = parameters.getOrDefault("subject", "Account Balance Reminder").toString();
+        // Parameters come from the plan or the LLM: keep them from ending the header
+        String subject = sanitizeSubject(parameters.getOrDefault("subject", "Account Balance Reminder").toString());
 
-        // Mock email sending
         String[] customers = customerIds.split(",");
+        if (bulkEmailSender.isEnabled()) {
+            return enqueue(customers, templateType, subject, dedupeScope, heldForTurn);
+        }
+
+        // Mock email sending
         StringBuilder result = new StringBuilder();
         result.append(String.format("Sending %d reminder emails with template '%s':\n", customers.length, templateType));
 
@@ -52,6 +102,81 @@ public class EmailReminderTool implements Tool {
         return result.toString();
     }
 
+    /**
+     * Queue all reminders in the outbox, keyed on the turn, and deliver them in the
+     * background so the agent can answer without waiting on SMTP. Reminders queued by a
+     * conversation turn are only delivered once the turn's response is saved.
+     */
+    private String enqueue(String[] customers, String templateType, String subject, String dedupeScope,
+                           boolean heldForTurn) {
+        List<EmailMessage> messages = new ArrayList<>(customers.length);
+        List<String> customerIds = new ArrayList<>(customers.length);
+        List<String> invalid = new ArrayList<>();
+        for (String customerId : customers) {
+            if (!VALID_CUSTOMER_ID.matcher(customerId.trim()).matches()) {
+                invalid.add(customerId.trim());
+                continue;
+            }
+            customerIds.add(customerId.trim());
+            messages.add(new EmailMessage(resolveRecipient(customerId.trim()), subject,
+                    renderBody(customerId.trim(), templateType)));
+        }
+        if (messages.isEmpty()) {
+            return String.format("No reminder emails queued: invalid customer IDs %s", invalid);
+        }
+
+        String scope = dedupeScope != null ? dedupeScope : UUID.randomUUID().toString();
+        List<EmailOutboxEntry> entries = heldForTurn
+                ? emailOutbox.enqueueForTurn(scope, messages)
+                : emailOutbox.enqueue(scope, messages);
+        Set<String> queued = new HashSet<>();
+        for (EmailOutboxEntry entry : entries) {
+            queued.add(entry.getRecipient());
+        }
+
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("Queued %d reminder emails with template '%s':\n", queued.size(), templateType));
+        for (int i = 0; i < messages.size(); i++) {
+            if (queued.contains(messages.get(i).recipient())) {
+                result.append(String.format("✓ Email queued for customer %s with subject: '%s'\n", customerIds.get(i), subject));
+            } else {
+                result.append(String.format("• Email for customer %s was already queued\n", customerIds.get(i)));
+            }
+        }
+        for (String customerId : invalid) {
+            result.append(String.format("✗ Skipped invalid customer ID '%s'\n", customerId));
+        }
+
+        result.append("\nEmail reminders will be delivered in the background.");
+        return result.toString();
+    }
+
+    /**
+     * Resolve a customer's email address.
+     * The customer directory is not wired yet, so addresses are derived from the ID.
+     */
+    private String resolveRecipient(String customerId) {
+        if (!VALID_CUSTOMER_ID.matcher(customerId).matches()) {
+            throw new IllegalArgumentException("Invalid customer ID: " + customerId);
+        }
+        return customerId.toLowerCase() + "@" + customerDomain;
+    }
+
+    private static String sanitizeSubject(String subject) {
+        return UNSAFE_SUBJECT_CHARS.matcher(subject).replaceAll(" ").trim();
+    }
+
+    private String renderBody(String customerId, String templateType) {
+        if ("final_notice".equals(templateType)) {
+            return "Dear customer " + customerId + ",\n\n"
+                    + "This is a final notice regarding the overdue balance on your account. "
+                    + "Please settle it within 5 business days to avoid further action.\n";
+        }
+        return "Dear customer " + customerId + ",\n\n"
+                + "This is a friendly reminder that your account has an overdue balance. "
+                + "Please arrange payment at your earliest convenience.\n";
+    }
+
     @Override
     public String executeWithContext(Map<String, Object> parameters, Map<String, Object> context) throws Exception {
         // Merge parameters with context-derived customer IDs
@@ -68,12 +193,17 @@ public class EmailReminderTool implements Tool {
             }
         }
         
-        return execute(mergedParams);
+        Object turnKey = context != null ? context.get(CONTEXT_TURN_KEY) : null;
+        // Only a conversation turn releases held emails when it saves its response
+        boolean heldForTurn = turnKey != null && context.get(CONTEXT_CONVERSATION_ID) != null;
+        return send(mergedParams, turnKey != null ? turnKey.toString() : null, heldForTurn);
     }
 
     /**
      * Extract customer IDs from the customer_search_result in the execution context.
-     * Parses the search results and builds a comma-separated list of customer IDs.
+     * Scans the search results and builds a comma-separated list of customer IDs.
+     * Large results are spilled to a file, so they are read as a stream of tokens
+     * rather than loaded whole.
      */
     private String buildCustomerIdListFromContext(Map<String, Object> context) {
         if (context == null) {
@@ -85,30 +215,32 @@ public class EmailReminderTool implements Tool {
             return "";
         }
 
-        // Parse the search results string to extract customer IDs
-        String resultsStr = searchResults.toString();
-        
         // Simple parsing: look for customer IDs in format like "C001", "C002", etc.
         // In a real implementation, this could parse JSON or structured data
-        if (resultsStr.contains("C00")) {
-            // Extract customer IDs from the results
-            StringBuilder customerIds = new StringBuilder();
-            
-            // Simple extraction: collect all customer references
-            String[] parts = resultsStr.split("[,\\s]");
-            for (String part : parts) {
-                String trimmed = part.trim();
-                if (trimmed.matches("C\\d+")) {
+        StringBuilder customerIds = new StringBuilder();
+        boolean referencesCustomers = false;
+        try (Reader reader = searchResults instanceof ToolOutputHandle handle
+                ? handle.openReader()
+                : new StringReader(searchResults.toString());
+             Scanner tokens = new Scanner(reader).useDelimiter("[,\\s]+")) {
+            while (tokens.hasNext()) {
+                String token = tokens.next();
+                referencesCustomers |= token.contains("C00");
+                if (token.matches("C\\d+")) {
                     if (customerIds.length() > 0) {
                         customerIds.append(", ");
                     }
-                    customerIds.append(trimmed);
+                    customerIds.append(token);
                 }
             }
-            
+        } catch (IOException e) {
+            System.err.println("Failed to read customer search results: " + e.getMessage());
+        }
+
+        if (referencesCustomers) {
             return customerIds.toString();
         }
-        
+
         // Fallback: return default customer list
         return "C001, C002, C003, C004, C005";
     }
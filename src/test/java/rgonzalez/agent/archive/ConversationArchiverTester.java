@@ -0,0 +1,260 @@
+package rgonzalez.agent.archive;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import rgonzalez.agent.context.ConversationWindowCache;
+import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.entity.ConversationStatus;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.execution.ConversationTurnExecutor;
+import rgonzalez.agent.persistence.ContentBlobStore;
+import rgonzalez.agent.persistence.MessageStore;
+import rgonzalez.agent.repository.ConversationRepository;
+import rgonzalez.agent.repository.MessageRepository;
+import rgonzalez.agent.repository.MessageView;
+
+/**
+ * ConversationArchiverTester archives a conversation into a real archive store and
+ * reads it back, paging through a history longer than one page, and checks that a
+ * conversation whose turn started or completed in the meantime, or whose messages
+ * changed while paging, is left in the hot tables. A record whose segment is missing
+ * reads as not archived.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Conversation Archiver Tester")
+class ConversationArchiverTester {
+
+    private static final Long CONVERSATION_ID = 1L;
+
+    @Mock
+    private ConversationRepository conversationRepository;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private MessageStore messageStore;
+
+    @Mock
+    private ContentBlobStore contentBlobStore;
+
+    @Mock
+    private ConversationWindowCache conversationWindowCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path archiveDirectory;
+
+    private ConversationArchiveStore archiveStore;
+    private ConversationTurnExecutor turnExecutor;
+    private ConversationArchiver archiver;
+    private Conversation conversation;
+    private List<MessageView> messages;
+
+    @BeforeEach
+    void setUp() {
+        archiveStore = new ConversationArchiveStore(archiveDirectory.toString(), 1024 * 1024);
+        turnExecutor = new ConversationTurnExecutor(new SimpleMeterRegistry());
+        archiver = new ConversationArchiver(conversationRepository, messageRepository, messageStore,
+                contentBlobStore, archiveStore, conversationWindowCache, turnExecutor, transactionManager,
+                new SimpleMeterRegistry());
+
+        // Completed two days ago, past the default one-day cutoff
+        LocalDateTime completedAt = LocalDateTime.now().minusDays(2).truncatedTo(ChronoUnit.SECONDS);
+        conversation = new Conversation(1L, "TestAgent", "user123");
+        conversation.setId(CONVERSATION_ID);
+        conversation.setStatus(ConversationStatus.COMPLETED);
+        conversation.setUpdatedAt(completedAt);
+        conversation.setVersion(3L);
+        messages = List.of(
+                new MessageView(10L, CONVERSATION_ID, MessageRole.USER, "Find overdue customers", null,
+                        completedAt.minusSeconds(5)),
+                new MessageView(11L, CONVERSATION_ID, MessageRole.ASSISTANT, "Found 3 customers",
+                        "customer_search", completedAt));
+    }
+
+    @AfterEach
+    void tearDown() {
+        archiveStore.close();
+    }
+
+    @Test
+    @DisplayName("An archived conversation reads back from the archive with all its messages")
+    void testArchiveThenReadBack() {
+        // Arrange
+        when(conversationRepository.findById(CONVERSATION_ID)).thenReturn(Optional.of(conversation));
+        when(messageRepository.findHistoryPage(CONVERSATION_ID, Limit.of(500))).thenReturn(messages);
+        when(contentBlobStore.resolve(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(messageRepository.countByConversationId(CONVERSATION_ID)).thenReturn(2L);
+
+        // Act
+        boolean archived = archiver.archive(CONVERSATION_ID);
+        Optional<ArchivedConversation> readBack = archiveStore.read(CONVERSATION_ID);
+
+        // Assert
+        assertTrue(archived);
+        assertTrue(readBack.isPresent(), "The conversation should be in the archive");
+        assertEquals("user123", readBack.get().userId());
+        assertEquals(messages, readBack.get().messages());
+        assertEquals(ConversationStatus.ARCHIVED, conversation.getStatus());
+        verify(messageRepository).deleteByConversationId(CONVERSATION_ID);
+        verify(conversationWindowCache).invalidate(CONVERSATION_ID);
+    }
+
+    @Test
+    @DisplayName("A conversation changed by a turn after the snapshot is not archived")
+    void testConversationChangedWhileArchiving() {
+        // Arrange: the transaction sees a newer version, updated just now by a turn
+        Conversation updated = new Conversation(1L, "TestAgent", "user123");
+        updated.setId(CONVERSATION_ID);
+        updated.setStatus(ConversationStatus.COMPLETED);
+        updated.setUpdatedAt(LocalDateTime.now());
+        updated.setVersion(4L);
+        when(conversationRepository.findById(CONVERSATION_ID))
+                .thenReturn(Optional.of(conversation), Optional.of(updated));
+        when(messageRepository.findHistoryPage(CONVERSATION_ID, Limit.of(500))).thenReturn(messages);
+        when(contentBlobStore.resolve(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(messageRepository.countByConversationId(CONVERSATION_ID)).thenReturn(2L);
+
+        // Act
+        boolean archived = archiver.archive(CONVERSATION_ID);
+
+        // Assert
+        assertFalse(archived);
+        assertEquals(ConversationStatus.COMPLETED, updated.getStatus());
+        verify(messageRepository, never()).deleteByConversationId(anyLong());
+        verify(conversationRepository, never()).save(any(Conversation.class));
+    }
+
+    @Test
+    @DisplayName("A conversation with a turn running on this node is not archived")
+    void testConversationWithRunningTurn() throws Exception {
+        // Arrange: hold a turn open for the conversation
+        when(conversationRepository.findById(CONVERSATION_ID)).thenReturn(Optional.of(conversation));
+        CountDownLatch turnStarted = new CountDownLatch(1);
+        CountDownLatch releaseTurn = new CountDownLatch(1);
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        Future<?> turn = caller.submit(() -> turnExecutor.call(CONVERSATION_ID, () -> {
+            turnStarted.countDown();
+            releaseTurn.await();
+            return null;
+        }));
+        assertTrue(turnStarted.await(10, TimeUnit.SECONDS));
+
+        // Act
+        boolean archived;
+        try {
+            archived = archiver.archive(CONVERSATION_ID);
+        } finally {
+            releaseTurn.countDown();
+            turn.get(10, TimeUnit.SECONDS);
+            caller.shutdown();
+        }
+
+        // Assert
+        assertFalse(archived);
+        assertFalse(archiveStore.contains(CONVERSATION_ID));
+        verifyNoInteractions(messageRepository);
+    }
+
+    @Test
+    @DisplayName("A history longer than one page is read page by page after the keyset cursor")
+    void testArchivePagesThroughHistory() {
+        // Arrange: two messages per page, three messages
+        ReflectionTestUtils.setField(archiver, "pageSize", 2);
+        MessageView third = new MessageView(12L, CONVERSATION_ID, MessageRole.USER, "Send reminders", null,
+                messages.get(1).createdAt());
+        when(conversationRepository.findById(CONVERSATION_ID)).thenReturn(Optional.of(conversation));
+        when(messageRepository.countByConversationId(CONVERSATION_ID)).thenReturn(3L);
+        when(messageRepository.findHistoryPage(CONVERSATION_ID, Limit.of(2))).thenReturn(messages);
+        when(messageRepository.findHistoryPageAfter(CONVERSATION_ID, messages.get(1).createdAt(), 11L, Limit.of(2)))
+                .thenReturn(List.of(third));
+        when(contentBlobStore.resolve(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        boolean archived = archiver.archive(CONVERSATION_ID);
+
+        // Assert
+        assertTrue(archived);
+        assertEquals(List.of(messages.get(0), messages.get(1), third),
+                archiveStore.read(CONVERSATION_ID).orElseThrow().messages());
+    }
+
+    @Test
+    @DisplayName("Messages added while paging abort the archiving without indexing a partial record")
+    void testMessagesChangedWhilePaging() {
+        // Arrange: counted two messages, but a third arrived before the read
+        MessageView added = new MessageView(12L, CONVERSATION_ID, MessageRole.USER, "One more thing", null,
+                messages.get(1).createdAt());
+        when(conversationRepository.findById(CONVERSATION_ID)).thenReturn(Optional.of(conversation));
+        when(messageRepository.countByConversationId(CONVERSATION_ID)).thenReturn(2L);
+        when(messageRepository.findHistoryPage(CONVERSATION_ID, Limit.of(500)))
+                .thenReturn(List.of(messages.get(0), messages.get(1), added));
+        when(contentBlobStore.resolve(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        boolean archived = archiver.archive(CONVERSATION_ID);
+
+        // Assert
+        assertFalse(archived);
+        assertFalse(archiveStore.contains(CONVERSATION_ID));
+        verify(messageRepository, never()).deleteByConversationId(anyLong());
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    @DisplayName("A conversation whose archive segment is missing reads as not archived")
+    void testMissingSegment() throws Exception {
+        // Arrange: archive, then lose the segment file
+        archiveStore.write(new ArchivedConversation(CONVERSATION_ID, "user123", LocalDateTime.now(),
+                LocalDateTime.now(), messages));
+        try (var files = Files.list(archiveDirectory)) {
+            for (Path file : files.filter(file -> file.toString().endsWith(".dat")).toList()) {
+                Files.delete(file);
+            }
+        }
+
+        // Act
+        Optional<ArchivedConversation> readBack = archiveStore.read(CONVERSATION_ID);
+
+        // Assert
+        assertTrue(archiveStore.contains(CONVERSATION_ID));
+        assertTrue(readBack.isEmpty());
+
+        // Act: reopening skips index entries that point into the missing segment
+        archiveStore.close();
+        archiveStore = new ConversationArchiveStore(archiveDirectory.toString(), 1024 * 1024);
+
+        // Assert
+        assertFalse(archiveStore.contains(CONVERSATION_ID));
+    }
+}
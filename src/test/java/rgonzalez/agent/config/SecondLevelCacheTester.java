@@ -0,0 +1,77 @@
+package rgonzalez.agent.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.cache.CacheManager;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.repository.ConversationRepository;
+
+/**
+ * SecondLevelCacheTester boots a context with the second-level cache enabled and
+ * its own region settings, so it runs alongside the other Spring Boot test contexts,
+ * and checks that conversations are served from the cache.
+ */
+@SpringBootTest(properties = "agent.cache.conversations.max-entries=100")
+@DisplayName("Second-Level Cache Tester")
+class SecondLevelCacheTester {
+
+    @Autowired
+    private CacheManager hibernateCacheManager;
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    @DisplayName("Conversations loaded again are served from the second-level cache")
+    void testConversationCacheHits() {
+        // Arrange
+        Conversation conversation = conversationRepository.save(new Conversation(1L, "TestAgent", "cached"));
+        CacheRegionStatistics region = entityManagerFactory.unwrap(SessionFactory.class).getStatistics()
+                .getDomainDataRegionStatistics(Conversation.CACHE_REGION);
+        long hitsBefore = region.getHitCount();
+
+        // Act: each lookup runs in its own session, so only the second-level cache can serve it
+        conversationRepository.findById(conversation.getId()).orElseThrow();
+        conversationRepository.findById(conversation.getId()).orElseThrow();
+
+        // Assert
+        assertNotNull(hibernateCacheManager.getCache(Conversation.CACHE_REGION));
+        assertTrue(region.getHitCount() >= hitsBefore + 2, "Both lookups should hit the cache");
+    }
+
+    @Test
+    @DisplayName("Each configuration creates its own cache manager, so contexts do not collide")
+    void testCacheManagerPerContext() {
+        // Arrange
+        SecondLevelCacheConfig config = new SecondLevelCacheConfig();
+
+        // Act: a second manager with the same region must not fail with "cache already exists"
+        CacheManager first = config.hibernateCacheManager();
+        CacheManager second = config.hibernateCacheManager();
+
+        // Assert
+        try {
+            assertNotSame(first, second);
+            assertNotSame(hibernateCacheManager, first);
+            assertNotNull(first.getCache(Conversation.CACHE_REGION));
+            assertNotNull(second.getCache(Conversation.CACHE_REGION));
+            first.close();
+            assertFalse(hibernateCacheManager.isClosed(), "Closing another manager must not close this context's");
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+}
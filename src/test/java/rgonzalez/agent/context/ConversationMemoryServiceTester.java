@@ -0,0 +1,212 @@
+package rgonzalez.agent.context;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import rgonzalez.agent.entity.ConversationMemory;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.llm.LlmProviderFactory;
+import rgonzalez.agent.persistence.MessageStore;
+import rgonzalez.agent.repository.ConversationMemoryRepository;
+import rgonzalez.agent.repository.MessageView;
+
+/**
+ * ConversationMemoryServiceTester checks which messages are folded into the summary
+ * (those strictly before the oldest verbatim message, ties on createdAt broken by ID),
+ * that turns completed while an update runs are coalesced into one follow-up run, and
+ * that the extractive fallback used without an LLM keeps within the summary budget.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Conversation Memory Service Tester")
+class ConversationMemoryServiceTester {
+
+    private static final Long CONVERSATION_ID = 1L;
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 9, 0);
+    private static final LocalDateTime T1 = T0.plusMinutes(1);
+
+    @Mock
+    private ConversationMemoryRepository memoryRepository;
+
+    @Mock
+    private MessageStore messageStore;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ConversationMemoryService memoryService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // No provider is configured, so every summary uses the extractive fallback
+        memoryService = new ConversationMemoryService(memoryRepository, messageStore,
+                new LlmProviderFactory(List.of()), meterRegistry, 1, 100);
+        // One turn (two messages) is kept verbatim
+        ReflectionTestUtils.setField(memoryService, "recentTurns", 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        memoryService.shutdown();
+    }
+
+    @Test
+    @DisplayName("Only messages before the oldest verbatim one are folded, with equal timestamps ordered by ID")
+    void testFoldBoundary() throws Exception {
+        // Arrange: messages 2, 3 and 4 share a timestamp; 3 and 4 are the verbatim turn
+        MessageView m1 = message(1L, MessageRole.USER, "Who owes us money?", T0);
+        MessageView m2 = message(2L, MessageRole.ASSISTANT, "Customer C001 owes 500.", T1);
+        MessageView m3 = message(3L, MessageRole.USER, "Remind them.", T1);
+        MessageView m4 = message(4L, MessageRole.ASSISTANT, "Reminder sent.", T1);
+        when(messageStore.findRecent(CONVERSATION_ID, 2)).thenReturn(List.of(m4, m3));
+        when(memoryRepository.findById(CONVERSATION_ID)).thenReturn(Optional.empty());
+        when(messageStore.findHistoryPage(eq(CONVERSATION_ID), isNull(), isNull(), anyInt()))
+                .thenReturn(List.of(m1, m2, m3, m4));
+        when(memoryRepository.save(any(ConversationMemory.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        memoryService.onTurnCompleted(CONVERSATION_ID);
+
+        // Assert
+        awaitUpdate();
+        ConversationMemory saved = awaitSave();
+        assertEquals(2L, saved.getSummarizedThroughId());
+        assertEquals(T1, saved.getSummarizedThroughCreatedAt());
+        assertEquals(2, saved.getSummarizedMessageCount());
+        assertEquals("- user: Who owes us money?\n- assistant: Customer C001 owes 500.", saved.getSummary());
+
+        ConversationSummary summary = memoryService.getSummary(CONVERSATION_ID).orElseThrow();
+        assertEquals(2L, summary.throughMessageId());
+        assertTrue(summary.covers(m2));
+        assertFalse(summary.covers(m3), "A verbatim message with the same timestamp must not count as summarized");
+    }
+
+    @Test
+    @DisplayName("A later update resumes after the summarized cursor and folds nothing once caught up")
+    void testFoldResumesFromCursor() throws Exception {
+        // Arrange: messages up to 2 are already summarized and 3, 4 are the verbatim turn
+        ConversationMemory memory = summarizedThrough(2L, T1, "- user: Who owes us money?");
+        MessageView m3 = message(3L, MessageRole.USER, "Remind them.", T1);
+        MessageView m4 = message(4L, MessageRole.ASSISTANT, "Reminder sent.", T1);
+        when(messageStore.findRecent(CONVERSATION_ID, 2)).thenReturn(List.of(m4, m3));
+        when(memoryRepository.findById(CONVERSATION_ID)).thenReturn(Optional.of(memory));
+        CountDownLatch paged = new CountDownLatch(1);
+        when(messageStore.findHistoryPage(CONVERSATION_ID, T1, 2L, 200)).thenAnswer(invocation -> {
+            paged.countDown();
+            return List.of(m3, m4);
+        });
+
+        // Act
+        memoryService.onTurnCompleted(CONVERSATION_ID);
+
+        // Assert
+        assertTrue(paged.await(5, TimeUnit.SECONDS));
+        verify(memoryRepository, after(200).never()).save(any(ConversationMemory.class));
+    }
+
+    @Test
+    @DisplayName("Turns completed while an update runs are folded by a single follow-up run")
+    void testCoalescesConcurrentTurns() throws Exception {
+        // Arrange: the first update blocks until the other turns have completed
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(messageStore.findRecent(CONVERSATION_ID, 2))
+                .thenAnswer(invocation -> {
+                    started.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return List.of();
+                })
+                .thenReturn(List.of());
+
+        // Act
+        memoryService.onTurnCompleted(CONVERSATION_ID);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            memoryService.onTurnCompleted(CONVERSATION_ID);
+        }
+        release.countDown();
+
+        // Assert: one run, then one follow-up for the five turns
+        verify(messageStore, timeout(5000).times(2)).findRecent(CONVERSATION_ID, 2);
+        verify(messageStore, after(200).times(2)).findRecent(CONVERSATION_ID, 2);
+
+        // Act: once idle, the next turn schedules a new run
+        memoryService.onTurnCompleted(CONVERSATION_ID);
+
+        // Assert
+        verify(messageStore, timeout(5000).times(3)).findRecent(CONVERSATION_ID, 2);
+    }
+
+    @Test
+    @DisplayName("The extractive fallback keeps first sentences, shortens long ones and drops the oldest lines")
+    void testExtractiveFallbackTruncation() throws Exception {
+        // Arrange: 16 + 211 + 25 characters of lines plus two newlines, over a 240-character budget
+        ReflectionTestUtils.setField(memoryService, "maxSummaryChars", 240);
+        ConversationMemory memory = summarizedThrough(10L, T0, "- user: old fact");
+        MessageView m11 = message(11L, MessageRole.USER, "x".repeat(300), T1);
+        MessageView m12 = message(12L, MessageRole.ASSISTANT, "Second turn. More detail here.", T1);
+        MessageView m13 = message(13L, MessageRole.USER, "Verbatim question", T1);
+        MessageView m14 = message(14L, MessageRole.ASSISTANT, "Verbatim answer", T1);
+        when(messageStore.findRecent(CONVERSATION_ID, 2)).thenReturn(List.of(m14, m13));
+        when(memoryRepository.findById(CONVERSATION_ID)).thenReturn(Optional.of(memory));
+        when(messageStore.findHistoryPage(CONVERSATION_ID, T0, 10L, 200)).thenReturn(List.of(m11, m12, m13, m14));
+        when(memoryRepository.save(any(ConversationMemory.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        memoryService.onTurnCompleted(CONVERSATION_ID);
+
+        // Assert
+        awaitUpdate();
+        String summary = awaitSave().getSummary();
+        assertTrue(summary.length() <= 240, "Summary over budget: " + summary.length());
+        assertEquals("- user: " + "x".repeat(200) + "...\n- assistant: Second turn.", summary);
+        assertFalse(summary.contains("old fact"), "The oldest line should be dropped first");
+        assertEquals(1.0, meterRegistry.counter("conversation.memory.fallbacks").count());
+    }
+
+    // Helper methods
+
+    // The update counter is incremented after the summary is saved and cached
+    private void awaitUpdate() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.counter("conversation.memory.updates").count() < 1) {
+            assertTrue(System.currentTimeMillis() < deadline, "The summary was not updated");
+            Thread.sleep(10);
+        }
+    }
+
+    private ConversationMemory awaitSave() {
+        ArgumentCaptor<ConversationMemory> saved = ArgumentCaptor.forClass(ConversationMemory.class);
+        verify(memoryRepository, timeout(5000)).save(saved.capture());
+        return saved.getValue();
+    }
+
+    private static ConversationMemory summarizedThrough(Long messageId, LocalDateTime createdAt, String summary) {
+        ConversationMemory memory = new ConversationMemory(CONVERSATION_ID);
+        memory.setSummary(summary);
+        memory.setSummarizedThroughId(messageId);
+        memory.setSummarizedThroughCreatedAt(createdAt);
+        memory.setSummarizedMessageCount(messageId.intValue());
+        return memory;
+    }
+
+    private static MessageView message(Long id, MessageRole role, String content, LocalDateTime createdAt) {
+        return new MessageView(id, CONVERSATION_ID, role, content, null, createdAt);
+    }
+}
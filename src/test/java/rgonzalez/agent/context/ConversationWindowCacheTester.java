@@ -0,0 +1,275 @@
+package rgonzalez.agent.context;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.persistence.MessageStore;
+import rgonzalez.agent.repository.MessageView;
+
+/**
+ * ConversationWindowCacheTester checks that windows are loaded once and then served
+ * from memory, that written-through messages are deduplicated and keep only the last
+ * N, that the byte budget evicts the least recently used conversation and idle
+ * conversations expire, and that a write racing with a load only keeps that load's
+ * conversation out of the cache.
+ */
+@DisplayName("Conversation Window Cache Tester")
+class ConversationWindowCacheTester {
+
+    private static final int WINDOW_SIZE = 2;
+    // Each 100-character message is estimated at 160 + 2 * 100 bytes
+    private static final long MESSAGE_BYTES = 360;
+
+    private InMemoryMessageStore messageStore;
+    private SimpleMeterRegistry meterRegistry;
+    private ConversationWindowCache cache;
+
+    @BeforeEach
+    void setUp() {
+        messageStore = new InMemoryMessageStore();
+        meterRegistry = new SimpleMeterRegistry();
+        cache = newCache(1_000_000, 900_000);
+    }
+
+    @Test
+    @DisplayName("A miss loads the last messages oldest first; later reads are hits")
+    void testHitAndMiss() {
+        // Arrange
+        messageStore.add(1L, 3);
+
+        // Act
+        List<MessageView> loaded = cache.getWindow(1L);
+        List<MessageView> cached = cache.getWindow(1L);
+
+        // Assert
+        assertEquals(List.of(2L, 3L), ids(loaded));
+        assertEquals(loaded, cached);
+        assertEquals(1, messageStore.recentLookups);
+        assertEquals(1.0, meterRegistry.counter("conversation.window.misses").count());
+        assertEquals(1.0, meterRegistry.counter("conversation.window.hits").count());
+        assertEquals(2 * MESSAGE_BYTES, cache.getTotalBytes());
+    }
+
+    @Test
+    @DisplayName("Written-through messages already in the window are skipped and the window keeps the last N")
+    void testWriteThroughDedupe() {
+        // Arrange
+        messageStore.add(1L, 2);
+        cache.getWindow(1L);
+
+        // Act: the turn writes through a message the load already saw, then two new ones
+        cache.append(1L, List.of(message(1L, 2L)));
+        List<MessageView> afterDuplicate = cache.getWindow(1L);
+        cache.append(1L, List.of(message(1L, 3L), message(1L, 4L)));
+        List<MessageView> afterNew = cache.getWindow(1L);
+
+        // Assert
+        assertEquals(List.of(1L, 2L), ids(afterDuplicate));
+        assertEquals(List.of(3L, 4L), ids(afterNew));
+        assertEquals(2 * MESSAGE_BYTES, cache.getTotalBytes());
+        assertEquals(1, messageStore.recentLookups);
+    }
+
+    @Test
+    @DisplayName("Writes to a conversation without a window are not cached")
+    void testWriteToUncachedConversation() {
+        // Act
+        cache.append(1L, List.of(message(1L, 1L)));
+
+        // Assert
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getTotalBytes());
+    }
+
+    @Test
+    @DisplayName("Going over the byte budget evicts the least recently used conversation")
+    void testByteBudgetEvictsLeastRecentlyUsed() {
+        // Arrange: room for two full windows, not three
+        cache = newCache(5 * MESSAGE_BYTES, 900_000);
+        messageStore.add(1L, 2);
+        messageStore.add(2L, 2);
+        messageStore.add(3L, 2);
+        cache.getWindow(1L);
+        cache.getWindow(2L);
+        cache.getWindow(1L);
+
+        // Act
+        cache.getWindow(3L);
+
+        // Assert: conversation 2 was used least recently
+        assertEquals(2, cache.size());
+        assertEquals(4 * MESSAGE_BYTES, cache.getTotalBytes());
+        assertEquals(1.0, meterRegistry.counter("conversation.window.evictions").count());
+        int lookups = messageStore.recentLookups;
+        cache.getWindow(1L);
+        cache.getWindow(3L);
+        assertEquals(lookups, messageStore.recentLookups, "Conversations 1 and 3 should still be cached");
+        cache.getWindow(2L);
+        assertEquals(lookups + 1, messageStore.recentLookups, "Conversation 2 should have been evicted");
+    }
+
+    @Test
+    @DisplayName("Conversations not used within the idle TTL are evicted by the sweep")
+    void testIdleTtl() throws Exception {
+        // Arrange
+        cache = newCache(1_000_000, 50);
+        messageStore.add(1L, 1);
+        messageStore.add(2L, 1);
+        cache.getWindow(1L);
+        cache.getWindow(2L);
+        Thread.sleep(100);
+        cache.getWindow(2L);
+
+        // Act
+        cache.evictIdle();
+
+        // Assert
+        assertEquals(1, cache.size());
+        assertEquals(MESSAGE_BYTES, cache.getTotalBytes());
+        assertEquals(1.0, meterRegistry.counter("conversation.window.evictions").count());
+        int lookups = messageStore.recentLookups;
+        cache.getWindow(2L);
+        assertEquals(lookups, messageStore.recentLookups);
+    }
+
+    @Test
+    @DisplayName("A write during a load keeps only that conversation's loaded window out of the cache")
+    void testWriteDuringLoad() {
+        // Arrange: a turn of conversation 2 commits while conversation 1 is being loaded
+        messageStore.add(1L, 1);
+        messageStore.add(2L, 1);
+        messageStore.onFindRecent = conversationId -> {
+            if (conversationId == 1L) {
+                cache.append(2L, List.of(message(2L, 2L)));
+            }
+        };
+
+        // Act
+        cache.getWindow(1L);
+
+        // Assert: conversation 1 was cached despite the unrelated write
+        assertEquals(1, cache.size());
+
+        // Arrange: now a turn of conversation 2 commits while conversation 2 is being loaded
+        messageStore.onFindRecent = conversationId -> cache.append(2L, List.of(message(2L, 3L)));
+
+        // Act
+        cache.getWindow(2L);
+
+        // Assert: the loaded window may miss that message, so it is not cached
+        assertEquals(1, cache.size());
+        messageStore.onFindRecent = conversationId -> { };
+        int lookups = messageStore.recentLookups;
+        cache.getWindow(2L);
+        cache.getWindow(2L);
+        assertEquals(lookups + 1, messageStore.recentLookups);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    @DisplayName("A load that started before a write whose stamp was since pruned is not cached")
+    void testWriteStampPruned() {
+        // Arrange: the write is stamped during the load, then two sweeps prune the stamp
+        messageStore.add(1L, 1);
+        messageStore.onFindRecent = conversationId -> {
+            cache.append(1L, List.of(message(1L, 2L)));
+            cache.evictIdle();
+            cache.evictIdle();
+        };
+
+        // Act
+        cache.getWindow(1L);
+
+        // Assert
+        assertEquals(0, cache.size());
+        messageStore.onFindRecent = conversationId -> { };
+        cache.getWindow(1L);
+        assertEquals(1, cache.size());
+    }
+
+    // Helper methods
+
+    private ConversationWindowCache newCache(long maxBytes, long idleTtlMillis) {
+        meterRegistry = new SimpleMeterRegistry();
+        return new ConversationWindowCache(messageStore, meterRegistry, WINDOW_SIZE, maxBytes, idleTtlMillis);
+    }
+
+    private static MessageView message(Long conversationId, Long id) {
+        return new MessageView(id, conversationId, MessageRole.USER, "x".repeat(100), null,
+                LocalDateTime.now());
+    }
+
+    private static List<Long> ids(List<MessageView> messages) {
+        return messages.stream().map(MessageView::id).toList();
+    }
+
+    /**
+     * Message store holding each conversation's messages in memory, counting window
+     * loads and running a hook in the middle of each one.
+     */
+    private static final class InMemoryMessageStore implements MessageStore {
+
+        private final Map<Long, List<MessageView>> conversations = new HashMap<>();
+        private Consumer<Long> onFindRecent = conversationId -> { };
+        private int recentLookups;
+
+        void add(Long conversationId, int count) {
+            List<MessageView> messages = conversations.computeIfAbsent(conversationId, id -> new ArrayList<>());
+            for (int i = 0; i < count; i++) {
+                messages.add(message(conversationId, (long) messages.size() + 1));
+            }
+        }
+
+        @Override
+        public boolean isTransactional() {
+            return true;
+        }
+
+        @Override
+        public void append(List<Message> messages) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Optional<MessageView> findById(Long messageId) {
+            return Optional.empty();
+        }
+
+        @Override
+        public List<MessageView> findAfterId(long afterId, int limit) {
+            return List.of();
+        }
+
+        @Override
+        public List<MessageView> findHistoryPage(Long conversationId, LocalDateTime afterCreatedAt, Long afterId,
+                                                 int limit) {
+            return List.of();
+        }
+
+        @Override
+        public List<MessageView> findRecent(Long conversationId, int limit) {
+            recentLookups++;
+            List<MessageView> messages = new ArrayList<>(conversations.getOrDefault(conversationId, List.of()));
+            onFindRecent.accept(conversationId);
+            List<MessageView> recent = new ArrayList<>();
+            for (int i = messages.size() - 1; i >= 0 && recent.size() < limit; i--) {
+                recent.add(messages.get(i));
+            }
+            return recent;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package rgonzalez.agent.dto;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * HistoryCursorTester checks that history cursors survive the round trip through
+ * their URL-safe token and that malformed tokens are rejected.
+ */
+@DisplayName("History Cursor Tester")
+class HistoryCursorTester {
+
+    @Test
+    @DisplayName("A cursor decodes to the same createdAt and ID it was encoded from")
+    void testEncodeDecodeRoundTrip() {
+        // Arrange
+        HistoryCursor cursor = new HistoryCursor(LocalDateTime.of(2026, 3, 14, 9, 26, 53, 589_793_000), 42_000_000_001L);
+
+        // Act
+        String token = cursor.encode();
+        HistoryCursor decoded = HistoryCursor.decode(token);
+
+        // Assert
+        assertEquals(cursor, decoded);
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), "Token should be safe in a URL without escaping: " + token);
+    }
+
+    @Test
+    @DisplayName("Malformed tokens are rejected with IllegalArgumentException")
+    void testDecodeRejectsMalformedTokens() {
+        // Arrange
+        String notBase64 = "not a cursor!";
+        String noSeparator = encode("2026-01-01T12:00");
+        String badTimestamp = encode("yesterday|42");
+        String badId = encode("2026-01-01T12:00|forty-two");
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> HistoryCursor.decode(notBase64));
+        assertThrows(IllegalArgumentException.class, () -> HistoryCursor.decode(noSeparator));
+        assertThrows(IllegalArgumentException.class, () -> HistoryCursor.decode(badTimestamp));
+        assertThrows(IllegalArgumentException.class, () -> HistoryCursor.decode(badId));
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,191 @@
+package rgonzalez.agent.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import rgonzalez.agent.entity.AgentJob;
+import rgonzalez.agent.entity.AgentJobStatus;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.repository.AgentJobRepository;
+import rgonzalez.agent.repository.ConversationRepository;
+import rgonzalez.agent.service.ConversationService;
+
+/**
+ * AgentJobServiceTester checks that a job records the user message its turn saved,
+ * that a job resumed after its node's lease ran out reuses it instead of saving it
+ * again, and that only jobs this node managed to claim are resumed.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Agent Job Service Tester")
+class AgentJobServiceTester {
+
+    @Mock
+    private AgentJobRepository jobRepository;
+
+    @Mock
+    private ConversationRepository conversationRepository;
+
+    @Mock
+    private ConversationService conversationService;
+
+    private AgentJobService jobService;
+
+    // Status and user message ID of the job at each save
+    private final List<String> savedStates = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        jobService = new AgentJobService(jobRepository, conversationRepository, conversationService,
+                new SimpleMeterRegistry(), 1, 10);
+        lenient().when(jobRepository.save(any(AgentJob.class))).thenAnswer(invocation -> {
+            AgentJob job = invocation.getArgument(0);
+            savedStates.add(job.getStatus() + ":" + job.getUserMessageId());
+            return job;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobService.shutdown();
+    }
+
+    @Test
+    @DisplayName("A job records the ID of the user message its turn saved")
+    void testRunRecordsUserMessage() throws Exception {
+        // Arrange
+        when(conversationRepository.existsById(1L)).thenReturn(true);
+        when(jobRepository.findById(anyString()))
+                .thenAnswer(invocation -> Optional.of(savedJob(invocation.getArgument(0))));
+        when(conversationService.submitMessage(eq(1L), eq("Send the reminders"), startsWith("job-"),
+                isNull(), any(LongConsumer.class), any(Executor.class))).thenAnswer(invocation -> {
+                    LongConsumer onUserMessageSaved = invocation.getArgument(4);
+                    onUserMessageSaved.accept(41L);
+                    return CompletableFuture.completedFuture(assistantMessage(42L));
+                });
+
+        // Act
+        AgentJob submitted = jobService.submit(1L, "Send the reminders");
+        AgentJob finished = jobService.awaitCompletion(1L, submitted.getId()).get(10, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(AgentJobStatus.SUCCEEDED, finished.getStatus());
+        assertEquals(41L, finished.getUserMessageId());
+        assertEquals(42L, finished.getResultMessageId());
+        assertTrue(savedStates.contains("RUNNING:41"), "The user message ID should be saved while the job runs");
+    }
+
+    @Test
+    @DisplayName("A resumed job passes the user message saved by its interrupted run")
+    void testResumeReusesUserMessage() throws Exception {
+        // Arrange
+        AgentJob interrupted = new AgentJob("job-a", 1L, "Send the reminders");
+        interrupted.setStatus(AgentJobStatus.RUNNING);
+        interrupted.setUserMessageId(41L);
+        when(jobRepository.findResumableIds(any(LocalDateTime.class))).thenReturn(List.of("job-a"));
+        when(jobRepository.claim(eq("job-a"), eq(jobService.getNodeId()), any(LocalDateTime.class),
+                any(LocalDateTime.class))).thenReturn(1);
+        when(jobRepository.findById("job-a")).thenReturn(Optional.of(interrupted));
+        when(conversationService.submitMessage(eq(1L), eq("Send the reminders"), eq("job-job-a"),
+                eq(41L), any(LongConsumer.class), any(Executor.class)))
+                .thenReturn(CompletableFuture.completedFuture(assistantMessage(42L)));
+
+        // Act
+        jobService.resumeInterruptedJobs();
+        AgentJob finished = jobService.awaitCompletion(1L, "job-a").get(10, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(AgentJobStatus.SUCCEEDED, finished.getStatus());
+        assertEquals(42L, finished.getResultMessageId());
+        verify(conversationService).submitMessage(eq(1L), anyString(), anyString(), eq(41L), any(LongConsumer.class),
+                any(Executor.class));
+    }
+
+    @Test
+    @DisplayName("A job renewed or claimed elsewhere since the lookup is not resumed")
+    void testResumeSkipsLostClaim() {
+        // Arrange
+        when(jobRepository.findResumableIds(any(LocalDateTime.class))).thenReturn(List.of("job-a", "job-b"));
+        when(jobRepository.claim(anyString(), anyString(), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenReturn(0);
+
+        // Act
+        jobService.resumeInterruptedJobs();
+
+        // Assert
+        verify(jobRepository, times(2)).claim(anyString(), anyString(), any(LocalDateTime.class),
+                any(LocalDateTime.class));
+        verify(jobRepository, never()).findById(anyString());
+        verifyNoInteractions(conversationService);
+        assertTrue(savedStates.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Submitted jobs carry this node's lease, which the heartbeat extends while they are unfinished")
+    void testLeaseAndHeartbeat() throws Exception {
+        // Arrange: the turn stays queued until released, so the job stays unfinished
+        LocalDateTime before = LocalDateTime.now();
+        when(conversationRepository.existsById(1L)).thenReturn(true);
+        CompletableFuture<Message> turn = new CompletableFuture<>();
+        when(jobRepository.findById(anyString()))
+                .thenAnswer(invocation -> Optional.of(savedJob(invocation.getArgument(0))));
+        when(conversationService.submitMessage(anyLong(), anyString(), anyString(), isNull(), any(LongConsumer.class),
+                any(Executor.class))).thenReturn(turn);
+
+        // Act
+        AgentJob submitted = jobService.submit(1L, "Send the reminders");
+        jobService.renewLeases();
+        turn.complete(assistantMessage(42L));
+        jobService.awaitCompletion(1L, submitted.getId()).get(10, TimeUnit.SECONDS);
+
+        // Assert
+        assertEquals(jobService.getNodeId(), submitted.getOwnerNode());
+        assertTrue(submitted.getLeaseUntil().isAfter(before));
+        ArgumentCaptor<LocalDateTime> renewedUntil = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(jobRepository).renewLeases(eq(jobService.getNodeId()), renewedUntil.capture());
+        assertTrue(renewedUntil.getValue().isAfter(before));
+    }
+
+    @Test
+    @DisplayName("The heartbeat does not touch the database when this node has no unfinished jobs")
+    void testIdleHeartbeat() {
+        // Act
+        jobService.renewLeases();
+
+        // Assert
+        verifyNoInteractions(jobRepository);
+    }
+
+    // Helper methods
+
+    private AgentJob savedJob(String id) {
+        return new AgentJob(id, 1L, "Send the reminders");
+    }
+
+    private Message assistantMessage(Long id) {
+        Message message = new Message();
+        message.setRole(MessageRole.ASSISTANT);
+        message.setId(id);
+        return message;
+    }
+}
@@ -0,0 +1,300 @@
+package rgonzalez.agent.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * ConversationTurnExecutorTester stresses the per-conversation executor from many
+ * threads and checks that turns of one conversation never overlap and keep their
+ * arrival order, while turns of different conversations run concurrently. Submitted
+ * turns wait for their predecessors without occupying a thread of their executor.
+ */
+@DisplayName("Conversation Turn Executor Tester")
+class ConversationTurnExecutorTester {
+
+    private static final int CALLERS = 64;
+    private static final int CONVERSATIONS = 50;
+    private static final int TURNS = 20_000;
+
+    private ConversationTurnExecutor turnExecutor;
+    private ExecutorService callers;
+
+    @BeforeEach
+    void setUp() {
+        turnExecutor = new ConversationTurnExecutor(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(turnExecutor, "maxPendingTurns", TURNS);
+        callers = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Turns of one conversation never overlap; different conversations run in parallel")
+    void testNoOverlapWithinConversation() throws Exception {
+        // Arrange
+        ConcurrentHashMap<Long, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+
+        // Act
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < TURNS; i++) {
+            long conversationId = ThreadLocalRandom.current().nextInt(CONVERSATIONS);
+            futures.add(callers.submit(() -> turnExecutor.call(conversationId, () -> {
+                AtomicInteger active = running.computeIfAbsent(conversationId, id -> new AtomicInteger());
+                if (active.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                Thread.yield();
+                concurrent.decrementAndGet();
+                active.decrementAndGet();
+                return completed.incrementAndGet();
+            })));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+
+        // Assert
+        assertEquals(0, overlaps.get(), "Turns of the same conversation overlapped");
+        assertEquals(TURNS, completed.get());
+        assertTrue(maxConcurrent.get() > 1, "Different conversations should run concurrently");
+        assertEquals(0, turnExecutor.getActiveMailboxes(), "Drained mailboxes should be removed");
+    }
+
+    @Test
+    @DisplayName("Turns of one conversation run in arrival order")
+    void testArrivalOrder() throws Exception {
+        // Arrange: hold the first turn so the others queue behind it
+        long conversationId = 7L;
+        int queued = 50;
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+
+        Future<?> first = callers.submit(() -> turnExecutor.call(conversationId, () -> {
+            firstStarted.countDown();
+            releaseFirst.await();
+            order.add(0);
+            return null;
+        }));
+        assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+
+        // Act: enqueue the rest one at a time from different threads
+        List<Future<?>> rest = new ArrayList<>();
+        for (int i = 1; i <= queued; i++) {
+            int turn = i;
+            rest.add(callers.submit(() -> turnExecutor.call(conversationId, () -> order.add(turn))));
+            while (turnExecutor.getDepth(conversationId) < i + 1) {
+                Thread.onSpinWait();
+            }
+        }
+        releaseFirst.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        for (Future<?> future : rest) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        // Assert
+        assertEquals(queued + 1, order.size());
+        for (int i = 0; i <= queued; i++) {
+            assertEquals(i, order.get(i));
+        }
+        assertEquals(0, turnExecutor.getDepth(conversationId));
+    }
+
+    @Test
+    @DisplayName("A failed turn does not block the turns queued behind it")
+    void testFailureReleasesMailbox() throws Exception {
+        // Arrange
+        long conversationId = 3L;
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> turnExecutor.call(conversationId, () -> {
+            throw new IllegalStateException("boom");
+        }));
+        String next = turnExecutor.call(conversationId, () -> "ok");
+
+        // Assert
+        assertEquals("ok", next);
+        assertEquals(0, turnExecutor.getActiveMailboxes());
+    }
+
+    @Test
+    @DisplayName("Turns beyond the per-conversation limit are rejected")
+    void testRejectsWhenMailboxFull() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(turnExecutor, "maxPendingTurns", 1);
+        long conversationId = 9L;
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> holder = callers.submit(() -> turnExecutor.call(conversationId, () -> {
+            started.countDown();
+            release.await();
+            return null;
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // Act & Assert
+        assertThrows(RejectedExecutionException.class, () -> turnExecutor.call(conversationId, () -> null));
+        assertEquals("other", turnExecutor.call(10L, () -> "other"));
+
+        release.countDown();
+        holder.get(10, TimeUnit.SECONDS);
+        assertEquals(0, turnExecutor.getActiveMailboxes());
+    }
+
+    @Test
+    @DisplayName("Submitted turns queued behind a running turn hold no thread and run in arrival order")
+    void testSubmittedTurnsHoldNoThread() throws Exception {
+        // Arrange: two workers, one of them held by the first turn of conversation 7
+        ThreadPoolExecutor workers = (ThreadPoolExecutor) Executors.newFixedThreadPool(2);
+        long conversationId = 7L;
+        int queued = 20;
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+
+        try {
+            CompletableFuture<Object> first = turnExecutor.submit(conversationId, () -> {
+                firstStarted.countDown();
+                releaseFirst.await();
+                order.add(0);
+                return null;
+            }, workers);
+            assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+
+            // Act: queue more turns, then a turn of another conversation
+            List<CompletableFuture<Boolean>> rest = new ArrayList<>();
+            for (int i = 1; i <= queued; i++) {
+                int turn = i;
+                rest.add(turnExecutor.submit(conversationId, () -> order.add(turn), workers));
+            }
+            String other = turnExecutor.submit(8L, () -> "other", workers).get(10, TimeUnit.SECONDS);
+
+            // Assert: the other conversation ran on the free worker while the queued turns waited
+            assertEquals("other", other);
+            assertEquals(queued + 1, turnExecutor.getDepth(conversationId));
+            assertEquals(2, workers.getTaskCount(), "Queued turns should not be handed to the executor yet");
+            assertEquals(0, workers.getQueue().size());
+
+            // Act
+            releaseFirst.countDown();
+            first.get(10, TimeUnit.SECONDS);
+            for (CompletableFuture<Boolean> future : rest) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+
+            // Assert
+            assertEquals(queued + 1, order.size());
+            for (int i = 0; i <= queued; i++) {
+                assertEquals(i, order.get(i));
+            }
+            assertEquals(0, turnExecutor.getDepth(conversationId));
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("A submitted turn that fails or is rejected by its executor does not block later turns")
+    void testSubmittedFailureReleasesMailbox() throws Exception {
+        // Arrange
+        long conversationId = 3L;
+        ExecutorService workers = Executors.newSingleThreadExecutor();
+
+        try {
+            // Act
+            CompletableFuture<Object> failed = turnExecutor.submit(conversationId, () -> {
+                throw new IOException("boom");
+            }, workers);
+            CompletableFuture<Object> rejected = turnExecutor.submit(conversationId, () -> "never", runnable -> {
+                throw new RejectedExecutionException("queue full");
+            });
+            String next = turnExecutor.submit(conversationId, () -> "ok", workers).get(10, TimeUnit.SECONDS);
+
+            // Assert
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+            assertTrue(failure.getCause() instanceof IOException, String.valueOf(failure.getCause()));
+            ExecutionException rejection = assertThrows(ExecutionException.class,
+                    () -> rejected.get(10, TimeUnit.SECONDS));
+            assertTrue(rejection.getCause() instanceof RejectedExecutionException,
+                    String.valueOf(rejection.getCause()));
+            assertEquals("ok", next);
+            assertEquals(0, turnExecutor.getActiveMailboxes());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Cancelling a submitted turn's future does not let the next turn overlap it")
+    void testCancelDoesNotOpenGate() throws Exception {
+        // Arrange
+        long conversationId = 5L;
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+
+        try {
+            CompletableFuture<Object> first = turnExecutor.submit(conversationId, () -> {
+                running.incrementAndGet();
+                started.countDown();
+                release.await();
+                running.decrementAndGet();
+                return null;
+            }, workers);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // Act
+            first.cancel(true);
+            CompletableFuture<Object> second = turnExecutor.submit(conversationId, () -> {
+                if (running.get() > 0) {
+                    overlaps.incrementAndGet();
+                }
+                return null;
+            }, workers);
+            Thread.sleep(100);
+            boolean ranEarly = second.isDone();
+            release.countDown();
+            second.get(10, TimeUnit.SECONDS);
+
+            // Assert
+            assertFalse(ranEarly, "The next turn started while the cancelled one was still running");
+            assertEquals(0, overlaps.get());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package rgonzalez.agent.execution;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import rgonzalez.agent.planning.PlanStep;
+import rgonzalez.agent.toolbox.Tool;
+
+/**
+ * ForEachStepExecutorTester runs forEach steps against a recording tool and checks
+ * that items are split into partitions of the requested size, that a failing item
+ * only fails itself after its partition is retried item by item under the same turn
+ * key, and that a pattern that backtracks badly is cut off.
+ */
+@DisplayName("ForEach Step Executor Tester")
+class ForEachStepExecutorTester {
+
+    private static final String SEARCH_RESULT = """
+            Found 7 customers with overdue balances:
+            C001 Acme, C002 Globex
+            C003 Initech
+            C004 Umbrella, C005 Hooli, C006 Stark
+            C007 Wayne, C001 Acme again
+            """;
+
+    private ForEachStepExecutor executor;
+    private RecordingTool tool;
+
+    @BeforeEach
+    void setUp() {
+        executor = new ForEachStepExecutor(new SimpleMeterRegistry(), 4);
+        tool = new RecordingTool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    @DisplayName("Items are deduplicated and split into partitions of the requested size")
+    void testPartitioning() throws Exception {
+        // Arrange
+        PlanStep step = forEachStep(3);
+
+        // Act
+        String output = executor.execute(tool, step, context());
+
+        // Assert: seven distinct IDs in calls of three, three and one
+        assertEquals(Set.of("C001, C002, C003", "C004, C005, C006", "C007"), Set.copyOf(tool.calls));
+        assertEquals(3, tool.calls.size());
+        assertTrue(output.startsWith("Ran send_email_reminder for 7 items of customer_search in 3 partitions: "
+                + "7 succeeded, 0 failed"), output);
+        assertFalse(output.contains("Failed items"));
+        assertEquals("reminder", tool.lastParameters.get("templateType"));
+    }
+
+    @Test
+    @DisplayName("A failing item is isolated by retrying its partition item by item")
+    void testFailureIsolation() throws Exception {
+        // Arrange: any call that includes C005 fails
+        tool.failOn = "C005";
+        PlanStep step = forEachStep(3);
+
+        // Act
+        String output = executor.execute(tool, step, context());
+
+        // Assert: the other two items of the failed partition were retried on their own
+        assertTrue(tool.calls.containsAll(List.of("C004, C005, C006", "C004", "C005", "C006")), tool.calls.toString());
+        assertTrue(output.startsWith("Ran send_email_reminder for 7 items of customer_search in 3 partitions: "
+                + "6 succeeded, 1 failed"), output);
+        assertTrue(output.contains("- C005: Mailbox unavailable"), output);
+        // Retries reuse the turn key, so tools can deduplicate the items that already took effect
+        assertEquals(Set.of("turn-1"), Set.copyOf(tool.turnKeys.values()));
+    }
+
+    @Test
+    @DisplayName("Without a turn key, the partition call and its item retries share a generated one")
+    void testGeneratedTurnKey() throws Exception {
+        // Arrange
+        tool.failOn = "C002";
+        Map<String, Object> context = context();
+        context.remove(Tool.CONTEXT_TURN_KEY);
+
+        // Act
+        executor.execute(tool, forEachStep(3), context);
+
+        // Assert
+        assertNotNull(tool.turnKeys.get("C002"));
+        assertEquals(tool.turnKeys.get("C001, C002, C003"), tool.turnKeys.get("C002"));
+        assertEquals(tool.turnKeys.get("C001, C002, C003"), tool.turnKeys.get("C003"));
+    }
+
+    @Test
+    @DisplayName("A pattern that backtracks badly fails the step instead of holding a worker")
+    void testPatternTimeout() {
+        // Arrange: a repeated group against a long line with no match, polynomial with a high degree
+        ReflectionTestUtils.setField(executor, "matchTimeoutMillis", 100L);
+        Map<String, Object> context = context();
+        context.put("customer_search_result", "a".repeat(64));
+        PlanStep step = new PlanStep("Remind", "send_email_reminder", Map.of(),
+                new PlanStep.ForEach("customer_search", "(.*a){12}b", "customerIds", 3));
+
+        // Act & Assert
+        long start = System.nanoTime();
+        IllegalStateException timeout = assertThrows(IllegalStateException.class,
+                () -> executor.execute(tool, step, context));
+        assertTrue(timeout.getMessage().contains("did not finish matching"), timeout.getMessage());
+        assertTrue(System.nanoTime() - start < 10_000_000_000L, "The match should have been cut off");
+        assertTrue(tool.calls.isEmpty());
+    }
+
+    // Helper methods
+
+    private static PlanStep forEachStep(int partitionSize) {
+        return new PlanStep("Send reminders", "send_email_reminder", Map.of("templateType", "reminder"),
+                new PlanStep.ForEach("customer_search", "C\\d+", "customerIds", partitionSize));
+    }
+
+    private static Map<String, Object> context() {
+        Map<String, Object> context = new HashMap<>();
+        context.put("customer_search_result", SEARCH_RESULT);
+        context.put(Tool.CONTEXT_TURN_KEY, "turn-1");
+        return context;
+    }
+
+    /**
+     * Tool that records the items and turn key of each call and fails any call
+     * including the configured item.
+     */
+    private static final class RecordingTool implements Tool {
+
+        final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        final Map<String, Object> turnKeys = new ConcurrentHashMap<>();
+        volatile Map<String, Object> lastParameters;
+        volatile String failOn;
+
+        @Override
+        public String getName() {
+            return "send_email_reminder";
+        }
+
+        @Override
+        public String getDescription() {
+            return "Records its calls";
+        }
+
+        @Override
+        public Map<String, String> getParameters() {
+            return Map.of("customerIds", "Comma-separated list of customer IDs");
+        }
+
+        @Override
+        public String execute(Map<String, Object> parameters) {
+            throw new UnsupportedOperationException("forEach steps run with the context");
+        }
+
+        @Override
+        public String executeWithContext(Map<String, Object> parameters, Map<String, Object> context) {
+            String items = parameters.get("customerIds").toString();
+            calls.add(items);
+            turnKeys.put(items, context.get(CONTEXT_TURN_KEY));
+            lastParameters = parameters;
+            if (failOn != null && items.contains(failOn)) {
+                throw new IllegalArgumentException("Mailbox unavailable");
+            }
+            return "Queued " + items;
+        }
+    }
+}
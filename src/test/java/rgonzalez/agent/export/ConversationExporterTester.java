@@ -0,0 +1,177 @@
+package rgonzalez.agent.export;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rgonzalez.agent.archive.ArchivedConversation;
+import rgonzalez.agent.archive.ConversationArchiveStore;
+import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.entity.ConversationStatus;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.persistence.ContentBlobStore;
+import rgonzalez.agent.persistence.MessageStore;
+import rgonzalez.agent.repository.ConversationRepository;
+import rgonzalez.agent.repository.MessageRepository;
+import rgonzalez.agent.repository.MessageView;
+
+/**
+ * ConversationExporterTester exports a user whose conversations are partly live and
+ * partly archived, and checks that every conversation is written whole and in ID
+ * order whichever side it lives on, that contents stored as blobs are written out in
+ * full rather than as references, and that archived messages come from the archive.
+ */
+@SpringBootTest
+@DisplayName("Conversation Exporter Tester")
+class ConversationExporterTester {
+
+    private static final String LARGE_CONTENT = "Overdue invoice report. ".repeat(100);
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageStore messageStore;
+
+    @Autowired
+    private ContentBlobStore contentBlobs;
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    private Path archiveDirectory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ConversationArchiveStore archiveStore;
+    private ConversationExporter exporter;
+    private String userId;
+
+    @BeforeEach
+    void setUp() {
+        // An archive of its own, so records written here do not reach the shared one
+        archiveStore = new ConversationArchiveStore(archiveDirectory.toString(), 1024 * 1024);
+        exporter = new ConversationExporter(messageRepository, messageStore, contentBlobs, conversationRepository,
+                archiveStore, transactionManager);
+        userId = "export-" + System.nanoTime();
+    }
+
+    @AfterEach
+    void tearDown() {
+        archiveStore.close();
+    }
+
+    @Test
+    @DisplayName("Live and archived conversations are exported whole, in ID order, with blob contents resolved")
+    void testExportUser() throws Exception {
+        // Arrange: live, archived, live with a blob-backed message, archived
+        String largeContent = LARGE_CONTENT + System.nanoTime();
+        assertTrue(contentBlobs.isBlobContent(largeContent));
+        Conversation first = live("Who owes us money?", "Customer C001 owes 500.");
+        Conversation second = archived("Archived question", "Archived answer");
+        Conversation third = live("Send me the report", largeContent);
+        Conversation fourth = archived("Last archived question");
+
+        // Act
+        List<JsonNode> lines = export(out -> exporter.exportUser(userId, out));
+
+        // Assert
+        assertEquals(List.of(first.getId(), first.getId(), second.getId(), second.getId(),
+                        third.getId(), third.getId(), fourth.getId()),
+                lines.stream().map(line -> line.get("conversationId").asLong()).toList());
+        assertEquals(List.of("Who owes us money?", "Customer C001 owes 500.", "Archived question",
+                        "Archived answer", "Send me the report", largeContent, "Last archived question"),
+                contents(lines));
+        assertEquals("ASSISTANT", lines.get(5).get("role").asText());
+    }
+
+    @Test
+    @DisplayName("A single conversation is exported from the database or from the archive")
+    void testExportConversation() throws Exception {
+        // Arrange
+        String largeContent = LARGE_CONTENT + System.nanoTime();
+        Conversation live = live(largeContent, "Noted.");
+        Conversation archived = archived("Archived question", "Archived answer");
+
+        // Act
+        List<JsonNode> liveLines = export(out -> exporter.exportConversation(live.getId(), false, out));
+        List<JsonNode> archivedLines = export(out -> exporter.exportConversation(archived.getId(), true, out));
+        List<JsonNode> missingLines = export(out -> exporter.exportConversation(Long.MAX_VALUE - 3, true, out));
+
+        // Assert
+        assertEquals(List.of(largeContent, "Noted."), contents(liveLines));
+        assertEquals(List.of("Archived question", "Archived answer"), contents(archivedLines));
+        assertTrue(missingLines.isEmpty(), "A conversation missing from the archive exports nothing");
+    }
+
+    // Helper methods
+
+    private Conversation live(String... contents) {
+        Conversation conversation = conversationRepository.save(new Conversation(1L, "TestAgent", userId));
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            for (int i = 0; i < contents.length; i++) {
+                MessageRole role = i % 2 == 0 ? MessageRole.USER : MessageRole.ASSISTANT;
+                messageStore.append(List.of(new Message(conversation, role, contents[i])));
+            }
+        });
+        return conversation;
+    }
+
+    private Conversation archived(String... contents) throws Exception {
+        Conversation conversation = new Conversation(1L, "TestAgent", userId);
+        conversation.setStatus(ConversationStatus.ARCHIVED);
+        conversation = conversationRepository.save(conversation);
+        LocalDateTime createdAt = LocalDateTime.now().minusDays(30);
+        List<MessageView> messages = new ArrayList<>();
+        for (int i = 0; i < contents.length; i++) {
+            MessageRole role = i % 2 == 0 ? MessageRole.USER : MessageRole.ASSISTANT;
+            messages.add(new MessageView(Long.MAX_VALUE - 100 + i, conversation.getId(), role, contents[i], null,
+                    createdAt.plusMinutes(i)));
+        }
+        archiveStore.write(new ArchivedConversation(conversation.getId(), userId, createdAt, LocalDateTime.now(),
+                messages));
+        return conversation;
+    }
+
+    private List<JsonNode> export(Export export) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        export.writeTo(out);
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(objectMapper.readTree(line));
+            }
+        }
+        return lines;
+    }
+
+    private static List<String> contents(List<JsonNode> lines) {
+        return lines.stream().map(line -> line.get("content").asText()).toList();
+    }
+
+    @FunctionalInterface
+    private interface Export {
+        void writeTo(ByteArrayOutputStream out) throws Exception;
+    }
+}
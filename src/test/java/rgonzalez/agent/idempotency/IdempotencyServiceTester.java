@@ -0,0 +1,189 @@
+package rgonzalez.agent.idempotency;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import rgonzalez.agent.entity.IdempotencyRecord;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.repository.IdempotencyRecordRepository;
+import rgonzalez.agent.service.ConversationService;
+
+/**
+ * IdempotencyServiceTester checks that a turn runs at most once per key: retries are
+ * answered from the cache, the table or the request still in flight, a key reused
+ * with a different body is rejected, and keys are refused when responses are saved
+ * without IDs.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Idempotency Service Tester")
+class IdempotencyServiceTester {
+
+    private static final Long CONVERSATION_ID = 1L;
+    private static final String KEY = "retry-me";
+    private static final String RECORD_ID = CONVERSATION_ID + ":" + KEY;
+
+    @Mock
+    private IdempotencyRecordRepository repository;
+
+    @Mock
+    private ConversationService conversationService;
+
+    private IdempotencyService idempotencyService;
+    private Message response;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new IdempotencyService(repository, conversationService, new SimpleMeterRegistry(), 100);
+        response = new Message();
+        response.setId(42L);
+        response.setRole(MessageRole.ASSISTANT);
+        response.setContent("Reminders sent");
+    }
+
+    @Test
+    @DisplayName("A retry is replayed from the cache without running the turn again")
+    void testReplayFromCache() throws Exception {
+        // Arrange
+        when(conversationService.returnsSavedMessages()).thenReturn(true);
+        when(repository.findById(RECORD_ID)).thenReturn(Optional.empty());
+        AtomicInteger runs = new AtomicInteger();
+        IdempotencyService.Turn turn = turnKey -> {
+            runs.incrementAndGet();
+            return response;
+        };
+
+        // Act
+        IdempotencyService.Outcome first = idempotencyService.execute(CONVERSATION_ID, KEY, "Send reminders", turn);
+        IdempotencyService.Outcome retry = idempotencyService.execute(CONVERSATION_ID, KEY, "Send reminders", turn);
+
+        // Assert
+        assertEquals(1, runs.get());
+        assertFalse(first.replayed());
+        assertTrue(retry.replayed());
+        assertSame(response, retry.message());
+        verify(repository).complete(eq(RECORD_ID), eq(42L), any(LocalDateTime.class));
+    }
+
+    @Test
+    @DisplayName("A retry on another node is replayed from the stored record")
+    void testReplayFromStore() throws Exception {
+        // Arrange: completed by an earlier request whose cache entry this node does not have
+        when(conversationService.returnsSavedMessages()).thenReturn(true);
+        IdempotencyRecord stored = new IdempotencyRecord(RECORD_ID, sha256("Send reminders"),
+                LocalDateTime.now().plusHours(1));
+        stored.setResultMessageId(42L);
+        when(repository.findById(RECORD_ID)).thenReturn(Optional.of(stored));
+        when(conversationService.getMessage(42L)).thenReturn(Optional.of(response));
+
+        // Act
+        IdempotencyService.Outcome outcome = idempotencyService.execute(CONVERSATION_ID, KEY, "Send reminders",
+                turnKey -> fail("The turn should not run again"));
+
+        // Assert
+        assertTrue(outcome.replayed());
+        assertSame(response, outcome.message());
+        verify(repository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    @DisplayName("A key reused with a different request body is rejected")
+    void testHashMismatch() throws Exception {
+        // Arrange
+        when(conversationService.returnsSavedMessages()).thenReturn(true);
+        when(repository.findById(RECORD_ID)).thenReturn(Optional.empty());
+        idempotencyService.execute(CONVERSATION_ID, KEY, "Send reminders", turnKey -> response);
+
+        // Act
+        IdempotencyConflictException conflict = assertThrows(IdempotencyConflictException.class,
+                () -> idempotencyService.execute(CONVERSATION_ID, KEY, "Delete all customers",
+                        turnKey -> fail("The turn should not run for a reused key")));
+
+        // Assert
+        assertEquals(IdempotencyConflictException.Reason.KEY_REUSED, conflict.getReason());
+    }
+
+    @Test
+    @DisplayName("A retry arriving while the first request runs waits for its result")
+    void testAttachToInFlight() throws Exception {
+        // Arrange: hold the first request inside its turn
+        when(conversationService.returnsSavedMessages()).thenReturn(true);
+        when(repository.findById(RECORD_ID)).thenReturn(Optional.empty());
+        CountDownLatch turnStarted = new CountDownLatch(1);
+        CountDownLatch releaseTurn = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        ExecutorService requests = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<IdempotencyService.Outcome> first = requests.submit(() ->
+                    idempotencyService.execute(CONVERSATION_ID, KEY, "Send reminders", turnKey -> {
+                        runs.incrementAndGet();
+                        turnStarted.countDown();
+                        releaseTurn.await();
+                        return response;
+                    }));
+            assertTrue(turnStarted.await(10, TimeUnit.SECONDS));
+
+            // Act
+            Future<IdempotencyService.Outcome> retry = requests.submit(() ->
+                    idempotencyService.execute(CONVERSATION_ID, KEY, "Send reminders", turnKey -> {
+                        runs.incrementAndGet();
+                        return response;
+                    }));
+            Thread.sleep(100);
+            assertFalse(retry.isDone(), "The retry should wait for the first request");
+            releaseTurn.countDown();
+
+            // Assert
+            assertFalse(first.get(10, TimeUnit.SECONDS).replayed());
+            IdempotencyService.Outcome attached = retry.get(10, TimeUnit.SECONDS);
+            assertTrue(attached.replayed());
+            assertSame(response, attached.message());
+            assertEquals(1, runs.get());
+        } finally {
+            releaseTurn.countDown();
+            requests.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Keys are refused when responses are saved without IDs (buffered write-behind)")
+    void testRefusedWithBufferedWriteBehind() {
+        // Arrange
+        when(conversationService.returnsSavedMessages()).thenReturn(false);
+
+        // Act & Assert
+        assertFalse(idempotencyService.isSupported());
+        assertThrows(IllegalStateException.class, () -> idempotencyService.execute(CONVERSATION_ID, KEY,
+                "Send reminders", turnKey -> fail("The turn should not run")));
+        verifyNoInteractions(repository);
+    }
+
+    // Helper methods
+
+    private static String sha256(String content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,152 @@
+package rgonzalez.agent.mail;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * BulkEmailSenderTester runs the bulk sender against an embedded SMTP stand-in
+ * to validate session reuse, pipelining and per-recipient outcome reporting.
+ */
+@DisplayName("Bulk Email Sender Tester")
+class BulkEmailSenderTester {
+
+    private FakeSmtpServer smtpServer;
+    private BulkEmailSender sender;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        smtpServer = new FakeSmtpServer();
+        sender = new BulkEmailSender(true, "localhost", smtpServer.getPort(), "noreply@test.local",
+                4, 4, 5000, 1000);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        sender.shutdown();
+        smtpServer.close();
+    }
+
+    @Test
+    @DisplayName("Bulk send should deliver every message over a bounded number of sessions")
+    void testBulkSendReusesConnections() {
+        // Arrange
+        List<EmailMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            messages.add(new EmailMessage("customer" + i + "@test.local", "Payment Reminder", "Hello " + i));
+        }
+
+        // Act
+        BulkSendReport report = sender.send(messages);
+
+        // Assert
+        assertEquals(500, report.getDeliveredCount(), report.summary());
+        assertEquals(0, report.getFailedCount());
+        assertEquals(500, smtpServer.getRecipients().size());
+        assertTrue(smtpServer.getConnectionCount() <= 4,
+                "Expected at most 4 SMTP sessions but got " + smtpServer.getConnectionCount());
+        System.out.println("Bulk send: " + report.summary());
+    }
+
+    @Test
+    @DisplayName("Sessions should be recycled mid-batch at the per-connection message cap")
+    void testRecyclesConnectionAtMessageCap() throws Exception {
+        // Arrange: a relay that refuses an eleventh message on a session, and a matching cap
+        try (FakeSmtpServer cappedServer = new FakeSmtpServer(10)) {
+            BulkEmailSender cappedSender = new BulkEmailSender(true, "localhost", cappedServer.getPort(),
+                    "noreply@test.local", 2, 2, 5000, 10);
+            List<EmailMessage> messages = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                messages.add(new EmailMessage("customer" + i + "@test.local", "Payment Reminder", "Hello " + i));
+            }
+
+            // Act
+            BulkSendReport report;
+            try {
+                report = cappedSender.send(messages);
+            } finally {
+                cappedSender.shutdown();
+            }
+
+            // Assert: ten messages per session, so at least ten sessions
+            assertEquals(100, report.getDeliveredCount(), report.summary());
+            assertEquals(0, report.getFailedCount());
+            assertTrue(cappedServer.getConnectionCount() >= 10,
+                    "Expected sessions to be recycled but got " + cappedServer.getConnectionCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Rejected recipients should be reported without breaking the session")
+    void testPerRecipientFailures() {
+        // Arrange
+        List<EmailMessage> messages = List.of(
+                new EmailMessage("c001@test.local", "Reminder", "Body"),
+                new EmailMessage("reject-c002@test.local", "Reminder", "Body"),
+                new EmailMessage("c003@test.local", "Reminder", "Body"),
+                new EmailMessage("reject-c004@test.local", "Reminder", "Body"),
+                new EmailMessage("c005@test.local", "Reminder", "Body")
+        );
+
+        // Act
+        BulkSendReport report = sender.send(messages);
+
+        // Assert
+        assertEquals(3, report.getDeliveredCount());
+        assertEquals(2, report.getFailedCount());
+        assertTrue(report.isDelivered(0));
+        assertFalse(report.isDelivered(1));
+        assertTrue(report.isPermanentFailure(1));
+        assertEquals(550, report.getReplyCode(3));
+        assertTrue(report.getFailures().containsKey("reject-c002@test.local"));
+        assertTrue(report.getFailureReason(1).startsWith("550"));
+        assertEquals(3, smtpServer.getRecipients().size());
+    }
+
+    @Test
+    @DisplayName("Body lines starting with a dot should survive transmission")
+    void testDotStuffing() {
+        // Arrange
+        EmailMessage message = new EmailMessage("c001@test.local", "Reminder", "line one\n.hidden\nline three");
+
+        // Act
+        BulkSendReport report = sender.send(List.of(message));
+
+        // Assert
+        assertEquals(1, report.getDeliveredCount());
+        assertTrue(smtpServer.getBodies().get(0).contains("\n.hidden\n"));
+    }
+
+    @Test
+    @DisplayName("CR/LF in recipients or subjects should not inject SMTP commands or headers")
+    void testCrlfInjection() {
+        // Arrange
+        List<EmailMessage> messages = List.of(
+                new EmailMessage("c001@test.local>\r\nRCPT TO:<attacker@evil.local", "Reminder", "Body"),
+                new EmailMessage("c002@test.local", "Reminder\r\nBcc: attacker@evil.local", "Body"),
+                new EmailMessage("c003@test.local", "Reminder", "Body", "id-1>\r\nBcc: attacker@evil.local")
+        );
+
+        // Act
+        BulkSendReport report = sender.send(messages);
+
+        // Assert
+        assertEquals(1, report.getDeliveredCount(), report.summary());
+        assertFalse(report.isDelivered(0));
+        assertEquals(553, report.getReplyCode(0));
+        assertTrue(report.isDelivered(1));
+        assertFalse(report.isDelivered(2));
+        assertEquals(List.of("c002@test.local"), smtpServer.getRecipients());
+        assertTrue(smtpServer.getCommands().stream().noneMatch(command -> command.contains("attacker")),
+                "Injected command reached the server: " + smtpServer.getCommands());
+        String data = smtpServer.getBodies().get(0);
+        assertTrue(data.lines().noneMatch(line -> line.startsWith("Bcc:")), "Injected header in: " + data);
+        assertTrue(data.contains("Subject: =?UTF-8?B?"));
+    }
+}
@@ -0,0 +1,237 @@
+package rgonzalez.agent.mail;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rgonzalez.agent.entity.EmailOutboxEntry;
+import rgonzalez.agent.entity.EmailOutboxStatus;
+import rgonzalez.agent.repository.EmailOutboxRepository;
+
+/**
+ * EmailOutboxDispatcherTester drains real outbox rows into an embedded SMTP stand-in
+ * and checks how each outcome is recorded: delivered, rejected for good, deferred with
+ * growing backoff until attempts run out, and re-claimed after a dispatcher's lease
+ * expired without letting that dispatcher overwrite the outcome afterwards. Emails
+ * held for a turn are only sent once the turn's transaction releases them.
+ */
+@SpringBootTest
+@DisplayName("Email Outbox Dispatcher Tester")
+class EmailOutboxDispatcherTester {
+
+    private static final long INITIAL_BACKOFF_MILLIS = 60_000;
+
+    @Autowired
+    private EmailOutboxRepository outboxRepository;
+
+    @Autowired
+    private EmailOutbox emailOutbox;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private FakeSmtpServer smtpServer;
+    private BulkEmailSender sender;
+    private EmailOutboxDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        smtpServer = new FakeSmtpServer();
+        sender = new BulkEmailSender(true, "localhost", smtpServer.getPort(), "noreply@test.local",
+                2, 2, 5000, 100);
+        dispatcher = new EmailOutboxDispatcher(outboxRepository, sender, transactionManager, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(dispatcher, "initialBackoffMillis", INITIAL_BACKOFF_MILLIS);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMillis", 3_600_000L);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        sender.shutdown();
+        smtpServer.close();
+    }
+
+    @Test
+    @DisplayName("Delivered, permanently rejected and deferred emails are recorded as such")
+    void testOutcomes() {
+        // Arrange
+        String suffix = unique();
+        EmailOutboxEntry delivered = queue("ok-" + suffix);
+        EmailOutboxEntry rejected = queue("reject-" + suffix);
+        EmailOutboxEntry deferred = queue("defer-" + suffix);
+
+        // Act
+        LocalDateTime before = LocalDateTime.now();
+        dispatcher.dispatchBatch();
+        LocalDateTime after = LocalDateTime.now();
+
+        // Assert
+        EmailOutboxEntry sent = reload(delivered);
+        assertEquals(EmailOutboxStatus.SENT, sent.getStatus());
+        assertEquals(1, sent.getAttempts());
+        assertNotNull(sent.getSentAt());
+        assertNull(sent.getClaimedBy());
+        assertNull(sent.getLeaseUntil());
+
+        EmailOutboxEntry failed = reload(rejected);
+        assertEquals(EmailOutboxStatus.FAILED, failed.getStatus(), "A 5xx reply should not be retried");
+        assertEquals(1, failed.getAttempts());
+        assertTrue(failed.getLastError().startsWith("550"), failed.getLastError());
+
+        EmailOutboxEntry retried = reload(deferred);
+        assertEquals(EmailOutboxStatus.PENDING, retried.getStatus(), "A 4xx reply should be retried");
+        assertEquals(1, retried.getAttempts());
+        assertTrue(retried.getLastError().startsWith("451"), retried.getLastError());
+        assertBackoff(retried, before, after, INITIAL_BACKOFF_MILLIS);
+        assertEquals(List.of("ok-" + suffix + "@test.local"), recipientsEndingWith(suffix));
+    }
+
+    @Test
+    @DisplayName("Deferred emails back off exponentially and fail once attempts run out")
+    void testBackoffUntilAttemptsRunOut() {
+        // Arrange
+        EmailOutboxEntry entry = queue("defer-" + unique());
+
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            // Act
+            LocalDateTime before = LocalDateTime.now();
+            dispatcher.dispatchBatch();
+            LocalDateTime after = LocalDateTime.now();
+
+            // Assert: 60s, then 120s, each within the jitter
+            EmailOutboxEntry retried = reload(entry);
+            assertEquals(EmailOutboxStatus.PENDING, retried.getStatus());
+            assertEquals(attempt, retried.getAttempts());
+            assertBackoff(retried, before, after, INITIAL_BACKOFF_MILLIS << (attempt - 1));
+
+            // Not due again until the backoff passes
+            dispatcher.dispatchBatch();
+            assertEquals(attempt, reload(entry).getAttempts());
+            makeDue(retried);
+        }
+
+        // Act: the third attempt is the last
+        dispatcher.dispatchBatch();
+
+        // Assert
+        EmailOutboxEntry failed = reload(entry);
+        assertEquals(EmailOutboxStatus.FAILED, failed.getStatus());
+        assertEquals(3, failed.getAttempts());
+        assertTrue(failed.getLastError().startsWith("451"), failed.getLastError());
+    }
+
+    @Test
+    @DisplayName("Entries whose lease expired are claimed again, and the old claim cannot record an outcome")
+    void testExpiredLeaseIsReclaimed() {
+        // Arrange: one dispatcher died holding an expired lease, another still holds a live one
+        String suffix = unique();
+        EmailOutboxEntry abandoned = queue("abandoned-" + suffix);
+        EmailOutboxEntry held = queue("held-" + suffix);
+        LocalDateTime now = LocalDateTime.now();
+        assertEquals(1, outboxRepository.claim(List.of(abandoned.getId()), "crashed", now, now.minusSeconds(1)));
+        assertEquals(1, outboxRepository.claim(List.of(held.getId()), "alive", now, now.plusMinutes(5)));
+
+        // Act
+        dispatcher.dispatchBatch();
+
+        // Assert: only the expired claim was taken over
+        assertEquals(EmailOutboxStatus.SENT, reload(abandoned).getStatus());
+        EmailOutboxEntry stillHeld = reload(held);
+        assertEquals(EmailOutboxStatus.IN_FLIGHT, stillHeld.getStatus());
+        assertEquals("alive", stillHeld.getClaimedBy());
+        assertEquals(List.of("abandoned-" + suffix + "@test.local"), recipientsEndingWith(suffix));
+
+        // Act: the crashed dispatcher comes back and records a failure under its old claim
+        int recorded = outboxRepository.finish(abandoned.getId(), "crashed", EmailOutboxStatus.FAILED, 1,
+                now, null, "421 Connection lost");
+
+        // Assert
+        assertEquals(0, recorded);
+        EmailOutboxEntry sent = reload(abandoned);
+        assertEquals(EmailOutboxStatus.SENT, sent.getStatus());
+        assertNull(sent.getLastError());
+    }
+
+    @Test
+    @DisplayName("Emails queued by a turn are sent only after the turn's transaction releases them")
+    void testHeldUntilTurnCommits() {
+        // Arrange
+        String suffix = unique();
+        String turnKey = "turn-" + suffix;
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<EmailOutboxEntry> queued = emailOutbox.enqueueForTurn(turnKey,
+                List.of(new EmailMessage("turn-" + suffix + "@test.local", "Reminder", "Body")));
+
+        // Act: the turn has not saved its response yet
+        dispatcher.dispatchBatch();
+
+        // Assert
+        assertEquals(EmailOutboxStatus.PENDING_COMMIT, reload(queued.get(0)).getStatus());
+
+        // Act: saving the response fails, rolling back the release
+        transactionTemplate.executeWithoutResult(status -> {
+            emailOutbox.releaseTurn(turnKey);
+            status.setRollbackOnly();
+        });
+        dispatcher.dispatchBatch();
+
+        // Assert
+        assertEquals(EmailOutboxStatus.PENDING_COMMIT, reload(queued.get(0)).getStatus());
+        assertTrue(recipientsEndingWith(suffix).isEmpty());
+
+        // Act: a retry of the turn queues nothing new and commits
+        assertTrue(emailOutbox.enqueueForTurn(turnKey,
+                List.of(new EmailMessage("turn-" + suffix + "@test.local", "Reminder", "Body"))).isEmpty());
+        transactionTemplate.executeWithoutResult(status -> emailOutbox.releaseTurn(turnKey));
+        dispatcher.dispatchBatch();
+
+        // Assert
+        assertEquals(EmailOutboxStatus.SENT, reload(queued.get(0)).getStatus());
+        assertEquals(List.of("turn-" + suffix + "@test.local"), recipientsEndingWith(suffix));
+    }
+
+    // Helper methods
+
+    private EmailOutboxEntry queue(String localPart) {
+        return outboxRepository.save(new EmailOutboxEntry(localPart, localPart + "@test.local", "Reminder", "Body"));
+    }
+
+    private EmailOutboxEntry reload(EmailOutboxEntry entry) {
+        return outboxRepository.findById(entry.getId()).orElseThrow();
+    }
+
+    private void makeDue(EmailOutboxEntry entry) {
+        entry.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+        outboxRepository.save(entry);
+    }
+
+    private List<String> recipientsEndingWith(String suffix) {
+        return smtpServer.getRecipients().stream()
+                .filter(recipient -> recipient.endsWith(suffix + "@test.local"))
+                .toList();
+    }
+
+    private static void assertBackoff(EmailOutboxEntry entry, LocalDateTime before, LocalDateTime after,
+                                      long backoffMillis) {
+        LocalDateTime earliest = before.plusNanos((long) (backoffMillis * 0.8) * 1_000_000);
+        LocalDateTime latest = after.plusNanos((long) (backoffMillis * 1.2) * 1_000_000);
+        assertFalse(entry.getNextAttemptAt().isBefore(earliest), "Retried too early: " + entry.getNextAttemptAt());
+        assertFalse(entry.getNextAttemptAt().isAfter(latest), "Retried too late: " + entry.getNextAttemptAt());
+    }
+
+    private static String unique() {
+        return Long.toString(System.nanoTime());
+    }
+}
@@ -0,0 +1,132 @@
+package rgonzalez.agent.mail;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import rgonzalez.agent.entity.EmailOutboxEntry;
+import rgonzalez.agent.entity.EmailOutboxStatus;
+import rgonzalez.agent.repository.EmailOutboxRepository;
+
+/**
+ * EmailOutboxTester checks how emails are deduplicated on their way into the outbox:
+ * repeated messages in one call, keys queued by an earlier run, and keys inserted by a
+ * concurrent run between the lookup and the insert. Emails queued for a turn are held
+ * until the turn commits.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Email Outbox Tester")
+class EmailOutboxTester {
+
+    private static final EmailMessage FIRST = new EmailMessage("c001@test.local", "Reminder", "Body 1");
+    private static final EmailMessage SECOND = new EmailMessage("c002@test.local", "Reminder", "Body 2");
+
+    @Mock
+    private EmailOutboxRepository outboxRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private EmailOutbox outbox;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        outbox = new EmailOutbox(outboxRepository, transactionManager, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Repeated messages and keys already queued are skipped and counted as duplicates")
+    void testDedupe() {
+        // Arrange: the second message was queued by an earlier run of the same turn
+        when(outboxRepository.findExistingDedupeKeys(anyCollection()))
+                .thenReturn(Set.of(EmailOutbox.dedupeKey("turn-1", SECOND)));
+        when(outboxRepository.saveAllAndFlush(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        List<EmailOutboxEntry> queued = outbox.enqueue("turn-1", List.of(FIRST, FIRST, SECOND));
+
+        // Assert
+        assertEquals(List.of("c001@test.local"), queued.stream().map(EmailOutboxEntry::getRecipient).toList());
+        assertEquals(EmailOutboxStatus.PENDING, queued.get(0).getStatus());
+        assertEquals(1.0, meterRegistry.counter("email.outbox.enqueued").count());
+        assertEquals(2.0, meterRegistry.counter("email.outbox.duplicates").count());
+    }
+
+    @Test
+    @DisplayName("Keys inserted by a concurrent run count as duplicates instead of failing the call")
+    void testConcurrentDuplicate() {
+        // Arrange: both keys look new, but another run inserts the first before this one does
+        when(outboxRepository.findExistingDedupeKeys(anyCollection()))
+                .thenReturn(Set.of())
+                .thenReturn(Set.of(EmailOutbox.dedupeKey("turn-1", FIRST)));
+        List<List<EmailOutboxEntry>> inserts = new ArrayList<>();
+        when(outboxRepository.saveAllAndFlush(any())).thenAnswer(invocation -> {
+            List<EmailOutboxEntry> entries = invocation.getArgument(0);
+            inserts.add(List.copyOf(entries));
+            if (inserts.size() == 1) {
+                throw new DataIntegrityViolationException("uk_email_outbox_dedupe_key");
+            }
+            return entries;
+        });
+
+        // Act
+        List<EmailOutboxEntry> queued = outbox.enqueue("turn-1", List.of(FIRST, SECOND));
+
+        // Assert: the retry inserted only the key the other run did not
+        assertEquals(2, inserts.size());
+        assertEquals(List.of("c002@test.local"), queued.stream().map(EmailOutboxEntry::getRecipient).toList());
+        assertEquals(1.0, meterRegistry.counter("email.outbox.duplicates").count());
+        verify(transactionManager, times(2)).getTransaction(any());
+    }
+
+    @Test
+    @DisplayName("A key that keeps conflicting gives up after a bounded number of attempts")
+    void testPersistentConflict() {
+        // Arrange
+        when(outboxRepository.findExistingDedupeKeys(anyCollection())).thenReturn(Set.of());
+        when(outboxRepository.saveAllAndFlush(any()))
+                .thenThrow(new DataIntegrityViolationException("uk_email_outbox_dedupe_key"));
+
+        // Act & Assert
+        assertThrows(DataIntegrityViolationException.class, () -> outbox.enqueue("turn-1", List.of(FIRST)));
+        verify(outboxRepository, times(3)).saveAllAndFlush(any());
+    }
+
+    @Test
+    @DisplayName("Emails queued for a turn are held until the turn is released")
+    void testHeldForTurn() {
+        // Arrange
+        when(outboxRepository.findExistingDedupeKeys(anyCollection())).thenReturn(Set.of());
+        when(outboxRepository.saveAllAndFlush(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        outbox.enqueueForTurn("turn-7", List.of(FIRST, SECOND));
+        outbox.releaseTurn("turn-7");
+
+        // Assert
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<EmailOutboxEntry>> saved = ArgumentCaptor.forClass(List.class);
+        verify(outboxRepository).saveAllAndFlush(saved.capture());
+        assertTrue(saved.getValue().stream().allMatch(entry ->
+                entry.getStatus() == EmailOutboxStatus.PENDING_COMMIT && "turn-7".equals(entry.getTurnKey())));
+        assertEquals(EmailOutbox.dedupeKey("turn-7", FIRST), saved.getValue().get(0).getDedupeKey());
+        verify(outboxRepository).releaseTurn("turn-7");
+    }
+}
@@ -0,0 +1,160 @@
+package rgonzalez.agent.mail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal in-process SMTP server used as a stand-in for a real mail relay.
+ * Advertises PIPELINING, records commands and accepted messages, rejects recipients
+ * whose address starts with "reject" and defers (4xx) those starting with "defer". Optionally refuses further mail on a
+ * session once it has accepted a number of messages, as relays with a per-session cap do.
+ */
+class FakeSmtpServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final Thread acceptThread;
+    private final List<String> recipients = new CopyOnWriteArrayList<>();
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final int maxMessagesPerSession;
+
+    FakeSmtpServer() throws IOException {
+        this(Integer.MAX_VALUE);
+    }
+
+    FakeSmtpServer(int maxMessagesPerSession) throws IOException {
+        this.maxMessagesPerSession = maxMessagesPerSession;
+        this.serverSocket = new ServerSocket(0);
+        this.acceptThread = new Thread(this::acceptLoop, "fake-smtp-accept");
+        this.acceptThread.setDaemon(true);
+        this.acceptThread.start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    int getConnectionCount() {
+        return connections.get();
+    }
+
+    List<String> getRecipients() {
+        return recipients;
+    }
+
+    List<String> getBodies() {
+        return bodies;
+    }
+
+    List<String> getCommands() {
+        return commands;
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.incrementAndGet();
+                Thread session = new Thread(() -> serve(socket), "fake-smtp-session");
+                session.setDaemon(true);
+                session.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+
+            reply(out, "220 fake.local ESMTP ready");
+            String recipient = null;
+            boolean mailStarted = false;
+            int accepted = 0;
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                commands.add(line);
+                String command = line.toUpperCase();
+                if (command.startsWith("EHLO")) {
+                    reply(out, "250-fake.local\r\n250-PIPELINING\r\n250 8BITMIME");
+                } else if (command.startsWith("HELO") || command.startsWith("NOOP")) {
+                    reply(out, "250 OK");
+                } else if (command.startsWith("MAIL FROM:")) {
+                    if (accepted >= maxMessagesPerSession) {
+                        reply(out, "421 Too many messages in this session");
+                        continue;
+                    }
+                    mailStarted = true;
+                    reply(out, "250 OK");
+                } else if (command.startsWith("RCPT TO:")) {
+                    String address = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+                    if (address.startsWith("reject")) {
+                        reply(out, "550 Mailbox unavailable");
+                    } else if (address.startsWith("defer")) {
+                        reply(out, "451 Mailbox temporarily unavailable");
+                    } else {
+                        recipient = address;
+                        reply(out, "250 OK");
+                    }
+                } else if (command.equals("DATA")) {
+                    if (!mailStarted || recipient == null) {
+                        reply(out, "554 No valid recipients");
+                        continue;
+                    }
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    bodies.add(readData(in));
+                    recipients.add(recipient);
+                    accepted++;
+                    recipient = null;
+                    mailStarted = false;
+                    reply(out, "250 Queued");
+                } else if (command.equals("RSET")) {
+                    recipient = null;
+                    mailStarted = false;
+                    reply(out, "250 OK");
+                } else if (command.equals("QUIT")) {
+                    reply(out, "221 Bye");
+                    return;
+                } else {
+                    reply(out, "500 Unknown command");
+                }
+            }
+        } catch (IOException ignored) {
+            // Client went away
+        }
+    }
+
+    private String readData(BufferedReader in) throws IOException {
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = in.readLine()) != null && !line.equals(".")) {
+            data.append(line.startsWith("..") ? line.substring(1) : line).append("\n");
+        }
+        return data.toString();
+    }
+
+    private void reply(Writer out, String text) throws IOException {
+        out.write(text);
+        out.write("\r\n");
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
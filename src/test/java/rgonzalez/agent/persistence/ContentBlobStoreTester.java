@@ -0,0 +1,198 @@
+package rgonzalez.agent.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rgonzalez.agent.entity.ContentBlob;
+import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.repository.ContentBlobRepository;
+import rgonzalez.agent.repository.ConversationRepository;
+import rgonzalez.agent.repository.MessageRepository;
+import rgonzalez.agent.repository.MessageView;
+
+/**
+ * ContentBlobStoreTester follows a shared large payload through its reference count:
+ * prepared with no references, acquired once per saved message, released when a
+ * conversation's messages are deleted, and purged only once nothing references it.
+ */
+@SpringBootTest
+@DisplayName("Content Blob Store Tester")
+class ContentBlobStoreTester {
+
+    private static final String LARGE_CONTENT = "Overdue invoice report. ".repeat(100);
+
+    @Autowired
+    private ContentBlobRepository blobRepository;
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ContentBlobStore blobStore;
+    private JpaMessageStore messageStore;
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // A store of its own, so the purge grace period can be dropped without touching the shared bean
+        blobStore = new ContentBlobStore(blobRepository, messageRepository, transactionManager,
+                new SimpleMeterRegistry(), 100);
+        ReflectionTestUtils.setField(blobStore, "purgeGraceMillis", 0L);
+        messageStore = new JpaMessageStore(messageRepository, blobStore);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    @DisplayName("References are acquired per message, released per conversation, and purged at zero")
+    void testAcquireReleasePurge() throws Exception {
+        // Arrange: the same large content in two conversations, twice in the first
+        String content = LARGE_CONTENT + System.nanoTime();
+        Conversation first = conversationRepository.save(new Conversation(1L, "TestAgent", "blobs"));
+        Conversation second = conversationRepository.save(new Conversation(1L, "TestAgent", "blobs"));
+
+        // Act: prepare inserts the blob without a reference
+        blobStore.prepare(content);
+        String hash = sha256(content);
+
+        // Assert
+        assertEquals(0, blob(hash).getRefCount());
+
+        // Act: each saved message takes a reference
+        append(first, content, content);
+        append(second, content);
+
+        // Assert
+        assertEquals(3, blob(hash).getRefCount());
+        List<MessageView> history = messageStore.findHistoryPage(first.getId(), null, null, 10);
+        assertEquals(List.of(content, content), history.stream().map(MessageView::content).toList(),
+                "Contents should resolve from the blob");
+
+        // Act: archiving the first conversation releases its two references
+        deleteConversationMessages(first);
+        Thread.sleep(10);
+        blobStore.purgeUnreferenced();
+
+        // Assert: still referenced by the second conversation
+        ContentBlob released = blob(hash);
+        assertEquals(1, released.getRefCount());
+        assertNotNull(released.getReleasedAt());
+
+        // Act: the last reference goes
+        deleteConversationMessages(second);
+        Thread.sleep(10);
+        blobStore.purgeUnreferenced();
+
+        // Assert
+        assertTrue(blobRepository.findById(hash).isEmpty(), "An unreferenced blob should be purged");
+    }
+
+    @Test
+    @DisplayName("A purged blob is stored again when a message references it later")
+    void testReattachAfterPurge() throws Exception {
+        // Arrange: a prepared blob that nothing ever referenced is purged
+        String content = LARGE_CONTENT + System.nanoTime();
+        blobStore.prepare(content);
+        String hash = sha256(content);
+        Thread.sleep(10);
+        blobStore.purgeUnreferenced();
+        assertTrue(blobRepository.findById(hash).isEmpty());
+        Conversation conversation = conversationRepository.save(new Conversation(1L, "TestAgent", "blobs"));
+
+        // Act: attach finds no row to acquire and stores the blob again with one reference
+        append(conversation, content);
+
+        // Assert
+        assertEquals(1, blob(hash).getRefCount());
+        assertEquals(content, messageStore.findRecent(conversation.getId(), 1).get(0).content());
+    }
+
+    @Test
+    @DisplayName("Purging a cached blob evicts it, so preparing the same content stores it again")
+    void testPurgeEvictsCache() throws Exception {
+        // Arrange: prepared, so cached, then purged unreferenced
+        String content = LARGE_CONTENT + System.nanoTime();
+        String hash = sha256(content);
+        blobStore.prepare(content);
+        Thread.sleep(10);
+        blobStore.purgeUnreferenced();
+        assertTrue(blobRepository.findById(hash).isEmpty());
+
+        // Act
+        blobStore.prepare(content);
+
+        // Assert
+        assertEquals(0, blob(hash).getRefCount(), "The prepared blob should be stored again");
+    }
+
+    @Test
+    @DisplayName("Storing a missing blob while saving a message inserts it once and then takes references")
+    void testAcquireOrInsert() throws Exception {
+        // Arrange
+        String content = LARGE_CONTENT + System.nanoTime();
+        String hash = sha256(content);
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+
+        // Act: two turns find the blob missing and both store it
+        int inserted = blobRepository.acquireOrInsert(hash, data, false, content.length(), LocalDateTime.now());
+        int acquired = blobRepository.acquireOrInsert(hash, data, false, content.length(), LocalDateTime.now());
+
+        // Assert
+        assertEquals(1, inserted);
+        assertEquals(1, acquired);
+        ContentBlob stored = blob(hash);
+        assertEquals(2, stored.getRefCount());
+        assertEquals(content.length(), stored.getContentLength());
+        Conversation conversation = conversationRepository.save(new Conversation(1L, "TestAgent", "blobs"));
+        append(conversation, content);
+        assertEquals(3, blob(hash).getRefCount());
+        assertEquals(content, messageStore.findRecent(conversation.getId(), 1).get(0).content());
+    }
+
+    // Helper methods
+
+    private void append(Conversation conversation, String... contents) {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (String content : contents) {
+                messageStore.append(List.of(new Message(conversation, MessageRole.ASSISTANT, content)));
+            }
+        });
+    }
+
+    private void deleteConversationMessages(Conversation conversation) {
+        transactionTemplate.executeWithoutResult(status -> {
+            blobStore.releaseConversation(conversation.getId());
+            messageRepository.deleteByConversationId(conversation.getId());
+        });
+    }
+
+    private static String sha256(String content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private ContentBlob blob(String hash) {
+        return blobRepository.findById(hash).orElseThrow();
+    }
+}
@@ -0,0 +1,213 @@
+package rgonzalez.agent.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.repository.ConversationRepository;
+import rgonzalez.agent.repository.MessageRepository;
+import rgonzalez.agent.repository.MessageStats;
+
+/**
+ * ConversationCounterReconcilerTester checks the counters a conversation keeps as its
+ * messages are recorded, and that the reconciler repairs counters that drifted from
+ * the messages, leaves conversations inside the settle window alone, and gives up on
+ * a conversation changed by a turn since it was read, without affecting the others.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Conversation Counter Reconciler Tester")
+class ConversationCounterReconcilerTester {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 9, 0);
+    private static final LocalDateTime SETTLED = LocalDateTime.now().minusHours(1);
+
+    @Mock
+    private ConversationRepository conversationRepository;
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private MessageStore messageStore;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ConversationCounterReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        reconciler = new ConversationCounterReconciler(conversationRepository, messageRepository, messageStore,
+                transactionManager, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Recording messages adds their tokens and keeps the latest message time")
+    void testRecordMessage() {
+        // Arrange
+        Conversation conversation = conversation(1L, SETTLED);
+
+        // Act: the second message is recorded after a later one
+        conversation.recordMessage(message(conversation, T0.plusMinutes(5), 100, 20, 1));
+        conversation.recordMessage(message(conversation, T0, 50, 10, 0));
+        conversation.recordMessage(message(conversation, T0.plusMinutes(7), 0, 30, 2));
+
+        // Assert
+        assertEquals(3, conversation.getMessageCount());
+        assertEquals(T0.plusMinutes(7), conversation.getLastMessageAt());
+        assertEquals(150, conversation.getPromptTokens());
+        assertEquals(60, conversation.getCompletionTokens());
+        assertEquals(3, conversation.getToolInvocations());
+    }
+
+    @Test
+    @DisplayName("Counters that drifted from the messages are repaired; matching ones are left alone")
+    void testRepairsDrift() {
+        // Arrange: the first conversation missed a batch's counter update, the second did not
+        Conversation drifted = conversation(1L, SETTLED);
+        drifted.recordMessage(message(drifted, T0, 100, 20, 1));
+        Conversation matching = conversation(2L, SETTLED);
+        matching.recordMessage(message(matching, T0, 10, 5, 0));
+        Conversation emptied = conversation(3L, SETTLED);
+        emptied.recordMessage(message(emptied, T0, 10, 5, 0));
+        List<Long> ids = List.of(1L, 2L, 3L);
+        when(messageRepository.aggregateByConversationIdIn(ids)).thenReturn(List.of(
+                new MessageStats(1L, 3, T0.plusMinutes(9), 250, 70, 4),
+                new MessageStats(2L, 1, T0, 10, 5, 0)));
+        when(conversationRepository.findAllById(ids)).thenReturn(List.of(drifted, matching, emptied));
+
+        // Act
+        int corrected = reconciler.reconcile(ids);
+
+        // Assert
+        assertEquals(2, corrected);
+        assertEquals(3, drifted.getMessageCount());
+        assertEquals(T0.plusMinutes(9), drifted.getLastMessageAt());
+        assertEquals(250, drifted.getPromptTokens());
+        assertEquals(70, drifted.getCompletionTokens());
+        assertEquals(4, drifted.getToolInvocations());
+        assertEquals(0, emptied.getMessageCount(), "A conversation without messages is reset to zero");
+        assertNull(emptied.getLastMessageAt());
+        verify(conversationRepository).save(drifted);
+        verify(conversationRepository).save(emptied);
+        verify(conversationRepository, never()).save(matching);
+        assertEquals(3.0, meterRegistry.counter("conversation.counters.checked").count());
+        assertEquals(2.0, meterRegistry.counter("conversation.counters.corrected").count());
+    }
+
+    @Test
+    @DisplayName("Conversations updated within the settle window are skipped")
+    void testSkipsUnsettled() {
+        // Arrange: a turn just committed, and its messages may not be visible to the aggregate yet
+        Conversation recent = conversation(1L, LocalDateTime.now());
+        recent.recordMessage(message(recent, T0, 100, 20, 1));
+        List<Long> ids = List.of(1L);
+        when(messageRepository.aggregateByConversationIdIn(ids)).thenReturn(List.of());
+        when(conversationRepository.findAllById(ids)).thenReturn(List.of(recent));
+
+        // Act
+        int corrected = reconciler.reconcile(ids);
+
+        // Assert
+        assertEquals(0, corrected);
+        assertEquals(1, recent.getMessageCount());
+        verify(conversationRepository, never()).save(any());
+        verifyNoInteractions(transactionManager);
+        assertEquals(1.0, meterRegistry.counter("conversation.counters.checked").count());
+    }
+
+    @Test
+    @DisplayName("A conversation changed since it was read is given up on and the rest are still repaired")
+    void testGivesUpOnOptimisticLockConflict() {
+        // Arrange
+        Conversation conflicted = conversation(1L, SETTLED);
+        Conversation drifted = conversation(2L, SETTLED);
+        List<Long> ids = List.of(1L, 2L);
+        when(messageRepository.aggregateByConversationIdIn(ids)).thenReturn(List.of(
+                new MessageStats(1L, 2, T0, 10, 10, 0),
+                new MessageStats(2L, 4, T0, 40, 40, 0)));
+        when(conversationRepository.findAllById(ids)).thenReturn(List.of(conflicted, drifted));
+        when(conversationRepository.save(any(Conversation.class))).thenAnswer(invocation -> {
+            if (invocation.getArgument(0) == conflicted) {
+                throw new ObjectOptimisticLockingFailureException(Conversation.class, 1L);
+            }
+            return invocation.getArgument(0);
+        });
+
+        // Act
+        int corrected = reconciler.reconcile(ids);
+
+        // Assert
+        assertEquals(1, corrected);
+        verify(conversationRepository).save(conflicted);
+        verify(conversationRepository).save(drifted);
+        assertEquals(4, drifted.getMessageCount());
+        assertEquals(1.0, meterRegistry.counter("conversation.counters.corrected").count());
+    }
+
+    @Test
+    @DisplayName("A full run pages through live conversations by ID, and does nothing without the messages table")
+    void testReconcileAllPagesById() {
+        // Arrange
+        ReflectionTestUtils.setField(reconciler, "batchSize", 2);
+        when(messageStore.isTransactional()).thenReturn(true);
+        when(conversationRepository.findLiveIdsAfter(0L, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        when(conversationRepository.findLiveIdsAfter(2L, Limit.of(2))).thenReturn(List.of(3L));
+        when(conversationRepository.findLiveIdsAfter(3L, Limit.of(2))).thenReturn(List.of());
+        when(messageRepository.aggregateByConversationIdIn(anyList())).thenReturn(List.of());
+        when(conversationRepository.findAllById(anyList())).thenReturn(List.of());
+
+        // Act
+        reconciler.reconcileAll();
+
+        // Assert
+        verify(messageRepository).aggregateByConversationIdIn(List.of(1L, 2L));
+        verify(messageRepository).aggregateByConversationIdIn(List.of(3L));
+
+        // Act: with the event log store there are no message rows to count
+        when(messageStore.isTransactional()).thenReturn(false);
+        reconciler.reconcileAll();
+
+        // Assert
+        verify(conversationRepository, times(3)).findLiveIdsAfter(anyLong(), any(Limit.class));
+    }
+
+    // Helper methods
+
+    private static Conversation conversation(Long id, LocalDateTime updatedAt) {
+        Conversation conversation = new Conversation(1L, "TestAgent", "user123");
+        conversation.setId(id);
+        conversation.setUpdatedAt(updatedAt);
+        return conversation;
+    }
+
+    private static Message message(Conversation conversation, LocalDateTime createdAt, int promptTokens,
+                                   int completionTokens, int toolInvocations) {
+        Message message = new Message(conversation, MessageRole.ASSISTANT, "Reply");
+        message.setCreatedAt(createdAt);
+        message.setPromptTokens(promptTokens);
+        message.setCompletionTokens(completionTokens);
+        message.setToolInvocations(toolInvocations);
+        return message;
+    }
+}
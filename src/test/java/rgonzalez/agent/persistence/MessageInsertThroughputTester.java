@@ -0,0 +1,112 @@
+package rgonzalez.agent.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.repository.ConversationRepository;
+import rgonzalez.agent.repository.MessageRepository;
+
+/**
+ * MessageInsertThroughputTester measures per-message transactional inserts (the
+ * previous write path) and the batched write-behind buffer, and prints both rates.
+ * Which is faster depends on the database and connection pool, so only the row
+ * counts are asserted. Tagged as a benchmark, so it only runs with -Pbenchmark.
+ */
+@Tag("benchmark")
+@SpringBootTest
+@DisplayName("Message Insert Throughput Tester")
+class MessageInsertThroughputTester {
+
+    private static final int TURNS = 2000;
+    private static final int WRITERS = 32;
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ContentBlobStore contentBlobStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Conversation conversation;
+
+    @BeforeEach
+    void setUp() {
+        conversation = conversationRepository.save(new Conversation(1L, "TestAgent", "throughput"));
+    }
+
+    @Test
+    @DisplayName("Both write paths should insert every message; their rates are reported")
+    void testInsertThroughput() throws Exception {
+        // Arrange
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long before = messageRepository.count();
+
+        // Act: baseline, one transaction per message
+        long baselineMillis = runConcurrently(() -> {
+            transactionTemplate.executeWithoutResult(status ->
+                    messageRepository.save(new Message(conversation, MessageRole.USER, "question")));
+            transactionTemplate.executeWithoutResult(status ->
+                    messageRepository.save(new Message(conversation, MessageRole.ASSISTANT, "answer")));
+        });
+
+        // Act: write-behind, both messages of a turn handed to the buffer (group commit)
+        MessageWriteBuffer buffer = new MessageWriteBuffer(messageRepository, contentBlobStore, transactionManager,
+                new SimpleMeterRegistry(), true, "COMMIT", 200, 5, 10000);
+        long batchedMillis;
+        try {
+            batchedMillis = runConcurrently(() -> buffer.write(List.of(
+                    new Message(conversation, MessageRole.USER, "question"),
+                    new Message(conversation, MessageRole.ASSISTANT, "answer"))));
+        } finally {
+            buffer.shutdown();
+        }
+
+        // Assert
+        assertEquals(before + 4L * TURNS, messageRepository.count());
+        System.out.printf("Message inserts (%d turns, %d writers): per-message %d msg/s, write-behind %d msg/s%n",
+                TURNS, WRITERS, rate(baselineMillis), rate(batchedMillis));
+    }
+
+    private long runConcurrently(Runnable turn) throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+        List<Future<?>> futures = new ArrayList<>(TURNS);
+        long start = System.nanoTime();
+        for (int i = 0; i < TURNS; i++) {
+            futures.add(writers.submit(turn));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        writers.shutdown();
+        return Math.max(1, elapsed);
+    }
+
+    private static long rate(long millis) {
+        return 2L * TURNS * 1000 / millis;
+    }
+}
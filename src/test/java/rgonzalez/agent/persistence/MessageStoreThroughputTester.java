@@ -0,0 +1,205 @@
+package rgonzalez.agent.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.repository.ConversationRepository;
+import rgonzalez.agent.repository.MessageRepository;
+import rgonzalez.agent.repository.MessageView;
+
+/**
+ * MessageStoreThroughputTester compares appending turns to the JPA message store
+ * (one transaction per turn) with the memory-mapped event log and prints both rates
+ * and their ratio on the same machine, so results are recorded as a pair rather than
+ * as an event log figure alone. It also checks that the event log can be followed by
+ * ID, as search catch-up does, and rebuilds its indexes and drops a torn record on reopen.
+ * The throughput comparison is tagged as a benchmark, so it only runs with -Pbenchmark;
+ * the recovery check runs with the default suite.
+ */
+@SpringBootTest
+@DisplayName("Message Store Throughput Tester")
+class MessageStoreThroughputTester {
+
+    private static final int JPA_TURNS = 2000;
+    private static final int LOG_TURNS = 100_000;
+    private static final int WRITERS = 32;
+    private static final int CONVERSATIONS = 100;
+    private static final int SEGMENT_BYTES = 4 * 1024 * 1024;
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ContentBlobStore contentBlobStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path logDirectory;
+
+    private Conversation conversation;
+
+    @BeforeEach
+    void setUp() {
+        conversation = conversationRepository.save(new Conversation(1L, "TestAgent", "throughput"));
+    }
+
+    @Test
+    @Tag("benchmark")
+    @DisplayName("Event log should append every message and report throughput against JPA")
+    void testAppendThroughput() throws Exception {
+        // Arrange
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        JpaMessageStore jpaStore = new JpaMessageStore(messageRepository, contentBlobStore);
+        long before = messageRepository.count();
+        List<Conversation> conversations = detachedConversations();
+
+        // Act: JPA store, both messages of a turn in one transaction
+        long jpaMillis = runConcurrently(JPA_TURNS, () -> transactionTemplate.executeWithoutResult(status ->
+                jpaStore.append(turn(conversation))));
+
+        // Act: event log
+        long logMillis;
+        try (EventLogMessageStore logStore = new EventLogMessageStore(logDirectory, SEGMENT_BYTES,
+                new SimpleMeterRegistry())) {
+            logMillis = runConcurrently(LOG_TURNS, () -> logStore.append(
+                    turn(conversations.get(ThreadLocalRandom.current().nextInt(CONVERSATIONS)))));
+
+            // Assert
+            assertEquals(2L * LOG_TURNS, logStore.size());
+            int stored = 0;
+            for (Conversation each : conversations) {
+                List<MessageView> history = logStore.findHistoryPage(each.getId(), null, null, Integer.MAX_VALUE);
+                for (int i = 1; i < history.size(); i++) {
+                    assertTrue(history.get(i).id() > history.get(i - 1).id(), "History should be in append order");
+                }
+                stored += history.size();
+            }
+            assertEquals(2 * LOG_TURNS, stored);
+            long followed = 0;
+            long afterId = 0;
+            for (List<MessageView> page = logStore.findAfterId(afterId, 1000); !page.isEmpty();
+                 page = logStore.findAfterId(afterId, 1000)) {
+                assertEquals(afterId + 1, page.get(0).id(), "Pages should continue after the last ID");
+                followed += page.size();
+                afterId = page.get(page.size() - 1).id();
+            }
+            assertEquals(2L * LOG_TURNS, followed);
+            assertTrue(logStore.getSegmentCount() > 1, "The log should have rolled over to new segments");
+        }
+        assertEquals(before + 2L * JPA_TURNS, messageRepository.count());
+        long jpaRate = rate(JPA_TURNS, jpaMillis);
+        long logRate = rate(LOG_TURNS, logMillis);
+        System.out.printf("Message store appends (%d writers): jpa %d msg/s (%d turns), event log %d msg/s "
+                        + "(%d turns), event log/jpa %.1fx%n",
+                WRITERS, jpaRate, JPA_TURNS, logRate, LOG_TURNS, (double) logRate / Math.max(1, jpaRate));
+    }
+
+    @Test
+    @DisplayName("Reopening the event log should rebuild its indexes and drop a torn record")
+    void testRecovery() throws Exception {
+        // Arrange: a checkpointed log, then appends that are not checkpointed
+        List<Conversation> conversations = detachedConversations();
+        try (EventLogMessageStore logStore = new EventLogMessageStore(logDirectory, SEGMENT_BYTES,
+                new SimpleMeterRegistry())) {
+            for (int i = 0; i < 1000; i++) {
+                logStore.append(turn(conversations.get(i % CONVERSATIONS)));
+            }
+        }
+        // Abandoned without close() below, as after a crash
+        EventLogMessageStore crashed = new EventLogMessageStore(logDirectory, SEGMENT_BYTES, new SimpleMeterRegistry());
+        List<Message> lastTurn = turn(conversations.get(0));
+        crashed.append(List.of(turn(conversations.get(1)).get(0)));
+        crashed.append(lastTurn);
+        MessageView torn = crashed.findById(lastTurn.get(1).getId()).orElseThrow();
+
+        // Act: damage the payload of the last record, as a torn write would
+        try (FileChannel segment = FileChannel.open(logDirectory.resolve("segment-000000.log"),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = 0;
+            for (long id = 1; id <= torn.id(); id++) {
+                MessageView message = crashed.findById(id).orElseThrow();
+                end += EventLogMessageStore.HEADER_BYTES + message.content().length();
+            }
+            segment.write(ByteBuffer.wrap(new byte[] {'#'}), end - 1);
+        }
+        EventLogMessageStore reopened = new EventLogMessageStore(logDirectory, SEGMENT_BYTES, new SimpleMeterRegistry());
+
+        // Assert
+        assertEquals(2002, reopened.size(), "Only the torn record should be dropped");
+        assertTrue(reopened.findById(torn.id()).isEmpty());
+        List<MessageView> recent = reopened.findRecent(conversations.get(0).getId(), 2);
+        assertEquals(lastTurn.get(0).getId(), recent.get(0).id());
+        assertEquals(MessageRole.USER, recent.get(0).role());
+        assertEquals(21, reopened.findHistoryPage(conversations.get(0).getId(), null, null, 100).size());
+
+        // The next append reuses the dropped position and ID
+        List<Message> next = turn(conversations.get(2));
+        reopened.append(next);
+        assertEquals(torn.id(), next.get(0).getId());
+        reopened.close();
+    }
+
+    private static List<Conversation> detachedConversations() {
+        List<Conversation> conversations = new ArrayList<>(CONVERSATIONS);
+        for (long id = 1; id <= CONVERSATIONS; id++) {
+            Conversation each = new Conversation(1L, "TestAgent", "throughput");
+            each.setId(id);
+            conversations.add(each);
+        }
+        return conversations;
+    }
+
+    private static List<Message> turn(Conversation conversation) {
+        return List.of(new Message(conversation, MessageRole.USER, "question"),
+                new Message(conversation, MessageRole.ASSISTANT, "answer"));
+    }
+
+    private long runConcurrently(int turns, Runnable turn) throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(WRITERS);
+        List<Future<?>> futures = new ArrayList<>(turns);
+        long start = System.nanoTime();
+        for (int i = 0; i < turns; i++) {
+            futures.add(writers.submit(turn));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        writers.shutdown();
+        return Math.max(1, elapsed);
+    }
+
+    private static long rate(int turns, long millis) {
+        return 2L * turns * 1000 / millis;
+    }
+}
@@ -0,0 +1,117 @@
+package rgonzalez.agent.persistence;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.repository.MessageRepository;
+
+/**
+ * MessageWriteBufferTester checks that COMMIT-mode writes always complete: with the
+ * batch's commit, with its failure, or with an error once the buffer is shut down or
+ * the commit timeout has passed, instead of blocking the turn forever.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Message Write Buffer Tester")
+class MessageWriteBufferTester {
+
+    @Mock
+    private MessageRepository messageRepository;
+
+    @Mock
+    private ContentBlobStore contentBlobStore;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final Conversation conversation = new Conversation(1L, "TestAgent", "user123");
+
+    @Test
+    @DisplayName("A COMMIT write returns once its batch has been inserted")
+    void testCommitWrite() throws Exception {
+        // Arrange
+        MessageWriteBuffer buffer = createBuffer(true);
+
+        // Act
+        try {
+            buffer.write(turnMessages());
+        } finally {
+            buffer.shutdown();
+        }
+
+        // Assert
+        verify(messageRepository).saveAll(argThat(messages -> ((List<?>) messages).size() == 2));
+    }
+
+    @Test
+    @DisplayName("A COMMIT write rethrows the failure of its batch")
+    void testCommitWriteFailure() throws Exception {
+        // Arrange
+        MessageWriteBuffer buffer = createBuffer(true);
+        when(messageRepository.saveAll(anyList())).thenThrow(new IllegalArgumentException("constraint violated"));
+
+        // Act & Assert
+        try {
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                    () -> buffer.write(turnMessages()));
+            assertEquals("constraint violated", error.getMessage());
+        } finally {
+            buffer.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("A write after shutdown fails instead of waiting for a flusher that has stopped")
+    void testWriteAfterShutdown() throws Exception {
+        // Arrange
+        MessageWriteBuffer buffer = createBuffer(true);
+        buffer.shutdown();
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> buffer.write(turnMessages()));
+        verify(messageRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    @DisplayName("A COMMIT write that is not flushed in time fails and is withdrawn")
+    void testCommitTimeout() throws Exception {
+        // Arrange: no flusher running, so nothing commits the write
+        MessageWriteBuffer buffer = createBuffer(false);
+        ReflectionTestUtils.setField(buffer, "commitTimeoutMillis", 50L);
+
+        // Act
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> buffer.write(turnMessages()));
+        buffer.shutdown();
+
+        // Assert
+        assertTrue(error.getMessage().contains("not committed"));
+        verify(messageRepository, never()).saveAll(anyList());
+    }
+
+    // Helper methods
+
+    private MessageWriteBuffer createBuffer(boolean enabled) {
+        return new MessageWriteBuffer(messageRepository, contentBlobStore, transactionManager,
+                new SimpleMeterRegistry(), enabled, "COMMIT", 200, 5, 100);
+    }
+
+    private List<Message> turnMessages() {
+        return List.of(new Message(conversation, MessageRole.USER, "question"),
+                new Message(conversation, MessageRole.ASSISTANT, "answer"));
+    }
+}
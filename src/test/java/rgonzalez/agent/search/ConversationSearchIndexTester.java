@@ -0,0 +1,143 @@
+package rgonzalez.agent.search;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.persistence.MessageStore;
+import rgonzalez.agent.repository.MessageView;
+
+/**
+ * ConversationSearchIndexTester flushes small segments until a background merge
+ * runs, then checks that the merged segment keeps every document and posting and is
+ * loaded again from the manifest after a restart, and that catch-up reads new
+ * messages from the message store.
+ */
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Conversation Search Index Tester")
+class ConversationSearchIndexTester {
+
+    @Mock
+    private MessageStore messageStore;
+
+    @TempDir
+    Path indexDirectory;
+
+    @Test
+    @DisplayName("Merging segments keeps every document and its postings, across a restart")
+    void testSegmentMerge() throws Exception {
+        // Arrange: two documents per segment, merge when there are more than two
+        ConversationSearchIndex index = createIndex();
+        List<MessageView> messages = List.of(
+                message(1L, 10L, "overdue invoice for Acme"),
+                message(2L, 10L, "reminder email sent to Acme"),
+                message(3L, 20L, "overdue balance for Globex"),
+                message(4L, 20L, "Globex paid the invoice"),
+                message(5L, 30L, "refund request from Initech"),
+                message(6L, 30L, "overdue overdue overdue Initech"));
+
+        // Act: three segments of two documents trigger a merge
+        index.index(messages.subList(0, 2));
+        index.index(messages.subList(2, 4));
+        index.index(messages.subList(4, 6));
+        awaitSegmentCount(index, 1);
+        // Already indexed documents are not added again
+        index.index(messages.subList(0, 1));
+
+        // Assert
+        assertEquals(6, index.getDocumentCount());
+        assertSearchResults(index);
+        try (Stream<Path> files = Files.list(indexDirectory)) {
+            assertEquals(1, files.filter(file -> file.getFileName().toString().startsWith("segment-")).count(),
+                    "Merged source segments should be deleted");
+        }
+
+        // Act: reopen from the manifest
+        index.close();
+        ConversationSearchIndex reopened = createIndex();
+
+        // Assert
+        try {
+            assertEquals(1, reopened.getSegmentCount());
+            assertEquals(6, reopened.getDocumentCount());
+            assertSearchResults(reopened);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Catch-up indexes the messages the message store holds after the checkpoint")
+    void testCatchUpFromMessageStore() {
+        // Arrange: a fresh index starts from the beginning of the store
+        ConversationSearchIndex index = createIndex();
+        when(messageStore.findAfterId(0L, 1000)).thenReturn(List.of(
+                message(1L, 10L, "overdue invoice for Acme"),
+                message(2L, 20L, "Globex paid the invoice")));
+        when(messageStore.findAfterId(2L, 1000)).thenReturn(List.of());
+
+        // Act
+        index.catchUp();
+
+        // Assert
+        try {
+            assertEquals(2, index.getDocumentCount());
+            assertEquals(List.of(10L, 20L), index.search("invoice", 10).stream()
+                    .map(SearchHit::conversationId).sorted().toList());
+        } finally {
+            index.close();
+        }
+    }
+
+    private void assertSearchResults(ConversationSearchIndex index) {
+        // "overdue" occurs in one message of each conversation; three times in conversation 30's
+        List<SearchHit> overdue = index.search("overdue", 10);
+        assertEquals(3, overdue.size());
+        assertEquals(30L, overdue.get(0).conversationId());
+        assertEquals(6L, overdue.get(0).bestMessageId());
+
+        List<SearchHit> invoice = index.search("invoice", 10);
+        assertEquals(List.of(10L, 20L), invoice.stream().map(SearchHit::conversationId).sorted().toList());
+
+        List<SearchHit> acme = index.search("acme", 10);
+        assertEquals(1, acme.size());
+        assertEquals(2, acme.get(0).matchedMessages());
+    }
+
+    // Helper methods
+
+    private ConversationSearchIndex createIndex() {
+        ConversationSearchIndex index = new ConversationSearchIndex(messageStore, new SimpleMeterRegistry(),
+                indexDirectory.toString());
+        ReflectionTestUtils.setField(index, "flushDocs", 2);
+        ReflectionTestUtils.setField(index, "maxSegments", 2);
+        return index;
+    }
+
+    private static void awaitSegmentCount(ConversationSearchIndex index, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (index.getSegmentCount() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, index.getSegmentCount(), "Segments should have been merged");
+    }
+
+    private static MessageView message(Long id, Long conversationId, String content) {
+        return new MessageView(id, conversationId, MessageRole.USER, content, null, LocalDateTime.now());
+    }
+}
@@ -0,0 +1,86 @@
+package rgonzalez.agent.search;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * PostingsCodecTester checks that posting lists and varints survive encoding,
+ * including gaps and frequencies on every varint length boundary.
+ */
+@DisplayName("Postings Codec Tester")
+class PostingsCodecTester {
+
+    @Test
+    @DisplayName("Varints round trip on every 7-bit length boundary")
+    void testVarLongRoundTrip() {
+        // Arrange
+        long[] values = {0, 1, 127, 128, 16_383, 16_384, 2_097_151, 2_097_152,
+                Integer.MAX_VALUE, 1L << 35, Long.MAX_VALUE};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        for (long value : values) {
+            PostingsCodec.writeVarLong(out, value);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+
+        // Assert
+        for (long value : values) {
+            assertEquals(value, PostingsCodec.readVarLong(buffer));
+        }
+        assertFalse(buffer.hasRemaining(), "Every byte should be consumed");
+        assertEquals(1, varLongLength(127));
+        assertEquals(2, varLongLength(128));
+        assertEquals(9, varLongLength(Long.MAX_VALUE));
+    }
+
+    @Test
+    @DisplayName("Postings round trip as delta-encoded document IDs with their frequencies")
+    void testPostingsRoundTrip() {
+        // Arrange: small and large gaps, and a first ID far from zero
+        long[] docIds = {5_000_000_000L, 5_000_000_001L, 5_000_000_129L, 5_000_100_000L, 9_000_000_000_000L};
+        int[] frequencies = {1, 127, 128, 3, 70_000};
+
+        // Act
+        byte[] encoded = PostingsCodec.encode(docIds, frequencies, docIds.length);
+        long[] decodedIds = new long[docIds.length];
+        int[] decodedFrequencies = new int[docIds.length];
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        PostingsCodec.decode(buffer, docIds.length, decodedIds, decodedFrequencies);
+
+        // Assert
+        assertArrayEquals(docIds, decodedIds);
+        assertArrayEquals(frequencies, decodedFrequencies);
+        assertFalse(buffer.hasRemaining(), "Every byte should be consumed");
+    }
+
+    @Test
+    @DisplayName("Dense postings take about two bytes per entry")
+    void testDensePostingsAreCompact() {
+        // Arrange
+        int count = 1000;
+        long[] docIds = new long[count];
+        int[] frequencies = new int[count];
+        for (int i = 0; i < count; i++) {
+            docIds[i] = 1_000_000L + i * 3L;
+            frequencies[i] = 1 + i % 5;
+        }
+
+        // Act
+        byte[] encoded = PostingsCodec.encode(docIds, frequencies, count);
+
+        // Assert: first gap takes 3 bytes, the rest one byte each for gap and frequency
+        assertEquals(2 * count + 2, encoded.length);
+    }
+
+    private static int varLongLength(long value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PostingsCodec.writeVarLong(out, value);
+        return out.size();
+    }
+}
@@ -0,0 +1,171 @@
+package rgonzalez.agent.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.entity.Message;
+import rgonzalez.agent.entity.MessageRole;
+import rgonzalez.agent.llm.LlmProvider;
+import rgonzalez.agent.llm.LlmRequest;
+import rgonzalez.agent.llm.LlmResponse;
+
+/**
+ * ConnectionPoolUsageTester runs more concurrent turns than the pool has connections
+ * against a slow LLM, to validate that connections are not held during the LLM call.
+ */
+@SpringBootTest(properties = {
+        "llm.provider=slow",
+        "spring.datasource.hikari.maximum-pool-size=" + ConnectionPoolUsageTester.POOL_SIZE,
+        "spring.datasource.hikari.connection-timeout=1000"
+})
+@DisplayName("Connection Pool Usage Tester")
+class ConnectionPoolUsageTester {
+
+    static final int POOL_SIZE = 2;
+    private static final int CONCURRENT_TURNS = 12;
+    private static final long LLM_LATENCY_MS = 500;
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    @DisplayName("Concurrent turns beyond the pool size should complete while the LLM is slow")
+    void testPoolUsageStaysFlatUnderSlowLlm() throws Exception {
+        // Arrange
+        HikariPoolMXBean pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+        List<Long> conversationIds = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_TURNS; i++) {
+            conversationIds.add(conversationService.createConversation(1L, "TestAgent", "user" + i).getId());
+        }
+
+        AtomicBoolean sampling = new AtomicBoolean(true);
+        AtomicInteger peakActive = new AtomicInteger();
+        AtomicInteger peakWaiting = new AtomicInteger();
+        Thread sampler = new Thread(() -> {
+            while (sampling.get()) {
+                peakActive.accumulateAndGet(pool.getActiveConnections(), Math::max);
+                peakWaiting.accumulateAndGet(pool.getThreadsAwaitingConnection(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.start();
+
+        // Act
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENT_TURNS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Message>> results = new ArrayList<>();
+        for (Long conversationId : conversationIds) {
+            results.add(clients.submit(() -> {
+                start.await();
+                return conversationService.sendMessage(conversationId,
+                        "Find customers with overdue balance and send them reminders");
+            }));
+        }
+        long startTime = System.currentTimeMillis();
+        start.countDown();
+        for (Future<Message> result : results) {
+            // Assert: no turn timed out waiting for a connection
+            assertEquals(MessageRole.ASSISTANT, result.get(30, TimeUnit.SECONDS).getRole());
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        clients.shutdown();
+        sampling.set(false);
+        sampler.join();
+
+        // Assert: holding a connection per turn would serialize them in batches of POOL_SIZE
+        long serializedMillis = LLM_LATENCY_MS * CONCURRENT_TURNS / POOL_SIZE;
+        assertTrue(elapsed < serializedMillis,
+                "Turns took " + elapsed + "ms, expected well under " + serializedMillis + "ms");
+        assertTrue(peakActive.get() <= POOL_SIZE);
+        for (Long conversationId : conversationIds) {
+            assertEquals(2, conversationService.getConversationHistory(conversationId).size());
+            Conversation conversation = conversationService.getConversation(conversationId).orElseThrow();
+            assertNotNull(conversation.getVersion());
+        }
+        System.out.println("Pool usage: " + CONCURRENT_TURNS + " turns in " + elapsed + "ms, peak active "
+                + peakActive.get() + "/" + POOL_SIZE + ", peak waiting " + peakWaiting.get());
+    }
+
+    @TestConfiguration
+    static class SlowLlmConfig {
+
+        @Bean
+        LlmProvider slowLlmProvider() {
+            return new SlowLlmProvider();
+        }
+    }
+
+    /**
+     * LLM stand-in that answers after a fixed delay.
+     */
+    static class SlowLlmProvider implements LlmProvider {
+
+        @Override
+        public String getName() {
+            return "slow";
+        }
+
+        @Override
+        public String getDefaultModel() {
+            return "slow-model";
+        }
+
+        @Override
+        public LlmResponse chat(LlmRequest request) throws Exception {
+            Thread.sleep(LLM_LATENCY_MS);
+            LlmResponse.Message message = new LlmResponse.Message();
+            message.setRole("assistant");
+            message.setContent("Reminders have been queued.");
+            LlmResponse.Choice choice = new LlmResponse.Choice();
+            choice.setMessage(message);
+            choice.setFinishReason("stop");
+            LlmResponse response = new LlmResponse();
+            response.setModel(getDefaultModel());
+            response.setChoices(new LlmResponse.Choice[]{choice});
+            return response;
+        }
+
+        @Override
+        public boolean isConfigured() {
+            return true;
+        }
+
+        @Override
+        public int countTokens(String content) {
+            return (int) Math.ceil(content.length() / 4.0);
+        }
+
+        @Override
+        public ProviderType getProviderType() {
+            return ProviderType.OTHER;
+        }
+    }
+}
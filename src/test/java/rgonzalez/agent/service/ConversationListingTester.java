@@ -0,0 +1,158 @@
+package rgonzalez.agent.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.entity.ConversationStatus;
+import rgonzalez.agent.repository.ConversationRepository;
+import rgonzalez.agent.repository.ConversationView;
+
+/**
+ * ConversationListingTester pages through real conversation rows with the keyset
+ * listing and checks the cursor boundaries: each page starts strictly after the
+ * previous cursor, conversations sharing createdAt and updatedAt are neither skipped
+ * nor repeated, and the last page carries no cursor, so no empty page is ever needed.
+ */
+@SpringBootTest
+@DisplayName("Conversation Listing Tester")
+class ConversationListingTester {
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private String userId;
+
+    @BeforeEach
+    void setUp() {
+        // A user of its own, so rows left by other tests do not show up in the pages
+        userId = "listing-" + System.nanoTime();
+    }
+
+    @Test
+    @DisplayName("Paging visits every conversation once, newest first, even when their timestamps tie")
+    void testPagesWithTiedTimestamps() {
+        // Arrange: five conversations created and updated at the same instant
+        List<Long> ids = createConversations(5, ConversationStatus.ACTIVE);
+        LocalDateTime instant = LocalDateTime.of(2026, 1, 1, 12, 0);
+        jdbcTemplate.update("UPDATE conversations SET created_at = ?, updated_at = ? WHERE user_id = ?",
+                instant, instant, userId);
+
+        // Act
+        List<ConversationPage> pages = pageThrough(null, 2);
+
+        // Assert
+        assertEquals(3, pages.size());
+        assertEquals(List.of(ids.get(4), ids.get(3)), ids(pages.get(0)));
+        assertEquals(List.of(ids.get(2), ids.get(1)), ids(pages.get(1)));
+        assertEquals(List.of(ids.get(0)), ids(pages.get(2)));
+        assertEquals(ids.get(3), pages.get(0).nextCursor());
+        assertEquals(ids.get(1), pages.get(1).nextCursor());
+        assertNull(pages.get(2).nextCursor());
+        assertTrue(pages.stream().flatMap(page -> page.conversations().stream())
+                .allMatch(view -> instant.equals(view.updatedAt())));
+    }
+
+    @Test
+    @DisplayName("When the total is a multiple of the page size the last full page has no cursor")
+    void testNoEmptyLastPage() {
+        // Arrange
+        List<Long> ids = createConversations(4, ConversationStatus.ACTIVE);
+
+        // Act
+        List<ConversationPage> pages = pageThrough(null, 2);
+        ConversationPage afterOldest = conversationService.listConversations(userId, null, ids.get(0), 2);
+
+        // Assert
+        assertEquals(2, pages.size());
+        assertEquals(2, pages.get(1).conversations().size());
+        assertNull(pages.get(1).nextCursor());
+        assertTrue(afterOldest.conversations().isEmpty());
+        assertNull(afterOldest.nextCursor());
+    }
+
+    @Test
+    @DisplayName("A cursor excludes its own conversation, and may be the ID of a deleted one")
+    void testCursorBoundaries() {
+        // Arrange
+        List<Long> ids = createConversations(5, ConversationStatus.ACTIVE);
+        conversationRepository.deleteById(ids.get(2));
+
+        // Act
+        ConversationPage afterNewest = conversationService.listConversations(userId, null, ids.get(4), 10);
+        ConversationPage afterDeleted = conversationService.listConversations(userId, null, ids.get(2), 10);
+        ConversationPage single = conversationService.listConversations(userId, null, ids.get(1), 1);
+
+        // Assert
+        assertEquals(List.of(ids.get(3), ids.get(1), ids.get(0)), ids(afterNewest));
+        assertNull(afterNewest.nextCursor());
+        assertEquals(List.of(ids.get(1), ids.get(0)), ids(afterDeleted));
+        assertEquals(List.of(ids.get(0)), ids(single));
+        assertNull(single.nextCursor(), "A page holding exactly the last conversation has no cursor");
+    }
+
+    @Test
+    @DisplayName("A status filter pages only over conversations in that status")
+    void testStatusFilter() {
+        // Arrange: alternate ACTIVE and COMPLETED
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            ids.addAll(createConversations(1, i % 2 == 0 ? ConversationStatus.ACTIVE : ConversationStatus.COMPLETED));
+        }
+
+        // Act
+        ConversationPage first = conversationService.listConversations(userId, ConversationStatus.COMPLETED, null, 2);
+        ConversationPage second = conversationService.listConversations(userId, ConversationStatus.COMPLETED,
+                first.nextCursor(), 2);
+
+        // Assert
+        assertEquals(List.of(ids.get(5), ids.get(3)), ids(first));
+        assertEquals(ids.get(3), first.nextCursor());
+        assertEquals(List.of(ids.get(1)), ids(second));
+        assertNull(second.nextCursor());
+        assertTrue(second.conversations().stream().allMatch(view -> view.status() == ConversationStatus.COMPLETED));
+    }
+
+    // Helper methods
+
+    private List<Long> createConversations(int count, ConversationStatus status) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Conversation conversation = new Conversation(1L, "TestAgent", userId);
+            conversation.setStatus(status);
+            ids.add(conversationRepository.save(conversation).getId());
+        }
+        return ids;
+    }
+
+    private List<ConversationPage> pageThrough(ConversationStatus status, int limit) {
+        List<ConversationPage> pages = new ArrayList<>();
+        Long cursor = null;
+        do {
+            ConversationPage page = conversationService.listConversations(userId, status, cursor, limit);
+            pages.add(page);
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return pages;
+    }
+
+    private static List<Long> ids(ConversationPage page) {
+        return page.conversations().stream().map(ConversationView::id).toList();
+    }
+}
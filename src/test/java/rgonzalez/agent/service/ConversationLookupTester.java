@@ -0,0 +1,129 @@
+package rgonzalez.agent.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import rgonzalez.agent.controller.ConversationController;
+import rgonzalez.agent.dto.ConversationLookupResponse;
+import rgonzalez.agent.dto.ConversationResponse;
+import rgonzalez.agent.entity.Conversation;
+import rgonzalez.agent.repository.ConversationRepository;
+import rgonzalez.agent.repository.ConversationView;
+
+/**
+ * ConversationLookupTester fetches real conversations by several IDs at once and
+ * checks that results follow the requested order, that duplicate IDs are returned
+ * once at their first position, that unknown or deleted IDs are reported as missing,
+ * and that the endpoint rejects empty lists, null IDs and lists over the ID limit.
+ */
+@SpringBootTest
+@DisplayName("Conversation Lookup Tester")
+class ConversationLookupTester {
+
+    @Autowired
+    private ConversationService conversationService;
+
+    @Autowired
+    private ConversationRepository conversationRepository;
+
+    @Test
+    @DisplayName("Results follow the requested order, not the ID order")
+    void testOrdering() {
+        // Arrange
+        List<Long> ids = createConversations(4);
+        List<Long> requested = List.of(ids.get(2), ids.get(0), ids.get(3), ids.get(1));
+
+        // Act
+        ConversationLookup lookup = conversationService.lookupConversations(requested);
+
+        // Assert
+        assertEquals(requested, ids(lookup));
+        assertTrue(lookup.missingIds().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Unknown and deleted IDs are listed as missing, in the requested order")
+    void testMissingIds() {
+        // Arrange
+        List<Long> ids = createConversations(3);
+        conversationRepository.deleteById(ids.get(1));
+        Long unknown = Long.MAX_VALUE - 1;
+
+        // Act
+        ConversationLookup lookup = conversationService.lookupConversations(
+                List.of(unknown, ids.get(2), ids.get(1), ids.get(0)));
+
+        // Assert
+        assertEquals(List.of(ids.get(2), ids.get(0)), ids(lookup));
+        assertEquals(List.of(unknown, ids.get(1)), lookup.missingIds());
+    }
+
+    @Test
+    @DisplayName("Duplicate IDs are returned once, at their first position")
+    void testDuplicateIds() {
+        // Arrange
+        List<Long> ids = createConversations(2);
+        Long unknown = Long.MAX_VALUE - 2;
+
+        // Act
+        ConversationLookup lookup = conversationService.lookupConversations(
+                List.of(ids.get(1), ids.get(0), ids.get(1), unknown, ids.get(0), unknown));
+
+        // Assert
+        assertEquals(List.of(ids.get(1), ids.get(0)), ids(lookup));
+        assertEquals(List.of(unknown), lookup.missingIds());
+    }
+
+    @Test
+    @DisplayName("The endpoint accepts up to the ID limit and rejects empty lists, null IDs and longer lists")
+    void testMaxIdLimit() {
+        // Arrange
+        ConversationController controller = new ConversationController(conversationService, null, null, null, null);
+        ReflectionTestUtils.setField(controller, "maxLookupIds", 3);
+        List<Long> ids = createConversations(3);
+        List<Long> withNull = new ArrayList<>(ids.subList(0, 2));
+        withNull.add(null);
+
+        // Act
+        ResponseEntity<ConversationLookupResponse> atLimit = controller.getConversations(ids);
+        ResponseEntity<ConversationLookupResponse> overLimit = controller.getConversations(
+                LongStream.rangeClosed(1, 4).boxed().toList());
+        ResponseEntity<ConversationLookupResponse> duplicatesOverLimit = controller.getConversations(
+                List.of(ids.get(0), ids.get(0), ids.get(0), ids.get(0)));
+
+        // Assert
+        assertEquals(HttpStatus.OK, atLimit.getStatusCode());
+        assertEquals(ids, atLimit.getBody().getConversations().stream().map(ConversationResponse::getId).toList());
+        assertEquals(HttpStatus.BAD_REQUEST, overLimit.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, duplicatesOverLimit.getStatusCode(),
+                "The limit applies to the IDs as sent, before duplicates are removed");
+        assertEquals(HttpStatus.BAD_REQUEST, controller.getConversations(List.of()).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.getConversations(withNull).getStatusCode());
+    }
+
+    // Helper methods
+
+    private List<Long> createConversations(int count) {
+        String userId = "lookup-" + System.nanoTime();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(conversationRepository.save(new Conversation(1L, "TestAgent", userId)).getId());
+        }
+        return ids;
+    }
+
+    private static List<Long> ids(ConversationLookup lookup) {
+        return lookup.conversations().stream().map(ConversationView::id).toList();
+    }
+}
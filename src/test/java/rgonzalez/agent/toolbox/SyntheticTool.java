@@ -0,0 +1,81 @@
+package rgonzalez.agent.toolbox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import rgonzalez.agent.toolbox.tools.CustomerSearchTool;
+import rgonzalez.agent.toolbox.tools.EmailReminderTool;
+
+/**
+ * Tool with generated metadata used to pad a registry to a realistic size
+ * around the real customer search and email reminder tools.
+ */
+class SyntheticTool implements Tool {
+
+    private static final String[] DOMAINS = {
+            "invoice", "shipment", "inventory", "payroll", "ticket", "contract", "vendor", "warehouse",
+            "calendar", "expense", "ledger", "forecast", "campaign", "survey", "asset", "license",
+            "timesheet", "refund", "quote", "subscription", "tax", "audit", "budget", "lead", "order"
+    };
+
+    private static final String[] ACTIONS = {
+            "create", "update", "archive", "export", "import", "approve", "reject", "reconcile",
+            "schedule", "cancel", "merge", "validate", "summarize", "translate", "classify",
+            "project", "publish", "assign", "escalate", "close"
+    };
+
+    private final String name;
+    private final String domain;
+    private final String action;
+
+    SyntheticTool(String name, String domain, String action) {
+        this.name = name;
+        this.domain = domain;
+        this.action = action;
+    }
+
+    /**
+     * Build the two real tools padded with synthetic ones up to the given total.
+     */
+    static List<Tool> registryOf(int size) {
+        List<Tool> tools = new ArrayList<>();
+        tools.add(new CustomerSearchTool());
+        tools.add(new EmailReminderTool(null, null));
+        for (int i = 0; tools.size() < size; i++) {
+            String domain = DOMAINS[i % DOMAINS.length];
+            String action = ACTIONS[(i / DOMAINS.length) % ACTIONS.length];
+            tools.add(new SyntheticTool(action + "_" + domain + "_" + i, domain, action));
+        }
+        return tools;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return String.format("%s a %s record in the %s system and return the resulting %s details.",
+                action, domain, domain, domain);
+    }
+
+    @Override
+    public Map<String, String> getParameters() {
+        return Map.of(
+                domain + "Id", "Identifier of the " + domain,
+                "reason", "Free-text reason for the " + action + " operation");
+    }
+
+    @Override
+    public Set<String> getTags() {
+        return Set.of(domain, action);
+    }
+
+    @Override
+    public String execute(Map<String, Object> parameters) {
+        return action + " " + domain + " done";
+    }
+}
@@ -0,0 +1,155 @@
+package rgonzalez.agent.toolbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ToolCatalogTester checks that the registry's catalog snapshot is rebuilt only when
+ * the set of tools changes, and that readers racing with registrations always see a
+ * complete snapshot while no registration is lost.
+ */
+@DisplayName("Tool Catalog Tester")
+class ToolCatalogTester {
+
+    @Test
+    @DisplayName("The catalog is reused until a registration actually changes it")
+    void testRebuildsOnlyOnChange() {
+        // Arrange
+        Tool search = new NamedTool("search");
+        ToolRegistry registry = new ToolRegistry(List.of(search, new NamedTool("notify")));
+        ToolCatalog initial = registry.getCatalog();
+
+        // Act & Assert: reads serve the precomputed text and definitions
+        assertSame(registry.getToolDescriptions(), registry.getToolDescriptions());
+        assertSame(initial.getToolDefinitions(), initial.getToolDefinitions());
+        assertSame(initial.getToolDefinitions(), registry.getRelevantToolDefinitions("search", List.of()));
+
+        // Act & Assert: re-registering the same instance or removing an unknown tool is not a change
+        registry.register(search);
+        registry.unregister("missing");
+        assertSame(initial, registry.getCatalog());
+
+        // Act: a new tool, then a new instance under an existing name
+        registry.register(new NamedTool("archive"));
+        ToolCatalog added = registry.getCatalog();
+        registry.register(new NamedTool("search"));
+        ToolCatalog replaced = registry.getCatalog();
+
+        // Assert
+        assertNotSame(initial, added);
+        assertNotSame(added, replaced);
+        assertEquals(List.of("archive", "notify", "search"), List.copyOf(replaced.getTools().keySet()));
+        assertEquals(List.of("archive", "notify", "search"), replaced.getToolDefinitions().stream()
+                .map(definition -> definition.getFunction().getName())
+                .toList());
+        assertTrue(replaced.getDescriptions().contains("- archive: archive things"));
+        assertFalse(initial.getTools().containsKey("archive"), "Earlier snapshots must not change");
+    }
+
+    @Test
+    @DisplayName("Readers racing with registrations see complete snapshots and no registration is lost")
+    void testConcurrentRegisterAndRead() throws Exception {
+        // Arrange
+        int writers = 4;
+        int toolsPerWriter = 200;
+        ToolRegistry registry = new ToolRegistry(List.of(new NamedTool("seed")));
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> writes = new ArrayList<>();
+        List<Future<Integer>> reads = new ArrayList<>();
+
+        try {
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                writes.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < toolsPerWriter; i++) {
+                        registry.register(new NamedTool("tool_" + writer + "_" + i));
+                    }
+                    return null;
+                }));
+            }
+            for (int r = 0; r < 2; r++) {
+                reads.add(executor.submit(() -> {
+                    start.await();
+                    int snapshots = 0;
+                    int lastSize = 0;
+                    do {
+                        ToolCatalog snapshot = registry.getCatalog();
+                        int size = snapshot.getTools().size();
+                        // Every derived view of one snapshot describes the same tools
+                        assertEquals(size, snapshot.getToolDefinitions().size());
+                        assertEquals(size, snapshot.getDescriptions().split("\n- ", -1).length - 1);
+                        assertTrue(size >= lastSize, "Tools only get registered, so snapshots never shrink");
+                        lastSize = size;
+                        snapshots++;
+                    } while (writing.get());
+                    return snapshots;
+                }));
+            }
+
+            // Act
+            start.countDown();
+            for (Future<?> write : writes) {
+                write.get(30, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+
+            // Assert
+            for (Future<Integer> read : reads) {
+                assertTrue(read.get(30, TimeUnit.SECONDS) > 0);
+            }
+            ToolCatalog last = registry.getCatalog();
+            assertEquals(1 + writers * toolsPerWriter, last.getTools().size());
+            assertEquals(last.getTools().size(), last.getToolDefinitions().size());
+            assertTrue(registry.hasTool("tool_3_199"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tool with a fixed description and one parameter.
+     */
+    private static final class NamedTool implements Tool {
+
+        private final String name;
+
+        NamedTool(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return name + " things";
+        }
+
+        @Override
+        public Map<String, String> getParameters() {
+            return Map.of("id", "Identifier");
+        }
+
+        @Override
+        public String execute(Map<String, Object> parameters) {
+            return name;
+        }
+    }
+}
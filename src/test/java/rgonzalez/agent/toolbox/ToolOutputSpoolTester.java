@@ -0,0 +1,137 @@
+package rgonzalez.agent.toolbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * ToolOutputSpoolTester checks that outputs reaching the spill threshold are written
+ * to files while smaller ones stay in memory, that spilled outputs render to the
+ * same truncated text as inline ones (counted in characters, not bytes), and that
+ * files are deleted when their turn's scope closes and the directory on shutdown.
+ */
+@DisplayName("Tool Output Spool Tester")
+class ToolOutputSpoolTester {
+
+    private static final int SPILL_CHARS = 100;
+
+    @TempDir
+    Path parentDirectory;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ToolOutputSpool spool;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        spool = new ToolOutputSpool(meterRegistry, parentDirectory.toString());
+        ReflectionTestUtils.setField(spool, "spillChars", SPILL_CHARS);
+    }
+
+    @Test
+    @DisplayName("Outputs of at least spill-chars characters are spilled; smaller ones stay in memory")
+    void testSpillThreshold() throws Exception {
+        try (ToolOutputSpool.Scope scope = spool.open()) {
+            // Act
+            ToolOutputHandle below = scope.capture("search", "x".repeat(SPILL_CHARS - 1));
+            ToolOutputHandle at = scope.capture("search", "y".repeat(SPILL_CHARS));
+            ToolOutputHandle missing = scope.capture("search", null);
+
+            // Assert
+            assertFalse(below.isSpilled());
+            assertTrue(at.isSpilled());
+            assertFalse(missing.isSpilled());
+            assertEquals("null", missing.toString());
+            assertEquals(SPILL_CHARS, at.length());
+            assertEquals("y".repeat(SPILL_CHARS), at.toString());
+            assertEquals("y".repeat(SPILL_CHARS), read(at));
+            assertEquals(1, spilledFiles().size());
+            assertEquals(1.0, meterRegistry.counter("tool.outputs.spilled").count());
+        }
+    }
+
+    @Test
+    @DisplayName("A spilled output renders like an inline one, cut at a character count")
+    void testRenderTruncation() throws Exception {
+        // Arrange: two-byte characters, so a byte count would cut in the wrong place
+        String output = "é".repeat(150) + "z".repeat(850);
+        try (ToolOutputSpool.Scope scope = spool.open()) {
+            ToolOutputHandle spilled = scope.capture("report", output);
+            ToolOutputHandle inline = ToolOutputHandle.inline("report", output);
+            assertTrue(spilled.isSpilled());
+
+            // Act
+            String rendered = spilled.render(300);
+
+            // Assert
+            assertEquals("é".repeat(150) + "z".repeat(150) + "\n... [truncated: 700 more characters]", rendered);
+            assertEquals(inline.render(300), rendered);
+            assertEquals(output, spilled.render(1000), "An output within the limit is rendered whole");
+            assertEquals(inline.render(20_000), spilled.render(20_000));
+        }
+    }
+
+    @Test
+    @DisplayName("Spilled files are deleted when their scope closes, and the directory on shutdown")
+    void testFilesDeletedWithScope() throws Exception {
+        // Arrange: two turns, each with a spilled output
+        ToolOutputSpool.Scope first = spool.open();
+        ToolOutputSpool.Scope second = spool.open();
+        first.capture("search", "a".repeat(SPILL_CHARS));
+        ToolOutputHandle kept = second.capture("search", "b".repeat(SPILL_CHARS));
+        assertEquals(2, spilledFiles().size());
+
+        // Act
+        first.close();
+
+        // Assert: only the first turn's file is gone
+        assertEquals(1, spilledFiles().size());
+        assertEquals("b".repeat(SPILL_CHARS), kept.toString());
+
+        // Act
+        second.close();
+        second.close();
+
+        // Assert
+        assertTrue(spilledFiles().isEmpty());
+
+        // Act: shutdown removes the spool's directory
+        spool.close();
+
+        // Assert
+        try (Stream<Path> directories = Files.list(parentDirectory)) {
+            assertEquals(0, directories.count());
+        }
+    }
+
+    // Helper methods
+
+    private List<Path> spilledFiles() throws Exception {
+        try (Stream<Path> directories = Files.list(parentDirectory)) {
+            Path directory = directories.findFirst().orElseThrow();
+            try (Stream<Path> files = Files.list(directory)) {
+                return files.toList();
+            }
+        }
+    }
+
+    private static String read(ToolOutputHandle handle) throws Exception {
+        StringWriter content = new StringWriter();
+        try (Reader reader = handle.openReader()) {
+            reader.transferTo(content);
+        }
+        return content.toString();
+    }
+}
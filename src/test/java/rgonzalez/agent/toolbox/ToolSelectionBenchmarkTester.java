@@ -0,0 +1,47 @@
+package rgonzalez.agent.toolbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ToolSelectionBenchmarkTester times relevance-filtered catalog rendering on a
+ * synthetic 500-tool registry and prints the token counts of the full and filtered
+ * catalogs. Tagged as a benchmark, so it only runs with -Pbenchmark.
+ */
+@Tag("benchmark")
+@DisplayName("Tool Selection Benchmark Tester")
+class ToolSelectionBenchmarkTester {
+
+    @Test
+    @DisplayName("Benchmark: filtered catalog size and selection time on a 500-tool registry")
+    void testBenchmarkFilteredCatalog() {
+        // Arrange
+        ToolRegistry toolRegistry = new ToolRegistry(SyntheticTool.registryOf(502));
+        String goal = "Find customers with overdue balance and send them reminders";
+        for (int i = 0; i < 1_000; i++) {
+            toolRegistry.getRelevantToolDescriptions(goal, List.of());
+        }
+
+        // Act
+        int iterations = 10_000;
+        long start = System.nanoTime();
+        String filtered = null;
+        for (int i = 0; i < iterations; i++) {
+            filtered = toolRegistry.getRelevantToolDescriptions(goal, List.of("customer_search"));
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        // Assert
+        int fullTokens = toolRegistry.getCatalog().getDescriptionTokens();
+        int filteredTokens = ToolCatalog.estimateTokens(filtered);
+        System.out.printf("Tool catalog: %d tools, full ~%d tokens, filtered ~%d tokens (%.1f%%), %.1f us/selection%n",
+                toolRegistry.getAllTools().size(), fullTokens, filteredTokens,
+                100.0 * filteredTokens / fullTokens, elapsedNanos / 1_000.0 / iterations);
+        assertTrue(filtered.contains("customer_search"));
+    }
+}
@@ -0,0 +1,69 @@
+package rgonzalez.agent.toolbox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import rgonzalez.agent.toolbox.tools.CustomerSearchTool;
+import rgonzalez.agent.toolbox.tools.EmailReminderTool;
+
+/**
+ * ToolSelectionTester checks relevance-filtered tool selection against a synthetic
+ * 500-tool registry: the real tools are still found and the filtered catalog is a
+ * small fraction of the full one. Timings live in ToolSelectionBenchmarkTester.
+ */
+@DisplayName("Tool Selection Tester")
+class ToolSelectionTester {
+
+    private static final String GOAL = "Find customers with overdue balance and send them reminders";
+
+    private ToolRegistry toolRegistry;
+
+    @BeforeEach
+    void setUp() {
+        toolRegistry = new ToolRegistry(SyntheticTool.registryOf(502));
+    }
+
+    @Test
+    @DisplayName("Relevant tools should be selected from a 500-tool registry")
+    void testSelectsRelevantTools() {
+        // Act
+        List<String> selected = toolRegistry.selectTools(GOAL)
+                .stream()
+                .map(Tool::getName)
+                .toList();
+
+        // Assert
+        assertTrue(selected.size() <= 8);
+        assertTrue(selected.contains("customer_search"), "Selected: " + selected);
+        assertTrue(selected.contains("send_email_reminder"), "Selected: " + selected);
+    }
+
+    @Test
+    @DisplayName("Filtered catalog should be a small fraction of the full catalog")
+    void testFilteredCatalogSize() {
+        // Act
+        String full = toolRegistry.getToolDescriptions();
+        String filtered = toolRegistry.getRelevantToolDescriptions(GOAL, List.of("customer_search"));
+
+        // Assert
+        assertTrue(filtered.contains("customer_search"));
+        assertTrue(filtered.contains("send_email_reminder"));
+        assertTrue(filtered.length() * 10 < full.length(),
+                "Filtered catalog should be under 10% of the full catalog");
+    }
+
+    @Test
+    @DisplayName("Registries that fit within top-k should use the full cached catalog")
+    void testSmallRegistryUsesCachedCatalog() {
+        // Arrange
+        ToolRegistry small = new ToolRegistry(List.of(new CustomerSearchTool(), new EmailReminderTool(null, null)));
+
+        // Act & Assert
+        assertSame(small.getToolDescriptions(), small.getRelevantToolDescriptions("anything", List.of()));
+    }
+}
@@ -0,0 +1,123 @@
+package rgonzalez.agent.toolbox.tools;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import rgonzalez.agent.toolbox.ToolOutputHandle;
+import rgonzalez.agent.toolbox.ToolOutputSpool;
+import rgonzalez.agent.toolbox.ToolResultRenderer;
+
+/**
+ * CustomerSearchResultCompactorTester digests the output of the real customer_search
+ * tool and checks the customer count, balance total, range and average, the top-k
+ * customers and the sample lines. Output in any other form yields no digest, and the
+ * renderer then falls back to truncating the raw output.
+ */
+@DisplayName("Customer Search Result Compactor Tester")
+class CustomerSearchResultCompactorTester {
+
+    private static final int PROMPT_CHARS = 60;
+
+    @TempDir
+    Path spoolDirectory;
+
+    private CustomerSearchResultCompactor compactor;
+    private SimpleMeterRegistry meterRegistry;
+    private ToolOutputSpool spool;
+    private ToolResultRenderer renderer;
+
+    @BeforeEach
+    void setUp() {
+        compactor = new CustomerSearchResultCompactor();
+        ReflectionTestUtils.setField(compactor, "topK", 3);
+        ReflectionTestUtils.setField(compactor, "sampleSize", 2);
+        meterRegistry = new SimpleMeterRegistry();
+        spool = new ToolOutputSpool(meterRegistry, spoolDirectory.toString());
+        ReflectionTestUtils.setField(spool, "spillChars", 100);
+        ReflectionTestUtils.setField(spool, "promptChars", PROMPT_CHARS);
+        renderer = new ToolResultRenderer(List.of(compactor), spool, meterRegistry);
+        // The tool's output is far shorter than the default threshold
+        ReflectionTestUtils.setField(renderer, "minChars", 100);
+    }
+
+    @Test
+    @DisplayName("The digest of customer_search output has the right count, total, range, top-k and sample")
+    void testDigest() throws Exception {
+        // Arrange
+        String output = searchCustomers();
+        String heading = output.lines().findFirst().orElseThrow();
+
+        // Act
+        Optional<String> digest = compactor.compact(ToolOutputHandle.inline("customer_search", output));
+
+        // Assert
+        assertEquals(Optional.of("Digest of " + output.length() + " characters of results:\n"
+                + heading + "\n"
+                + "Customers: 5\n"
+                + "Total balance: $3801.50\n"
+                + "Balance range: $550.25 - $1200.00\n"
+                + "Average balance: $760.30\n"
+                + "Highest balances:\n"
+                + "- C004, Alice Williams, $1200.00\n"
+                + "- C002, Jane Smith, $800.50\n"
+                + "- C001, John Doe, $650.00\n"
+                + "Sample of results:\n"
+                + "1. Customer ID: C001, Name: John Doe, Balance: $650.00\n"
+                + "2. Customer ID: C002, Name: Jane Smith, Balance: $800.50\n"), digest);
+    }
+
+    @Test
+    @DisplayName("The renderer puts the digest of a spilled customer_search output in the prompt")
+    void testRendererUsesDigest() throws Exception {
+        // Arrange
+        String output = searchCustomers();
+        try (ToolOutputSpool.Scope scope = spool.open()) {
+            ToolOutputHandle handle = scope.capture("customer_search", output);
+            assertTrue(handle.isSpilled());
+
+            // Act
+            String rendered = renderer.render(handle);
+
+            // Assert
+            assertEquals(compactor.compact(ToolOutputHandle.inline("customer_search", output)).orElseThrow(),
+                    rendered);
+            assertEquals(1.0, meterRegistry.counter("tool.results.compacted").count());
+        }
+    }
+
+    @Test
+    @DisplayName("Output without customer lines yields no digest and the renderer truncates it instead")
+    void testNonMatchingOutputFallsBackToTruncation() throws Exception {
+        // Arrange
+        String output = "Customer search failed: the billing database did not respond in time.\n"
+                + "Retry later or narrow the search with a higher minimum balance.";
+        ToolOutputHandle handle = ToolOutputHandle.inline("customer_search", output);
+
+        // Act
+        Optional<String> digest = compactor.compact(handle);
+        String rendered = renderer.render(handle);
+
+        // Assert
+        assertTrue(digest.isEmpty());
+        assertEquals(output.substring(0, PROMPT_CHARS) + "\n... [truncated: " + (output.length() - PROMPT_CHARS)
+                + " more characters]", rendered);
+        assertEquals(0.0, meterRegistry.counter("tool.results.compacted").count());
+    }
+
+    // Helper methods
+
+    private static String searchCustomers() throws Exception {
+        return new CustomerSearchTool().execute(Map.of("minBalance", "500", "status", "overdue"));
+    }
+}